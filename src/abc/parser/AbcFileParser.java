@@ -20,7 +20,6 @@ import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
-import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.Reader;
 
@@ -178,7 +177,7 @@ public class AbcFileParser extends AbcParserAbstract {
 			// are missing TEX COMMAND and FILE FIELDS
 			// .createUnion(FIRST_TEX_COMMAND);//.createUnion(FIRST_FILE_FIELDS);
 			m_scanner.setFinaleStateAutomata(AutomataFactory.getAutomata(
-					current.getTypes(), m_abcVersion));
+					current, m_abcVersion));
 			m_token = m_scanner.nextToken();
 			m_tokenType = m_token.getType();
 			while (m_token != null) {
@@ -196,13 +195,11 @@ public class AbcFileParser extends AbcParserAbstract {
 						if (!FIRST_LINE_FEED.contains(m_token.getType())) {
 							// if this is not an empty line, we process it, and
 							// reach the first next token.
-							try {
-								line.append(charStream.readLine());
-								line.append("\n");
-								notifyListenersForLineProcessed(new String(line));
-							} catch (IOException e) {
-								e.printStackTrace();
-							}
+							// the scanner reads ahead : the rest of the line
+							// is read through it.
+							line.append(m_scanner.readLine());
+							line.append("\n");
+							notifyListenersForLineProcessed(new String(line));
 							m_scanner.init(charStream);
 							// Init the current to whatever we can find in an
 							// Abc File. ("abc-file" in BNF definition)
@@ -212,7 +209,7 @@ public class AbcFileParser extends AbcParserAbstract {
 									./* union(FIRST_TEX_COMMAND). */createUnion(
 											FIRST_ABC_MUSIC);
 							m_scanner.setFinaleStateAutomata(AutomataFactory
-									.getAutomata(newCurrent.getTypes(),
+									.getAutomata(newCurrent,
 											m_abcVersion));
 							// this next token is the first of the new line.
 							m_token = m_scanner.nextToken();
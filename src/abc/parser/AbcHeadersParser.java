@@ -35,8 +35,9 @@ public class AbcHeadersParser extends AbcFileParser {
 	/** Default constructor. */
 	public AbcHeadersParser(AbcVersion abcVersion) {
 		super(abcVersion);
-		// Override the definition of an abc line
-		FIRST_ABC_LINE = new Set(AbcTokenType.TEXT);
+		// Override the definition of an abc line, for this parser only : the
+		// other parsers still parse the music.
+		m_firstAbcLine = new Set(AbcTokenType.TEXT);
 	}
 
 	/**
@@ -246,7 +246,7 @@ public class AbcParserAbstract {
 			.union(AbcTokenType.BEGIN_SLUR).union(AbcTokenType.END_SLUR)
 			.union(AbcTokenType.SPACE)
 	/* .union(AbcTokenType.USER_DEFINED) */;
-	protected static Set FIRST_ABC_LINE = new Set(FIRST_ELEMENT)
+	protected static final Set FIRST_ABC_LINE = new Set(FIRST_ELEMENT)
 			.union(FIRST_MID_TUNE_FIELD)/*
 										 * .union(FIRST_COMMENT).union(
 										 * FIRST_TEX_COMMAND)
@@ -300,6 +300,16 @@ public class AbcParserAbstract {
 	private byte currentVoice = 1;
 
 	protected AbcVersion m_abcVersion = null;
+	/**
+	 * The union of the current and the follow set, reused for each accepted
+	 * token : see {@link #getSetResultingUnionFrom(Set, Set)}.
+	 */
+	private Set m_union = new Set();
+	/**
+	 * The first tokens of an abc line for this parser, see
+	 * {@link AbcHeadersParser}.
+	 */
+	protected Set m_firstAbcLine = FIRST_ABC_LINE;
 
 	/** Constructs a new tune parser. */
 	public AbcParserAbstract(AbcVersion abcVersion) {
@@ -379,7 +389,7 @@ public class AbcParserAbstract {
 		// are missing TEX COMMAND and FILE FIELDS
 		// .createUnion(FIRST_TEX_COMMAND);//.createUnion(FIRST_FILE_FIELDS);
 		m_scanner.setFinaleStateAutomata(AutomataFactory.getAutomata(
-				current.getTypes(), m_abcVersion));
+				current, m_abcVersion));
 		m_token = m_scanner.nextToken();
 		m_tokenType = m_token.getType();
 		while (m_token != null) {
@@ -1223,11 +1233,11 @@ public class AbcParserAbstract {
 	// ============================================================================================
 	/** abc-music ::= 1*abc-line linefeed */
 	protected void parseAbcMusic(Set follow) {
-		Set current = new Set().union(FIRST_ABC_LINE).union(
+		Set current = new Set().union(m_firstAbcLine).union(
 				AbcTokenType.LINE_FEED);
 		do
 			parseAbcLine(current.createUnion(follow));
-		while (FIRST_ABC_LINE.contains(m_tokenType));
+		while (m_firstAbcLine.contains(m_tokenType));
 		// current = new Set(AbcTokenType.LINE_FEED);
 		// accept(AbcTokenType.LINE_FEED, current, follow);
 	}
@@ -2085,7 +2095,7 @@ public class AbcParserAbstract {
 				 * m_setsForAccept.addElement(union);
 				 */
 				m_automata.setDefinition(DefinitionFactory.getDefinition(
-						union.getTypes(), m_abcVersion));
+						union, m_abcVersion));
 				m_scanner.setFinaleStateAutomata(m_automata);
 				// TokenType[] unionArray = union.getTypes();
 				// m_automata.setDefinition(DefinitionFactory.getDefinition(unionArray));
@@ -2096,13 +2106,13 @@ public class AbcParserAbstract {
 				// typesForAutomata = union;
 			} else if (current != null && current.size() != 0) {
 				m_automata.setDefinition(DefinitionFactory.getDefinition(
-						current.getTypes(), m_abcVersion));
+						current, m_abcVersion));
 				m_scanner.setFinaleStateAutomata(m_automata);
 				// TokenType[] array = current.getTypes();
 				// m_scanner.setFinaleStateAutomata(getAutomataFor(array));
 			} else {
 				m_automata.setDefinition(DefinitionFactory.getDefinition(
-						follow.getTypes(), m_abcVersion));
+						follow, m_abcVersion));
 				m_scanner.setFinaleStateAutomata(m_automata);
 				// TokenType[] array = follow.getTypes();
 				// m_scanner.setFinaleStateAutomata(getAutomataFor(array));
@@ -2148,7 +2158,8 @@ public class AbcParserAbstract {
 		// old algorythm:
 		if (current == null)
 			return follow;
-		return current.createUnion(follow);
+		// as current.createUnion(follow) : the follow types come first
+		return m_union.copyFrom(follow).union(current);
 		// return foundSet;
 	}
 
@@ -2161,7 +2172,7 @@ public class AbcParserAbstract {
 		// System.out.println("Parser - skipTo("+ targetSet + ") from " +
 		// token.getValue() );
 		m_automata.setDefinition(DefinitionFactory.getDefinition(
-				targetSet.getTypes(), m_abcVersion));
+				targetSet, m_abcVersion));
 		m_scanner.setFinaleStateAutomata(m_automata);
 		// m_scanner.setFinaleStateAutomata(getAutomataFor(targetSet.getTypes()));
 		// ===old
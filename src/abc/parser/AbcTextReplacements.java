@@ -32,7 +32,7 @@ public class AbcTextReplacements extends ResourceBundle {
 
 	static final Map map = new HashMap();
 
-	public static AbcTextReplacements getInstance() {
+	public static synchronized AbcTextReplacements getInstance() {
 		if (instance == null)
 			instance = new AbcTextReplacements();
 		return instance;
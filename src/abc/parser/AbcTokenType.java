@@ -15,6 +15,7 @@
 // along with abc4j.  If not, see <http://www.gnu.org/licenses/>.
 package abc.parser;
 
+import scanner.Set;
 import scanner.TokenType;
 
 /**
@@ -162,9 +163,16 @@ public class AbcTokenType implements TokenType {
 	public static AbcTokenType COMA = new AbcTokenType("COMA");
 
 	private String m_name = null;
+	/** The ordinal of this token type, see {@link Set}. */
+	private final int m_ordinal;
 
 	public AbcTokenType(String typeName) {
 		m_name = typeName;
+		m_ordinal = Set.register(this);
+	}
+
+	public int getOrdinal() {
+		return m_ordinal;
 	}
 
 	public boolean isField() {
@@ -16,17 +16,17 @@
 package abc.parser;
 
 import java.io.Reader;
-import java.io.StringReader;
-import java.util.Vector;
 
 import abc.notation.Tune;
 
-/** A parser that parses abc gammar into its own thread context. */
+/**
+ * A parser that parses abc gammar into its own thread context. The parsing
+ * runs on the threads of a {@link ParsingScheduler} : a request replaces the
+ * one still waiting to be parsed, the results are given to the listeners of
+ * this parser.
+ */
 public class AsynchronousTuneParser extends TuneParser {
-	private Object m_mutex = new Object();
-	private Thread m_parsingThread = null;
-	private Vector m_queue = null;
-	private boolean m_isQueueManagementEnabled = true;
+	private ParsingScheduler m_scheduler = null;
 
 	/** Constructs a new tune parser. */
 	public AsynchronousTuneParser() {
@@ -36,22 +36,41 @@ public class AsynchronousTuneParser extends TuneParser {
 	/** Constructs a new tune parser. */
 	public AsynchronousTuneParser(AbcVersion abcVersion) {
 		super(abcVersion);
-		m_queue = new Vector();
-		m_parsingThread = new Thread(new ParsingRunnable());
-		m_parsingThread.start();
+		m_scheduler = new ParsingScheduler(this) {
+			protected Tune parseNotation(Reader charStream, boolean headerOnly) {
+				if (headerOnly)
+					return superParseHeader(charStream);
+				else
+					return superParse(charStream);
+			}
+		};
 	}
 
+	/**
+	 * @deprecated Stale requests are always dropped, see
+	 *             {@link ParsingScheduler}.
+	 */
 	public AsynchronousTuneParser(boolean isQueueManagementEnabled) {
-		this(isQueueManagementEnabled, AbcVersion.v1_6);
+		this(AbcVersion.v1_6);
 	}
 
+	/**
+	 * @deprecated Stale requests are always dropped, see
+	 *             {@link ParsingScheduler}.
+	 */
 	public AsynchronousTuneParser(boolean isQueueManagementEnabled,
 			AbcVersion abcVersion) {
-		super(abcVersion);
-		m_isQueueManagementEnabled = isQueueManagementEnabled;
-		m_queue = new Vector();
-		m_parsingThread = new Thread(new ParsingRunnable());
-		m_parsingThread.start();
+		this(abcVersion);
+	}
+
+	/**
+	 * Returns the scheduler of this parser, to be informed of the parsed tunes
+	 * and of the parsing latency.
+	 * 
+	 * @return The scheduler of this parser.
+	 */
+	public ParsingScheduler getScheduler() {
+		return m_scheduler;
 	}
 
 	/**
@@ -63,100 +82,30 @@ public class AsynchronousTuneParser extends TuneParser {
 	 * @return An object representation of the abc notation string.
 	 */
 	public Tune parse(String tune) {
-		synchronized (m_mutex) {
-			if (!m_isQueueManagementEnabled)
-				m_queue.removeAllElements();
-			m_queue.addElement(new QueueElement(new StringReader(tune), false));
-			m_mutex.notify();
-		}
+		m_scheduler.parse(tune);
 		return null;
 	}
 
 	public Tune parse(Reader charStream) {
-		synchronized (m_mutex) {
-			if (!m_isQueueManagementEnabled)
-				m_queue.removeAllElements();
-			m_queue.addElement(new QueueElement(charStream, false));
-			m_mutex.notify();
-		}
+		m_scheduler.parse(charStream);
 		return null;
 	}
 
 	public Tune parseHeader(String tune) {
-		synchronized (m_mutex) {
-			if (!m_isQueueManagementEnabled)
-				m_queue.removeAllElements();
-			m_queue.addElement(new QueueElement(new StringReader(tune), true));
-			m_mutex.notify();
-		}
+		m_scheduler.parseHeader(tune);
 		return null;
 	}
 
 	public Tune parseHeader(Reader charStream) {
-		synchronized (m_mutex) {
-			if (!m_isQueueManagementEnabled)
-				m_queue.removeAllElements();
-			m_queue.addElement(new QueueElement(charStream, true));
-			m_mutex.notify();
-		}
+		m_scheduler.parseHeader(charStream);
 		return null;
 	}
 
-	private Vector getQueue() {
-		return m_queue;
+	public Tune superParse(Reader r) {
+		return super.parse(r);
 	}
 
-	public void superParse(Reader r) {
-		super.parse(r);
-	}
-
-	public void superParseHeader(Reader r) {
-		super.parseHeader(r);
-	}
-
-	private class ParsingRunnable implements Runnable {
-		public void run() {
-			try {
-				synchronized (m_mutex) {
-					while (true) {
-						while (!m_queue.isEmpty()) {
-							QueueElement q = (QueueElement) getQueue()
-									.elementAt(0);
-							getQueue().removeElementAt(0);
-							// System.out.println(" parsing " + q);
-							if (q.headerOnly())
-								AsynchronousTuneParser.this.superParseHeader(q
-										.getNotation());
-							else
-								AsynchronousTuneParser.this.superParse(q
-										.getNotation());
-						}
-						// System.out.println("waiting");
-						m_mutex.wait();
-					}
-				}
-			} catch (InterruptedException e) {
-				e.printStackTrace();
-			}
-		}
-	}
-
-	private class QueueElement {
-		private Reader m_notation = null;
-		private boolean m_headerOnly = false;
-
-		public QueueElement(Reader notation, boolean headerOnly) {
-			m_notation = notation;
-			m_headerOnly = headerOnly;
-		}
-
-		public Reader getNotation() {
-			return m_notation;
-		}
-
-		public boolean headerOnly() {
-			return m_headerOnly;
-		}
-
+	public Tune superParseHeader(Reader r) {
+		return super.parseHeader(r);
 	}
 }
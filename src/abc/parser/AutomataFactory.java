@@ -15,15 +15,18 @@
 // along with abc4j.  If not, see <http://www.gnu.org/licenses/>.
 package abc.parser;
 
-import java.util.Vector;
+import scanner.Set;
 import scanner.TokenType;
 import scanner.FinaleStateAutomata;
 import abc.parser.def.DefinitionFactory;
 
+/**
+ * Creates the automatas used by the parsers. An automata keeps the current
+ * state of one scanner and is not cached, its definition is shared : see
+ * {@link DefinitionFactory}.
+ */
 class AutomataFactory {
 
-	public static Vector m_allPreviouslyCreatedAutomatas = new Vector();
-
 	public static FinaleStateAutomata getAutomata(TokenType abcTokenType,
 			AbcVersion abcVersion) {
 		return new FinaleStateAutomata(DefinitionFactory.getDefinition(
@@ -36,4 +39,10 @@ class AutomataFactory {
 				tokenTypes, abcVersion));
 	}
 
+	public static FinaleStateAutomata getAutomata(Set tokenTypes,
+			AbcVersion abcVersion) {
+		return new FinaleStateAutomata(DefinitionFactory.getDefinition(
+				tokenTypes, abcVersion));
+	}
+
 }
\ No newline at end of file
@@ -0,0 +1,279 @@
+// Copyright 2006-2008 Lionel Gueganton
+// This file is part of abc4j.
+//
+// abc4j is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Lesser General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// abc4j is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public License
+// along with abc4j.  If not, see <http://www.gnu.org/licenses/>.
+package abc.parser;
+
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.Vector;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import abc.notation.Tune;
+
+/**
+ * Parses the notation of a document in the background, on threads shared by
+ * all the schedulers. A scheduler parses one notation at a time with its
+ * parser, and only the latest request : a request replaces the one still
+ * waiting to be parsed, and the tune of a request superseded while it was
+ * parsed is not reported. A request can be delayed, to wait until the user
+ * stops typing for instance, each request restarts the delay.
+ * <p>
+ * The parser's listeners are notified from the parsing threads, as well as
+ * the {@link ParsingSchedulerListenerInterface listeners} of the scheduler.
+ * </p>
+ */
+public class ParsingScheduler {
+	/** The prefix of the names of the parsing threads. */
+	public static final String PARSING_THREAD_NAME = "ABC-Parsing";
+	/** The value of m_changedFrom when nothing was edited. */
+	private static final int NOTHING_CHANGED = Integer.MAX_VALUE;
+	/** The threads parsing for all the schedulers. */
+	private static final ScheduledExecutorService EXECUTOR = Executors
+			.newScheduledThreadPool(Math.max(1, Runtime.getRuntime()
+					.availableProcessors()), new ThreadFactory() {
+				private int m_count = 0;
+
+				public synchronized Thread newThread(Runnable runnable) {
+					Thread thread = new Thread(runnable, PARSING_THREAD_NAME
+							+ "-" + (++m_count));
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+
+	private TuneParser m_parser = null;
+	private Vector m_listeners = null;
+	/** The request waiting to be parsed, <TT>null</TT> if none. */
+	private Request m_pending = null;
+	/** The scheduled parsing of the pending request. */
+	private ScheduledFuture m_future = null;
+	/** <TT>true</TT> while a request is parsed. */
+	private boolean m_isParsing = false;
+	/** The offset of the first character edited since the reported tune. */
+	private int m_changedFrom = 0;
+	private Runnable m_parsing = new Runnable() {
+		public void run() {
+			parsePending();
+		}
+	};
+
+	/**
+	 * Creates a new scheduler.
+	 *
+	 * @param parser
+	 *            The parser used for all the requests of this scheduler.
+	 */
+	public ParsingScheduler(TuneParser parser) {
+		m_parser = parser;
+		m_listeners = new Vector();
+	}
+
+	/**
+	 * Returns the parser used by this scheduler.
+	 *
+	 * @return The parser used by this scheduler.
+	 */
+	public TuneParser getParser() {
+		return m_parser;
+	}
+
+	/**
+	 * Requests the parsing of the given notation, as soon as possible.
+	 *
+	 * @param notation
+	 *            The abc tune to be parsed.
+	 */
+	public void parse(String notation) {
+		schedule(new Request(new StringReader(notation), false, 0), 0);
+	}
+
+	/**
+	 * Requests the parsing of the given notation, as soon as possible.
+	 *
+	 * @param charStream
+	 *            The abc tune to be parsed, read from the parsing thread.
+	 */
+	public void parse(Reader charStream) {
+		schedule(new Request(charStream, false, 0), 0);
+	}
+
+	/**
+	 * Requests the parsing of the given notation after an edit.
+	 *
+	 * @param notation
+	 *            The abc tune to be parsed.
+	 * @param delay
+	 *            The time in milliseconds to wait for another request before
+	 *            parsing this one.
+	 * @param editOffset
+	 *            The offset of the edit in the notation, -1 if the whole
+	 *            notation may have changed.
+	 * @see ParsingSchedulerListenerInterface#tuneParsed(Tune, int, long,
+	 *      long)
+	 */
+	public void parse(String notation, long delay, int editOffset) {
+		schedule(new Request(new StringReader(notation), false, delay),
+				editOffset);
+	}
+
+	/**
+	 * Requests the parsing of the header of the given notation, as soon as
+	 * possible.
+	 *
+	 * @param notation
+	 *            The abc tune whose header is to be parsed.
+	 */
+	public void parseHeader(String notation) {
+		schedule(new Request(new StringReader(notation), true, 0), 0);
+	}
+
+	/**
+	 * Requests the parsing of the header of the given notation, as soon as
+	 * possible.
+	 *
+	 * @param charStream
+	 *            The abc tune whose header is to be parsed, read from the
+	 *            parsing thread.
+	 */
+	public void parseHeader(Reader charStream) {
+		schedule(new Request(charStream, true, 0), 0);
+	}
+
+	/** Drops the request waiting to be parsed, if any. */
+	public synchronized void cancel() {
+		m_pending = null;
+		if (m_future != null)
+			m_future.cancel(false);
+		m_future = null;
+	}
+
+	/**
+	 * Adds a listener to this scheduler.
+	 *
+	 * @param listener
+	 *            The listener to be added.
+	 */
+	public void addListener(ParsingSchedulerListenerInterface listener) {
+		m_listeners.addElement(listener);
+	}
+
+	/**
+	 * Removes a listener from this scheduler.
+	 *
+	 * @param listener
+	 *            The listener to be removed.
+	 */
+	public void removeListener(ParsingSchedulerListenerInterface listener) {
+		m_listeners.removeElement(listener);
+	}
+
+	/**
+	 * Parses a notation, called from a parsing thread.
+	 *
+	 * @param charStream
+	 *            The abc tune to be parsed.
+	 * @param headerOnly
+	 *            <TT>true</TT> if only the header is to be parsed.
+	 * @return The parsed tune.
+	 */
+	protected Tune parseNotation(Reader charStream, boolean headerOnly) {
+		if (headerOnly)
+			return m_parser.parseHeader(charStream);
+		else
+			return m_parser.parse(charStream);
+	}
+
+	private synchronized void schedule(Request request, int editOffset) {
+		m_pending = request;
+		m_changedFrom = Math.min(m_changedFrom, Math.max(0, editOffset));
+		if (m_future != null)
+			m_future.cancel(false);
+		m_future = null;
+		// a parsing in progress schedules the pending request when it ends
+		if (!m_isParsing)
+			m_future = EXECUTOR.schedule(m_parsing, request.m_delay,
+					TimeUnit.MILLISECONDS);
+	}
+
+	private void parsePending() {
+		Request request = null;
+		synchronized (this) {
+			// a cancelled parsing may already be running : the pending request
+			// may not be due yet
+			if (m_pending == null || m_pending.m_dueTime > System.nanoTime())
+				return;
+			request = m_pending;
+			m_pending = null;
+			m_future = null;
+			m_isParsing = true;
+		}
+		long start = System.nanoTime();
+		long end = 0;
+		Tune tune = null;
+		int changedFrom = NOTHING_CHANGED;
+		try {
+			tune = parseNotation(request.m_notation, request.m_headerOnly);
+		} catch (RuntimeException e) {
+			e.printStackTrace();
+		} finally {
+			// also after an error : the pending request is still to be parsed
+			end = System.nanoTime();
+			synchronized (this) {
+				m_isParsing = false;
+				if (m_pending != null) {
+					// superseded while parsing : only the latest is reported
+					m_future = EXECUTOR.schedule(m_parsing, Math.max(0,
+							m_pending.m_dueTime - end), TimeUnit.NANOSECONDS);
+					tune = null;
+				} else if (tune != null) {
+					// the edits are reported with the tune : a failed parsing
+					// keeps them for the next reported tune
+					changedFrom = m_changedFrom;
+					m_changedFrom = NOTHING_CHANGED;
+				}
+			}
+		}
+		if (tune != null)
+			notifyListenersForTuneParsed(tune, changedFrom,
+					(end - request.m_dueTime) / 1000000,
+					(end - start) / 1000000);
+	}
+
+	protected void notifyListenersForTuneParsed(Tune tune, int changedFrom,
+			long latency, long parsingTime) {
+		for (int i = 0; i < m_listeners.size(); i++)
+			((ParsingSchedulerListenerInterface) m_listeners.elementAt(i))
+					.tuneParsed(tune, changedFrom, latency, parsingTime);
+	}
+
+	private static class Request {
+		private Reader m_notation = null;
+		private boolean m_headerOnly = false;
+		private long m_delay = 0;
+		/** When the request is to be parsed, in {@link System#nanoTime()}. */
+		private long m_dueTime = 0;
+
+		public Request(Reader notation, boolean headerOnly, long delay) {
+			m_notation = notation;
+			m_headerOnly = headerOnly;
+			m_delay = delay;
+			m_dueTime = System.nanoTime() + delay * 1000000;
+		}
+	}
+}
@@ -0,0 +1,45 @@
+// Copyright 2006-2008 Lionel Gueganton
+// This file is part of abc4j.
+//
+// abc4j is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Lesser General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// abc4j is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public License
+// along with abc4j.  If not, see <http://www.gnu.org/licenses/>.
+package abc.parser;
+
+import abc.notation.Tune;
+
+/**
+ * Interface that should be implemented by any object that listens to the
+ * tunes parsed by a {@link ParsingScheduler}.
+ */
+public interface ParsingSchedulerListenerInterface {
+	/**
+	 * Invoked from a parsing thread when the latest requested notation has
+	 * been parsed. Tunes of requests superseded while they were parsed are
+	 * not reported.
+	 *
+	 * @param tune
+	 *            The parsed tune.
+	 * @param changedFrom
+	 *            The offset of the first character edited since the previous
+	 *            reported tune, 0 if the whole notation may have changed. The
+	 *            tokens ending before this offset are the same as in the
+	 *            previous tune.
+	 * @param latency
+	 *            The time in milliseconds from the moment the request was due
+	 *            to the end of its parsing.
+	 * @param parsingTime
+	 *            The time in milliseconds spent parsing the notation.
+	 */
+	public void tuneParsed(Tune tune, int changedFrom, long latency,
+			long parsingTime);
+}
@@ -23,9 +23,18 @@ import java.io.FileWriter;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.Reader;
+import java.util.Collections;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.TreeMap;
 import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import scanner.InvalidCharacterEvent;
 import scanner.ScannerListenerInterface;
@@ -36,8 +45,16 @@ import abc.notation.Tune;
 /**
  * This class provides an object representation of a tunebook. It enables you to
  * store tunes ordered by reference number.
+ * <p>
+ * A tunebook created from a {@link TuneBookIndex} keeps the notations of its
+ * tunes in the file : a notation is read when it is requested, and only the
+ * last parsed tunes are kept in memory (see
+ * {@link #TuneBook(TuneBookIndex, AbcVersion, int)}).
+ * </p>
  */
 public class TuneBook {
+	/** The number of parsed tunes kept in memory by default. */
+	public static final int DEFAULT_PARSED_TUNES_CACHE_SIZE = 100;
 
 	/** The file parser used to initialize the tunebook. */
 	private AbcHeadersParser m_fileParser = null;
@@ -56,6 +73,14 @@ public class TuneBook {
 	 */
 	private Vector m_originalTunesOrder = null;
 	private File m_file = null;
+	private AbcVersion m_abcVersion = null;
+	/** The index of the file, <TT>null</TT> if the notations are in memory. */
+	private TuneBookIndex m_index = null;
+	/**
+	 * The last parsed tunes of the index, least recently used first. Key =
+	 * TranscribedTune instance Value = Tune
+	 */
+	private Map m_parsedTunes = null;
 
 	/**
 	 * Creates a new tune book from the specified file.
@@ -198,6 +223,61 @@ public class TuneBook {
 		buildTunesTreeMap(stream, listener);
 	}
 
+	/**
+	 * Creates a new tune book from the specified index.
+	 * 
+	 * @param index
+	 *            The index of a file that contains tunes in abc notation.
+	 * @see #TuneBook(TuneBookIndex, AbcVersion, int)
+	 */
+	public TuneBook(TuneBookIndex index) {
+		this(index, AbcVersion.v1_6);
+	}
+
+	/**
+	 * Creates a new tune book from the specified index.
+	 * 
+	 * @param index
+	 *            The index of a file that contains tunes in abc notation.
+	 * @param abcVersion
+	 *            Specify which ABC version to use for parsing
+	 *            {@link AbcVersion#v1_6} or {@link AbcVersion#v2_0}
+	 * @see #TuneBook(TuneBookIndex, AbcVersion, int)
+	 */
+	public TuneBook(TuneBookIndex index, AbcVersion abcVersion) {
+		this(index, abcVersion, DEFAULT_PARSED_TUNES_CACHE_SIZE);
+	}
+
+	/**
+	 * Creates a new tune book from the specified index. Nothing is parsed :
+	 * the notation of a tune is read from the file when it is requested, its
+	 * header is parsed when the header information is requested. Changed
+	 * tunes are kept in memory, see {@link #putTune(String)}.
+	 * 
+	 * @param index
+	 *            The index of a file that contains tunes in abc notation.
+	 * @param abcVersion
+	 *            Specify which ABC version to use for parsing
+	 *            {@link AbcVersion#v1_6} or {@link AbcVersion#v2_0}
+	 * @param parsedTunesCacheSize
+	 *            The number of parsed tunes kept in memory, the least recently
+	 *            used tune is parsed again when it is requested.
+	 */
+	public TuneBook(TuneBookIndex index, AbcVersion abcVersion,
+			int parsedTunesCacheSize) {
+		this(abcVersion);
+		m_file = index.getFile();
+		m_index = index;
+		m_parsedTunes = createParsedTunesCache(parsedTunesCacheSize);
+		for (int i = 0; i < index.size(); i++) {
+			TranscribedTune transcribedTune = new TranscribedTune();
+			transcribedTune.m_indexEntry = i;
+			m_tunes.put(new Integer(index.getReferenceNumber(i)),
+					transcribedTune);
+			m_originalTunesOrder.addElement(transcribedTune);
+		}
+	}
+
 	/**
 	 * Creates an empty tunebook, using v1.6 parser.
 	 * 
@@ -215,8 +295,10 @@ public class TuneBook {
 	 *            {@link AbcVersion#v1_6} or {@link AbcVersion#v2_0}
 	 */
 	public TuneBook(AbcVersion abcVersion) {
+		m_abcVersion = abcVersion;
 		m_fileParser = new AbcHeadersParser(abcVersion);
 		m_parser = new TuneParser(abcVersion);
+		m_parsedTunes = createParsedTunesCache(DEFAULT_PARSED_TUNES_CACHE_SIZE);
 		m_tunes = new TreeMap();
 		m_originalTunesOrder = new Vector();
 		m_listeners = new Vector();
@@ -246,19 +328,76 @@ public class TuneBook {
 		return m_file;
 	}
 
+	/**
+	 * Saves this tunebook to its file. The tunes are written to a temporary
+	 * file in the same directory, which then replaces the file : the file is
+	 * never written while it is memory mapped by an index.
+	 * <p>
+	 * The tunes of a tunebook created from a {@link TuneBookIndex} are read
+	 * into memory first, and the index is no longer used by this tunebook :
+	 * it is invalid once the file is saved, an index of the saved file has to
+	 * be opened again. Other tunebooks sharing the index keep reading the
+	 * previous content of the file.
+	 * </p>
+	 * <p>
+	 * The memory mapping of the index is only released when the index is
+	 * garbage collected. On systems where a mapped file can't be replaced nor
+	 * deleted, as Windows, the indexed file can't be saved while it is mapped :
+	 * save such a tunebook to another file with {@link #saveTo(File)}.
+	 * </p>
+	 * 
+	 * @exception IOException
+	 *                Thrown if the file can't be written or replaced. The
+	 *                file is left as it was, unless the message names the
+	 *                temporary file holding the tunes.
+	 */
 	public void save() throws IOException {
-		FileWriter writer = new FileWriter(m_file);
-		for (int i = 0; i < m_originalTunesOrder.size(); i++) {
-			TranscribedTune tune = (TranscribedTune) m_originalTunesOrder
-					.elementAt(i);
-			if (tune.header != null)
-				writer.write(tune.header);
-			writer.write(tune.notation);
-			if (tune.notation.charAt(tune.notation.length() - 1) != '\n'
-					|| tune.notation.charAt(tune.notation.length() - 2) != '\n')
-				writer.write("\n");
+		if (m_index != null) {
+			// the file may be the indexed one : read everything before it is
+			// replaced
+			for (int i = 0; i < m_originalTunesOrder.size(); i++)
+				detachFromIndex((TranscribedTune) m_originalTunesOrder
+						.elementAt(i));
+			m_index = null;
+		}
+		File directory = m_file.getAbsoluteFile().getParentFile();
+		File temporaryFile = File.createTempFile(m_file.getName(), ".tmp",
+				directory);
+		boolean isTemporaryFileKept = false;
+		try {
+			FileWriter writer = new FileWriter(temporaryFile);
+			try {
+				for (int i = 0; i < m_originalTunesOrder.size(); i++) {
+					TranscribedTune tune = (TranscribedTune) m_originalTunesOrder
+							.elementAt(i);
+					if (tune.header != null)
+						writer.write(tune.header);
+					writer.write(tune.notation);
+					if (tune.notation.charAt(tune.notation.length() - 1) != '\n'
+							|| tune.notation
+									.charAt(tune.notation.length() - 2) != '\n')
+						writer.write("\n");
+				}
+			} finally {
+				writer.close();
+			}
+			if (!temporaryFile.renameTo(m_file)) {
+				// a file can't be renamed over an existing one on some systems
+				if (!m_file.delete())
+					throw new IOException("Can't replace " + m_file + " by "
+							+ temporaryFile);
+				if (!temporaryFile.renameTo(m_file)) {
+					// the temporary file is the only copy left
+					isTemporaryFileKept = true;
+					throw new IOException(m_file + " was deleted but can't be "
+							+ "replaced, the tunes are saved in "
+							+ temporaryFile);
+				}
+			}
+		} finally {
+			if (!isTemporaryFileKept)
+				temporaryFile.delete();
 		}
-		writer.flush();
 		System.out.println("Saving to " + m_file.toString());
 	}
 
@@ -276,6 +415,7 @@ public class TuneBook {
 		Integer key = new Integer(parsedTune.getReferenceNumber());
 		TranscribedTune tune = (TranscribedTune) m_tunes.get(key);
 		if (tune != null) {
+			detachFromIndex(tune);
 			tune.notation = tuneNotation;
 			tune.tune = parsedTune;
 			tune.m_onlyHeader = true;
@@ -304,18 +444,18 @@ public class TuneBook {
 	 *         corresponding reference number has been found.
 	 */
 	public Tune removeTune(int referenceNumber) {
-		if (m_tunes.remove(new Integer(referenceNumber)) != null) {
-			TranscribedTune tune = null;
-			for (int i = 0; i < m_originalTunesOrder.size(); i++) {
-				tune = (TranscribedTune) m_originalTunesOrder.elementAt(i);
-				if (tune.tune.getReferenceNumber() == referenceNumber) {
-					m_originalTunesOrder.removeElementAt(i);
-					notifyListenersForTuneChange(new TuneChangeEvent(this,
-							TuneChangeEvent.TUNE_REMOVED, tune.tune,
-							tune.notation));
-					return tune.tune;
-				}
-			}
+		TranscribedTune tune = (TranscribedTune) m_tunes.remove(new Integer(
+				referenceNumber));
+		if (tune != null) {
+			// the tunes of the index are not parsed : find the removed one by
+			// identity, not by the reference number of its tune
+			m_originalTunesOrder.removeElement(tune);
+			Tune removedTune = tune.getHeaderTune();
+			m_parsedTunes.remove(tune);
+			notifyListenersForTuneChange(new TuneChangeEvent(this,
+					TuneChangeEvent.TUNE_REMOVED, removedTune, tune
+							.getNotation()));
+			return removedTune;
 		}
 		return null;
 	}
@@ -332,6 +472,14 @@ public class TuneBook {
 		Integer key = new Integer(referenceNumber);
 		TranscribedTune tune = (TranscribedTune) m_tunes.get(key);
 		if (tune != null) {
+			if (tune.m_indexEntry != -1) {
+				Tune parsedTune = (Tune) m_parsedTunes.get(tune);
+				if (parsedTune == null) {
+					parsedTune = m_parser.parse(tune.getNotation());
+					m_parsedTunes.put(tune, parsedTune);
+				}
+				return parsedTune;
+			}
 			if (tune.m_onlyHeader == true) {
 				tune.tune = m_parser.parse(tune.notation);
 				tune.m_onlyHeader = false;
@@ -371,7 +519,7 @@ public class TuneBook {
 		Integer key = new Integer(referenceNumber);
 		TranscribedTune tune = (TranscribedTune) m_tunes.get(key);
 		if (tune != null) {
-			return tune.header;
+			return tune.getHeader();
 		}
 		return null;
 	}
@@ -393,7 +541,7 @@ public class TuneBook {
 		Integer key = new Integer(referenceNumber);
 		TranscribedTune tune = (TranscribedTune) m_tunes.get(key);
 		if (tune != null)
-			return tune.notation;
+			return tune.getNotation();
 		else
 			return null;
 	}
@@ -409,7 +557,8 @@ public class TuneBook {
 		Tune[] tunes = new Tune[m_tunes.size()];
 		int index = 0;
 		while (it.hasNext()) {
-			tunes[index] = ((TranscribedTune) m_tunes.get(it.next())).tune;
+			tunes[index] = ((TranscribedTune) m_tunes.get(it.next()))
+					.getHeaderTune();
 			index++;
 		}
 		return tunes;
@@ -464,10 +613,64 @@ public class TuneBook {
 		Vector v = new Vector();
 		Iterator keysIterator = keys.iterator();
 		while (keysIterator.hasNext())
-			v.addElement(((TranscribedTune) m_tunes.get(keysIterator.next())).tune);
+			v.addElement(((TranscribedTune) m_tunes.get(keysIterator.next()))
+					.getHeaderTune());
 		return v;
 	}
 
+	/**
+	 * Parses all the tunes of this tunebook on several threads, each thread
+	 * with its own parser. The parsed tunes of an index are kept in the cache
+	 * of parsed tunes, the others replace their header information. A tune
+	 * that can't be parsed is skipped and returned with its failure.
+	 * 
+	 * @param threads
+	 *            The number of parsing threads.
+	 * @param listener
+	 *            Listener to be informed of the parsing of each tune, called
+	 *            from the parsing threads. May be <TT>null</TT>.
+	 * @return The tunes that couldn't be parsed : a map from their reference
+	 *         numbers (<TT>Integer</TT>) to the <TT>RuntimeException</TT>
+	 *         thrown by the parser, sorted by reference number. Empty if all
+	 *         tunes were parsed.
+	 * @exception InterruptedException
+	 *                Thrown if the current thread is interrupted while waiting
+	 *                for the parsing threads.
+	 */
+	public Map parseAll(int threads, TuneParserListenerInterface listener)
+			throws InterruptedException {
+		TranscribedTune[] tunes = new TranscribedTune[m_tunes.size()];
+		Integer[] referenceNumbers = new Integer[tunes.length];
+		Iterator entries = m_tunes.entrySet().iterator();
+		for (int i = 0; i < tunes.length; i++) {
+			Map.Entry entry = (Map.Entry) entries.next();
+			referenceNumbers[i] = (Integer) entry.getKey();
+			tunes[i] = (TranscribedTune) entry.getValue();
+		}
+		Map failures = Collections.synchronizedMap(new TreeMap());
+		AtomicInteger nextTune = new AtomicInteger();
+		threads = Math.max(1, Math.min(threads, tunes.length));
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		Future[] results = new Future[threads];
+		for (int i = 0; i < threads; i++)
+			results[i] = pool.submit(new TunesParsing(tunes, referenceNumbers,
+					nextTune, failures, listener));
+		pool.shutdown();
+		Error error = null;
+		for (int i = 0; i < threads; i++) {
+			try {
+				results[i].get();
+			} catch (ExecutionException e) {
+				// parsing failures are returned : only errors get here
+				if (error == null)
+					error = (Error) e.getCause();
+			}
+		}
+		if (error != null)
+			throw error;
+		return failures;
+	}
+
 	/**
 	 * Adds a listener to this tunebook to be aware of tunes changes.
 	 * 
@@ -507,11 +710,99 @@ public class TuneBook {
 		m_fileParser.removeListener(clientListener);
 	}
 
+	/**
+	 * Creates a map that keeps the given number of entries, the least recently
+	 * used entry is removed.
+	 */
+	private static Map createParsedTunesCache(final int size) {
+		return Collections.synchronizedMap(new LinkedHashMap(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			protected boolean removeEldestEntry(Map.Entry eldest) {
+				return size() > size;
+			}
+		});
+	}
+
+	/** Reads the notation of a tune from the index, to keep it in memory. */
+	private void detachFromIndex(TranscribedTune tune) {
+		if (tune.m_indexEntry == -1)
+			return;
+		tune.notation = tune.getNotation();
+		tune.header = tune.getHeader();
+		Tune parsedTune = (Tune) m_parsedTunes.remove(tune);
+		if (parsedTune != null) {
+			tune.tune = parsedTune;
+			tune.m_onlyHeader = false;
+		}
+		tune.m_indexEntry = -1;
+	}
+
 	private class TranscribedTune {
 		public String header = null;
 		public Tune tune = null;
 		public String notation = null;
 		public boolean m_onlyHeader = true;
+		/** The entry of this tune in m_index, -1 if it is in memory. */
+		public int m_indexEntry = -1;
+
+		public String getNotation() {
+			return m_indexEntry == -1 ? notation : m_index
+					.getNotation(m_indexEntry);
+		}
+
+		public String getHeader() {
+			return m_indexEntry == -1 ? header : m_index
+					.getHeader(m_indexEntry);
+		}
+
+		/** Returns the tune, its header is parsed if nothing is parsed yet. */
+		public Tune getHeaderTune() {
+			if (tune == null)
+				tune = m_parser.parseHeader(getNotation());
+			return tune;
+		}
+	}
+
+	/** Parses the tunes not taken yet by the other threads. */
+	private class TunesParsing implements Callable {
+		private TranscribedTune[] m_tunesToParse = null;
+		private Integer[] m_referenceNumbers = null;
+		private AtomicInteger m_nextTune = null;
+		/** The failures of all threads, by reference number. */
+		private Map m_failures = null;
+		private TuneParser m_tunesParser = null;
+
+		public TunesParsing(TranscribedTune[] tunes,
+				Integer[] referenceNumbers, AtomicInteger nextTune,
+				Map failures, TuneParserListenerInterface listener) {
+			m_tunesToParse = tunes;
+			m_referenceNumbers = referenceNumbers;
+			m_nextTune = nextTune;
+			m_failures = failures;
+			m_tunesParser = new TuneParser(m_abcVersion);
+			if (listener != null)
+				m_tunesParser.addListener(listener);
+		}
+
+		public Object call() {
+			int i;
+			while ((i = m_nextTune.getAndIncrement()) < m_tunesToParse.length) {
+				TranscribedTune tune = m_tunesToParse[i];
+				try {
+					Tune parsedTune = m_tunesParser.parse(tune.getNotation());
+					if (tune.m_indexEntry != -1)
+						m_parsedTunes.put(tune, parsedTune);
+					else {
+						tune.tune = parsedTune;
+						tune.m_onlyHeader = false;
+					}
+				} catch (RuntimeException e) {
+					m_failures.put(m_referenceNumbers[i], e);
+				}
+			}
+			return null;
+		}
 	}
 
 	private class ParserListener implements ScannerListenerInterface,
@@ -0,0 +1,347 @@
+// Copyright 2006-2008 Lionel Gueganton
+// This file is part of abc4j.
+//
+// abc4j is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Lesser General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// abc4j is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public License
+// along with abc4j.  If not, see <http://www.gnu.org/licenses/>.
+package abc.parser;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+
+/**
+ * An index of the tunes of an abc file : where each tune starts and ends in
+ * the file, and its reference number. The file is memory mapped and scanned
+ * once for the lines starting with <TT>X:</TT>, the notation of a tune is
+ * decoded only when it is requested. A tune ends with the first empty line
+ * after its <TT>X:</TT> line, the text up to the next tune is the header of
+ * the next tune (see {@link TuneBook#getTuneHeader(int)}).
+ * <p>
+ * The index is saved next to the abc file (see {@link #getIndexFile(File)})
+ * and loaded instead of scanning the file again, as long as the file has not
+ * changed. Files are scanned byte by byte : the charset must encode '\n' and
+ * 'X:' as single bytes, as ISO-8859-1 or UTF-8 do.
+ * </p>
+ * <p>
+ * An index can be read by several threads at the same time.
+ * </p>
+ *
+ * @see TuneBook#TuneBook(TuneBookIndex)
+ */
+public class TuneBookIndex {
+	/** The first int of a saved index. */
+	private static final int MAGIC = 0x61626369;
+	/** The suffix added to the name of the abc file to save the index. */
+	private static final String INDEX_FILE_SUFFIX = ".idx";
+
+	private File m_file = null;
+	private Charset m_charset = null;
+	/** The length of the file when it was indexed. */
+	private long m_fileLength = 0;
+	/** The modification date of the file when it was indexed. */
+	private long m_lastModified = 0;
+	private MappedByteBuffer m_buffer = null;
+	/** The number of tunes. */
+	private int m_size = 0;
+	/** The offset of the <TT>X:</TT> line of each tune. */
+	private int[] m_starts = null;
+	/** The offset after the empty line ending each tune. */
+	private int[] m_ends = null;
+	private int[] m_referenceNumbers = null;
+
+	/**
+	 * Opens the index of the given abc file, decoded with the default charset.
+	 *
+	 * @param abcFile
+	 *            A file that contains tunes in abc notation.
+	 * @return The index of the tunes of the file.
+	 * @exception IOException
+	 *                Thrown if the file can't be read.
+	 * @see #open(File, Charset)
+	 */
+	public static TuneBookIndex open(File abcFile) throws IOException {
+		return open(abcFile, Charset.defaultCharset());
+	}
+
+	/**
+	 * Opens the index of the given abc file. The saved index is used if it is
+	 * up to date, otherwise the file is scanned and the index saved, if the
+	 * index file can be written.
+	 *
+	 * @param abcFile
+	 *            A file that contains tunes in abc notation.
+	 * @param charset
+	 *            The charset of the file.
+	 * @return The index of the tunes of the file.
+	 * @exception IOException
+	 *                Thrown if the file can't be read.
+	 */
+	public static TuneBookIndex open(File abcFile, Charset charset)
+			throws IOException {
+		TuneBookIndex index = new TuneBookIndex(abcFile, charset);
+		if (!index.load()) {
+			index.scan();
+			try {
+				index.save();
+			} catch (IOException e) {
+				// the index is only saved to open the file faster next time
+			}
+		}
+		return index;
+	}
+
+	/**
+	 * Returns the file where the index of the given abc file is saved.
+	 *
+	 * @param abcFile
+	 *            A file that contains tunes in abc notation.
+	 * @return The file where the index of the given file is saved.
+	 */
+	public static File getIndexFile(File abcFile) {
+		return new File(abcFile.getPath() + INDEX_FILE_SUFFIX);
+	}
+
+	private TuneBookIndex(File abcFile, Charset charset) throws IOException {
+		m_file = abcFile;
+		m_charset = charset;
+		RandomAccessFile file = new RandomAccessFile(abcFile, "r");
+		try {
+			m_fileLength = file.length();
+			if (m_fileLength > Integer.MAX_VALUE)
+				throw new IOException(abcFile + " is too large to be indexed");
+			m_lastModified = abcFile.lastModified();
+			// the mapping stays valid after the channel is closed
+			m_buffer = file.getChannel().map(FileChannel.MapMode.READ_ONLY, 0,
+					m_fileLength);
+		} finally {
+			file.close();
+		}
+	}
+
+	/** Scans the file for the tunes. */
+	private void scan() {
+		int length = (int) m_fileLength;
+		m_starts = new int[64];
+		m_ends = new int[64];
+		m_referenceNumbers = new int[64];
+		m_size = 0;
+		boolean isInTune = false;
+		int lineStart = 0;
+		while (lineStart < length) {
+			int lineEnd = lineStart;
+			while (lineEnd < length && m_buffer.get(lineEnd) != '\n')
+				lineEnd++;
+			int next = lineEnd < length ? lineEnd + 1 : length;
+			if (lineEnd - lineStart >= 2 && m_buffer.get(lineStart) == 'X'
+					&& m_buffer.get(lineStart + 1) == ':') {
+				if (isInTune)
+					// no empty line before this tune
+					m_ends[m_size - 1] = lineStart;
+				addTune(lineStart, parseReferenceNumber(lineStart + 2, lineEnd));
+				isInTune = true;
+			} else if (isInTune
+					&& (lineEnd == lineStart || (lineEnd == lineStart + 1 && m_buffer
+							.get(lineStart) == '\r'))) {
+				m_ends[m_size - 1] = next;
+				isInTune = false;
+			}
+			lineStart = next;
+		}
+		if (isInTune)
+			m_ends[m_size - 1] = length;
+	}
+
+	private void addTune(int start, int referenceNumber) {
+		if (m_size == m_starts.length) {
+			m_starts = grow(m_starts);
+			m_ends = grow(m_ends);
+			m_referenceNumbers = grow(m_referenceNumbers);
+		}
+		m_starts[m_size] = start;
+		m_referenceNumbers[m_size] = referenceNumber;
+		m_size++;
+	}
+
+	private static int[] grow(int[] array) {
+		int[] grown = new int[array.length * 2];
+		System.arraycopy(array, 0, grown, 0, array.length);
+		return grown;
+	}
+
+	/**
+	 * Reads the digits following <TT>X:</TT>.
+	 *
+	 * @return The reference number, 0 if there is none.
+	 */
+	private int parseReferenceNumber(int from, int to) {
+		int i = from;
+		while (i < to && (m_buffer.get(i) == ' ' || m_buffer.get(i) == '\t'))
+			i++;
+		int number = 0;
+		for (; i < to && m_buffer.get(i) >= '0' && m_buffer.get(i) <= '9'; i++)
+			number = number * 10 + (m_buffer.get(i) - '0');
+		return number;
+	}
+
+	/**
+	 * Loads the saved index.
+	 *
+	 * @return <TT>false</TT> if there is no saved index, or if it is not up to
+	 *         date.
+	 */
+	private boolean load() {
+		File indexFile = getIndexFile(m_file);
+		if (!indexFile.exists())
+			return false;
+		try {
+			DataInputStream in = new DataInputStream(new BufferedInputStream(
+					new FileInputStream(indexFile)));
+			try {
+				if (in.readInt() != MAGIC || in.readLong() != m_fileLength
+						|| in.readLong() != m_lastModified
+						|| !in.readUTF().equals(m_charset.name()))
+					return false;
+				int size = in.readInt();
+				int[] starts = new int[size];
+				int[] ends = new int[size];
+				int[] referenceNumbers = new int[size];
+				for (int i = 0; i < size; i++) {
+					starts[i] = in.readInt();
+					ends[i] = in.readInt();
+					referenceNumbers[i] = in.readInt();
+					if (starts[i] < 0 || ends[i] < starts[i]
+							|| ends[i] > m_fileLength)
+						return false;
+				}
+				m_starts = starts;
+				m_ends = ends;
+				m_referenceNumbers = referenceNumbers;
+				m_size = size;
+				return true;
+			} finally {
+				in.close();
+			}
+		} catch (IOException e) {
+			// a damaged index is scanned again
+			return false;
+		}
+	}
+
+	/**
+	 * Saves this index next to the abc file.
+	 *
+	 * @exception IOException
+	 *                Thrown if the index file can't be written.
+	 * @see #getIndexFile(File)
+	 */
+	public void save() throws IOException {
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+				new FileOutputStream(getIndexFile(m_file))));
+		try {
+			out.writeInt(MAGIC);
+			out.writeLong(m_fileLength);
+			out.writeLong(m_lastModified);
+			out.writeUTF(m_charset.name());
+			out.writeInt(m_size);
+			for (int i = 0; i < m_size; i++) {
+				out.writeInt(m_starts[i]);
+				out.writeInt(m_ends[i]);
+				out.writeInt(m_referenceNumbers[i]);
+			}
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Returns the indexed abc file.
+	 *
+	 * @return The indexed abc file.
+	 */
+	public File getFile() {
+		return m_file;
+	}
+
+	/**
+	 * Returns the number of tunes in the file.
+	 *
+	 * @return The number of tunes in the file.
+	 */
+	public int size() {
+		return m_size;
+	}
+
+	/**
+	 * Returns the reference number of a tune.
+	 *
+	 * @param index
+	 *            The index of the tune in the file, from 0.
+	 * @return The number following <TT>X:</TT>.
+	 */
+	public int getReferenceNumber(int index) {
+		checkIndex(index);
+		return m_referenceNumbers[index];
+	}
+
+	/**
+	 * Returns the notation of a tune, from its <TT>X:</TT> line up to the
+	 * empty line ending it.
+	 *
+	 * @param index
+	 *            The index of the tune in the file, from 0.
+	 * @return The notation of the tune in abc.
+	 */
+	public String getNotation(int index) {
+		checkIndex(index);
+		return decode(m_starts[index], m_ends[index]);
+	}
+
+	/**
+	 * Returns the text between the previous tune and a tune.
+	 *
+	 * @param index
+	 *            The index of the tune in the file, from 0.
+	 * @return The text before the tune, <TT>null</TT> if there is none.
+	 */
+	public String getHeader(int index) {
+		checkIndex(index);
+		int start = index == 0 ? 0 : m_ends[index - 1];
+		return start == m_starts[index] ? null : decode(start,
+				m_starts[index]);
+	}
+
+	private void checkIndex(int index) {
+		if (index < 0 || index >= m_size)
+			throw new IndexOutOfBoundsException("Tune " + index + " of "
+					+ m_size);
+	}
+
+	private String decode(int start, int end) {
+		// a duplicate has its own position and limit : no lock needed
+		ByteBuffer bytes = m_buffer.duplicate();
+		bytes.limit(end);
+		bytes.position(start);
+		return m_charset.decode(bytes).toString();
+	}
+
+}
@@ -81,7 +81,7 @@ public class TuneParser extends AbcParserAbstract {
 			current = new Set().union(FIRST_ABCHEADER).union(FIRST_FIELD_KEY);
 			// m_scanner.setFinaleStateAutomata(getAutomataFor(current.getTypes()));
 			m_automata.setDefinition(DefinitionFactory.getDefinition(
-					current.getTypes(), m_abcVersion));
+					current, m_abcVersion));
 			m_scanner.setFinaleStateAutomata(m_automata);
 			notifyListenersForTuneBegin();
 			try {
@@ -132,7 +132,7 @@ public class TuneParser extends AbcParserAbstract {
 			Set current = new Set().union(FIRST_ABCHEADER).union(
 					FIRST_FIELD_KEY);
 			m_automata.setDefinition(DefinitionFactory.getDefinition(
-					current.getTypes(), m_abcVersion));
+					current, m_abcVersion));
 			m_scanner.setFinaleStateAutomata(m_automata);
 			// m_scanner.setFinaleStateAutomata(getAutomataFor(current.getTypes()));
 			try {
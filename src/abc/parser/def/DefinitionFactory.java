@@ -15,262 +15,271 @@
 // along with abc4j.  If not, see <http://www.gnu.org/licenses/>.
 package abc.parser.def;
 
-import java.util.Vector;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import scanner.AutomataDefinition;
+import scanner.Set;
 import scanner.TokenType;
 import abc.parser.AbcTokenType;
 import abc.parser.AbcVersion;
 
+/**
+ * Creates the automata definitions of token types. The definitions are cached
+ * and shared by all parsers, also by parsers running on different threads : a
+ * definition is looked up without lock through the hash of the set of its
+ * token types, and created only once, under a lock. Definitions must be
+ * created under a lock anyway, unions change states of the definitions they
+ * merge.
+ * <p>
+ * The token types are merged in the order they were added to the set, and
+ * when two token types match the same characters the order decides which one
+ * is scanned. The same token types in another order are another definition,
+ * so the definition a parser gets never depends on which parser asked first.
+ * </p>
+ */
 public class DefinitionFactory {
 
-	public static Vector m_allPreviouslyCreatedDefinitions = new Vector();
+	/**
+	 * The definitions created so far, for each abc version a map from the set
+	 * of token types to its {@link Orders}. There are only two versions.
+	 */
+	private static final Map m_definitions = new ConcurrentHashMap();
 
 	public static AutomataDefinition getDefinition(TokenType abcTokenType,
 			AbcVersion abcVersion) {
-		TokenType[] tokenTypes = { abcTokenType };
-		// System.out.println("getAutomataFor(" + toString(tokenTypes));
-		AutomataDefinition automataDef = null;
-		automataDef = getAlreadyCreatedDefinition(tokenTypes);
-
-		if (automataDef == null) {
-			if (abcTokenType == (AbcTokenType.FIELD_NUMBER))
-				automataDef = new FieldNumberDefinition();
-			else if (abcTokenType == (AbcTokenType.FIELD_TITLE))
-				automataDef = new FieldTitleDefinition();
-			else if (abcTokenType == (AbcTokenType.FIELD_AREA))
-				automataDef = new FieldAreaDefinition();
-			else if (abcTokenType == (AbcTokenType.FIELD_BOOK))
-				automataDef = new FieldBookDefinition();
-			else if (abcTokenType == (AbcTokenType.FIELD_COMPOSER))
-				automataDef = new FieldComposerDefinition();
-			else if (abcTokenType == (AbcTokenType.FIELD_DISCOGRAPHY))
-				automataDef = new FieldDiscographyDefinition();
-			else if (abcTokenType == (AbcTokenType.FIELD_ELEMSKIP))
-				automataDef = new FieldElemskipDefinition();
-			else if (abcTokenType == (AbcTokenType.FIELD_FILEURL))
-				automataDef = new FieldFileDefinition();
-			else if (abcTokenType == (AbcTokenType.FIELD_GROUP))
-				automataDef = new FieldGroupDefinition();
-			else if (abcTokenType == (AbcTokenType.FIELD_HISTORY))
-				automataDef = new FieldHistoryDefinition();
-			else if (abcTokenType == (AbcTokenType.FIELD_INFORMATION))
-				automataDef = new FieldInformationDefinition();
-			else if (abcTokenType == (AbcTokenType.FIELD_DEFAULT_LENGTH))
-				automataDef = new FieldDefaultLengthDefinition();
-			else if (abcTokenType == (AbcTokenType.FIELD_METER))
-				automataDef = new FieldMeterDefinition();
-			else if (abcTokenType == (AbcTokenType.FIELD_NOTES))
-				automataDef = new FieldNotesDefinition();
-			else if (abcTokenType == (AbcTokenType.FIELD_ORIGIN))
-				automataDef = new FieldOriginDefinition();
-			else if (abcTokenType == (AbcTokenType.FIELD_PARTS))
-				automataDef = new FieldPartsDefinition();
-			else if (abcTokenType == (AbcTokenType.FIELD_RHYTHM))
-				automataDef = new FieldRhythmDefinition();
-			else if (abcTokenType == (AbcTokenType.FIELD_SOURCE))
-				automataDef = new FieldSourceDefinition();
-			else if (abcTokenType == (AbcTokenType.FIELD_TEMPO))
-				automataDef = new FieldTempoDefinition();
-			else if (abcTokenType == (AbcTokenType.FIELD_TRANSCRNOTES))
-				automataDef = new FieldTranscriptionNotesDefinition();
-			else if (abcTokenType == (AbcTokenType.FIELD_KEY))
-				automataDef = new FieldKeyDefinition();
-			else if (abcTokenType == (AbcTokenType.FIELD_WORDS))
-				automataDef = new FieldWordsDefinition();
-			else if (abcTokenType == (AbcTokenType.KEY_HP))
-				automataDef = new KeyHPDefinition();
-			else if (abcTokenType == (AbcTokenType.C_METER))
-				automataDef = new MeterCDefinition();
-			else if (abcTokenType == (AbcTokenType.TEXT))
-				automataDef = new TextDefinition();
-			else if (abcTokenType == (AbcTokenType.NUMBER))
-				automataDef = new NumberDefinition();
-			else if (abcTokenType == (AbcTokenType.DIGIT))
-				automataDef = new DigitDefinition();
-			else if (abcTokenType == (AbcTokenType.FRACTION))
-				automataDef = new FractionDefinition();
-			else if (abcTokenType == (AbcTokenType.PART))
-				automataDef = new PartDefinition();
-			else if (abcTokenType == (AbcTokenType.PARENTHESIS_OPEN))
-				automataDef = new ParenthesisOpenDefinition();
-			else if (abcTokenType == (AbcTokenType.PARENTHESIS_CLOSE))
-				automataDef = new ParenthesisCloseDefinition();
-			else if (abcTokenType == (AbcTokenType.PLUS))
-				automataDef = new PlusDefinition();
-			else if (abcTokenType == (AbcTokenType.SPACE))
-				automataDef = new SpaceDefinition();
-			else if (abcTokenType == (AbcTokenType.LINE_FEED))
-				automataDef = new LineFeedDefinition();
-			else if (abcTokenType == (AbcTokenType.LINE_BREAK))
-				automataDef = new LineBreakDefinition();
-			else if (abcTokenType == (AbcTokenType.NO_LINE_BREAK))
-				automataDef = new NoLineBreakDefinition();
-			else if (abcTokenType == (AbcTokenType.BASE_NOTE))
-				automataDef = new BaseNoteDefinition();
-			else if (abcTokenType == (AbcTokenType.KEY_ACCIDENTAL))
-				automataDef = new KeyAccidentalDefinition();
-			else if (abcTokenType == (AbcTokenType.ACCIDENTAL))
-				automataDef = new AccidentalDefinition(abcVersion);
-			else if (abcTokenType == (AbcTokenType.MODE))
-				automataDef = new ModeDefinition(abcVersion);
-			else if (abcTokenType == (AbcTokenType.CLEF))
-				automataDef = new ClefTextDefinition();
-			else if (abcTokenType == (AbcTokenType.COMMENT))
-				automataDef = new CommentDefinition();
-			else if (abcTokenType == (AbcTokenType.GUITAR_CHORD))
-				automataDef = new GuitarChordDefinition();
-			else if (abcTokenType == (AbcTokenType.GRACING_BEGIN))
-				automataDef = new GracingBeginDefinition();
-			else if (abcTokenType == (AbcTokenType.ACCIACCATURA))
-				automataDef = new AcciaccaturaDefinition(abcVersion);
-			else if (abcTokenType == (AbcTokenType.GRACING_END))
-				automataDef = new GracingEndDefinition();
-			else if (abcTokenType == (AbcTokenType.GRACING))
-				automataDef = new GracingDefinition(abcVersion);
-			else if (abcTokenType == (AbcTokenType.SYMBOL_BEGIN))
-				automataDef = new SymbolBeginDefinition(abcVersion);
-			else if (abcTokenType == (AbcTokenType.SYMBOL))
-				automataDef = new SymbolDefinition(abcVersion);
-			else if (abcTokenType == (AbcTokenType.SYMBOL_END))
-				automataDef = new SymbolEndDefinition(abcVersion);
-			else if (abcTokenType == (AbcTokenType.ANNOTATION_BEGIN))
-				automataDef = new AnnotationBeginDefinition();
-			else if (abcTokenType == (AbcTokenType.ANNOTATION))
-				automataDef = new AnnotationDefinition();
-			else if (abcTokenType == (AbcTokenType.ANNOTATION_END))
-				automataDef = new AnnotationEndDefinition();
-			else if (abcTokenType == (AbcTokenType.SPACER))
-				automataDef = new SpacerDefinition(abcVersion);
-			else if (abcTokenType == (AbcTokenType.REST))
-				automataDef = new RestDefinition(abcVersion);
-			else if (abcTokenType == (AbcTokenType.BARLINE))
-				automataDef = new BarlineDefinition(abcVersion);
-			else if (abcTokenType == (AbcTokenType.NTH_REPEAT))
-				automataDef = new NthRepeatDefinition();
-			else if (abcTokenType == (AbcTokenType.BEGIN_SLUR))
-				automataDef = new SlurBeginDefinition();
-			else if (abcTokenType == (AbcTokenType.END_SLUR))
-				automataDef = new SlurEndDefinition();
-			else if (abcTokenType == (AbcTokenType.USER_DEFINED))
-				automataDef = new UserDefinedDefinition();
-			else if (abcTokenType == (AbcTokenType.OCTAVE))
-				automataDef = new OctaveDefinition();
-			else if (abcTokenType == (AbcTokenType.BROKEN_RHYTHM))
-				automataDef = new BrokenRhythmDefinition();
-			else if (abcTokenType == (AbcTokenType.TIE))
-				automataDef = new TieDefinition();
-			else if (abcTokenType == (AbcTokenType.TUPLET_SPEC))
-				automataDef = new TupletSpecDefinition();
-			else if (abcTokenType == (AbcTokenType.MULTI_NOTE_BEGIN))
-				automataDef = new MultiNoteBeginDefinition();
-			else if (abcTokenType == (AbcTokenType.MULTI_NOTE_END))
-				automataDef = new MultiNoteEndDefinition();
-			// else if (abcTokenType==(AbcTokenType.TEX_COMMAND)) automataDef =
-			// new TexCommandDefinition();
-			else if (abcTokenType == (AbcTokenType.CHORD_NAME))
-				automataDef = new ChordNameDefinition();
-			else if (abcTokenType == (AbcTokenType.EQUALS))
-				automataDef = new EqualsDefinition();
-			else if (abcTokenType == (AbcTokenType.C_TEMPO))
-				automataDef = new TempoCDefinition();
-			else if (abcTokenType == (AbcTokenType.COMA))
-				automataDef = new ComaDefinition();
-			else
-				throw new RuntimeException("NO AUTOMATA FOR " + abcTokenType);
-			m_allPreviouslyCreatedDefinitions.add(new DefinitionCache(
-					tokenTypes, automataDef));
-			// System.out.println("Creating item in cache for  " +
-			// toString(tokenTypes));
-
-		}
-		// else
-		// System.out.println("Using cache for  " + toString(tokenTypes));
+		return getDefinition(new Set(abcTokenType), abcVersion);
+	}
 
+	private static AutomataDefinition createDefinition(TokenType abcTokenType,
+			AbcVersion abcVersion) {
+		AutomataDefinition automataDef = null;
+		if (abcTokenType == (AbcTokenType.FIELD_NUMBER))
+			automataDef = new FieldNumberDefinition();
+		else if (abcTokenType == (AbcTokenType.FIELD_TITLE))
+			automataDef = new FieldTitleDefinition();
+		else if (abcTokenType == (AbcTokenType.FIELD_AREA))
+			automataDef = new FieldAreaDefinition();
+		else if (abcTokenType == (AbcTokenType.FIELD_BOOK))
+			automataDef = new FieldBookDefinition();
+		else if (abcTokenType == (AbcTokenType.FIELD_COMPOSER))
+			automataDef = new FieldComposerDefinition();
+		else if (abcTokenType == (AbcTokenType.FIELD_DISCOGRAPHY))
+			automataDef = new FieldDiscographyDefinition();
+		else if (abcTokenType == (AbcTokenType.FIELD_ELEMSKIP))
+			automataDef = new FieldElemskipDefinition();
+		else if (abcTokenType == (AbcTokenType.FIELD_FILEURL))
+			automataDef = new FieldFileDefinition();
+		else if (abcTokenType == (AbcTokenType.FIELD_GROUP))
+			automataDef = new FieldGroupDefinition();
+		else if (abcTokenType == (AbcTokenType.FIELD_HISTORY))
+			automataDef = new FieldHistoryDefinition();
+		else if (abcTokenType == (AbcTokenType.FIELD_INFORMATION))
+			automataDef = new FieldInformationDefinition();
+		else if (abcTokenType == (AbcTokenType.FIELD_DEFAULT_LENGTH))
+			automataDef = new FieldDefaultLengthDefinition();
+		else if (abcTokenType == (AbcTokenType.FIELD_METER))
+			automataDef = new FieldMeterDefinition();
+		else if (abcTokenType == (AbcTokenType.FIELD_NOTES))
+			automataDef = new FieldNotesDefinition();
+		else if (abcTokenType == (AbcTokenType.FIELD_ORIGIN))
+			automataDef = new FieldOriginDefinition();
+		else if (abcTokenType == (AbcTokenType.FIELD_PARTS))
+			automataDef = new FieldPartsDefinition();
+		else if (abcTokenType == (AbcTokenType.FIELD_RHYTHM))
+			automataDef = new FieldRhythmDefinition();
+		else if (abcTokenType == (AbcTokenType.FIELD_SOURCE))
+			automataDef = new FieldSourceDefinition();
+		else if (abcTokenType == (AbcTokenType.FIELD_TEMPO))
+			automataDef = new FieldTempoDefinition();
+		else if (abcTokenType == (AbcTokenType.FIELD_TRANSCRNOTES))
+			automataDef = new FieldTranscriptionNotesDefinition();
+		else if (abcTokenType == (AbcTokenType.FIELD_KEY))
+			automataDef = new FieldKeyDefinition();
+		else if (abcTokenType == (AbcTokenType.FIELD_WORDS))
+			automataDef = new FieldWordsDefinition();
+		else if (abcTokenType == (AbcTokenType.KEY_HP))
+			automataDef = new KeyHPDefinition();
+		else if (abcTokenType == (AbcTokenType.C_METER))
+			automataDef = new MeterCDefinition();
+		else if (abcTokenType == (AbcTokenType.TEXT))
+			automataDef = new TextDefinition();
+		else if (abcTokenType == (AbcTokenType.NUMBER))
+			automataDef = new NumberDefinition();
+		else if (abcTokenType == (AbcTokenType.DIGIT))
+			automataDef = new DigitDefinition();
+		else if (abcTokenType == (AbcTokenType.FRACTION))
+			automataDef = new FractionDefinition();
+		else if (abcTokenType == (AbcTokenType.PART))
+			automataDef = new PartDefinition();
+		else if (abcTokenType == (AbcTokenType.PARENTHESIS_OPEN))
+			automataDef = new ParenthesisOpenDefinition();
+		else if (abcTokenType == (AbcTokenType.PARENTHESIS_CLOSE))
+			automataDef = new ParenthesisCloseDefinition();
+		else if (abcTokenType == (AbcTokenType.PLUS))
+			automataDef = new PlusDefinition();
+		else if (abcTokenType == (AbcTokenType.SPACE))
+			automataDef = new SpaceDefinition();
+		else if (abcTokenType == (AbcTokenType.LINE_FEED))
+			automataDef = new LineFeedDefinition();
+		else if (abcTokenType == (AbcTokenType.LINE_BREAK))
+			automataDef = new LineBreakDefinition();
+		else if (abcTokenType == (AbcTokenType.NO_LINE_BREAK))
+			automataDef = new NoLineBreakDefinition();
+		else if (abcTokenType == (AbcTokenType.BASE_NOTE))
+			automataDef = new BaseNoteDefinition();
+		else if (abcTokenType == (AbcTokenType.KEY_ACCIDENTAL))
+			automataDef = new KeyAccidentalDefinition();
+		else if (abcTokenType == (AbcTokenType.ACCIDENTAL))
+			automataDef = new AccidentalDefinition(abcVersion);
+		else if (abcTokenType == (AbcTokenType.MODE))
+			automataDef = new ModeDefinition(abcVersion);
+		else if (abcTokenType == (AbcTokenType.CLEF))
+			automataDef = new ClefTextDefinition();
+		else if (abcTokenType == (AbcTokenType.COMMENT))
+			automataDef = new CommentDefinition();
+		else if (abcTokenType == (AbcTokenType.GUITAR_CHORD))
+			automataDef = new GuitarChordDefinition();
+		else if (abcTokenType == (AbcTokenType.GRACING_BEGIN))
+			automataDef = new GracingBeginDefinition();
+		else if (abcTokenType == (AbcTokenType.ACCIACCATURA))
+			automataDef = new AcciaccaturaDefinition(abcVersion);
+		else if (abcTokenType == (AbcTokenType.GRACING_END))
+			automataDef = new GracingEndDefinition();
+		else if (abcTokenType == (AbcTokenType.GRACING))
+			automataDef = new GracingDefinition(abcVersion);
+		else if (abcTokenType == (AbcTokenType.SYMBOL_BEGIN))
+			automataDef = new SymbolBeginDefinition(abcVersion);
+		else if (abcTokenType == (AbcTokenType.SYMBOL))
+			automataDef = new SymbolDefinition(abcVersion);
+		else if (abcTokenType == (AbcTokenType.SYMBOL_END))
+			automataDef = new SymbolEndDefinition(abcVersion);
+		else if (abcTokenType == (AbcTokenType.ANNOTATION_BEGIN))
+			automataDef = new AnnotationBeginDefinition();
+		else if (abcTokenType == (AbcTokenType.ANNOTATION))
+			automataDef = new AnnotationDefinition();
+		else if (abcTokenType == (AbcTokenType.ANNOTATION_END))
+			automataDef = new AnnotationEndDefinition();
+		else if (abcTokenType == (AbcTokenType.SPACER))
+			automataDef = new SpacerDefinition(abcVersion);
+		else if (abcTokenType == (AbcTokenType.REST))
+			automataDef = new RestDefinition(abcVersion);
+		else if (abcTokenType == (AbcTokenType.BARLINE))
+			automataDef = new BarlineDefinition(abcVersion);
+		else if (abcTokenType == (AbcTokenType.NTH_REPEAT))
+			automataDef = new NthRepeatDefinition();
+		else if (abcTokenType == (AbcTokenType.BEGIN_SLUR))
+			automataDef = new SlurBeginDefinition();
+		else if (abcTokenType == (AbcTokenType.END_SLUR))
+			automataDef = new SlurEndDefinition();
+		else if (abcTokenType == (AbcTokenType.USER_DEFINED))
+			automataDef = new UserDefinedDefinition();
+		else if (abcTokenType == (AbcTokenType.OCTAVE))
+			automataDef = new OctaveDefinition();
+		else if (abcTokenType == (AbcTokenType.BROKEN_RHYTHM))
+			automataDef = new BrokenRhythmDefinition();
+		else if (abcTokenType == (AbcTokenType.TIE))
+			automataDef = new TieDefinition();
+		else if (abcTokenType == (AbcTokenType.TUPLET_SPEC))
+			automataDef = new TupletSpecDefinition();
+		else if (abcTokenType == (AbcTokenType.MULTI_NOTE_BEGIN))
+			automataDef = new MultiNoteBeginDefinition();
+		else if (abcTokenType == (AbcTokenType.MULTI_NOTE_END))
+			automataDef = new MultiNoteEndDefinition();
+		// else if (abcTokenType==(AbcTokenType.TEX_COMMAND)) automataDef =
+		// new TexCommandDefinition();
+		else if (abcTokenType == (AbcTokenType.CHORD_NAME))
+			automataDef = new ChordNameDefinition();
+		else if (abcTokenType == (AbcTokenType.EQUALS))
+			automataDef = new EqualsDefinition();
+		else if (abcTokenType == (AbcTokenType.C_TEMPO))
+			automataDef = new TempoCDefinition();
+		else if (abcTokenType == (AbcTokenType.COMA))
+			automataDef = new ComaDefinition();
+		else
+			throw new RuntimeException("NO AUTOMATA FOR " + abcTokenType);
 		return automataDef;
 	}
 
-	/*
-	 * public static AutomataDefinition getDefinition(Set aSet) { aSet. return
-	 * null; }
-	 */
-
 	public static AutomataDefinition getDefinition(TokenType[] tokenTypes,
 			AbcVersion abcVersion) {
-		// System.out.println("getAutomataFor(" + toString(tokenTypes));
-		AutomataDefinition alreadyCreated = getAlreadyCreatedDefinition(tokenTypes);
-		if (alreadyCreated != null) {
-			// System.out.println("Cache used for " + toString(tokenTypes));
-			return alreadyCreated;
-		} else {
-			AutomataDefinition definition = getDefinition(tokenTypes[0],
-					abcVersion);
-			if (tokenTypes.length >= 1) {
-				for (int i = 1; i < tokenTypes.length; i++)
-					definition = definition.union(getDefinition(tokenTypes[i],
-							abcVersion));
-			}
-			// System.out.println("Adding automataDef in cache for : " +
-			// toString(tokenTypes));
-			m_allPreviouslyCreatedDefinitions.addElement(new DefinitionCache(
-					tokenTypes, definition));
-			return definition;
-		}
+		return getDefinition(new Set(tokenTypes), abcVersion);
 	}
 
-	private static AutomataDefinition getAlreadyCreatedDefinition(
-			TokenType[] tokenTypes) {
-		AutomataDefinition alreadyCreatedAutomata = null;
-		for (int i = 0; i < m_allPreviouslyCreatedDefinitions.size()
-				&& (alreadyCreatedAutomata == null); i++) {
-			if (((DefinitionCache) m_allPreviouslyCreatedDefinitions
-					.elementAt(i)).isValidFor(tokenTypes))
-				alreadyCreatedAutomata = ((DefinitionCache) m_allPreviouslyCreatedDefinitions
-						.elementAt(i)).getAutomataResult();
+	/**
+	 * Returns the definition of the union of the given token types.
+	 * 
+	 * @param tokenTypes
+	 *            The token types, the set is not kept : it can be changed
+	 *            afterwards.
+	 * @param abcVersion
+	 *            The abc version.
+	 * @return The definition of the given token types.
+	 */
+	public static AutomataDefinition getDefinition(Set tokenTypes,
+			AbcVersion abcVersion) {
+		Map definitions = (Map) m_definitions.get(abcVersion);
+		if (definitions == null) {
+			synchronized (m_definitions) {
+				definitions = (Map) m_definitions.get(abcVersion);
+				if (definitions == null) {
+					definitions = new ConcurrentHashMap();
+					m_definitions.put(abcVersion, definitions);
+				}
+			}
 		}
-		return alreadyCreatedAutomata;
-	}
-
-	public static class DefinitionCache {
-		private TokenType[] m_tokenTypes = null;
-		private AutomataDefinition m_automataDefResult = null;
-
-		public DefinitionCache(TokenType[] tokenTypes,
-				AutomataDefinition automataDef) {
-			m_tokenTypes = tokenTypes;
-			m_automataDefResult = automataDef;
+		Orders orders = (Orders) definitions.get(tokenTypes);
+		AutomataDefinition definition = orders == null ? null : orders
+				.get(tokenTypes);
+		if (definition == null) {
+			synchronized (m_definitions) {
+				orders = (Orders) definitions.get(tokenTypes);
+				definition = orders == null ? null : orders.get(tokenTypes);
+				if (definition == null) {
+					// unions change the states they merge : new definitions
+					// are merged, so the cached ones never change.
+					TokenType[] types = tokenTypes.getTypes();
+					definition = createDefinition(types[0], abcVersion);
+					for (int i = 1; i < types.length; i++)
+						definition = definition.union(createDefinition(
+								types[i], abcVersion));
+					Set key = (Set) tokenTypes.clone();
+					definitions.put(key, new Orders(orders, key, definition));
+				}
+			}
 		}
+		return definition;
+	}
 
-		public boolean isValidFor(TokenType[] tokenTypes) {
-			boolean isValidFor = true;
-			if (m_tokenTypes.length == tokenTypes.length) {
-				for (int i = 0; i < m_tokenTypes.length && isValidFor; i++)
-					if (!contains(m_tokenTypes[i], tokenTypes))
-						isValidFor = false;
-			} else
-				isValidFor = false;
-			return isValidFor;
-		}
+	/**
+	 * The definitions of one set of token types, one for each order in which
+	 * the token types were added. Never changed : a new order replaces the
+	 * instance in the cache.
+	 */
+	private static class Orders {
+		private Set[] m_orders = null;
+		private AutomataDefinition[] m_definitions = null;
 
-		public AutomataDefinition getAutomataResult() {
-			return m_automataDefResult;
+		private Orders(Orders previous, Set order, AutomataDefinition definition) {
+			int size = previous == null ? 0 : previous.m_orders.length;
+			m_orders = new Set[size + 1];
+			m_definitions = new AutomataDefinition[size + 1];
+			if (previous != null) {
+				System.arraycopy(previous.m_orders, 0, m_orders, 0, size);
+				System.arraycopy(previous.m_definitions, 0, m_definitions, 0,
+						size);
+			}
+			m_orders[size] = order;
+			m_definitions[size] = definition;
 		}
 
-		public TokenType[] getTokenTypes() {
-			return m_tokenTypes;
+		/** Returns the definition of the given order, <TT>null</TT> if none. */
+		private AutomataDefinition get(Set tokenTypes) {
+			for (int i = 0; i < m_orders.length; i++)
+				if (m_orders[i].equalsInOrder(tokenTypes))
+					return m_definitions[i];
+			return null;
 		}
-
-	}
-
-	private static boolean contains(TokenType type, TokenType[] types) {
-		boolean contains = false;
-		int index = 0;
-		while (!contains && index < types.length)
-			if (type.equals(types[index]))
-				contains = true;
-			else
-				index++;
-		return contains;
 	}
 
 	public static String toString(TokenType[] types) {
@@ -23,7 +23,6 @@ import java.awt.geom.Point2D;
 import java.awt.geom.QuadCurve2D;
 import java.awt.geom.Rectangle2D;
 
-import abc.notation.Accidental;
 import abc.notation.Clef;
 import abc.notation.Decoration;
 import abc.notation.GracingType;
@@ -163,16 +162,15 @@ abstract class JNoteElementAbstract extends JScoreElementAbstract implements
 		if (autoStem && (note != null)) {
 			// if (note.getHeight()<Note.B) {
 			// now depends on the clef!
-			// reset the note's accidental before checking
-			Accidental acc = note.getAccidental();
-			note.setAccidental(Accidental.NONE);
+			// compare without the note's accidental, the note itself is
+			// not changed as it may be rendered while it is read elsewhere
 			if ((getClef() == null)
-					|| note.isLowerThan(getClef().getMiddleNote())) {
+					|| (note.getHeight() < getClef().getMiddleNote()
+							.getMidiLikeMicrotonalHeight())) {
 				isup = true;
 			} else {
 				isup = false;
 			}
-			note.setAccidental(acc);
 		}
 		return isup;
 	}
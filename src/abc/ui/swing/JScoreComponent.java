@@ -20,6 +20,8 @@ import java.awt.Dimension;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
 import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.geom.Rectangle2D;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.FileOutputStream;
@@ -77,6 +79,11 @@ public class JScoreComponent extends JComponent implements
 	 * outdated and does not represent the tune currently set.
 	 */
 	private boolean m_isBufferedImageOutdated = true;
+	/**
+	 * The area of the buffered image which has to be drawn again,
+	 * <TT>null</TT> if the drawn area is up to date.
+	 */
+	private Rectangle m_outdatedArea = null;
 
 	/**
 	 * A vector of selected item(s) in this score. <TT>null</TT> if no item is
@@ -144,6 +151,24 @@ public class JScoreComponent extends JComponent implements
 	}
 
 	public void paint(Graphics g) {
+		if (!m_isBufferedImageOutdated && (m_outdatedArea != null)) {
+			if (m_dimension.getWidth() > m_bufferedImage.getWidth()
+					|| m_dimension.getHeight() > m_bufferedImage.getHeight()) {
+				// the score has grown, keep what is already drawn
+				BufferedImage previousImage = m_bufferedImage;
+				initGfx();
+				m_bufferedImageGfx.setColor(getBackground());
+				m_bufferedImageGfx.fillRect(0, 0, m_bufferedImage.getWidth(),
+						m_bufferedImage.getHeight());
+				m_bufferedImageGfx.drawImage(previousImage, 0, 0, null);
+			}
+			m_bufferedImageGfx.setClip(m_outdatedArea);
+			m_bufferedImageGfx.setColor(getBackground());
+			m_bufferedImageGfx.fill(m_outdatedArea);
+			drawIn(m_bufferedImageGfx);
+			m_bufferedImageGfx.setClip(null);
+			m_outdatedArea = null;
+		}
 		if (m_isBufferedImageOutdated) {
 			// System.out.println("buf image is outdated");
 			if (m_bufferedImage == null
@@ -156,6 +181,7 @@ public class JScoreComponent extends JComponent implements
 					(int) m_bufferedImage.getHeight());
 			drawIn(m_bufferedImageGfx);
 			m_isBufferedImageOutdated = false;
+			m_outdatedArea = null;
 		}
 		((Graphics2D) g).drawImage(m_bufferedImage, 0, 0, null);
 		// ((Graphics2D)g).drawString("test", 100, 100);
@@ -223,14 +249,14 @@ public class JScoreComponent extends JComponent implements
 	public void refresh() {
 		initGfx();
 		if (m_jTune != null) {
-			setTune(m_jTune.getTune());
+			recomputeTune();
 		}
 		repaint();
 	}
 
 	public Dimension getDimension() {
 		if (m_jTune != null) {
-			setTune(m_jTune.getTune());
+			recomputeTune();
 		}
 		return m_dimension;
 	}
@@ -245,7 +271,7 @@ public class JScoreComponent extends JComponent implements
 	 */
 	public void writeScoreTo(OutputStream os) throws IOException {
 		if (m_jTune != null) {
-			setTune(m_jTune.getTune());
+			recomputeTune();
 		}
 		BufferedImage bufferedImage = new BufferedImage(
 				(int) m_dimension.getWidth(), (int) m_dimension.getHeight(),
@@ -302,7 +328,55 @@ public class JScoreComponent extends JComponent implements
 	 *            The tune to be displayed.
 	 */
 	public void setTune(Tune tune) {
-		m_jTune = new JTune(tune, new Point(0, 0), getTemplate());
+		setJTune(new JTune(tune, new Point(0, 0), getTemplate()));
+	}
+
+	/**
+	 * Sets a tune which grows while it is displayed, e.g. notes are appended
+	 * to it while they are recorded. Unlike {@link #setTune(Tune)} the tune
+	 * itself is rendered and not a copy of it, so it must only be changed by
+	 * appending elements to its voice, between the calls of this method. The
+	 * layout is shared with {@link #paint(Graphics)} : call this method and
+	 * append the elements on the event dispatch thread.<BR/>
+	 * If this tune is already displayed, only the elements appended since the
+	 * last call are computed: the staff lines before the last ones keep their
+	 * position and only the changed area of the score is repainted.
+	 * 
+	 * @param tune
+	 *            The tune to be displayed.
+	 */
+	public void setGrowingTune(Tune tune) {
+		if ((m_jTune == null) || !m_jTune.isIncremental()
+				|| (m_jTune.getTune() != tune)) {
+			setJTune(new JTune(tune, new Point(0, 0), getTemplate(), true));
+			return;
+		}
+		Rectangle2D changedArea = m_jTune.computeAppended();
+		m_selectedItems = null;
+		m_dimension.setSize(m_jTune.getWidth(), m_jTune.getHeight());
+		setPreferredSize(m_dimension);
+		setSize(m_dimension);
+		if (changedArea == null) {
+			m_isBufferedImageOutdated = true;
+			repaint();
+		} else {
+			Rectangle area = changedArea.getBounds();
+			if (m_outdatedArea == null)
+				m_outdatedArea = area;
+			else
+				m_outdatedArea.add(area);
+			repaint(area);
+		}
+	}
+
+	/** Computes the tune currently set again, e.g. after template changes. */
+	private void recomputeTune() {
+		setJTune(new JTune(m_jTune.getTune(), new Point(0, 0), getTemplate(),
+				m_jTune.isIncremental()));
+	}
+
+	private void setJTune(JTune jTune) {
+		m_jTune = jTune;
 		m_jTune.setColor(getForeground());
 
 //		m_jTune.setColor(Color.RED);
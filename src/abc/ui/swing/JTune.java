@@ -18,6 +18,7 @@ package abc.ui.swing;
 import java.awt.Color;
 import java.awt.Graphics2D;
 import java.awt.Point;
+import java.awt.Rectangle;
 import java.awt.RenderingHints;
 import java.awt.geom.FlatteningPathIterator;
 import java.awt.geom.GeneralPath;
@@ -129,9 +130,43 @@ public class JTune extends JScoreElementAbstract {
 	private TimeSignature currentTime = null;
 	private byte m_currentVoice = 1;
 	private Point2D cursor = null;
+	private ArrayList lessThanQuarter = new ArrayList();
+	private Tuplet tupletContainer = null;
+	private boolean m_hasChordLine = false;
+
+	/**
+	 * <TT>true</TT> if the tune is rendered itself and not a copy of it, see
+	 * {@link #computeAppended()}
+	 */
+	private boolean m_isIncremental = false;
+	/**
+	 * Size of the voice when it was computed, <TT>-1</TT> if elements
+	 * appended to it can't be computed without computing everything again.
+	 */
+	private int m_computedSize = -1;
+	/** StaffLineStart instances, one for each end of staff line */
+	private Vector m_staffLineStarts = new Vector();
+	private short m_shortestDuration = Short.MAX_VALUE;
+	/** Width of the justified staff lines, <TT>-1</TT> if not justified */
+	private double m_justifiedWidth = -1;
+	/** Widths of the staff lines before they have been justified */
+	private Vector m_staffLinesWidths = new Vector();
+
+	private int m_headerTextsCount = 0;
 
 	protected JTune(Tune tune, Point2D base, ScoreTemplate st) {
+		this(tune, base, st, false);
+	}
+
+	/**
+	 * @param isIncremental
+	 *            <TT>true</TT> to render the tune itself, so that elements
+	 *            appended to it can be computed with {@link #computeAppended()}
+	 */
+	protected JTune(Tune tune, Point2D base, ScoreTemplate st,
+			boolean isIncremental) {
 		super(base, st.getMetrics());
+		m_isIncremental = isIncremental;
 		m_headerAndFooterTexts = new ArrayList();
 		m_staffLines = new Vector();
 		m_scoreElements = new Hashtable();
@@ -142,6 +177,10 @@ public class JTune extends JScoreElementAbstract {
 		setBase(base);
 	}
 
+	public boolean isIncremental() {
+		return m_isIncremental;
+	}
+
 	public boolean isJustified() {
 		return getTemplate().isJustified();
 	}
@@ -405,15 +444,19 @@ public class JTune extends JScoreElementAbstract {
 				getTemplate().getAttributeSize(ScoreAttribute.MARGIN_TOP));
 		cursor = (Point2D) getBase().clone();
 
-		double componentWidth = 0, componentHeight = 0;
-
 		// System.out.println("Passage #"+(++DEBUG));
 
 		// if (m_isOutdated || (m_tuneBeforeTransposition == null))
 		// m_tuneBeforeTransposition = (Tune) m_tune.clone();
 		m_isOutdated = false;
 		m_music = null;
-		m_tune = Tune.transpose(m_tuneBeforeTransposition, getTransposition());
+		// an incremental tune is rendered itself, not a transposed copy of it,
+		// so appended elements are seen without copying the tune again
+		if (m_isIncremental && (getTransposition() == 0))
+			m_tune = m_tuneBeforeTransposition;
+		else
+			m_tune = Tune.transpose(m_tuneBeforeTransposition,
+					getTransposition());
 
 		getEngraver().adaptToTune(m_tune, getMetrics());
 
@@ -470,6 +513,7 @@ public class JTune extends JScoreElementAbstract {
 			double headerHeight = Math.max(yLeft, Math.max(yCenter, yRight));
 			cursor.setLocation(getBase().getX(), headerHeight);
 		}
+		m_headerTextsCount = m_headerAndFooterTexts.size();
 
 		// if tune has part, tune.getMusic() will return
 		// duplicate parts when repeated
@@ -479,12 +523,12 @@ public class JTune extends JScoreElementAbstract {
 		// we just need one occurence of each part.
 		m_music = m_tune.getMusicForGraphicalRendition();
 
-		ArrayList lessThanQuarter = new ArrayList();
-		// int durationInGroup = 0;
-		// int maxDurationInGroup = Note.QUARTER;
-		// int durationInCurrentMeasure = 0;
-		Tuplet tupletContainer = null;
-		int staffLineNb = 0;
+		lessThanQuarter.clear();
+		tupletContainer = null;
+		m_staffLineStarts.clear();
+		Note shortestNote = m_music.getShortestNoteInAllVoices();
+		m_shortestDuration = (shortestNote != null) ? shortestNote
+				.getDuration() : Short.MAX_VALUE;
 		// init attributes that are for iterating through the score of the tune.
 		currentKey = m_tune.getKey();
 		if (currentKey != null) {
@@ -503,162 +547,16 @@ public class JTune extends JScoreElementAbstract {
 		while (itVoices.hasNext()) {
 			Voice voice = (Voice) itVoices.next();
 			m_currentVoice = voice.getVoiceNumber();
-			int size = 0;
-			for (m_index = 0, size = voice.size(); m_index < size; m_index++) {
-				MusicElement s = (MusicElement) voice.elementAt(m_index);
-				// System.out.println(s.toString() + " " +
-				// s.getReference().toString());
-				// ==== Notes>quarter, rests, notes without slur,tuplet ====
-				if ((!(s instanceof Note || s instanceof MultiNote)
-						|| (s instanceof Note && ((Note) s).isRest())
-						// if we were in a tuplet and the current note isn't
-						// part of tuplet anymore or part of another tuplet
-						|| (s instanceof NoteAbstract
-								&& tupletContainer != null && (!tupletContainer
-								.equals(((NoteAbstract) s).getTuplet())))
-						// if we weren't in a tuplet and the new note is part of
-						// a tuplet.
-						|| (s instanceof NoteAbstract
-								&& tupletContainer == null && ((NoteAbstract) s)
-								.isPartOfTuplet())
-						|| (s instanceof Note && ((Note) s).getStrictDuration() >= Note.QUARTER) || (s instanceof MultiNote && (!((MultiNote) s)
-						.hasUniqueStrictDuration() || ((MultiNote) s)
-						.getLongestNote().getStrictDuration() >= Note.QUARTER)))
-
-						&& lessThanQuarter.size() != 0) {
-					// this is is the end of the group, append the current group
-					// content to the score.
-					appendToScore(lessThanQuarter);
-					lessThanQuarter.clear();
-				}
-				// ==== Key signature ====
-				if (s instanceof KeySignature) {
-					currentKey = (KeySignature) s;
-					currentClef = currentKey.getClef();
-					// TODO if end of staffline, add the key signture at right
-					// here or in initStaffLine?
-					if (currentStaffLineInitialized
-							&& !currentKey.equals(previousKey)) {
-						appendToScore(new JKeySignature(currentKey,
-								previousKey, cursor, getMetrics()));
-						try {
-							previousKey = (KeySignature) currentKey.clone();
-						} catch (CloneNotSupportedException never) {
-							never.printStackTrace();
-						}
-					}
-				} else
-				// ==== Time signature ====
-				if (s instanceof TimeSignature) {
-					if (currentTime != null) {
-						try {
-							previousTime = (TimeSignature) currentTime.clone();
-						} catch (CloneNotSupportedException never) {
-							never.printStackTrace();
-						}
-					}
-					currentTime = (TimeSignature) s;
-					// if (previousTime != null)
-					if (currentStaffLineInitialized
-							&& !currentTime.equals(previousTime))
-						appendToScore(new JTimeSignature(currentTime, cursor,
-								getMetrics()));
-				} else
-				// ==== MultiNote ====
-				if (s instanceof MultiNote) {
-					NoteAbstract note = (NoteAbstract) s;
-					if (note.isBeginingSlur())
-						m_beginningNotesLinkElements.addElement(note);
-					tupletContainer = ((MultiNote) s).getTuplet();
-					Note[] tiesStart = ((MultiNote) s).getNotesBeginningTie();
-					if (tiesStart != null)
-						for (int j = 0; j < tiesStart.length; j++)
-							m_beginningNotesLinkElements
-									.addElement(tiesStart[j]);
-					// checks if the shortest durations of the multi note is
-					// less than a quarter note.
-					// if yes, this multi note will be put into a group.
-					if (((MultiNote) s).getStrictDurations()[0] < Note.QUARTER)
-						lessThanQuarter.add(s);
-					else {
-						appendToScore(new JChord((MultiNote) s, currentClef,
-								getMetrics(), cursor));
-					}
-
-					// durationInCurrentMeasure+=((MultiNote)s).getLongestNote().getDuration();
-				} // end MultiNote
-				else
-				// ==== Note ====
-				if (s instanceof Note) {
-					Note note = (Note) s;
-
-					if (note.isBeginingSlur() || note.isBeginningTie())
-						m_beginningNotesLinkElements.addElement(note);
-					short strictDur = note.getStrictDuration();
-					tupletContainer = note.getTuplet();
-					// checks if this note should be part of a group.
-					if (strictDur < Note.QUARTER && !note.isRest()) {
-						// durationInGroup+=(note).getDuration();
-						// System.out.println("duration in group " +
-						// durationInGroup);
-						lessThanQuarter.add(note);
-						/*
-						 * if (durationInGroup>=maxDurationInGroup) {
-						 * appendToScore(lessThanQuarter);
-						 * lessThanQuarter.clear(); durationInGroup = 0; }
-						 */
-					} else {
-						JNote noteR = new JNote(note, currentClef, cursor,
-								getMetrics());
-						// if (note.getHeight()>=Note.c)
-						// noteR.setStemUp(false);
-						appendToScore(noteR);
-					}
-					// durationInCurrentMeasure+=note.getDuration();
-				} // end Note
-				else
-				// ==== RepeatBarLine ===
-				if (s instanceof RepeatBarLine) {
-					appendToScore(new JRepeatBar((RepeatBarLine) s, cursor,
-							getMetrics()));
-					// durationInCurrentMeasure=0;
-				} else
-				// ==== BarLine ====
-				if (s instanceof BarLine) {
-					appendToScore(new JBar((BarLine) s, cursor, getMetrics()));
-					// durationInCurrentMeasure=0;
-				} else
-				// ==== EndOfStaffLine ====
-				if (s instanceof EndOfStaffLine) {
-					staffLineNb++;
-					currentStaffLineInitialized = false;
-				} else
-				// ==== NotesSeparator ====
-				if (s instanceof NotesSeparator) {
-					appendToScore(lessThanQuarter);
-					lessThanQuarter.clear();
-				} else
-				// ==== Spacer ====
-				if (s instanceof Spacer) {
-					appendToScore(lessThanQuarter);
-					lessThanQuarter.clear();
-					appendToScore(new JSpacer(getMetrics(), cursor, (Spacer) s));
-				} else
-				// ==== Words ====
-				if (s instanceof Words) {
-					appendLyrics(new JWords(getMetrics(), (Words) s));
-				} else
-				// ==== Part label ====
-				if (s instanceof PartLabel) {
-					appendToScore(new JPartLabel(getMetrics(), cursor,
-							(PartLabel) s));
-				} else
-				// ==== Tempo ====
-				if ((s instanceof Tempo)/* && (s != m_tune.getGeneralTempo()) */) {
-					appendToScore(new JTempo(getMetrics(), cursor, (Tempo) s));
-				}
-			}// end each element in voice
+			m_hasChordLine = voice.hasChordNames() || m_music.hasPartLabel()
+					|| m_music.hasTempo();
+			computeElements(voice, 0);
 		}// end each voice in music
+		// only a single voice of the tune itself can be continued
+		m_computedSize = -1;
+		if ((m_tune == m_tuneBeforeTransposition)
+				&& (m_tune.getMultiPartsDefinition() == null)
+				&& (m_music.getVoices().size() == 1))
+			m_computedSize = m_music.getVoice(m_currentVoice).size();
 
 		if (lessThanQuarter.size() != 0) {
 			appendToScore(lessThanQuarter);
@@ -669,6 +567,183 @@ public class JTune extends JScoreElementAbstract {
 		if (isJustified())
 			justify();
 
+		computeFootersAndSize();
+	}
+
+	/**
+	 * Computes the elements of a voice, starting at the given index.
+	 * 
+	 * @param voice
+	 *            The voice of {@link #m_music}
+	 * @param from
+	 *            Index of the first element to compute
+	 */
+	private void computeElements(Voice voice, int from) {
+		int size = 0;
+		for (m_index = from, size = voice.size(); m_index < size; m_index++) {
+			MusicElement s = (MusicElement) voice.elementAt(m_index);
+			// System.out.println(s.toString() + " " +
+			// s.getReference().toString());
+			// ==== Notes>quarter, rests, notes without slur,tuplet ====
+			if ((!(s instanceof Note || s instanceof MultiNote)
+					|| (s instanceof Note && ((Note) s).isRest())
+					// if we were in a tuplet and the current note isn't
+					// part of tuplet anymore or part of another tuplet
+					|| (s instanceof NoteAbstract
+							&& tupletContainer != null && (!tupletContainer
+							.equals(((NoteAbstract) s).getTuplet())))
+					// if we weren't in a tuplet and the new note is part of
+					// a tuplet.
+					|| (s instanceof NoteAbstract
+							&& tupletContainer == null && ((NoteAbstract) s)
+							.isPartOfTuplet())
+					|| (s instanceof Note && ((Note) s).getStrictDuration() >= Note.QUARTER) || (s instanceof MultiNote && (!((MultiNote) s)
+					.hasUniqueStrictDuration() || ((MultiNote) s)
+					.getLongestNote().getStrictDuration() >= Note.QUARTER)))
+
+					&& lessThanQuarter.size() != 0) {
+				// this is is the end of the group, append the current group
+				// content to the score.
+				appendToScore(lessThanQuarter);
+				lessThanQuarter.clear();
+			}
+			// ==== Key signature ====
+			if (s instanceof KeySignature) {
+				currentKey = (KeySignature) s;
+				currentClef = currentKey.getClef();
+				// TODO if end of staffline, add the key signture at right
+				// here or in initStaffLine?
+				if (currentStaffLineInitialized
+						&& !currentKey.equals(previousKey)) {
+					appendToScore(new JKeySignature(currentKey,
+							previousKey, cursor, getMetrics()));
+					try {
+						previousKey = (KeySignature) currentKey.clone();
+					} catch (CloneNotSupportedException never) {
+						never.printStackTrace();
+					}
+				}
+			} else
+			// ==== Time signature ====
+			if (s instanceof TimeSignature) {
+				if (currentTime != null) {
+					try {
+						previousTime = (TimeSignature) currentTime.clone();
+					} catch (CloneNotSupportedException never) {
+						never.printStackTrace();
+					}
+				}
+				currentTime = (TimeSignature) s;
+				// if (previousTime != null)
+				if (currentStaffLineInitialized
+						&& !currentTime.equals(previousTime))
+					appendToScore(new JTimeSignature(currentTime, cursor,
+							getMetrics()));
+			} else
+			// ==== MultiNote ====
+			if (s instanceof MultiNote) {
+				NoteAbstract note = (NoteAbstract) s;
+				if (note.isBeginingSlur())
+					m_beginningNotesLinkElements.addElement(note);
+				tupletContainer = ((MultiNote) s).getTuplet();
+				Note[] tiesStart = ((MultiNote) s).getNotesBeginningTie();
+				if (tiesStart != null)
+					for (int j = 0; j < tiesStart.length; j++)
+						m_beginningNotesLinkElements
+								.addElement(tiesStart[j]);
+				// checks if the shortest durations of the multi note is
+				// less than a quarter note.
+				// if yes, this multi note will be put into a group.
+				if (((MultiNote) s).getStrictDurations()[0] < Note.QUARTER)
+					lessThanQuarter.add(s);
+				else {
+					appendToScore(new JChord((MultiNote) s, currentClef,
+							getMetrics(), cursor));
+				}
+
+				// durationInCurrentMeasure+=((MultiNote)s).getLongestNote().getDuration();
+			} // end MultiNote
+			else
+			// ==== Note ====
+			if (s instanceof Note) {
+				Note note = (Note) s;
+
+				if (note.isBeginingSlur() || note.isBeginningTie())
+					m_beginningNotesLinkElements.addElement(note);
+				short strictDur = note.getStrictDuration();
+				tupletContainer = note.getTuplet();
+				// checks if this note should be part of a group.
+				if (strictDur < Note.QUARTER && !note.isRest()) {
+					// durationInGroup+=(note).getDuration();
+					// System.out.println("duration in group " +
+					// durationInGroup);
+					lessThanQuarter.add(note);
+					/*
+					 * if (durationInGroup>=maxDurationInGroup) {
+					 * appendToScore(lessThanQuarter);
+					 * lessThanQuarter.clear(); durationInGroup = 0; }
+					 */
+				} else {
+					JNote noteR = new JNote(note, currentClef, cursor,
+							getMetrics());
+					// if (note.getHeight()>=Note.c)
+					// noteR.setStemUp(false);
+					appendToScore(noteR);
+				}
+				// durationInCurrentMeasure+=note.getDuration();
+			} // end Note
+			else
+			// ==== RepeatBarLine ===
+			if (s instanceof RepeatBarLine) {
+				appendToScore(new JRepeatBar((RepeatBarLine) s, cursor,
+						getMetrics()));
+				// durationInCurrentMeasure=0;
+			} else
+			// ==== BarLine ====
+			if (s instanceof BarLine) {
+				appendToScore(new JBar((BarLine) s, cursor, getMetrics()));
+				// durationInCurrentMeasure=0;
+			} else
+			// ==== EndOfStaffLine ====
+			if (s instanceof EndOfStaffLine) {
+				currentStaffLineInitialized = false;
+				// the next staff line starts here, see computeAppended()
+				m_staffLineStarts.addElement(new StaffLineStart());
+			} else
+			// ==== NotesSeparator ====
+			if (s instanceof NotesSeparator) {
+				appendToScore(lessThanQuarter);
+				lessThanQuarter.clear();
+			} else
+			// ==== Spacer ====
+			if (s instanceof Spacer) {
+				appendToScore(lessThanQuarter);
+				lessThanQuarter.clear();
+				appendToScore(new JSpacer(getMetrics(), cursor, (Spacer) s));
+			} else
+			// ==== Words ====
+			if (s instanceof Words) {
+				appendLyrics(new JWords(getMetrics(), (Words) s));
+			} else
+			// ==== Part label ====
+			if (s instanceof PartLabel) {
+				appendToScore(new JPartLabel(getMetrics(), cursor,
+						(PartLabel) s));
+			} else
+			// ==== Tempo ====
+			if ((s instanceof Tempo)/* && (s != m_tune.getGeneralTempo()) */) {
+				appendToScore(new JTempo(getMetrics(), cursor, (Tempo) s));
+			}
+		}// end each element in voice
+	}
+
+	/**
+	 * Computes the footers and the size of the score, once all staff lines are
+	 * computed.
+	 */
+	private void computeFootersAndSize() {
+		double componentWidth = 0, componentHeight = 0;
+
 		cursor.setLocation(cursor.getX(), cursor.getY()
 				+ getMetrics().getStaffCharBounds().getHeight());
 
@@ -720,6 +795,183 @@ public class JTune extends JScoreElementAbstract {
 		m_height = componentHeight;
 	}
 
+	/**
+	 * Computes the elements appended to the voice of the tune since the last
+	 * computation. The staff lines are kept as they are, only the last two
+	 * (the one before may get a bar line at its end) are computed again, from
+	 * the end of staff line before them.<br>
+	 * This is possible for a single voice tune rendered itself (see
+	 * {@link #JTune(Tune, Point2D, ScoreTemplate, boolean)}), if only notes
+	 * without chord names, bar lines and ends of staff line have been
+	 * appended. Otherwise everything is computed again.
+	 * 
+	 * @return The area of the score which has changed, <TT>null</TT> if
+	 *         everything has been computed again.
+	 */
+	protected Rectangle2D computeAppended() {
+		StaffLineStart start = getStaffLineStartToContinue();
+		if (m_isOutdated || (start == null) || !isContinuable()) {
+			compute();
+			return null;
+		}
+		double previousWidth = m_width, previousHeight = m_height;
+		start.restore();
+		Voice voice = m_music.getVoice(m_currentVoice);
+		computeElements(voice, start.m_index);
+		m_computedSize = voice.size();
+		if (lessThanQuarter.size() != 0) {
+			appendToScore(lessThanQuarter);
+			lessThanQuarter.clear();
+		}
+		// justify the new staff lines like the others, if the widest staff
+		// line changes all staff lines have to be justified again
+		if (isJustified()) {
+			if (m_justifiedWidth == -1) {
+				compute();
+				return null;
+			}
+			m_staffLinesWidths.setSize(start.m_staffLinesCount);
+			double maxWidth = 0;
+			for (int i = 0; i < m_staffLines.size(); i++) {
+				if (i >= start.m_staffLinesCount)
+					m_staffLinesWidths.addElement(new Double(
+							((JStaffLine) m_staffLines.elementAt(i)).getWidth()));
+				maxWidth = Math.max(maxWidth, ((Double) m_staffLinesWidths
+						.elementAt(i)).doubleValue());
+			}
+			if (maxWidth != m_justifiedWidth) {
+				compute();
+				return null;
+			}
+			for (int i = start.m_staffLinesCount; i < m_staffLines.size(); i++) {
+				JStaffLine staffLine = (JStaffLine) m_staffLines.elementAt(i);
+				if (staffLine.getWidth() > maxWidth / 2)
+					staffLine.scaleToWidth(maxWidth);
+			}
+		}
+		computeFootersAndSize();
+
+		double top = 0;
+		// texts centered or at the right move if the width changes
+		if (m_width == previousWidth) {
+			int first = Math.max(start.m_staffLinesCount - 1, 0);
+			top = ((JStaffLine) m_staffLines.elementAt(first)).getTopY()
+					- getTemplate().getAttributeSize(
+							ScoreAttribute.STAFF_LINES_SPACING);
+		}
+		return new Rectangle2D.Double(0, top, Math.max(m_width,
+				previousWidth), Math.max(m_height, previousHeight) - top);
+	}
+
+	/**
+	 * Returns the end of staff line from which the appended elements can be
+	 * computed: the last one if its staff line has been started, so that the
+	 * staff line before has its bar line, else the one before.
+	 */
+	private StaffLineStart getStaffLineStartToContinue() {
+		int count = m_staffLineStarts.size();
+		if (count == 0)
+			return null;
+		StaffLineStart start = (StaffLineStart) m_staffLineStarts
+				.elementAt(count - 1);
+		if (start.m_staffLinesCount < m_staffLines.size())
+			return start;
+		return (count > 1) ? (StaffLineStart) m_staffLineStarts
+				.elementAt(count - 2) : null;
+	}
+
+	/**
+	 * Returns <TT>true</TT> if the elements appended to the voice don't
+	 * change the layout of the staff lines already computed.
+	 */
+	private boolean isContinuable() {
+		if (m_computedSize == -1)
+			return false;
+		Voice voice = m_music.getVoice(m_currentVoice);
+		if (voice.size() < m_computedSize)
+			return false;
+		for (int i = m_computedSize; i < voice.size(); i++) {
+			MusicElement s = (MusicElement) voice.elementAt(i);
+			short duration;
+			if (s instanceof Note)
+				duration = ((Note) s).getDuration();
+			else if (s instanceof MultiNote)
+				duration = ((MultiNote) s).getShortestNote().getDuration();
+			else if ((s instanceof BarLine) || (s instanceof EndOfStaffLine)
+					|| (s instanceof NotesSeparator) || (s instanceof Spacer))
+				continue;
+			else
+				return false;
+			// the engraver spaces the notes depending on the shortest one,
+			// and staff lines with chord names are higher
+			if ((duration < m_shortestDuration)
+					|| (((NoteAbstract) s).getChordName() != null))
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * The state of the computation at an end of staff line, to compute the
+	 * following staff lines again.
+	 */
+	private class StaffLineStart {
+		private int m_index;
+		private int m_staffLinesCount;
+		private JStaffLine m_staffLine;
+		private int m_lyricsCount;
+		private int m_linksCount;
+		private int m_groupsCount;
+		private Point2D m_cursor;
+		private KeySignature m_currentKey, m_previousKey;
+		private Clef m_currentClef;
+		private TimeSignature m_currentTime, m_previousTime;
+		private Tuplet m_tupletContainer;
+
+		/** Stores the state at the current end of staff line */
+		StaffLineStart() {
+			m_index = JTune.this.m_index + 1;
+			m_staffLinesCount = m_staffLines.size();
+			m_staffLine = currentStaffLine;
+			m_lyricsCount = (currentStaffLine != null) ? currentStaffLine.m_lyrics
+					.size() : 0;
+			m_linksCount = m_beginningNotesLinkElements.size();
+			m_groupsCount = m_scoreNoteGroups.size();
+			m_cursor = (Point2D) cursor.clone();
+			m_currentKey = currentKey;
+			m_previousKey = previousKey;
+			m_currentClef = currentClef;
+			m_currentTime = currentTime;
+			m_previousTime = previousTime;
+			m_tupletContainer = tupletContainer;
+		}
+
+		/**
+		 * Removes everything computed after this end of staff line, the
+		 * bar line added to the staff line before is kept.
+		 */
+		void restore() {
+			m_staffLines.setSize(m_staffLinesCount);
+			if (m_staffLine != null)
+				m_staffLine.m_lyrics.setSize(m_lyricsCount);
+			m_beginningNotesLinkElements.setSize(m_linksCount);
+			m_scoreNoteGroups.setSize(m_groupsCount);
+			m_staffLineStarts.setSize(m_staffLineStarts.indexOf(this) + 1);
+			while (m_headerAndFooterTexts.size() > m_headerTextsCount)
+				m_headerAndFooterTexts.remove(m_headerAndFooterTexts.size() - 1);
+			cursor = (Point2D) m_cursor.clone();
+			currentStaffLine = m_staffLine;
+			currentStaffLineInitialized = false;
+			currentKey = m_currentKey;
+			previousKey = m_previousKey;
+			currentClef = m_currentClef;
+			currentTime = m_currentTime;
+			previousTime = m_previousTime;
+			tupletContainer = m_tupletContainer;
+			lessThanQuarter.clear();
+		}
+	}
+
 	/**
 	 * Append an element to the score, calculating its position
 	 * 
@@ -966,7 +1218,11 @@ public class JTune extends JScoreElementAbstract {
 		// staffS[i] = ScoreMetrics.STAFF_SIX_LINES;
 
 		JStaffLine currentStaffLine = null;
+		Rectangle clip = g2.getClipBounds();
 		for (int i = 0; i < m_staffLines.size(); i++) {
+			// only the staff lines in the area to be repainted
+			if ((clip != null) && !isStaffLineIn(i, clip))
+				continue;
 			currentStaffLine = (JStaffLine) m_staffLines.elementAt(i);
 			currentStaffLine.render(g2);
 			// g2.drawChars(staffS, 0, staffS.length,
@@ -978,6 +1234,23 @@ public class JTune extends JScoreElementAbstract {
 		return getWidth();
 	}
 
+	/**
+	 * Returns <TT>true</TT> if the staff line may be drawn in the given area.
+	 * A staff line reaches from its top to the top of the next one, with one
+	 * space between staff lines above and under for high and low notes.
+	 */
+	private boolean isStaffLineIn(int index, Rectangle area) {
+		double spacing = getTemplate().getAttributeSize(
+				ScoreAttribute.STAFF_LINES_SPACING);
+		double top = ((JStaffLine) m_staffLines.elementAt(index)).getTopY()
+				- spacing;
+		double bottom = Double.MAX_VALUE;
+		if (index + 1 < m_staffLines.size())
+			bottom = ((JStaffLine) m_staffLines.elementAt(index + 1))
+					.getTopY() + spacing;
+		return (area.getMaxY() >= top) && (area.getMinY() <= bottom);
+	}
+
 	private void renderTitlesAndFootnotes(Graphics2D g2) {
 		Iterator iter = m_headerAndFooterTexts.iterator();
 		while (iter.hasNext()) {
@@ -1010,12 +1283,17 @@ public class JTune extends JScoreElementAbstract {
 	 * the alignment justified.
 	 */
 	private void justify() {
+		m_justifiedWidth = -1;
+		m_staffLinesWidths.clear();
 		if (m_staffLines.size() > 1) {
 			double maxWidth = ((JStaffLine) m_staffLines.elementAt(0))
 					.getWidth();
+			m_staffLinesWidths.addElement(new Double(maxWidth));
 			for (int i = 1; i < m_staffLines.size(); i++) {
 				JStaffLine currentStaffLine = (JStaffLine) m_staffLines
 						.elementAt(i);
+				m_staffLinesWidths.addElement(new Double(currentStaffLine
+						.getWidth()));
 				maxWidth = Math.max(maxWidth, currentStaffLine.getWidth());
 			}
 			for (int i = 0; i < m_staffLines.size(); i++) {
@@ -1024,6 +1302,7 @@ public class JTune extends JScoreElementAbstract {
 				if (currentStaffLine.getWidth() > maxWidth / 2)
 					currentStaffLine.scaleToWidth(maxWidth);
 			}
+			m_justifiedWidth = maxWidth;
 		}
 	}
 
@@ -1662,8 +1941,7 @@ public class JTune extends JScoreElementAbstract {
 
 		// add space if tune has chord, part label or tempo
 		// Music music = m_tune.getMusicForGraphicalRendition();
-		if (m_music.getVoice(m_currentVoice).hasChordNames()
-				|| m_music.hasPartLabel() || m_music.hasTempo()) {
+		if (m_hasChordLine) {
 			cursor.setLocation(
 					cursor.getX(),
 					cursor.getY()
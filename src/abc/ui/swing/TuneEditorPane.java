@@ -34,6 +34,7 @@ import javax.swing.KeyStroke;
 import javax.swing.event.DocumentEvent;
 import javax.swing.event.DocumentListener;
 import javax.swing.text.DefaultStyledDocument;
+import javax.swing.text.BadLocationException;
 import javax.swing.text.EditorKit;
 import javax.swing.text.Style;
 import javax.swing.text.StyleConstants;
@@ -47,6 +48,8 @@ import scanner.TokenType;
 import abc.notation.Tune;
 import abc.parser.AbcTokenType;
 import abc.parser.InvalidTokenEvent;
+import abc.parser.ParsingScheduler;
+import abc.parser.ParsingSchedulerListenerInterface;
 import abc.parser.TuneParser;
 import abc.parser.TuneParserListenerInterface;
 
@@ -80,20 +83,24 @@ public class TuneEditorPane extends JTextPane// implements ActionListener
 	private static final String FIELD_STYLE = "field";
 	private static final String RHYTHM_STYLE = "rhythm";
 	private static final String DEFAULT_STYLE = "rhythm";
+	/**
+	 * @deprecated The tune is parsed on the threads of a
+	 *             {@link ParsingScheduler}, see
+	 *             {@link ParsingScheduler#PARSING_THREAD_NAME}.
+	 */
 	public static final String REFRESHER_THREAD_NAME = "ABC-TunePaneRefresh";
 
 	// private static final boolean ENABLE_COLORING = true;
 
 	// private int nbApply =0;
-	private boolean m_forceRefresh = false;
 	/** */
 	private Style m_barStyle, m_textStyle, m_errorStyle, m_fieldStyle,
 			m_rhythmStyle, m_defaultStyle, m_baseNoteStyle, m_commentStyle,
 			m_gracingStyle, m_symbolStyle = null;
 	private static final int IDLE_TIME_BEFORE_REFRESH = 200;
 	/**
-	 * The thread in charge of refreshing the tune representation of this editor
-	 * pane.
+	 * The object in charge of refreshing the tune representation of this
+	 * editor pane.
 	 */
 	private ParsingRefresh m_refresher = null;
 	/** The tune currently represented in this editor pane. */
@@ -209,7 +216,7 @@ public class TuneEditorPane extends JTextPane// implements ActionListener
 	public void setColoringEnable(boolean coloring) {
 		m_enableColoring = coloring;
 		if (m_enableColoring)
-			m_refresher.redrawTune();
+			m_refresher.redrawTune(0);
 		else {
 			((DefaultStyledDocument) getDocument()).setCharacterAttributes(0,
 					getDocument().getEndPosition().getOffset(), m_defaultStyle,
@@ -351,23 +358,28 @@ public class TuneEditorPane extends JTextPane// implements ActionListener
 		}
 	}
 
-	private class ParsingRefresh extends Thread implements DocumentListener,
-			TuneParserListenerInterface {
-		private int m_elapsedTimeSinceLastParsing = 0;
+	/**
+	 * Parses the text of the pane on a {@link ParsingScheduler} after each
+	 * change, once the idle time before refresh has elapsed, and colors the
+	 * tokens of the latest parsed tune.
+	 */
+	private class ParsingRefresh implements DocumentListener,
+			TuneParserListenerInterface, ParsingSchedulerListenerInterface {
 		private DefaultStyledDocument m_document = null;
-		private TuneParser m_parser = null;
-		private int m_idleTime = 0;
-		private Object m_mutex = new Object();
+		private ParsingScheduler m_scheduler = null;
+		/** The events of the tune being parsed. */
 		private Vector m_parsingEvents = null;
+		/** The events of the latest parsed tune. */
+		private Vector m_parsedEvents = null;
 		private TokenType m_contextForText = null;
 		private TokenType m_contextForNote = null;
 
 		public ParsingRefresh(DefaultStyledDocument document, TuneParser parser) {
-			super(REFRESHER_THREAD_NAME);
-			start();
-			m_parser = parser;
+			m_scheduler = new ParsingScheduler(parser);
+			m_scheduler.addListener(this);
 			m_parsingEvents = new Vector();
-			m_parser.addListener(this);
+			m_parsedEvents = new Vector();
+			parser.addListener(this);
 			m_document = document;
 			startIt();
 			// m_document.addDocumentListener(this);
@@ -375,19 +387,17 @@ public class TuneEditorPane extends JTextPane// implements ActionListener
 
 		public void startIt() {
 			m_document.addDocumentListener(this);
-			m_forceRefresh = true;
-			synchronized (m_mutex) {
-				m_mutex.notify();
-			}
-
+			// the whole text, without waiting
+			requestParsing(0, -1);
 		}
 
 		public void stopIt() {
 			m_document.removeDocumentListener(this);
+			m_scheduler.cancel();
 		}
 
 		public TuneParser getParser() {
-			return m_parser;
+			return m_scheduler.getParser();
 		}
 
 		public void setDocument(DefaultStyledDocument doc) {
@@ -396,50 +406,25 @@ public class TuneEditorPane extends JTextPane// implements ActionListener
 				// " - setDocument(" + doc + ")");
 				m_document.removeDocumentListener(this);
 				m_document = doc;
-				m_tune = m_parser.parse(doc.getText(0, doc.getLength()));
+				m_tune = getParser().parse(doc.getText(0, doc.getLength()));
 				m_document.addDocumentListener(this);
 			} catch (Exception e) {
 				e.printStackTrace();
 			}
 		}
 
-		public void run() {
-			while (true) {
-				try {
-					synchronized (m_mutex) {
-						// System.out.println("Area - wait()");
-						m_mutex.wait();
-						if (!m_forceRefresh) {
-							do {
-								// System.out.println("Area - compting before parsing : "
-								// + m_idleTime);
-								m_mutex.wait(10);
-								m_idleTime += 10;
-							} while (m_idleTime <= m_idleTimeBeforeRefresh);
-						}
-						try {
-
-							String tuneNotation = TuneEditorPane.this
-									.getDocument().getText(
-											0,
-											TuneEditorPane.this.getDocument()
-													.getLength());
-							if (!tuneNotation.equals("")) {
-								if (m_forceRefresh == true) {
-									m_forceRefresh = false;
-									// System.out.println("Area - Forcing refresh");
-								}
-								// System.out.println("Area - parsing("+
-								// tuneNotation +")");
-								m_tune = m_parser.parse(tuneNotation);
-							}
-						} catch (Exception e) {
-							e.printStackTrace();
-						}
-					}
-				} catch (InterruptedException e) {
-					e.printStackTrace();
-				}
+		/**
+		 * Requests the parsing of the text, replacing the request not parsed
+		 * yet.
+		 */
+		private void requestParsing(long delay, int editOffset) {
+			try {
+				String tuneNotation = m_document.getText(0, m_document
+						.getLength());
+				if (!tuneNotation.equals(""))
+					m_scheduler.parse(tuneNotation, delay, editOffset);
+			} catch (BadLocationException e) {
+				e.printStackTrace();
 			}
 		}
 
@@ -447,31 +432,33 @@ public class TuneEditorPane extends JTextPane// implements ActionListener
 		}
 
 		public void insertUpdate(DocumentEvent e) {
-			synchronized (m_mutex) {
-				m_mutex.notify();
-				m_idleTime = 0;
-			}
+			requestParsing(m_idleTimeBeforeRefresh, e.getOffset());
 		}
 
 		public void removeUpdate(DocumentEvent e) {
-			synchronized (m_mutex) {
-				m_mutex.notify();
-				m_idleTime = 0;
-			}
+			requestParsing(m_idleTimeBeforeRefresh, e.getOffset());
 		}
 
 		public void tuneBegin() {
-			m_parsingEvents.removeAllElements();
+			m_parsingEvents = new Vector();
 		}
 
 		public void tuneEnd(Tune tune) {
+		}
+
+		public void tuneParsed(Tune tune, final int changedFrom, long latency,
+				long parsingTime) {
+			m_tune = tune;
+			// the scheduler parses one tune at a time : these are the events
+			// of this tune
+			m_parsedEvents = m_parsingEvents;
 			if (m_enableColoring) {
 				// ===========================================================THOSE
 				// CALLBACK CREATE A DEADLOCK WHEN SETTING TEXT ATTRIBUTES.
 				try {
 					javax.swing.SwingUtilities.invokeLater(new Runnable() {
 						public void run() {
-							redrawTune();
+							redrawTune(changedFrom);
 						}
 					});
 				} catch (Exception e) {
@@ -484,10 +471,19 @@ public class TuneEditorPane extends JTextPane// implements ActionListener
 			m_parsingEvents.addElement(evt);
 		}
 
-		private void redrawTune() {
+		/**
+		 * Colors the tokens of the latest parsed tune.
+		 * 
+		 * @param changedFrom
+		 *            The offset of the first edited character : the tokens
+		 *            ending before, and the character scanned after each of
+		 *            them, did not change and keep their colors.
+		 */
+		private void redrawTune(int changedFrom) {
+			Vector events = m_parsedEvents;
 			EventObject event = null;
-			for (int i = 0; i < m_parsingEvents.size(); i++) {
-				event = (EventObject) m_parsingEvents.elementAt(i);
+			for (int i = 0; i < events.size(); i++) {
+				event = (EventObject) events.elementAt(i);
 				if (event instanceof TokenEvent) {
 					Token token = ((TokenEvent) event).getToken();
 					if (token != null) {
@@ -547,9 +543,11 @@ public class TuneEditorPane extends JTextPane// implements ActionListener
 								m_contextForText = null;
 								att = m_symbolStyle;
 							}
-							m_document.setCharacterAttributes(token
-									.getPosition().getCharactersOffset(), token
-									.getValue().length(), att, true);
+							int offset = token.getPosition()
+									.getCharactersOffset();
+							if (offset + token.getValue().length() >= changedFrom)
+								m_document.setCharacterAttributes(offset, token
+										.getValue().length(), att, true);
 							m_contextForText = token.getType();
 						} catch (Exception e) {
 							e.printStackTrace();
@@ -560,12 +558,14 @@ public class TuneEditorPane extends JTextPane// implements ActionListener
 					}
 				} else if (event instanceof InvalidCharacterEvent) {
 					InvalidCharacterEvent evt = (InvalidCharacterEvent) event;
-					m_document.setCharacterAttributes(evt.getPosition()
-							.getCharactersOffset(), 1, m_errorStyle, true);
+					if (evt.getPosition().getCharactersOffset() + 1 >= changedFrom)
+						m_document.setCharacterAttributes(evt.getPosition()
+								.getCharactersOffset(), 1, m_errorStyle, true);
 				} else if (event instanceof InvalidTokenEvent) {
 					InvalidTokenEvent evt = (InvalidTokenEvent) event;
-					m_document.setCharacterAttributes(evt.getPosition()
-							.getCharactersOffset(), 1, m_errorStyle, true);
+					if (evt.getPosition().getCharactersOffset() + 1 >= changedFrom)
+						m_document.setCharacterAttributes(evt.getPosition()
+								.getCharactersOffset(), 1, m_errorStyle, true);
 				}
 			}
 			m_contextForText = null;
@@ -0,0 +1,484 @@
+package be.hogent.tarsos.sampled;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.sound.sampled.AudioFormat;
+
+/**
+ * Runs a branch of AudioProcessors on its own thread so a slow or blocking
+ * processor (e.g. the {@link BlockingAudioPlayer} or a processor writing to
+ * disk) does not delay the {@link AudioDispatcher} and the other processors.
+ * <p>
+ * The dispatcher thread copies every buffer into one of a fixed number of
+ * preallocated slots and hands it over to the branch thread. If all slots are
+ * in use the dispatcher thread waits until the branch has processed a buffer,
+ * so no audio is lost and the dispatcher is never more than
+ * <code>capacity</code> buffers ahead of the branch.
+ * </p>
+ * <p>
+ * The processors of the branch are called in the order they are given, one
+ * buffer after the other, exactly like the dispatcher calls them. Only the new
+ * samples of an overlapping buffer are handed over: the branch slides its own
+ * buffer, so chained stages that change the buffer (e.g. a filter in front of
+ * a pitch detector) see the same overlapping samples as on the dispatcher
+ * thread.
+ * </p>
+ * <p>
+ * For each stage the time spent processing is measured, for the hand-off the
+ * number of waiting buffers and the time a buffer waited.
+ * </p>
+ * <p>
+ * A stage that throws a RuntimeException is logged and skipped for the
+ * following buffers, the other stages go on. If the branch thread ends before
+ * processing has finished, the buffers handed over afterwards are dropped, so
+ * the dispatcher never waits for a branch that is gone.
+ * </p>
+ *
+ * @author Joren Six
+ */
+public final class AsynchronousAudioProcessor implements AudioProcessor {
+
+	/**
+	 * Log messages.
+	 */
+	private static final Logger LOG = Logger
+			.getLogger(AsynchronousAudioProcessor.class.getName());
+
+	/**
+	 * A preallocated buffer in the hand-off between the two threads.
+	 */
+	private static final class Slot {
+		private final float[] floats;
+		private final byte[] bytes;
+		/** True for the first (complete) buffer. */
+		private boolean full;
+		/** True for the signal that processing has finished. */
+		private boolean finished;
+		/** System.nanoTime() when the slot was handed over. */
+		private long handedOver;
+
+		private Slot(final int floatSize, final int byteSize) {
+			floats = new float[floatSize];
+			bytes = new byte[byteSize];
+		}
+	}
+
+	private final String name;
+	private final AudioProcessor[] stages;
+
+	/**
+	 * Slots that can be filled by the dispatcher thread.
+	 */
+	private final BlockingQueue<Slot> free;
+	/**
+	 * Filled slots, in order, waiting for the branch thread. There is room for
+	 * every slot and the finished signal, so adding never blocks.
+	 */
+	private final BlockingQueue<Slot> filled;
+	private final Slot finishedSignal;
+
+	/**
+	 * The buffers the processors of the branch see, slid like the buffers of
+	 * the dispatcher.
+	 */
+	private final float[] audioFloatBuffer;
+	private final byte[] audioByteBuffer;
+	private final int floatOverlap, floatStepSize;
+	private final int byteOverlap, byteStepSize;
+
+	private Thread thread;
+	private final CountDownLatch terminated = new CountDownLatch(1);
+	/**
+	 * Set when the branch thread ended before processing finished, from then
+	 * on buffers are dropped instead of handed over.
+	 */
+	private volatile boolean failed;
+	/**
+	 * The stages that threw an exception and are skipped, only used by the
+	 * branch thread.
+	 */
+	private final boolean[] failedStages;
+
+	/*
+	 * Counters, only written by one thread: the dispatcher thread writes the
+	 * hand-off counters, the branch thread the processing times.
+	 */
+	private volatile long buffersHandedOver;
+	private volatile long buffersDropped;
+	private volatile int maximumQueueDepth;
+	private volatile long buffersProcessed;
+	private volatile long totalWaitingTime;
+	private volatile long maximumWaitingTime;
+	private final long[] totalProcessingTime;
+	private final long[] maximumProcessingTime;
+
+	/**
+	 * Creates a new branch. The thread is started when the first buffer
+	 * arrives.
+	 *
+	 * @param branchName
+	 *            The name of the branch, used for the thread name and log
+	 *            messages.
+	 * @param format
+	 *            The AudioFormat of the buffers.
+	 * @param bufferSize
+	 *            The size of each buffer in samples (not in bytes).
+	 * @param overlap
+	 *            Defines how much consecutive buffers overlap in samples (not
+	 *            in bytes).
+	 * @param capacity
+	 *            The number of buffers the dispatcher can be ahead of the
+	 *            branch.
+	 * @param processors
+	 *            The stages of the branch, called in this order.
+	 */
+	public AsynchronousAudioProcessor(final String branchName,
+			final AudioFormat format, final int bufferSize, final int overlap,
+			final int capacity, final AudioProcessor... processors) {
+		if (capacity < 1) {
+			throw new IllegalArgumentException("The capacity (" + capacity
+					+ ") should be at least one buffer.");
+		}
+		if (processors.length == 0) {
+			throw new IllegalArgumentException(
+					"A branch needs at least one AudioProcessor.");
+		}
+		name = branchName;
+		stages = processors.clone();
+
+		final int frameSize = format.getFrameSize();
+		audioFloatBuffer = new float[bufferSize];
+		audioByteBuffer = new byte[bufferSize * frameSize];
+		floatOverlap = overlap;
+		floatStepSize = bufferSize - overlap;
+		byteOverlap = overlap * frameSize;
+		byteStepSize = floatStepSize * frameSize;
+
+		free = new ArrayBlockingQueue<Slot>(capacity);
+		filled = new ArrayBlockingQueue<Slot>(capacity + 1);
+		for (int i = 0; i < capacity; i++) {
+			free.add(new Slot(bufferSize, audioByteBuffer.length));
+		}
+		finishedSignal = new Slot(0, 0);
+		finishedSignal.finished = true;
+
+		totalProcessingTime = new long[stages.length];
+		maximumProcessingTime = new long[stages.length];
+		failedStages = new boolean[stages.length];
+	}
+
+	public void processFull(final float[] floatBuffer, final byte[] byteBuffer) {
+		start();
+		handOver(floatBuffer, byteBuffer, true);
+	}
+
+	public void processOverlapping(final float[] floatBuffer,
+			final byte[] byteBuffer) {
+		handOver(floatBuffer, byteBuffer, false);
+	}
+
+	/**
+	 * Signals the branch that no more data is available. The processors of the
+	 * branch are notified on the branch thread once all buffers before are
+	 * processed, see {@link #awaitTermination()}.
+	 */
+	public void processingFinished() {
+		if (thread == null) {
+			// nothing was ever handed over
+			for (final AudioProcessor processor : stages) {
+				processor.processingFinished();
+			}
+			terminated.countDown();
+		} else {
+			filled.add(finishedSignal);
+		}
+	}
+
+	/**
+	 * Waits until the branch has processed all buffers and the processors of
+	 * the branch are notified that processing has finished.
+	 *
+	 * @throws InterruptedException
+	 *             If the current thread is interrupted while waiting.
+	 */
+	public void awaitTermination() throws InterruptedException {
+		terminated.await();
+	}
+
+	/**
+	 * Waits at most the given time until the branch has processed all buffers
+	 * and the processors of the branch are notified that processing has
+	 * finished.
+	 *
+	 * @param timeout
+	 *            The maximum time to wait.
+	 * @param unit
+	 *            The unit of the timeout.
+	 * @return False if the timeout elapsed before the branch finished.
+	 * @throws InterruptedException
+	 *             If the current thread is interrupted while waiting.
+	 */
+	public boolean awaitTermination(final long timeout, final TimeUnit unit)
+			throws InterruptedException {
+		return terminated.await(timeout, unit);
+	}
+
+	private void start() {
+		if (thread == null) {
+			thread = new Thread(new Runnable() {
+				public void run() {
+					processBranch();
+				}
+			}, "AudioProcessor " + name);
+			thread.setDaemon(true);
+			thread.start();
+		}
+	}
+
+	/**
+	 * Copies the buffer into a free slot, waits for one if the branch is
+	 * behind. If the dispatcher thread is interrupted (the dispatcher is
+	 * stopping) or the branch thread has ended the buffer is dropped.
+	 */
+	private void handOver(final float[] floatBuffer, final byte[] byteBuffer,
+			final boolean full) {
+		if (failed) {
+			buffersDropped++;
+			return;
+		}
+		final Slot slot;
+		try {
+			slot = free.take();
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			buffersDropped++;
+			return;
+		}
+		if (full) {
+			System.arraycopy(floatBuffer, 0, slot.floats, 0, floatBuffer.length);
+			System.arraycopy(byteBuffer, 0, slot.bytes, 0, byteBuffer.length);
+		} else {
+			// only the samples the branch has not seen yet
+			System.arraycopy(floatBuffer, floatOverlap, slot.floats,
+					floatOverlap, floatStepSize);
+			System.arraycopy(byteBuffer, byteOverlap, slot.bytes, byteOverlap,
+					byteStepSize);
+		}
+		slot.full = full;
+		slot.handedOver = System.nanoTime();
+		filled.add(slot);
+		buffersHandedOver++;
+		final int depth = filled.size();
+		if (depth > maximumQueueDepth) {
+			maximumQueueDepth = depth;
+		}
+	}
+
+	private void processBranch() {
+		boolean finished = false;
+		try {
+			while (true) {
+				final Slot slot = filled.take();
+				if (slot.finished) {
+					break;
+				}
+				final long waitingTime = System.nanoTime() - slot.handedOver;
+				totalWaitingTime += waitingTime;
+				if (waitingTime > maximumWaitingTime) {
+					maximumWaitingTime = waitingTime;
+				}
+
+				if (slot.full) {
+					System.arraycopy(slot.floats, 0, audioFloatBuffer, 0,
+							audioFloatBuffer.length);
+					System.arraycopy(slot.bytes, 0, audioByteBuffer, 0,
+							audioByteBuffer.length);
+				} else {
+					// slide, see AudioDispatcher.slideBuffer(): only the
+					// float buffer slides, the bytes are only valid after
+					// the overlap
+					System.arraycopy(audioFloatBuffer, floatStepSize,
+							audioFloatBuffer, 0, floatOverlap);
+					System.arraycopy(slot.floats, floatOverlap,
+							audioFloatBuffer, floatOverlap, floatStepSize);
+					System.arraycopy(slot.bytes, byteOverlap, audioByteBuffer,
+							byteOverlap, byteStepSize);
+				}
+				final boolean full = slot.full;
+				free.add(slot);
+
+				for (int i = 0; i < stages.length; i++) {
+					if (failedStages[i]) {
+						continue;
+					}
+					final long start = System.nanoTime();
+					try {
+						if (full) {
+							stages[i].processFull(audioFloatBuffer,
+									audioByteBuffer);
+						} else {
+							stages[i].processOverlapping(audioFloatBuffer,
+									audioByteBuffer);
+						}
+					} catch (final RuntimeException e) {
+						failedStages[i] = true;
+						LOG.log(Level.SEVERE, "Branch " + name + ": "
+								+ stages[i].getClass().getSimpleName()
+								+ " failed and is skipped from now on.", e);
+					}
+					final long processingTime = System.nanoTime() - start;
+					totalProcessingTime[i] += processingTime;
+					if (processingTime > maximumProcessingTime[i]) {
+						maximumProcessingTime[i] = processingTime;
+					}
+				}
+				buffersProcessed++;
+			}
+			for (int i = 0; i < stages.length; i++) {
+				if (failedStages[i]) {
+					continue;
+				}
+				try {
+					stages[i].processingFinished();
+				} catch (final RuntimeException e) {
+					failedStages[i] = true;
+					LOG.log(Level.SEVERE, "Branch " + name + ": "
+							+ stages[i].getClass().getSimpleName()
+							+ " failed to finish.", e);
+				}
+			}
+			LOG.fine(toString());
+			finished = true;
+		} catch (final InterruptedException e) {
+			LOG.warning("Branch " + name + " interrupted, "
+					+ (buffersHandedOver - buffersProcessed)
+					+ " buffers not processed.");
+		} finally {
+			if (!finished) {
+				// give the slots back, a dispatcher waiting for a free slot
+				// goes on: the following buffers are dropped
+				failed = true;
+				Slot slot;
+				while ((slot = filled.poll()) != null) {
+					if (!slot.finished) {
+						free.add(slot);
+					}
+				}
+			}
+			terminated.countDown();
+		}
+	}
+
+	/**
+	 * Only complete after {@link #awaitTermination()}.
+	 *
+	 * @return True if a stage threw an exception and was skipped, or if the
+	 *         branch thread ended before processing finished.
+	 */
+	public boolean hasFailed() {
+		if (failed) {
+			return true;
+		}
+		for (final boolean stageFailed : failedStages) {
+			if (stageFailed) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @return The number of buffers handed over and not yet processed.
+	 */
+	public int getQueueDepth() {
+		return filled.size();
+	}
+
+	/**
+	 * @return The maximum number of buffers that were waiting for the branch.
+	 */
+	public int getMaximumQueueDepth() {
+		return maximumQueueDepth;
+	}
+
+	/**
+	 * @return The number of buffers dropped because the dispatcher was
+	 *         interrupted while waiting for a free slot.
+	 */
+	public long getDroppedCount() {
+		return buffersDropped;
+	}
+
+	/**
+	 * @return The number of buffers processed by every stage of the branch.
+	 */
+	public long getProcessedCount() {
+		return buffersProcessed;
+	}
+
+	/**
+	 * @return The average time in nanoseconds a buffer waited between the
+	 *         hand-off and the start of processing.
+	 */
+	public double getAverageWaitingTime() {
+		final long processed = buffersProcessed;
+		return processed == 0 ? 0 : totalWaitingTime / (double) processed;
+	}
+
+	/**
+	 * @return The maximum time in nanoseconds a buffer waited between the
+	 *         hand-off and the start of processing.
+	 */
+	public long getMaximumWaitingTime() {
+		return maximumWaitingTime;
+	}
+
+	/**
+	 * @param stage
+	 *            The index of the processor in the branch.
+	 * @return The average time in nanoseconds the processor needed for a
+	 *         buffer.
+	 */
+	public double getAverageLatency(final int stage) {
+		final long processed = buffersProcessed;
+		return processed == 0 ? 0 : totalProcessingTime[stage]
+				/ (double) processed;
+	}
+
+	/**
+	 * @param stage
+	 *            The index of the processor in the branch.
+	 * @return The maximum time in nanoseconds the processor needed for a
+	 *         buffer.
+	 */
+	public long getMaximumLatency(final int stage) {
+		return maximumProcessingTime[stage];
+	}
+
+	@Override
+	public String toString() {
+		final StringBuilder sb = new StringBuilder();
+		sb.append("Branch ").append(name).append(": ")
+				.append(buffersProcessed).append(" buffers, queue depth ")
+				.append(getQueueDepth()).append(" (max ")
+				.append(maximumQueueDepth).append("), waiting ")
+				.append(String.format("%.3f", getAverageWaitingTime() / 1e6))
+				.append(" ms (max ")
+				.append(String.format("%.3f", maximumWaitingTime / 1e6))
+				.append(" ms)");
+		for (int i = 0; i < stages.length; i++) {
+			sb.append(", ").append(stages[i].getClass().getSimpleName())
+					.append(" ")
+					.append(String.format("%.3f", getAverageLatency(i) / 1e6))
+					.append(" ms (max ")
+					.append(String.format("%.3f",
+							maximumProcessingTime[i] / 1e6)).append(" ms)");
+		}
+		return sb.toString();
+	}
+}
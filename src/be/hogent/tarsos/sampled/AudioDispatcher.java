@@ -1,6 +1,7 @@
 package be.hogent.tarsos.sampled;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.logging.Level;
@@ -33,10 +34,22 @@ public final class AudioDispatcher implements Runnable {
 
 	/**
 	 * The audio stream (in bytes), conversion to float happens at the last
-	 * moment.
+	 * moment. Null if the samples are read from {@link #audioData}.
 	 */
 	private final AudioInputStream audioInputStream;
 
+	/**
+	 * The samples, e.g. the memory-mapped data chunk of a wave file. Every
+	 * buffer is read as a window at its own offset, no stream is involved.
+	 * Null if the samples are read from {@link #audioInputStream}.
+	 */
+	private final ByteBuffer audioData;
+
+	/**
+	 * The offset (in bytes) of the current buffer in {@link #audioData}.
+	 */
+	private int windowOffset;
+
 	/**
 	 * This buffer is reused again and again to store audio data using the float
 	 * data type.
@@ -97,14 +110,50 @@ public final class AudioDispatcher implements Runnable {
 
 	public AudioDispatcher(final AudioInputStream stream, TargetDataLine line, final int audioBufferSize, final int bufferOverlap)
 			throws UnsupportedAudioFileException {
+		this(stream, null, stream.getFormat(), line, audioBufferSize, bufferOverlap);
+	}
+
+	/**
+	 * Create a new dispatcher which reads the samples straight from a buffer,
+	 * e.g. a memory-mapped wave file (see
+	 * {@link de.hsa.jam.audio.MappedWaveFile}). Every buffer is read as a
+	 * window at its offset, so there is no stream, no slide of the bytes and
+	 * no other state than the offset.
+	 * 
+	 * @param data
+	 *            The samples, from the position to the limit of the buffer.
+	 * @param format
+	 *            The format of the samples.
+	 * @param audioBufferSize
+	 *            The size of the buffer defines how much samples are processed
+	 *            in one step. Common values are 1024,2048.
+	 * @param bufferOverlap
+	 *            How much consecutive buffers overlap (in samples). Half of the
+	 *            AudioBufferSize is common.
+	 * @throws UnsupportedAudioFileException
+	 *             If an unsupported format is used.
+	 */
+	public AudioDispatcher(final ByteBuffer data, final AudioFormat format,
+			final int audioBufferSize, final int bufferOverlap)
+			throws UnsupportedAudioFileException {
+		this(null, data.slice(), format, null, audioBufferSize, bufferOverlap);
+	}
+
+	private AudioDispatcher(final AudioInputStream stream,
+			final ByteBuffer data, final AudioFormat format,
+			final TargetDataLine line, final int audioBufferSize,
+			final int bufferOverlap) throws UnsupportedAudioFileException {
 
 		audioProcessors = new ArrayList<AudioProcessor>();
 		audioInputStream = stream;
+		audioData = data;
 		targetDataLine = line;
 
-		final AudioFormat format = audioInputStream.getFormat();
-
 		converter = AudioFloatConverter.getConverter(format);
+		if (converter == null) {
+			throw new UnsupportedAudioFileException("Unsupported format "
+					+ format);
+		}
 
 		audioFloatBuffer = new float[audioBufferSize];
 		floatOverlap = bufferOverlap;
@@ -136,7 +185,8 @@ public final class AudioDispatcher implements Runnable {
 	public void start() {
 		// Your application should invoke start only when it's ready to begin
 		// reading from the line; otherwise a lot of processing is wasted
-		targetDataLine.start();
+		if (targetDataLine != null)
+			targetDataLine.start();
 		thread = new Thread(this);
 		thread.setName("AudioDispatcher");
 		thread.start();
@@ -150,8 +200,10 @@ public final class AudioDispatcher implements Runnable {
 
 		// targetDataLine.drain();
 //		targetDataLine.flush();
-		targetDataLine.stop();
-		targetDataLine.close();
+		if (targetDataLine != null) {
+			targetDataLine.stop();
+			targetDataLine.close();
+		}
 	}
 
 	/*
@@ -164,7 +216,7 @@ public final class AudioDispatcher implements Runnable {
 			int bytesRead;
 
 			// Read, convert and process the first full buffer.
-			bytesRead = audioInputStream.read(audioByteBuffer);
+			bytesRead = readFirstBuffer();
 
 			if (bytesRead != -1) {
 				converter.toFloatArray(audioByteBuffer, audioFloatBuffer);
@@ -238,18 +290,67 @@ public final class AudioDispatcher implements Runnable {
 	private int slideBuffer() throws IOException {
 		assert floatOverlap < audioFloatBuffer.length;
 
-		for (int i = 0; i < floatOverlap; i++) {
-			audioFloatBuffer[i] = audioFloatBuffer[i + floatStepSize];
-		}
+		System.arraycopy(audioFloatBuffer, floatStepSize, audioFloatBuffer, 0,
+				floatOverlap);
 
-		final int bytesRead = audioInputStream.read(audioByteBuffer,
-				byteOverlap, byteStepSize);
+		final int bytesRead;
+		if (audioData == null) {
+			bytesRead = audioInputStream.read(audioByteBuffer, byteOverlap,
+					byteStepSize);
+		} else {
+			windowOffset += byteStepSize;
+			bytesRead = readWindow(byteOverlap);
+		}
 		converter.toFloatArray(audioByteBuffer, byteOverlap, audioFloatBuffer,
 				floatOverlap, floatStepSize);
 
 		return bytesRead;
 	}
 
+	/**
+	 * Reads the first buffer from the stream or the first window from the
+	 * data.
+	 * 
+	 * @return The number of bytes read, -1 if there is no data.
+	 */
+	private int readFirstBuffer() throws IOException {
+		if (audioData == null) {
+			return audioInputStream.read(audioByteBuffer);
+		}
+		windowOffset = 0;
+		return readWindow(0);
+	}
+
+	/**
+	 * Copies the window at {@link #windowOffset} from the data into the byte
+	 * buffer. The whole window is copied, so (unlike with a stream) the bytes
+	 * of the overlap are valid as well. A window at the end of the data is
+	 * padded with silence.
+	 * 
+	 * @param newData
+	 *            The offset in the window where the data not seen before
+	 *            starts.
+	 * @return The number of new bytes, -1 if there is no new data.
+	 */
+	private int readWindow(final int newData) {
+		final int available = audioData.limit() - windowOffset;
+		if (available <= newData) {
+			return -1;
+		}
+		final int length = Math.min(available, audioByteBuffer.length);
+		final ByteBuffer window = audioData.duplicate();
+		window.position(windowOffset);
+		window.get(audioByteBuffer, 0, length);
+		if (length < audioByteBuffer.length) {
+			final int sampleSize = audioByteBuffer.length
+					/ audioFloatBuffer.length / converter.getFormat().getChannels();
+			final int samples = (audioByteBuffer.length - length) / sampleSize;
+			converter.toByteArray(new float[samples], 0, samples,
+					audioByteBuffer, length);
+		}
+		return length - newData;
+	}
+
 	/**
 	 * Create a stream from a file and use that to create a new audioprocessor.
 	 * 
@@ -0,0 +1,81 @@
+package be.hogent.tarsos.sampled.filters;
+
+/**
+ * Band pass filter for the range of an instrument: a Butterworth high pass
+ * at the lowest and a Butterworth low pass at the highest frequency, as a
+ * cascade of second order sections.
+ *
+ * @author Joren Six
+ */
+public class BandPass extends BiquadFilter {
+
+	/**
+	 * The default order of both edges: 24dB per octave.
+	 */
+	public static final int DEFAULT_ORDER = 4;
+
+	private final float lowFrequency;
+	private final float highFrequency;
+
+	/**
+	 * @param lowFrequency
+	 *            The lower cutoff frequency in Hz.
+	 * @param highFrequency
+	 *            The upper cutoff frequency in Hz, below the Nyquist frequency.
+	 * @param sampleRate
+	 *            The sample rate of the audio in Hz.
+	 * @param overlap
+	 *            The overlap of consecutive buffers in samples.
+	 */
+	public BandPass(final float lowFrequency, final float highFrequency,
+			final float sampleRate, final int overlap) {
+		this(lowFrequency, highFrequency, sampleRate, overlap, DEFAULT_ORDER);
+	}
+
+	/**
+	 * @param lowFrequency
+	 *            The lower cutoff frequency in Hz.
+	 * @param highFrequency
+	 *            The upper cutoff frequency in Hz, below the Nyquist frequency.
+	 * @param sampleRate
+	 *            The sample rate of the audio in Hz.
+	 * @param overlap
+	 *            The overlap of consecutive buffers in samples.
+	 * @param order
+	 *            The (even) order of each edge, the filter has
+	 *            <code>order</code> sections.
+	 */
+	public BandPass(final float lowFrequency, final float highFrequency,
+			final float sampleRate, final int overlap, final int order) {
+		super(coefficients(lowFrequency, highFrequency, sampleRate, order),
+				overlap);
+		this.lowFrequency = lowFrequency;
+		this.highFrequency = highFrequency;
+	}
+
+	private static double[] coefficients(final float lowFrequency,
+			final float highFrequency, final float sampleRate, final int order) {
+		if (lowFrequency <= 0 || highFrequency <= lowFrequency
+				|| highFrequency >= sampleRate / 2) {
+			throw new IllegalArgumentException("Invalid band " + lowFrequency
+					+ "Hz - " + highFrequency + "Hz at " + sampleRate + "Hz.");
+		}
+		final double[] q = butterworthQ(order);
+		final double[] coefficients = new double[q.length * 2 * 5];
+		for (int k = 0; k < q.length; k++) {
+			System.arraycopy(highPassSection(lowFrequency, q[k], sampleRate), 0,
+					coefficients, k * 5, 5);
+			System.arraycopy(lowPassSection(highFrequency, q[k], sampleRate), 0,
+					coefficients, (q.length + k) * 5, 5);
+		}
+		return coefficients;
+	}
+
+	public float getLowFrequency() {
+		return lowFrequency;
+	}
+
+	public float getHighFrequency() {
+		return highFrequency;
+	}
+}
@@ -0,0 +1,202 @@
+package be.hogent.tarsos.sampled.filters;
+
+import be.hogent.tarsos.sampled.AudioProcessor;
+
+/**
+ * A cascade of second order sections (biquads) in the transposed direct form
+ * II. Higher order filters are split into sections because a single high order
+ * IIRFilter gets numerically unstable at low frequencies.
+ * <p>
+ * Each section only needs two state variables. Four sections are calculated
+ * in one pass over the buffer with coefficients and state in local variables:
+ * the recursion of a single section is a chain of dependent operations, four
+ * independent chains keep the processor busy while it waits for one. The
+ * cascade is padded to a multiple of four with sections that pass the signal
+ * unchanged. Like the IIRFilter only the new samples of an overlapping buffer
+ * are filtered, the overlap has been filtered with the previous buffer.
+ * </p>
+ * <p>
+ * Sub-classes calculate the coefficients, see
+ * {@link #lowPassSection(double, double, float)} and
+ * {@link #highPassSection(double, double, float)}.
+ * </p>
+ *
+ * @author Joren Six
+ */
+public abstract class BiquadFilter implements AudioProcessor {
+
+	/**
+	 * Values smaller than this are flushed to zero after every buffer, so the
+	 * state does not decay into (slow) denormal numbers during silence.
+	 */
+	private static final double DENORMAL = 1e-25;
+
+	/**
+	 * The coefficients b0, b1, b2, a1, a2 of every section, normalized so that
+	 * a0 is one, padded to a multiple of four sections.
+	 */
+	private final double[] coefficients;
+
+	private final int sections;
+
+	/** The state z1, z2 of every section. */
+	private final double[] state;
+
+	private final int overlap;
+
+	/**
+	 * @param sectionCoefficients
+	 *            The coefficients b0, b1, b2, a1, a2 of every section (a0 =
+	 *            1), five values per section.
+	 * @param overlap
+	 *            The overlap of consecutive buffers in samples.
+	 */
+	protected BiquadFilter(final double[] sectionCoefficients,
+			final int overlap) {
+		if (sectionCoefficients.length == 0
+				|| sectionCoefficients.length % 5 != 0) {
+			throw new IllegalArgumentException(
+					"Five coefficients per section expected, got "
+							+ sectionCoefficients.length);
+		}
+		sections = sectionCoefficients.length / 5;
+		final int padded = (sections + 3) / 4 * 4;
+		coefficients = new double[padded * 5];
+		System.arraycopy(sectionCoefficients, 0, coefficients, 0,
+				sectionCoefficients.length);
+		for (int section = sections; section < padded; section++) {
+			coefficients[section * 5] = 1; // y = x
+		}
+		state = new double[padded * 2];
+		this.overlap = overlap;
+	}
+
+	/**
+	 * @return The number of second order sections.
+	 */
+	public final int getSections() {
+		return sections;
+	}
+
+	public void processFull(final float[] audioFloatBuffer,
+			final byte[] audioByteBuffer) {
+		process(0, audioFloatBuffer);
+	}
+
+	public void processOverlapping(final float[] audioFloatBuffer,
+			final byte[] audioByteBuffer) {
+		process(overlap, audioFloatBuffer);
+	}
+
+	private void process(final int offset, final float[] audioFloatBuffer) {
+		final double[] c = coefficients;
+		final double[] z = state;
+		for (int k = 0; k < c.length; k += 20) {
+			final int s = k / 5 * 2;
+			final double b0 = c[k], b1 = c[k + 1], b2 = c[k + 2];
+			final double a1 = c[k + 3], a2 = c[k + 4];
+			final double d0 = c[k + 5], d1 = c[k + 6], d2 = c[k + 7];
+			final double e1 = c[k + 8], e2 = c[k + 9];
+			final double f0 = c[k + 10], f1 = c[k + 11], f2 = c[k + 12];
+			final double g1 = c[k + 13], g2 = c[k + 14];
+			final double h0 = c[k + 15], h1 = c[k + 16], h2 = c[k + 17];
+			final double j1 = c[k + 18], j2 = c[k + 19];
+			double z1 = z[s], z2 = z[s + 1], w1 = z[s + 2], w2 = z[s + 3];
+			double u1 = z[s + 4], u2 = z[s + 5], v1 = z[s + 6], v2 = z[s + 7];
+			for (int i = offset; i < audioFloatBuffer.length; i++) {
+				final double x = audioFloatBuffer[i];
+				final double y1 = b0 * x + z1;
+				z1 = (b1 * x + z2) - a1 * y1;
+				z2 = b2 * x - a2 * y1;
+				final double y2 = d0 * y1 + w1;
+				w1 = (d1 * y1 + w2) - e1 * y2;
+				w2 = d2 * y1 - e2 * y2;
+				final double y3 = f0 * y2 + u1;
+				u1 = (f1 * y2 + u2) - g1 * y3;
+				u2 = f2 * y2 - g2 * y3;
+				final double y4 = h0 * y3 + v1;
+				v1 = (h1 * y3 + v2) - j1 * y4;
+				v2 = h2 * y3 - j2 * y4;
+				audioFloatBuffer[i] = (float) y4;
+			}
+			z[s] = flush(z1);
+			z[s + 1] = flush(z2);
+			z[s + 2] = flush(w1);
+			z[s + 3] = flush(w2);
+			z[s + 4] = flush(u1);
+			z[s + 5] = flush(u2);
+			z[s + 6] = flush(v1);
+			z[s + 7] = flush(v2);
+		}
+	}
+
+	private static double flush(final double value) {
+		return Math.abs(value) < DENORMAL ? 0 : value;
+	}
+
+	public void processingFinished() {
+	}
+
+	/**
+	 * The Q values of the second order sections of a Butterworth filter.
+	 *
+	 * @param order
+	 *            The (even) order of the filter.
+	 * @return The Q of every section, order / 2 values.
+	 */
+	protected static double[] butterworthQ(final int order) {
+		if (order < 2 || order % 2 != 0) {
+			throw new IllegalArgumentException("The order (" + order
+					+ ") should be even and at least two.");
+		}
+		final double[] q = new double[order / 2];
+		for (int k = 0; k < q.length; k++) {
+			q[k] = 1.0 / (2.0 * Math.cos((2 * k + 1) * Math.PI / (2.0 * order)));
+		}
+		return q;
+	}
+
+	/**
+	 * The coefficients of a second order low pass section (bilinear transform,
+	 * with the cutoff frequency prewarped).
+	 *
+	 * @param frequency
+	 *            The cutoff frequency in Hz.
+	 * @param q
+	 *            The quality factor, 1/sqrt(2) for a Butterworth section.
+	 * @param sampleRate
+	 *            The sample rate in Hz.
+	 * @return b0, b1, b2, a1, a2 normalized to a0 = 1.
+	 */
+	protected static double[] lowPassSection(final double frequency,
+			final double q, final float sampleRate) {
+		final double w0 = 2 * Math.PI * frequency / sampleRate;
+		final double cos = Math.cos(w0);
+		final double alpha = Math.sin(w0) / (2 * q);
+		final double a0 = 1 + alpha;
+		return new double[] { (1 - cos) / 2 / a0, (1 - cos) / a0,
+				(1 - cos) / 2 / a0, -2 * cos / a0, (1 - alpha) / a0 };
+	}
+
+	/**
+	 * The coefficients of a second order high pass section (bilinear
+	 * transform, with the cutoff frequency prewarped).
+	 *
+	 * @param frequency
+	 *            The cutoff frequency in Hz.
+	 * @param q
+	 *            The quality factor, 1/sqrt(2) for a Butterworth section.
+	 * @param sampleRate
+	 *            The sample rate in Hz.
+	 * @return b0, b1, b2, a1, a2 normalized to a0 = 1.
+	 */
+	protected static double[] highPassSection(final double frequency,
+			final double q, final float sampleRate) {
+		final double w0 = 2 * Math.PI * frequency / sampleRate;
+		final double cos = Math.cos(w0);
+		final double alpha = Math.sin(w0) / (2 * q);
+		final double a0 = 1 + alpha;
+		return new double[] { (1 + cos) / 2 / a0, -(1 + cos) / a0,
+				(1 + cos) / 2 / a0, -2 * cos / a0, (1 - alpha) / a0 };
+	}
+}
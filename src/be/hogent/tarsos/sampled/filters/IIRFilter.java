@@ -44,13 +44,22 @@ public abstract class IIRFilter implements AudioProcessor {
 
 	/**
 	 * The input values to the left of the output value currently being
-	 * calculated.
+	 * calculated. The history is stored twice (the array is twice as long as
+	 * <code>a</code>) and moves to the left, so
+	 * <code>in[inPos + j]</code> is the input of <code>j</code> samples ago
+	 * without shifting the array or wrapping the index.
 	 */
 	protected float[] in;
 	
-	/** The previous output values. */
+	/**
+	 * The previous output values, stored like {@link #in}:
+	 * <code>out[outPos + j]</code> is the output of <code>j + 1</code> samples
+	 * ago.
+	 */
 	protected float[] out;
 
+	private int inPos, outPos;
+
 	private final float frequency;
 	
 	private final float sampleRate;
@@ -70,8 +79,8 @@ public abstract class IIRFilter implements AudioProcessor {
 		this.sampleRate = sampleRate;
 		this.frequency = freq;	
 		calcCoeff();
-		in = new float[a.length];
-		out = new float[b.length];
+		in = new float[2 * a.length];
+		out = new float[2 * b.length];
 		this.overlap = overlap;
 	}
 
@@ -114,26 +123,30 @@ public abstract class IIRFilter implements AudioProcessor {
 	}
 	
 	private void process(int offset,float[] audioFloatBuffer){
+		final float[] a = this.a, b = this.b, in = this.in, out = this.out;
+		int inPos = this.inPos, outPos = this.outPos;
 		for (int i = offset; i < audioFloatBuffer.length; i++) {
-			//shift the in array
-			System.arraycopy(in, 0, in, 1, in.length - 1);
-			in[0] = audioFloatBuffer[i];
+			//move the start of the in history to the left
+			inPos = (inPos == 0 ? a.length : inPos) - 1;
+			in[inPos] = in[inPos + a.length] = audioFloatBuffer[i];
 	
 			//calculate y based on a and b coefficients
 			//and in and out.
 			float y = 0;
 			for(int j = 0 ; j < a.length ; j++){
-				y += a[j] * in[j];
+				y += a[j] * in[inPos + j];
 			}			
 			for(int j = 0 ; j < b.length ; j++){
-				y += b[j] * out[j];
+				y += b[j] * out[outPos + j];
 			}
-			//shift the out array
-			System.arraycopy(out, 0, out, 1, out.length - 1);
-			out[0] = y;
+			//move the start of the out history to the left
+			outPos = (outPos == 0 ? b.length : outPos) - 1;
+			out[outPos] = out[outPos + b.length] = y;
 			
 			audioFloatBuffer[i] = y;
 		} 
+		this.inPos = inPos;
+		this.outPos = outPos;
 	}
 
 	@Override
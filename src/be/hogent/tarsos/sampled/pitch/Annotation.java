@@ -24,6 +24,11 @@ public final class Annotation implements Comparable<Annotation> {
 	 */
 	private final double[] pitchValues;
 
+	/**
+	 * PitchUnit.values() returns a new array on every call.
+	 */
+	private static final PitchUnit[] UNITS = PitchUnit.values();
+
 	/**
 	 * The probability or salience. A value between zero and one (inclusive).
 	 */
@@ -69,13 +74,11 @@ public final class Annotation implements Comparable<Annotation> {
 		this.probability = salience;
 		this.source = annotationSource;
 
-		// Pitch object to calculate unit conversions.
-		final Pitch pitch = Pitch.getInstance(PitchUnit.HERTZ, pitchInHz);
-
-		// Cache pitch in different units.
-		this.pitchValues = new double[PitchUnit.values().length];
+		// Cache pitch in different units, without a Pitch object per
+		// annotation.
+		this.pitchValues = new double[UNITS.length];
 		for (int i = 0; i < pitchValues.length; i++) {
-			pitchValues[i] = pitch.getPitch(PitchUnit.values()[i]);
+			pitchValues[i] = UNITS[i].convertFromHertz(pitchInHz);
 		}
 
 	}
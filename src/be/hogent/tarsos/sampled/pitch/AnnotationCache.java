@@ -0,0 +1,377 @@
+package be.hogent.tarsos.sampled.pitch;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+
+import be.hogent.tarsos.util.ConfKey;
+import be.hogent.tarsos.util.Configuration;
+import be.hogent.tarsos.util.FileUtils;
+import be.hogent.tarsos.util.StringUtils;
+
+/**
+ * A binary cache for annotations, stored in the <code>annotation_cache</code>
+ * folder of the data directory.
+ * <p>
+ * The key of an entry is a hash of the content of the audio file and the
+ * parameters of the pitch detector (see {@link PitchDetector#getParameters()}
+ * ), so annotations of a re-recorded file or of a detector with other settings
+ * are never reused.
+ * </p>
+ * <p>
+ * The file with the annotations is memory mapped and the values are copied in
+ * bulk from the mapping into the arrays the annotations are created from:
+ * there is no parsing. The layout is (big endian):
+ * </p>
+ *
+ * <pre>
+ * int    magic, version, number of annotations n, number of sources s
+ * s times: int length, UTF-8 bytes of the PitchDetectionMode name
+ * padding to a multiple of 8 bytes
+ * double[n] start (s), double[n] pitch (Hz), double[n] probability
+ * byte[n]   index of the source
+ * </pre>
+ * <p>
+ * The total size of the cache is bounded, the least recently used entries are
+ * removed first. A read updates the modification time of the file, so the
+ * order survives a restart.
+ * </p>
+ *
+ * @author Joren Six
+ */
+final class AnnotationCache {
+
+	/**
+	 * Log messages.
+	 */
+	private static final Logger LOG = Logger.getLogger(AnnotationCache.class
+			.getName());
+
+	private static final String EXTENSION = ".annotations";
+	private static final int MAGIC = 0x54414E43; // TANC
+	private static final int VERSION = 1;
+
+	/**
+	 * Content hashes of audio files, the key is the path, size and
+	 * modification time. Hashing a long file takes a while, so it is only done
+	 * once per session.
+	 */
+	private static final Map<String, String> CONTENT_HASHES = new LinkedHashMap<String, String>(
+			16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(
+				final Map.Entry<String, String> eldest) {
+			return size() > 1000;
+		}
+	};
+
+	private final File directory;
+	private final long maximumSize;
+
+	/**
+	 * @param cacheDirectory
+	 *            The directory with the cached annotations.
+	 * @param maximumSizeInBytes
+	 *            The maximum total size of the cached annotations.
+	 */
+	AnnotationCache(final File cacheDirectory, final long maximumSizeInBytes) {
+		directory = cacheDirectory;
+		maximumSize = maximumSizeInBytes;
+		directory.mkdirs();
+	}
+
+	/**
+	 * @return The cache in the configured data directory, with the configured
+	 *         size.
+	 */
+	static AnnotationCache getDefault() {
+		final File dir = new File(FileUtils.combine(
+				Configuration.get(ConfKey.data_directory), "annotation_cache"));
+		final long size = Configuration.getInt(ConfKey.annotation_cache_size) * 1024L * 1024L;
+		return new AnnotationCache(dir, size);
+	}
+
+	/**
+	 * Calculates the key for annotations of an audio file.
+	 *
+	 * @param audioFileName
+	 *            The audio file the detector processes.
+	 * @param parameters
+	 *            The parameters of the detector.
+	 * @return A hash of the contents of the audio file and the parameters.
+	 * @throws IOException
+	 *             If the audio file can not be read.
+	 */
+	String key(final String audioFileName, final String parameters)
+			throws IOException {
+		return StringUtils.messageDigestFive(contentHash(new File(
+				audioFileName)) + "\n" + parameters);
+	}
+
+	/**
+	 * @param key
+	 *            The key, see {@link #key(String, String)}.
+	 * @return The cached annotations or null if there are none (or the entry is
+	 *         damaged).
+	 */
+	List<Annotation> get(final String key) {
+		final File file = new File(directory, key + EXTENSION);
+		if (!file.exists()) {
+			return null;
+		}
+		List<Annotation> annotations = null;
+		try {
+			annotations = read(file);
+			file.setLastModified(System.currentTimeMillis());
+		} catch (final IOException e) {
+			LOG.warning("Ignored damaged annotation cache entry " + file + ": "
+					+ e.getMessage());
+			file.delete();
+		} catch (final RuntimeException e) {
+			LOG.warning("Ignored damaged annotation cache entry " + file + ": "
+					+ e.getMessage());
+			file.delete();
+		}
+		return annotations;
+	}
+
+	/**
+	 * Stores the annotations and removes the least recently used entries if
+	 * the cache is too large.
+	 *
+	 * @param key
+	 *            The key, see {@link #key(String, String)}.
+	 * @param annotations
+	 *            The annotations to store.
+	 */
+	void put(final String key, final List<Annotation> annotations) {
+		final File file = new File(directory, key + EXTENSION);
+		try {
+			// concurrent detectors: write a temporary file and rename it
+			final File temporary = File.createTempFile(key, ".tmp", directory);
+			write(temporary, annotations);
+			if (!temporary.renameTo(file)) {
+				file.delete();
+				if (!temporary.renameTo(file)) {
+					temporary.delete();
+					throw new IOException("Could not rename " + temporary);
+				}
+			}
+		} catch (final IOException e) {
+			LOG.warning("Could not cache annotations in " + file + ": "
+					+ e.getMessage());
+			return;
+		}
+		evict();
+	}
+
+	private static List<Annotation> read(final File file) throws IOException {
+		final MappedByteBuffer buffer;
+		final RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			final FileChannel channel = raf.getChannel();
+			buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+					channel.size());
+		} finally {
+			raf.close();
+		}
+
+		if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+			throw new IOException("not an annotation cache file");
+		}
+		final int count = buffer.getInt();
+		final PitchDetectionMode[] sources = new PitchDetectionMode[buffer
+				.getInt()];
+		for (int i = 0; i < sources.length; i++) {
+			final byte[] name = new byte[buffer.getInt()];
+			buffer.get(name);
+			sources[i] = PitchDetectionMode.valueOf(new String(name, "UTF-8"));
+		}
+		buffer.position(align(buffer.position()));
+
+		final double[] starts = new double[count];
+		final double[] pitches = new double[count];
+		final double[] probabilities = new double[count];
+		final byte[] sourceIndexes = new byte[count];
+		final DoubleBuffer doubles = buffer.asDoubleBuffer();
+		doubles.get(starts);
+		doubles.get(pitches);
+		doubles.get(probabilities);
+		buffer.position(buffer.position() + 3 * 8 * count);
+		buffer.get(sourceIndexes);
+
+		final List<Annotation> annotations = new ArrayList<Annotation>(count);
+		for (int i = 0; i < count; i++) {
+			annotations.add(new Annotation(starts[i], pitches[i],
+					sources[sourceIndexes[i]], probabilities[i]));
+		}
+		return annotations;
+	}
+
+	private static void write(final File file,
+			final List<Annotation> annotations) throws IOException {
+		final int count = annotations.size();
+		final List<PitchDetectionMode> sources = new ArrayList<PitchDetectionMode>();
+		final byte[] sourceIndexes = new byte[count];
+		for (int i = 0; i < count; i++) {
+			final PitchDetectionMode source = annotations.get(i).getSource();
+			int index = sources.indexOf(source);
+			if (index < 0) {
+				index = sources.size();
+				sources.add(source);
+			}
+			sourceIndexes[i] = (byte) index;
+		}
+
+		int headerSize = 16;
+		final byte[][] names = new byte[sources.size()][];
+		for (int i = 0; i < names.length; i++) {
+			names[i] = sources.get(i).name().getBytes("UTF-8");
+			headerSize += 4 + names[i].length;
+		}
+		headerSize = align(headerSize);
+
+		// written through the channel, not a mapping: the file is renamed
+		// right after, a mapped file can not be renamed on every system
+		final ByteBuffer buffer = ByteBuffer.allocate(headerSize + 25 * count);
+		buffer.putInt(MAGIC).putInt(VERSION).putInt(count)
+				.putInt(names.length);
+		for (final byte[] name : names) {
+			buffer.putInt(name.length).put(name);
+		}
+		buffer.position(headerSize);
+		final DoubleBuffer doubles = buffer.asDoubleBuffer();
+		for (int i = 0; i < count; i++) {
+			doubles.put(annotations.get(i).getStart());
+		}
+		for (int i = 0; i < count; i++) {
+			doubles.put(annotations.get(i).getPitch(PitchUnit.HERTZ));
+		}
+		for (int i = 0; i < count; i++) {
+			doubles.put(annotations.get(i).getProbability());
+		}
+		buffer.position(headerSize + 3 * 8 * count);
+		buffer.put(sourceIndexes);
+		buffer.flip();
+
+		final RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try {
+			final FileChannel channel = raf.getChannel();
+			while (buffer.hasRemaining()) {
+				channel.write(buffer);
+			}
+			channel.force(false);
+		} finally {
+			raf.close();
+		}
+	}
+
+	/**
+	 * Removes the least recently used entries until the cache is small enough.
+	 */
+	private void evict() {
+		synchronized (AnnotationCache.class) {
+			final File[] files = directory.listFiles();
+			if (files == null) {
+				return;
+			}
+			long size = 0;
+			final List<File> entries = new ArrayList<File>();
+			for (final File file : files) {
+				if (file.getName().endsWith(EXTENSION)) {
+					entries.add(file);
+					size += file.length();
+				}
+			}
+			if (size <= maximumSize) {
+				return;
+			}
+			// lastModified() of a file can change while sorting
+			final Map<File, Long> lastModified = new HashMap<File, Long>();
+			for (final File entry : entries) {
+				lastModified.put(entry, entry.lastModified());
+			}
+			final File[] leastRecentlyUsedFirst = entries
+					.toArray(new File[entries.size()]);
+			Arrays.sort(leastRecentlyUsedFirst, new Comparator<File>() {
+				public int compare(final File o1, final File o2) {
+					return lastModified.get(o1).compareTo(lastModified.get(o2));
+				}
+			});
+			for (int i = 0; i < leastRecentlyUsedFirst.length
+					&& size > maximumSize; i++) {
+				final long length = leastRecentlyUsedFirst[i].length();
+				if (leastRecentlyUsedFirst[i].delete()) {
+					size -= length;
+					LOG.fine("Removed " + leastRecentlyUsedFirst[i]
+							+ " from the annotation cache.");
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return An MD5 hash of the contents of the file.
+	 */
+	private static String contentHash(final File file) throws IOException {
+		final String fileKey = file.getAbsolutePath() + "|" + file.length()
+				+ "|" + file.lastModified();
+		synchronized (CONTENT_HASHES) {
+			final String hash = CONTENT_HASHES.get(fileKey);
+			if (hash != null) {
+				return hash;
+			}
+		}
+
+		final MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("MD5");
+		} catch (final NoSuchAlgorithmException e) {
+			// MD5 Should be supported by the runtime!
+			throw new IllegalStateException(e);
+		}
+		final RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			final FileChannel channel = raf.getChannel();
+			final long size = channel.size();
+			// map at most 64MB at once
+			final long window = 64L * 1024 * 1024;
+			for (long position = 0; position < size; position += window) {
+				final ByteBuffer mapped = channel.map(
+						FileChannel.MapMode.READ_ONLY, position,
+						Math.min(window, size - position));
+				digest.update(mapped);
+			}
+		} finally {
+			raf.close();
+		}
+		final String hash = String.format("%1$032X", new BigInteger(1,
+				digest.digest()));
+
+		synchronized (CONTENT_HASHES) {
+			CONTENT_HASHES.put(fileKey, hash);
+		}
+		return hash;
+	}
+
+	private static int align(final int position) {
+		return (position + 7) & ~7;
+	}
+}
@@ -1,16 +1,17 @@
 package be.hogent.tarsos.sampled.pitch;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.logging.Logger;
 
 import be.hogent.tarsos.util.AudioFile;
-import be.hogent.tarsos.util.FileUtils;
 
 /**
- * Caches the results of a pitch detector by serializing annotations to a file.
- * If a file with annotations exists it reads the contents, otherwise the pitch
- * detector is executed and the annotations are stored.
+ * Caches the results of a pitch detector in the {@link AnnotationCache}. If
+ * annotations for the same audio content and detector parameters exist they
+ * are read, otherwise the pitch detector is executed and the annotations are
+ * stored.
  * 
  * @author Joren Six
  */
@@ -41,21 +42,30 @@ public final class CachingDetector implements PitchDetector {
 	}
 
 	public List<Annotation> executePitchDetection() {
-		String directory = file.transcodedDirectory();
-		String annotationsFileName = detector.getName() + "_" + file.basename()
-				+ ".txt";
-		annotationsFileName = FileUtils.combine(directory, annotationsFileName);
-		if (FileUtils.exists(annotationsFileName)) {
-			annotations = FileUtils.readPitchAnnotations(annotationsFileName);
-			LOG.info(String.format("Read cached annotations for %s from %s",
-					detector.getName(), annotationsFileName));
+		final AnnotationCache cache = AnnotationCache.getDefault();
+		final String parameters = detector.getParameters();
+		String key = null;
+		try {
+			key = cache.key(file.transcodedPath(), parameters);
+		} catch (final IOException e) {
+			LOG.warning(String.format(
+					"Could not hash %s, annotations are not cached: %s",
+					file.transcodedPath(), e.getMessage()));
+		}
+		final List<Annotation> cached = key == null ? null : cache.get(key);
+		if (cached != null) {
+			annotations = cached;
+			LOG.info(String.format("Read cached annotations for %s (%s)",
+					file.basename(), parameters));
 		} else {
 			detector.executePitchDetection();
 			// Do not copy the annotations, use the same list:
 			annotations = detector.getAnnotations();
-			FileUtils.writePitchAnnotations(annotationsFileName, annotations);
-			LOG.info(String.format("Cached annotation results for %s to %s",
-					detector.getName(), annotationsFileName));
+			if (key != null) {
+				cache.put(key, annotations);
+				LOG.info(String.format("Cached annotation results for %s (%s)",
+						file.basename(), parameters));
+			}
 		}
 		return annotations;
 	}
@@ -68,6 +78,10 @@ public final class CachingDetector implements PitchDetector {
 		return "cached_" + detector.getName();
 	}
 
+	public String getParameters() {
+		return detector.getParameters();
+	}
+
 	@Override
 	public double progress() {
 		return -1;
@@ -0,0 +1,295 @@
+package be.hogent.tarsos.sampled.pitch;
+
+import be.hogent.tarsos.util.FFT;
+
+/**
+ * A faster implementation of the AUBIO_YIN pitch tracking algorithm. The
+ * difference function (step 2 of the YIN paper) is calculated with an FFT
+ * based autocorrelation in O(N log N) instead of the O(N^2) nested loop used in
+ * {@link Yin}. The other steps are the same, so the tau estimates are
+ * numerically equivalent to the ones of {@link Yin}.
+ *
+ * @author Joren Six
+ * @author Paul Brossier
+ * @see Yin
+ */
+public final class FastYin implements PurePitchDetector {
+	/**
+	 * The default YIN threshold value. Should be around 0.10~0.15. See YIN
+	 * paper for more information.
+	 */
+	static final double DEFAULT_THRESHOLD = 0.20;
+
+	/**
+	 * The actual YIN threshold.
+	 */
+	private final double threshold;
+
+	/**
+	 * The audio sample rate. Most audio has a sample rate of 44.1kHz.
+	 */
+	private final float sampleRate;
+
+	/**
+	 * The buffer that stores the calculated values. It is exactly half the size
+	 * of the input buffer.
+	 */
+	private final float[] yinBuffer;
+
+	/**
+	 * The probability of the last detected pitch.
+	 */
+	private float probability;
+
+	/**
+	 * The FFT used to calculate the autocorrelation. Its size is the smallest
+	 * power of two that holds the input buffer.
+	 */
+	private final FFT fft;
+
+	/**
+	 * Interlaced complex FFT of the complete input buffer.
+	 */
+	private final float[] audioBufferFFT;
+
+	/**
+	 * Interlaced complex FFT of the first half of the input buffer (the
+	 * window that is compared with every lagged window). After the inverse
+	 * transform it contains the cross correlation.
+	 */
+	private final float[] kernel;
+
+	/**
+	 * Create a new pitch detector for a stream with the defined sample rate.
+	 * Processes the audio in blocks of the defined size.
+	 *
+	 * @param audioSampleRate
+	 *            The sample rate of the audio stream. E.g. 44.1 kHz.
+	 * @param bufferSize
+	 *            The size of a buffer. E.g. 1024.
+	 */
+	public FastYin(final float audioSampleRate, final int bufferSize) {
+		this(audioSampleRate, bufferSize, DEFAULT_THRESHOLD);
+	}
+
+	/**
+	 * Create a new pitch detector for a stream with the defined sample rate.
+	 * Processes the audio in blocks of the defined size.
+	 *
+	 * @param audioSampleRate
+	 *            The sample rate of the audio stream. E.g. 44.1 kHz.
+	 * @param bufferSize
+	 *            The size of a buffer. E.g. 1024.
+	 * @param yinThreshold
+	 *            The parameter that defines which peaks are kept as possible
+	 *            pitch candidates. See the YIN paper for more details.
+	 */
+	public FastYin(final float audioSampleRate, final int bufferSize,
+			final double yinThreshold) {
+		this.sampleRate = audioSampleRate;
+		this.threshold = yinThreshold;
+		yinBuffer = new float[bufferSize / 2];
+
+		int fftSize = 1;
+		while (fftSize < bufferSize) {
+			fftSize <<= 1;
+		}
+		fft = new FFT(fftSize);
+		audioBufferFFT = new float[2 * fftSize];
+		kernel = new float[2 * fftSize];
+	}
+
+	// jAM
+	public float[] getCurrentBuffer() {
+		return this.yinBuffer;
+	}
+
+	/**
+	 * The main flow of the YIN algorithm. Returns a pitch value in Hz or -1 if
+	 * no pitch is detected.
+	 *
+	 * @return a pitch value in Hz or -1 if no pitch is detected.
+	 */
+	public float getPitch(final float[] audioBuffer) {
+
+		int tauEstimate = -1;
+		float pitchInHertz = -1;
+
+		// step 2
+		difference(audioBuffer);
+
+		// step 3
+		cumulativeMeanNormalizedDifference();
+
+		// step 4
+		tauEstimate = absoluteThreshold();
+
+		// step 5
+		if (tauEstimate != -1) {
+			final float betterTau = parabolicInterpolation(tauEstimate);
+
+			// conversion to Hz
+			pitchInHertz = sampleRate / betterTau;
+		}
+
+		return pitchInHertz;
+	}
+
+	/**
+	 * Implements the difference function as described in step 2 of the YIN
+	 * paper with an FFT to reduce the number of operations. The squared
+	 * difference is expanded to
+	 * <code>d(tau) = r(0) + r_tau(0) - 2 * r(tau)</code>: the energy of the
+	 * first window, the energy of the lagged window and the cross correlation
+	 * of both. The energies are running sums, the cross correlation is
+	 * calculated for every tau at once in the frequency domain.
+	 */
+	private void difference(final float[] audioBuffer) {
+		final int halfSize = yinBuffer.length;
+		final int fftSize = audioBufferFFT.length / 2;
+
+		// interlaced complex input: real parts at even indexes
+		for (int j = 0; j < fftSize; j++) {
+			final float sample = j < audioBuffer.length ? audioBuffer[j] : 0;
+			audioBufferFFT[2 * j] = sample;
+			audioBufferFFT[2 * j + 1] = 0;
+			kernel[2 * j] = j < halfSize ? sample : 0;
+			kernel[2 * j + 1] = 0;
+		}
+		fft.forwardTransform(audioBufferFFT);
+		fft.forwardTransform(kernel);
+
+		// conj(kernel) * audioBuffer = cross correlation in frequency domain
+		for (int j = 0; j < fftSize; j++) {
+			final float kr = kernel[2 * j];
+			final float ki = kernel[2 * j + 1];
+			final float ar = audioBufferFFT[2 * j];
+			final float ai = audioBufferFFT[2 * j + 1];
+			kernel[2 * j] = kr * ar + ki * ai;
+			kernel[2 * j + 1] = kr * ai - ki * ar;
+		}
+		fft.backwardsTransform(kernel);
+
+		// energy of the first window and of the lagged window at tau = 0
+		double powerTerm0 = 0;
+		for (int j = 0; j < halfSize; j++) {
+			powerTerm0 += audioBuffer[j] * audioBuffer[j];
+		}
+		double powerTermTau = powerTerm0;
+
+		yinBuffer[0] = 0;
+		for (int tau = 1; tau < halfSize; tau++) {
+			// slide the lagged window one sample to the right
+			final float leaving = audioBuffer[tau - 1];
+			final float entering = audioBuffer[tau - 1 + halfSize];
+			powerTermTau += entering * entering - leaving * leaving;
+			// the inverse transform is not normalized
+			final double correlation = kernel[2 * tau] / fftSize;
+			yinBuffer[tau] = (float) Math.max(0, powerTerm0 + powerTermTau - 2
+					* correlation);
+		}
+	}
+
+	/**
+	 * The cumulative mean normalized difference function as described in step 3
+	 * of the YIN paper. <br>
+	 * <code>
+	 * yinBuffer[0] == yinBuffer[1] = 1
+	 * </code>
+	 */
+	private void cumulativeMeanNormalizedDifference() {
+		int tau;
+		yinBuffer[0] = 1;
+		float runningSum = 0;
+		for (tau = 1; tau < yinBuffer.length; tau++) {
+			runningSum += yinBuffer[tau];
+			yinBuffer[tau] *= tau / runningSum;
+		}
+	}
+
+	/**
+	 * Implements step 4 of the AUBIO_YIN paper.
+	 */
+	private int absoluteThreshold() {
+		int tau;
+		// first two positions in yinBuffer are always 1
+		// So start at the third (index 2)
+		for (tau = 2; tau < yinBuffer.length; tau++) {
+			if (yinBuffer[tau] < threshold) {
+				while (tau + 1 < yinBuffer.length
+						&& yinBuffer[tau + 1] < yinBuffer[tau]) {
+					tau++;
+				}
+				// periodicity = 1 - aperiodicity, see Yin
+				probability = 1 - yinBuffer[tau];
+				break;
+			}
+		}
+
+		// if no pitch found, tau => -1
+		if (tau == yinBuffer.length || yinBuffer[tau] >= threshold) {
+			tau = -1;
+			probability = 0;
+		}
+
+		return tau;
+	}
+
+	/**
+	 * Implements step 5 of the AUBIO_YIN paper. It refines the estimated tau
+	 * value using parabolic interpolation. This is needed to detect higher
+	 * frequencies more precisely.
+	 *
+	 * @param tauEstimate
+	 *            the estimated tau value.
+	 * @return a better, more precise tau value.
+	 * @see Yin
+	 */
+	private float parabolicInterpolation(final int tauEstimate) {
+		final float betterTau;
+		final int x0;
+		final int x2;
+
+		if (tauEstimate < 1) {
+			x0 = tauEstimate;
+		} else {
+			x0 = tauEstimate - 1;
+		}
+		if (tauEstimate + 1 < yinBuffer.length) {
+			x2 = tauEstimate + 1;
+		} else {
+			x2 = tauEstimate;
+		}
+		if (x0 == tauEstimate) {
+			if (yinBuffer[tauEstimate] <= yinBuffer[x2]) {
+				betterTau = tauEstimate;
+			} else {
+				betterTau = x2;
+			}
+		} else if (x2 == tauEstimate) {
+			if (yinBuffer[tauEstimate] <= yinBuffer[x0]) {
+				betterTau = tauEstimate;
+			} else {
+				betterTau = x0;
+			}
+		} else {
+			float s0, s1, s2;
+			s0 = yinBuffer[x0];
+			s1 = yinBuffer[tauEstimate];
+			s2 = yinBuffer[x2];
+			float a1 = (s2 - s0);
+			betterTau = tauEstimate + a1 / (2 * (2 * s1 - s2 - s0));
+		}
+
+		return betterTau;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see be.hogent.tarsos.sampled.pitch.PurePitchDetector#getProbability()
+	 */
+	public float getProbability() {
+		return probability;
+	}
+}
@@ -235,6 +235,17 @@ public final class IPEMPitchDetection implements PitchDetector {
 		return this.mode.getParametername();
 	}
 
+	public String getParameters() {
+		final String parameters;
+		if (mode == PitchDetectionMode.IPEM_SIX) {
+			parameters = getName() + " threshold="
+					+ Configuration.getDouble(ConfKey.ipem_pitch_threshold);
+		} else {
+			parameters = getName();
+		}
+		return parameters;
+	}
+
 	public List<Annotation> getAnnotations() {
 		return this.annotations;
 	}
@@ -2,8 +2,7 @@
  */
 package be.hogent.tarsos.sampled.pitch;
 
-import java.util.ArrayList;
-import java.util.List;
+import be.hogent.tarsos.util.FFT;
 
 /**
  * <p>
@@ -26,16 +25,14 @@ import java.util.List;
  * </p>
  * </bufferCount> </blockquote>
  * <p>
- * For the moment this implementation uses the inefficient way of calculating
- * the pitch. It uses <code>O(Ww)</code> with W the window size in samples and w
- * the desired number of ACF coefficients. The implementation can be optimized
- * to <code>O((W+w)log(W+w))</code> by using an <abbr
- * title="Fast Fourier Transform">FFT</abbr> to calculate the <abbr
- * title="Auto-Correlation Function">ACF</abbr>. But I am still afraid of the
- * dark magic of the FFT and clinging to the familiar, friendly, laggard time
- * domain.
+ * The <abbr title="Auto-Correlation Function">ACF</abbr> is calculated with an
+ * <abbr title="Fast Fourier Transform">FFT</abbr> and the normalization term
+ * with a running sum, so one buffer costs <code>O((W+w)log(W+w))</code> instead
+ * of <code>O(Ww)</code> with W the window size in samples and w the desired
+ * number of ACF coefficients. Once constructed, a call to
+ * {@link #getPitch(float[])} does not allocate any memory.
  * </p>
- * 
+ *
  * @author Phillip McLeod
  * @author Joren Six
  */
@@ -57,7 +54,7 @@ public final class McLeodPitchMethod implements PurePitchDetector {
 	 * the first peak that is higher than 93% of the highest peak detected. 93%
 	 * is the default value used in the Tartini user interface.
 	 */
-	private static final double DEFAULT_CUTOFF = 0.97;
+	static final double DEFAULT_CUTOFF = 0.97;
 	/**
 	 * For performance reasons, peaks below this cutoff are not even considered.
 	 */
@@ -91,20 +88,51 @@ public final class McLeodPitchMethod implements PurePitchDetector {
 	private float turningPointX, turningPointY;
 
 	/**
-	 * A list with minimum and maximum values of the nsdf curve.
+	 * The positions of the maximum values of the nsdf curve. Only the first
+	 * <code>maxPositionsCount</code> elements are valid.
 	 */
-	private final List<Integer> maxPositions = new ArrayList<Integer>();
+	private final int[] maxPositions;
 
 	/**
-	 * A list of estimates of the period of the signal (in samples).
+	 * The number of valid elements in <code>maxPositions</code>.
 	 */
-	private final List<Float> periodEstimates = new ArrayList<Float>();
+	private int maxPositionsCount;
 
 	/**
-	 * A list of estimates of the amplitudes corresponding with the period
-	 * estimates.
+	 * Estimates of the period of the signal (in samples). Only the first
+	 * <code>estimatesCount</code> elements are valid.
 	 */
-	private final List<Float> ampEstimates = new ArrayList<Float>();
+	private final float[] periodEstimates;
+
+	/**
+	 * Estimates of the amplitudes corresponding with the period estimates.
+	 */
+	private final float[] ampEstimates;
+
+	/**
+	 * The number of valid elements in <code>periodEstimates</code> and
+	 * <code>ampEstimates</code>.
+	 */
+	private int estimatesCount;
+
+	/**
+	 * The FFT used to calculate the ACF. It is at least twice the size of the
+	 * audio buffer so the circular correlation does not wrap around.
+	 */
+	private final FFT fft;
+
+	/**
+	 * Interlaced complex buffer for the FFT. After the inverse transform the
+	 * real parts contain the (not normalized) ACF.
+	 */
+	private final float[] acfBuffer;
+
+	/**
+	 * Below this fraction of the total energy the normalization term is so
+	 * small that rounding errors of the FFT become visible in the nsdf. For
+	 * those delays the ACF is calculated directly in the time domain.
+	 */
+	private static final double FFT_PRECISION_CUTOFF = 1e-2;
 
 	/**
 	 * The probability of the last detected pitch.
@@ -152,6 +180,18 @@ public final class McLeodPitchMethod implements PurePitchDetector {
 		nsdf = new float[audioBufferSize];
 		this.cutoff = cutoffMPM;
 		probability = 0;
+
+		// there is at most one maximum between two zero crossings
+		maxPositions = new int[audioBufferSize / 2 + 1];
+		periodEstimates = new float[maxPositions.length];
+		ampEstimates = new float[maxPositions.length];
+
+		int fftSize = 1;
+		while (fftSize < 2 * audioBufferSize) {
+			fftSize <<= 1;
+		}
+		fft = new FFT(fftSize);
+		acfBuffer = new float[2 * fftSize];
 	}
 
 	// jAM
@@ -161,23 +201,72 @@ public final class McLeodPitchMethod implements PurePitchDetector {
 
 	/**
 	 * Implements the normalized square difference function. See section 4 (and
-	 * the explanation before) in the MPM article. This calculation can be
-	 * optimized by using an FFT. The results should remain the same.
-	 * 
+	 * the explanation before) in the MPM article. The ACF is calculated for
+	 * every tau at once as the inverse FFT of the power spectrum of the zero
+	 * padded buffer. The divisor m(tau) is a running sum: going from tau to
+	 * tau + 1 removes the first and the last sample of the two overlapping
+	 * windows. The results are the same as the direct calculation (within
+	 * floating point tolerance).
+	 *
 	 * @param audioBuffer
 	 *            The buffer with audio information.
 	 */
 	private void normalizedSquareDifference(final float[] audioBuffer) {
+		final int fftSize = acfBuffer.length / 2;
+
+		// zero padded, interlaced complex input
+		for (int i = 0; i < fftSize; i++) {
+			acfBuffer[2 * i] = i < audioBuffer.length ? audioBuffer[i] : 0;
+			acfBuffer[2 * i + 1] = 0;
+		}
+		fft.forwardTransform(acfBuffer);
+		// power spectrum: X * conj(X)
+		for (int i = 0; i < fftSize; i++) {
+			final float real = acfBuffer[2 * i];
+			final float imaginary = acfBuffer[2 * i + 1];
+			acfBuffer[2 * i] = real * real + imaginary * imaginary;
+			acfBuffer[2 * i + 1] = 0;
+		}
+		fft.backwardsTransform(acfBuffer);
+
+		double divisorM = 0;
+		for (int i = 0; i < audioBuffer.length; i++) {
+			divisorM += 2 * audioBuffer[i] * audioBuffer[i];
+		}
+		final double precisionCutoff = divisorM * FFT_PRECISION_CUTOFF;
+
 		for (int tau = 0; tau < audioBuffer.length; tau++) {
-			float acf = 0;
-			float divisorM = 0;
-			for (int i = 0; i < audioBuffer.length - tau; i++) {
-				acf += audioBuffer[i] * audioBuffer[i + tau];
-				divisorM += audioBuffer[i] * audioBuffer[i]
-						+ audioBuffer[i + tau] * audioBuffer[i + tau];
+			if (tau > 0) {
+				final float first = audioBuffer[tau - 1];
+				final float last = audioBuffer[audioBuffer.length - tau];
+				divisorM -= first * first + last * last;
+			}
+			final double acf;
+			if (divisorM < precisionCutoff) {
+				acf = timeDomainACF(audioBuffer, tau);
+			} else {
+				// the inverse transform is not normalized
+				acf = acfBuffer[2 * tau] / (double) fftSize;
 			}
-			nsdf[tau] = 2 * acf / divisorM;
+			nsdf[tau] = (float) (2 * acf / divisorM);
+		}
+	}
+
+	/**
+	 * Calculates one ACF coefficient directly in the time domain.
+	 *
+	 * @param audioBuffer
+	 *            The buffer with audio information.
+	 * @param tau
+	 *            The delay.
+	 * @return The ACF coefficient for the delay tau.
+	 */
+	private float timeDomainACF(final float[] audioBuffer, final int tau) {
+		float acf = 0;
+		for (int i = 0; i < audioBuffer.length - tau; i++) {
+			acf += audioBuffer[i] * audioBuffer[i + tau];
 		}
+		return acf;
 	}
 
 	/*
@@ -188,11 +277,9 @@ public final class McLeodPitchMethod implements PurePitchDetector {
 	public float getPitch(final float[] audioBuffer) {
 		final float pitch;
 
-		// 0. Clear previous results (Is this faster than initializing a list
-		// again and again?)
-		maxPositions.clear();
-		periodEstimates.clear();
-		ampEstimates.clear();
+		// 0. Clear previous results
+		maxPositionsCount = 0;
+		estimatesCount = 0;
 
 		// 1. Calculate the normalized square difference for each Tau value.
 		normalizedSquareDifference(audioBuffer);
@@ -201,7 +288,8 @@ public final class McLeodPitchMethod implements PurePitchDetector {
 
 		double highestAmplitude = Double.NEGATIVE_INFINITY;
 
-		for (final Integer tau : maxPositions) {
+		for (int i = 0; i < maxPositionsCount; i++) {
+			final int tau = maxPositions[i];
 			// make sure every annotation has a probability attached
 			highestAmplitude = Math.max(highestAmplitude, nsdf[tau]);
 
@@ -209,14 +297,15 @@ public final class McLeodPitchMethod implements PurePitchDetector {
 				// calculates turningPointX and Y
 				prabolicInterpolation(tau);
 				// store the turning points
-				ampEstimates.add(turningPointY);
-				periodEstimates.add(turningPointX);
+				ampEstimates[estimatesCount] = turningPointY;
+				periodEstimates[estimatesCount] = turningPointX;
+				estimatesCount++;
 				// remember the highest amplitude
 				highestAmplitude = Math.max(highestAmplitude, turningPointY);
 			}
 		}
 
-		if (periodEstimates.isEmpty()) {
+		if (estimatesCount == 0) {
 			pitch = -1;
 		} else {
 			// use the overall maximum to calculate a cutoff.
@@ -226,14 +315,14 @@ public final class McLeodPitchMethod implements PurePitchDetector {
 
 			// find first period above or equal to cutoff
 			int periodIndex = 0;
-			for (int i = 0; i < ampEstimates.size(); i++) {
-				if (ampEstimates.get(i) >= actualCutoff) {
+			for (int i = 0; i < estimatesCount; i++) {
+				if (ampEstimates[i] >= actualCutoff) {
 					periodIndex = i;
 					break;
 				}
 			}
 
-			final double period = periodEstimates.get(periodIndex);
+			final double period = periodEstimates[periodIndex];
 			final float pitchEstimate = (float) (sampleRate / period);
 			if (pitchEstimate > LOWER_PITCH_CUTOFF) {
 				pitch = pitchEstimate;
@@ -364,7 +453,7 @@ public final class McLeodPitchMethod implements PurePitchDetector {
 			if (pos < nsdf.length - 1 && nsdf[pos] <= 0) {
 				// if there was a maximum add it to the list of maxima
 				if (curMaxPos > 0) {
-					maxPositions.add(curMaxPos);
+					maxPositions[maxPositionsCount++] = curMaxPos;
 					curMaxPos = 0; // clear the maximum position, so we start
 					// looking for a new ones
 				}
@@ -374,7 +463,7 @@ public final class McLeodPitchMethod implements PurePitchDetector {
 			}
 		}
 		if (curMaxPos > 0) { // if there was a maximum in the last part
-			maxPositions.add(curMaxPos); // add it to the vector of maxima
+			maxPositions[maxPositionsCount++] = curMaxPos; // add it to the maxima
 		}
 	}
 
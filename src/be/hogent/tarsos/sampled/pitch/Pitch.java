@@ -159,37 +159,23 @@ public final class Pitch {
 	
 	/************************ changes for jAM *************************/
 	// jAM
+	/**
+	 * @return The lowest frequency with the same note name (MIDI key) as this
+	 *         pitch: half a semitone below the key.
+	 */
 	public double getLowestPossible() {
-		String name = noteName();
-		double lastPitch = 0;
-
-		for (double i = pitchInHertz; i > 0; i -= 0.1) {
-			Pitch tmp = Pitch.getInstance(PitchUnit.HERTZ, i);
-			// System.out.println(i + " - " + tmp.noteName() + " - " + name);
-
-			if (!name.equals(tmp.noteName()))
-				return lastPitch;
-
-			lastPitch = i;
-		}
-		return -1;
+		final int midiKey = (int) getPitch(PitchUnit.MIDI_KEY);
+		return PitchConverter.midiCentToHertz(midiKey - 0.5);
 	}
 
 	// jAM
+	/**
+	 * @return The highest frequency with the same note name (MIDI key) as
+	 *         this pitch: half a semitone above the key.
+	 */
 	public double getHighestPossible() {
-		String name = noteName();
-		double lastPitch = 0;
-
-		for (double i = pitchInHertz; i < pitchInHertz + 100; i += 0.1) {
-			Pitch tmp = Pitch.getInstance(PitchUnit.HERTZ, i);
-			// System.out.println(i + " - " + tmp.noteName() + " - " + name);
-
-			if (!name.equals(tmp.noteName()))
-				return lastPitch;
-
-			lastPitch = i;
-		}
-		return -1;
+		final int midiKey = (int) getPitch(PitchUnit.MIDI_KEY);
+		return PitchConverter.midiCentToHertz(midiKey + 0.5);
 	}
 	// public static void main(String[] args) {
 	// Pitch p = Pitch.getInstance(PitchUnit.HERTZ, 440);
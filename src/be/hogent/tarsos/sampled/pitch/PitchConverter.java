@@ -32,6 +32,77 @@ public final class PitchConverter {
 	 */
 	private static final double LOG_TWO = Math.log(2.0);
 
+	/**
+	 * The number of bits of the mantissa used as index in the log2 table. The
+	 * table has 2^8+1 entries, with linear interpolation between two entries
+	 * the error is smaller than 3e-6 octaves (0.004 cent).
+	 */
+	private static final int LOG2_TABLE_BITS = 8;
+
+	/**
+	 * The remaining bits of the mantissa, used for the interpolation.
+	 */
+	private static final int LOG2_FRACTION_BITS = 52 - LOG2_TABLE_BITS;
+
+	/**
+	 * log2(1 + i / 2^LOG2_TABLE_BITS) for every i in [0, 2^LOG2_TABLE_BITS].
+	 */
+	private static final double[] LOG2_TABLE = new double[(1 << LOG2_TABLE_BITS) + 1];
+
+	static {
+		for (int i = 0; i < LOG2_TABLE.length; i++) {
+			LOG2_TABLE[i] = Math.log(1 + i / (double) (1 << LOG2_TABLE_BITS))
+					/ LOG_TWO;
+		}
+	}
+
+	/**
+	 * The smallest normal double (Double.MIN_NORMAL, which is Java 6).
+	 */
+	private static final double MIN_NORMAL = 0x1.0p-1022;
+
+	/**
+	 * MIDI cent = 12 * log2(f) + MIDI_CENT_OFFSET.
+	 */
+	private static final double MIDI_CENT_OFFSET = 69 - 12 * Math.log(440)
+			/ LOG_TWO;
+
+	/**
+	 * Absolute cent = 1200 * log2(f) - ABSOLUTE_CENT_OFFSET.
+	 */
+	private static final double ABSOLUTE_CENT_OFFSET = 1200 * Math
+			.log(REF_FREQ) / LOG_TWO;
+
+	/**
+	 * An approximation of the base 2 logarithm without Math.log: the exponent
+	 * of the double is the integer part, the logarithm of the mantissa is
+	 * interpolated in a table. The absolute error is smaller than 3e-6, which
+	 * is 0.004 cent when used for pitch.
+	 * 
+	 * @param value
+	 *            A positive, finite and normal (not denormalized) value.
+	 *            Other values give meaningless results, the callers in this
+	 *            class check the range.
+	 * @return An approximation of log2(value).
+	 */
+	public static double fastLog2(final double value) {
+		final long bits = Double.doubleToRawLongBits(value);
+		final int exponent = (int) (bits >>> 52) - 1023;
+		final long mantissa = bits & 0xFFFFFFFFFFFFFL;
+		final int index = (int) (mantissa >>> LOG2_FRACTION_BITS);
+		final double fraction = (mantissa & ((1L << LOG2_FRACTION_BITS) - 1))
+				/ (double) (1L << LOG2_FRACTION_BITS);
+		final double low = LOG2_TABLE[index];
+		return exponent + low + fraction * (LOG2_TABLE[index + 1] - low);
+	}
+
+	/**
+	 * @return True if the value can be used with {@link #fastLog2(double)}.
+	 */
+	private static boolean isFastLog2Defined(final double value) {
+		return value >= MIN_NORMAL && value <= Double.MAX_VALUE;
+	}
+
 	/**
 	 * A MIDI key is an integer between 0 and 127, inclusive. Within a certain
 	 * range every pitch is mapped to a MIDI key. If a value outside the range
@@ -44,7 +115,7 @@ public final class PitchConverter {
 	 *                if the hertzValue does not fall within the range of valid
 	 *                MIDI key frequencies.
 	 */
-	public static int hertzToMidiKey(final Double hertzValue) {
+	public static int hertzToMidiKey(final double hertzValue) {
 		final int midiKey = (int) Math.round(hertzToMidiCent(hertzValue));
 		if (midiKey < 0 || midiKey > 127) {
 			// TODO
@@ -56,6 +127,20 @@ public final class PitchConverter {
 		return midiKey;
 	}
 
+	/**
+	 * Like {@link #hertzToMidiKey(double)} but with
+	 * {@link #fastLog2(double)}, for conversions of every buffer or every
+	 * annotation. The result only differs if the pitch is within 0.004 cent
+	 * of the border between two keys.
+	 * 
+	 * @param hertzValue
+	 *            The pitch in Hertz.
+	 * @return An integer representing the closest midi key.
+	 */
+	public static int hertzToMidiKeyFast(final double hertzValue) {
+		return (int) Math.round(hertzToMidiCentFast(hertzValue));
+	}
+
 	/**
 	 * Calculates the frequency (Hz) for a MIDI key.
 	 * 
@@ -130,6 +215,22 @@ public final class PitchConverter {
 		return pitchInAbsCent;
 	}
 
+	/**
+	 * Like {@link #hertzToAbsoluteCent(double)} but with
+	 * {@link #fastLog2(double)}: the error is smaller than 0.004 cent.
+	 * 
+	 * @param hertzValue
+	 *            The pitch in Hertz.
+	 * @return The value in absolute cents using the configured reference
+	 *         frequency
+	 */
+	public static double hertzToAbsoluteCentFast(final double hertzValue) {
+		if (!isFastLog2Defined(hertzValue)) {
+			return hertzToAbsoluteCent(hertzValue);
+		}
+		return 1200 * fastLog2(hertzValue) - ABSOLUTE_CENT_OFFSET;
+	}
+
 	/**
 	 * Returns the frequency (Hz) of an absolute cent value. This calculation
 	 * uses a configured reference frequency.
@@ -161,6 +262,21 @@ public final class PitchConverter {
 		return pitchInMidiCent;
 	}
 
+	/**
+	 * Like {@link #hertzToMidiCent(double)} but with
+	 * {@link #fastLog2(double)}: the error is smaller than 0.004 cent.
+	 * 
+	 * @param hertzValue
+	 *            The pitch in Hertz.
+	 * @return The pitch in MIDI cent.
+	 */
+	public static double hertzToMidiCentFast(final double hertzValue) {
+		if (!isFastLog2Defined(hertzValue)) {
+			return hertzToMidiCent(hertzValue);
+		}
+		return 12 * fastLog2(hertzValue) + MIDI_CENT_OFFSET;
+	}
+
 	/**
 	 * Converts a MIDI CENT frequency to a frequency in Hz.
 	 * 
@@ -59,6 +59,12 @@ public enum PitchDetectionMode {
 	 */
 	TARSOS_YIN("tarsos_yin"),
 
+	/**
+	 * The pure java YIN implementation of Tarsos with an FFT based difference
+	 * function. Should yield the same results as TARSOS_YIN, only faster.
+	 */
+	TARSOS_FAST_YIN("tarsos_fast_yin"),
+
 	/**
 	 * The pure java MPM (Tartini pitch tracker) implementation of Tarsos.
 	 */
@@ -106,6 +112,9 @@ public enum PitchDetectionMode {
 		case TARSOS_YIN:
 			detector = new TarsosPitchDetection(audioFile, this);
 			break;
+		case TARSOS_FAST_YIN:
+			detector = new TarsosPitchDetection(audioFile, this);
+			break;
 		case TARSOS_MPM:
 			detector = new TarsosPitchDetection(audioFile, this);
 			break;
@@ -31,4 +31,11 @@ public interface PitchDetector {
 	 * @return the name of the detector possibly with parameters e.g. aubio_YIN
 	 */
 	String getName();
+
+	/**
+	 * @return Every setting that influences the annotations (e.g. buffer size,
+	 *         overlap and thresholds) in a human readable form. Cached
+	 *         annotations are only reused when the parameters are the same.
+	 */
+	String getParameters();
 }
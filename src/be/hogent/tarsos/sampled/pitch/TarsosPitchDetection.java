@@ -4,6 +4,7 @@ import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Locale;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -73,12 +74,37 @@ public final class TarsosPitchDetection implements PitchDetector {
 		final String name;
 		if (PitchDetectionMode.TARSOS_MPM == detectionMode) {
 			name = "tarsos_mpm";
+		} else if (PitchDetectionMode.TARSOS_FAST_YIN == detectionMode) {
+			name = "tarsos_fast_yin";
 		} else {
 			name = "tarsos_yin";
 		}
 		return name;
 	}
 
+	public String getParameters() {
+		final int bufferSize;
+		final int overlapSize;
+		final double threshold;
+		if (PitchDetectionMode.TARSOS_MPM == detectionMode) {
+			bufferSize = McLeodPitchMethod.DEFAULT_BUFFER_SIZE;
+			overlapSize = McLeodPitchMethod.DEFAULT_OVERLAP;
+			threshold = McLeodPitchMethod.DEFAULT_CUTOFF;
+		} else if (PitchDetectionMode.TARSOS_FAST_YIN == detectionMode) {
+			bufferSize = Yin.DEFAULT_BUFFER_SIZE;
+			overlapSize = Yin.DEFAULT_OVERLAP;
+			threshold = FastYin.DEFAULT_THRESHOLD;
+		} else {
+			bufferSize = Yin.DEFAULT_BUFFER_SIZE;
+			overlapSize = Yin.DEFAULT_OVERLAP;
+			threshold = Yin.DEFAULT_THRESHOLD;
+		}
+		return String.format(Locale.US,
+				"%s buffer=%d overlap=%d threshold=%s silence=%s", getName(),
+				bufferSize, overlapSize, threshold,
+				Configuration.getDouble(ConfKey.silence_threshold));
+	}
+
 	public List<Annotation> getAnnotations() {
 		return annotations;
 	}
@@ -131,6 +157,10 @@ public final class TarsosPitchDetection implements PitchDetector {
 			pureDetector = new McLeodPitchMethod(sampleRate);
 			bufferSize = McLeodPitchMethod.DEFAULT_BUFFER_SIZE;
 			overlapSize = McLeodPitchMethod.DEFAULT_OVERLAP;
+		} else if (PitchDetectionMode.TARSOS_FAST_YIN == detectionMode) {
+			pureDetector = new FastYin(sampleRate, Yin.DEFAULT_BUFFER_SIZE);
+			bufferSize = Yin.DEFAULT_BUFFER_SIZE;
+			overlapSize = Yin.DEFAULT_OVERLAP;
 		} else {
 			pureDetector = new Yin(sampleRate, Yin.DEFAULT_BUFFER_SIZE);
 			bufferSize = Yin.DEFAULT_BUFFER_SIZE;
@@ -8,6 +8,7 @@ import java.util.logging.Logger;
 import be.hogent.tarsos.util.AudioFile;
 import be.hogent.tarsos.util.Execute;
 import be.hogent.tarsos.util.FileUtils;
+import be.hogent.tarsos.util.StringUtils;
 
 public final class VampPitchDetection implements PitchDetector {
 	private final List<Annotation> annotations;
@@ -103,6 +104,17 @@ public final class VampPitchDetection implements PitchDetector {
 		return "vamp_" + mode.getParametername();
 	}
 
+	/**
+	 * The parameters of a vamp plug-in are defined in its settings file, which
+	 * can be edited: the hash of the settings is part of the parameters.
+	 */
+	public String getParameters() {
+		final String settingsFile = FileUtils.combine(
+				FileUtils.temporaryDirectory(), mode.getParametername() + ".n3");
+		return getName() + " settings="
+				+ StringUtils.messageDigestFive(FileUtils.readFile(settingsFile));
+	}
+
 	@Override
 	public double progress() {
 		return -1;
@@ -127,6 +127,12 @@ public enum ConfKey {
 	 */
 	silence_threshold,
 
+	/**
+	 * The maximum size of the binary annotation cache in the data directory,
+	 * in megabytes. The least recently used annotations are removed first.
+	 */
+	annotation_cache_size,
+
 	/**
 	 * The marks used in plots the value should be one of the following: none,
 	 * points, dots, various, bigdots or pixels. The default value is points.
@@ -5,7 +5,14 @@ package be.hogent.tarsos.util.histogram;
  * 
  * @author Joren Six
  */
-public final class BhattacharyaDistance implements HistogramCorrelation {
+public final class BhattacharyaDistance implements FFTCorrelation {
+	/*
+	 * sqrt(a * b) = sqrt(a) * sqrt(b): the logarithm of the cross correlation
+	 * of the square roots of the counts.
+	 */
+	public double weight(final double count) {
+		return Math.sqrt(count);
+	}
 
 	public double correlation(final Histogram first, final int displacement,
 			final Histogram second) {
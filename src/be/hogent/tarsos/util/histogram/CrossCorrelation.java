@@ -3,11 +3,15 @@ package be.hogent.tarsos.util.histogram;
 /**
  * Crosscorrelation as used in Baris Bozkurt's 'An automatic pitch analysis
  * method for Turkish maquam music'. The measure is defined for modulo type
- * histograms!
+ * histograms! It is an {@link FFTCorrelation}.
  * 
  * @author Joren Six
  */
-public final class CrossCorrelation implements HistogramCorrelation {
+public final class CrossCorrelation implements FFTCorrelation {
+	public double weight(final double count) {
+		return count;
+	}
+
 	public double correlation(final Histogram thisHistogam,
 			final int displacement, final Histogram otherHistogram) {
 		// number of bins (classes)
@@ -1,11 +1,20 @@
 package be.hogent.tarsos.util.histogram;
 
 /**
- * Euclidean Distance (L2 norm) for modulo type histograms.
+ * Euclidean Distance (L2 norm) for modulo type histograms. The distance is a
+ * function of the cross correlation so it is an {@link FFTCorrelation}.
  * 
  * @author Joren Six
  */
-public final class EuclideanDistance implements HistogramCorrelation {
+public final class EuclideanDistance implements FFTCorrelation {
+	/*
+	 * The sum of (a[i] - b[i + d])^2 is sum a^2 + sum b^2 - 2 * sum a[i]
+	 * b[i+d]. The first two terms do not depend on the displacement so the
+	 * distance decreases when the cross correlation increases.
+	 */
+	public double weight(final double count) {
+		return count;
+	}
 
 	public double correlation(final Histogram thisHistogam,
 			final int displacement, final Histogram otherHistogram) {
@@ -0,0 +1,26 @@
+package be.hogent.tarsos.util.histogram;
+
+/**
+ * A histogram correlation that depends on the displacement only through the
+ * circular cross correlation of the (weighted) bin counts:
+ *
+ * <pre>
+ * x(d) = sum over i of weight(a[i]) * weight(b[(i + d) % n])
+ * </pre>
+ *
+ * The correlation must be a monotonically increasing function of x(d). This
+ * makes it possible to calculate x for every displacement at once with an FFT
+ * in O(n log n) instead of O(n&sup2;), see
+ * {@link Histogram#displacementForOptimalCorrelation(Histogram, CorrelationMeasure)}
+ * .
+ *
+ * @author Joren Six
+ */
+public interface FFTCorrelation extends HistogramCorrelation {
+	/**
+	 * @param count
+	 *            the number of values in a bin
+	 * @return the weight of the bin in the cross correlation
+	 */
+	double weight(double count);
+}
@@ -1,15 +1,17 @@
 package be.hogent.tarsos.util.histogram;
 
 import java.text.NumberFormat;
-import java.util.ArrayList;
+import java.util.AbstractSet;
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
 import java.util.Set;
-import java.util.TreeMap;
 import java.util.logging.Logger;
 
 import org.apache.commons.math.stat.StatUtils;
 
+import be.hogent.tarsos.util.FFT;
 import be.hogent.tarsos.util.FileUtils;
 import be.hogent.tarsos.util.SimplePlot;
 
@@ -21,10 +23,11 @@ import be.hogent.tarsos.util.SimplePlot;
  * {[0,1[;[1,2[;[2,3[;[3,4];[4,5[} with [0,1[ meaning the interval between 0
  * inclusive and 1 exclusive.
  * <p>
- * The histogram uses a red and black tree as underlying structure: Search,
- * insert and delete are O(LOG n). The tree keeps the keys in order and makes
- * iteration (in order) easy. Optimization is possible by replacing the tree
- * with arrays.
+ * The histogram uses two arrays as underlying structure: the sorted keys and
+ * the counts with the same index. A value is mapped to its key and the index
+ * of the key is calculated directly from the class width, so adding a value
+ * is O(1) and does not allocate. Operations on the whole histogram work on
+ * the count array in place.
  * </p>
  * <p>
  * The histogram uses doubles as key values. Java doubles are prone to rounding
@@ -50,11 +53,18 @@ public class Histogram implements Cloneable {
 	 */
 	private final int numberOfClasses;
 	/**
-	 * A red black tree backing the frequency table, easy to iterate (in order)
-	 * TODO Optimization: serious optimization possible by using a plain array
-	 * (or two).
+	 * The keys (class middles) in ascending order.
 	 */
-	private final TreeMap<Double, Long> freqTable;
+	private final double[] keys;
+	/**
+	 * The frequency table: counts[i] is the number of items in the class with
+	 * key keys[i].
+	 */
+	private long[] counts;
+	/**
+	 * Read only view on the keys, see {@link #keySet()}.
+	 */
+	private final Set<Double> keySetView;
 	/**
 	 * The starting value != the first class middle start == the first class
 	 * middle - classWidth / 2.
@@ -122,7 +132,6 @@ public class Histogram implements Cloneable {
 				/ totalClasses);
 		this.start = startVal;
 		this.stop = stopVal;
-		this.freqTable = new TreeMap<Double, Long>();
 		this.wraps = wrapping;
 		this.ignoreValuesOutsideRange = ignoreOutsideRange;
 
@@ -134,14 +143,46 @@ public class Histogram implements Cloneable {
 		} else {
 			stopValue = lastKey + getClassWidth() / 2;
 		}
-		freqTable
-				.put(preventRoundingErrors(startVal + getClassWidth() / 2), 0L);
+		final double firstKey = preventRoundingErrors(startVal
+				+ getClassWidth() / 2);
+		double[] candidates = new double[totalClasses + 2];
+		int size = 0;
+		candidates[size++] = firstKey;
+		// valueToKey needs the smallest key when wrapping
+		double smallestKey = firstKey;
 		for (double current = startVal + getClassWidth() / 2; current <= stopValue;) {
-			freqTable.put(valueToKey(current), 0L);
+			if (size == candidates.length) {
+				candidates = copyOf(candidates, size * 2);
+			}
+			final double key = valueToKey(current, smallestKey);
+			candidates[size++] = key;
+			smallestKey = Math.min(smallestKey, key);
 			current = current + getClassWidth();
 		}
 
-		this.numberOfClasses = freqTable.keySet().size();
+		// sort and remove duplicate keys
+		Arrays.sort(candidates, 0, size);
+		int unique = 0;
+		for (int i = 0; i < size; i++) {
+			if (unique == 0 || candidates[i] != candidates[unique - 1]) {
+				candidates[unique++] = candidates[i];
+			}
+		}
+
+		this.keys = copyOf(candidates, unique);
+		this.counts = new long[unique];
+		this.numberOfClasses = unique;
+		this.keySetView = new KeySet();
+	}
+
+	/**
+	 * Copies the first values of an array into a new array of the given
+	 * length, padded with zeros (Arrays.copyOf is not available in Java 5).
+	 */
+	private static double[] copyOf(final double[] original, final int length) {
+		final double[] copy = new double[length];
+		System.arraycopy(original, 0, copy, 0, Math.min(original.length, length));
+		return copy;
 	}
 
 	/**
@@ -249,12 +290,68 @@ public class Histogram implements Cloneable {
 	}
 
 	/**
-	 * @return the set with histogram keys; Do not add keys to the set directly.
-	 *         Use histogram methods instead. For performance reasons it is not
-	 *         wrapped in an immutable set so handle with care.
+	 * @return the set with histogram keys, in ascending order. The set is a
+	 *         read only view on the keys; use histogram methods to change the
+	 *         histogram.
 	 */
 	public final Set<Double> keySet() {
-		return freqTable.keySet();
+		return keySetView;
+	}
+
+	/**
+	 * A read only view on the keys array.
+	 */
+	private final class KeySet extends AbstractSet<Double> {
+		@Override
+		public Iterator<Double> iterator() {
+			return new Iterator<Double>() {
+				private int index = 0;
+
+				public boolean hasNext() {
+					return index < keys.length;
+				}
+
+				public Double next() {
+					if (index >= keys.length) {
+						throw new NoSuchElementException();
+					}
+					return keys[index++];
+				}
+
+				public void remove() {
+					throw new UnsupportedOperationException(
+							"Keys can not be removed from a histogram.");
+				}
+			};
+		}
+
+		@Override
+		public int size() {
+			return keys.length;
+		}
+
+		@Override
+		public boolean contains(final Object o) {
+			return o instanceof Double && indexOfKey((Double) o) >= 0;
+		}
+	}
+
+	/**
+	 * Returns the index of a key in the keys array. The index is calculated
+	 * with the class width, if that fails (e.g. a key which is not in the
+	 * histogram) the array is searched.
+	 * 
+	 * @param key
+	 *            the key, as returned by valueToKey
+	 * @return the index of the key or -1 if the histogram has no such key
+	 */
+	private int indexOfKey(final double key) {
+		final int guess = (int) Math.round((key - keys[0]) / classWidth);
+		if (guess >= 0 && guess < keys.length && keys[guess] == key) {
+			return guess;
+		}
+		final int index = Arrays.binarySearch(keys, key);
+		return index >= 0 ? index : -1;
 	}
 
 	/**
@@ -280,12 +377,11 @@ public class Histogram implements Cloneable {
 		}
 
 		if (value > 0) {
-			final double key = valueToKey(value);
-			final Long count = freqTable.get(key);
-			assert count != null : "All key values should be initialized, "
-					+ key + " is not.";
-			if (count != null) {
-				freqTable.put(key, Long.valueOf(count.longValue() + 1));
+			final int index = indexOfKey(valueToKey(value));
+			assert index >= 0 : "All key values should be initialized, "
+					+ valueToKey(value) + " is not.";
+			if (index >= 0) {
+				counts[index]++;
 			}
 		} else {
 			LOG.warning("Using values below zero in is not tested, "
@@ -332,6 +428,14 @@ public class Histogram implements Cloneable {
 	 * @return the key closest to the value
 	 */
 	private double valueToKey(final double value) {
+		return valueToKey(value, keys[0]);
+	}
+
+	/**
+	 * @param firstKey
+	 *            the smallest key of the histogram
+	 */
+	private double valueToKey(final double value, final double firstKey) {
 		// TODO remove the value below zero limitation
 		// by changing the wraps modulo calculation and test
 		if (value < 0) {
@@ -342,7 +446,7 @@ public class Histogram implements Cloneable {
 		double roundedValue = value;
 		if (wraps) {
 			final double interval = stop - start;
-			while (roundedValue < freqTable.firstKey()) {
+			while (roundedValue < firstKey) {
 				roundedValue = preventRoundingErrors(roundedValue + interval);
 			}
 			roundedValue = preventRoundingErrors(start + (roundedValue - start)
@@ -354,8 +458,8 @@ public class Histogram implements Cloneable {
 		final double classes = Math.floor((roundedValue + start) / classWidth);
 		final double offset = classWidth / 2 - start;
 		final double key = preventRoundingErrors(classes * classWidth + offset);
-		// assert key >= freqTable.firstKey();
-		// assert key <= freqTable.lastKey();
+		// assert key >= keys[0];
+		// assert key <= keys[keys.length - 1];
 		return key;
 	}
 
@@ -367,18 +471,18 @@ public class Histogram implements Cloneable {
 	 * @return the frequency of v.
 	 */
 	public final long getCount(final double value) {
-		final double key = valueToKey(value);
+		final int index = indexOfKey(valueToKey(value));
 		long result = 0;
-		final Long count = freqTable.get(key);
-		if (count != null) {
-			result = count.longValue();
+		if (index >= 0) {
+			result = counts[index];
 		}
 		return result;
 	}
 
 	/**
 	 * Sets the number of values for a key (bin) The value is automatically
-	 * mapped to a key.
+	 * mapped to a key. Values which are not mapped to one of the keys of the
+	 * histogram are ignored.
 	 * 
 	 * @param value
 	 *            the value mapped to a key of the class to set the count for.
@@ -386,8 +490,10 @@ public class Histogram implements Cloneable {
 	 *            the number of items in the bin
 	 */
 	public final void setCount(final double value, final long count) {
-		final double key = valueToKey(value);
-		freqTable.put(key, count);
+		final int index = indexOfKey(valueToKey(value));
+		if (index >= 0) {
+			counts[index] = count;
+		}
 	}
 
 	/**
@@ -411,7 +517,7 @@ public class Histogram implements Cloneable {
 	 * @return the starting value
 	 */
 	public final double getStart() {
-		// assert Math.abs(start - freqTable.firstKey() - classWidth / 2.0) <
+		// assert Math.abs(start - keys[0] - classWidth / 2.0) <
 		// 0.0001;
 		return start;
 	}
@@ -423,7 +529,7 @@ public class Histogram implements Cloneable {
 	 * @return the stop value
 	 */
 	public double getStop() {
-		// assert Math.abs(stop - freqTable.lastKey() + classWidth / 2.0) <
+		// assert Math.abs(stop - keys[keys.length - 1] + classWidth / 2.0) <
 		// 0.001;
 		// stop is cached for performance reasons
 		return stop;
@@ -443,7 +549,7 @@ public class Histogram implements Cloneable {
 	 *         {@link Histogram#lastValidValue()}]
 	 */
 	private double firstValidValue() {
-		return this.freqTable.firstKey() - classWidth / 2.0;
+		return keys[0] - classWidth / 2.0;
 	}
 
 	/**
@@ -452,7 +558,7 @@ public class Histogram implements Cloneable {
 	 *         {@link Histogram#lastValidValue()}]
 	 */
 	private double lastValidValue() {
-		return this.freqTable.lastKey() + classWidth / 2.0;
+		return keys[keys.length - 1] + classWidth / 2.0;
 	}
 
 	/**
@@ -483,38 +589,30 @@ public class Histogram implements Cloneable {
 	 * @return the proportion of values equal to v
 	 */
 	public long getCumFreq(final Double v) {
-		long cumulativeFreq = -1;
+		final long cumulativeFreq;
 		if (getSumFreq() == 0) {
 			cumulativeFreq = 0;
-		} else if (v.compareTo(freqTable.firstKey()) < 0) {
+		} else if (v.compareTo(keys[0]) < 0) {
 			cumulativeFreq = 0;
-		} else if (v.compareTo(freqTable.lastKey()) >= 0) {
+		} else if (v.compareTo(keys[keys.length - 1]) >= 0) {
 			cumulativeFreq = getSumFreq();
 		} else {
-
 			// the frequency of this key
 			long result = 0;
-			final Long value = freqTable.get(v);
-			if (value != null) {
-				result = value.longValue();
+			final int index = Arrays.binarySearch(keys, v);
+			final int smallerKeys;
+			if (index >= 0) {
+				result = counts[index];
+				smallerKeys = index;
+			} else {
+				smallerKeys = -index - 1;
 			}
 
 			// add the frequencies of values smaller than this key
-			final Iterator<Double> values = freqTable.keySet().iterator();
-			while (values.hasNext()) {
-				final Double nextValue = values.next();
-				if (v.compareTo(nextValue) > 0) {
-					result += getCount(nextValue);
-				} else {
-					cumulativeFreq = result;
-					break;
-				}
+			for (int i = 0; i < smallerKeys; i++) {
+				result += counts[i];
 			}
-		}
-		if (cumulativeFreq == -1) {
-			throw new AssertionError(
-					"The key is greather than te last key but this is impossible."
-							+ " It should have been returned already.");
+			cumulativeFreq = result;
 		}
 		return cumulativeFreq;
 	}
@@ -549,9 +647,8 @@ public class Histogram implements Cloneable {
 	 */
 	public long getSumFreq() {
 		long result = 0;
-		final Iterator<Long> iterator = freqTable.values().iterator();
-		while (iterator.hasNext()) {
-			result += iterator.next().longValue();
+		for (final long count : counts) {
+			result += count;
 		}
 		return result;
 	}
@@ -564,9 +661,8 @@ public class Histogram implements Cloneable {
 	 */
 	public long getAbsoluteSumFreq() {
 		long result = 0;
-		final Iterator<Long> iterator = freqTable.values().iterator();
-		while (iterator.hasNext()) {
-			result += Math.abs(iterator.next().longValue());
+		for (final long count : counts) {
+			result += Math.abs(count);
 		}
 		return result;
 	}
@@ -632,10 +728,8 @@ public class Histogram implements Cloneable {
 	 */
 	public double getMean() {
 		final double[] binCounts = new double[this.getNumberOfClasses() + 1];
-		int i = 0;
-		for (final double key : this.keySet()) {
-			binCounts[i] = this.getCount(key);
-			i++;
+		for (int i = 0; i < counts.length; i++) {
+			binCounts[i] = counts[i];
 		}
 		return StatUtils.mean(binCounts);
 	}
@@ -668,7 +762,7 @@ public class Histogram implements Cloneable {
 		if (asciiArt) {
 			final StringBuffer outBuffer = new StringBuffer();
 			outBuffer.append('\n');
-			final Iterator<Double> iter = freqTable.keySet().iterator();
+			final Iterator<Double> iter = keySet().iterator();
 			while (iter.hasNext()) {
 				final Double value = iter.next();
 				outBuffer.append(value).append("\t\t|");
@@ -683,7 +777,7 @@ public class Histogram implements Cloneable {
 			final NumberFormat nf = NumberFormat.getPercentInstance();
 			final StringBuffer outBuffer = new StringBuffer();
 			outBuffer.append("\nValue \t Freq. \t Pct. \t Cum Pct. \n");
-			final Iterator<Double> iter = freqTable.keySet().iterator();
+			final Iterator<Double> iter = keySet().iterator();
 			while (iter.hasNext()) {
 				final Double value = iter.next();
 				outBuffer.append(value);
@@ -716,14 +810,12 @@ public class Histogram implements Cloneable {
 	 * @return a Histogram with normalized peak.
 	 */
 	public Histogram normalize() {
-		final List<Long> normalizedCounts = new ArrayList<Long>();
-		for (final double key : freqTable.keySet()) {
-			normalizedCounts.add((long) (getPct(key) * 10000));
-		}
-		int index = 0;
-		for (final double key : freqTable.keySet()) {
-			this.setCount(key, normalizedCounts.get(index));
-			index++;
+		final long sumFreq = getSumFreq();
+		for (int i = 0; i < counts.length; i++) {
+			// same as getPct: NaN if the histogram is empty, cast to 0
+			final double percentage = sumFreq == 0 ? Double.NaN
+					: (double) counts[i] / (double) sumFreq;
+			counts[i] = (long) (percentage * 10000);
 		}
 		return this;
 	}
@@ -744,8 +836,8 @@ public class Histogram implements Cloneable {
 	public Histogram addToEachBin(final long value) {
 		// do nothing if value == 0
 		if (value != 0) {
-			for (final double key : freqTable.keySet()) {
-				this.setCount(key, getCount(key) + value);
+			for (int i = 0; i < counts.length; i++) {
+				counts[i] += value;
 			}
 		}
 		return this;
@@ -771,8 +863,8 @@ public class Histogram implements Cloneable {
 	 */
 	public Histogram baselineHistogram() {
 		long smallestValue = Long.MAX_VALUE;
-		for (final double key : freqTable.keySet()) {
-			smallestValue = Math.min(getCount(key), smallestValue);
+		for (final long count : counts) {
+			smallestValue = Math.min(count, smallestValue);
 		}
 		final long valueToAdd = (long) -1.0 * smallestValue;
 		return addToEachBin(valueToAdd);
@@ -794,11 +886,13 @@ public class Histogram implements Cloneable {
 	 *         the bins.
 	 */
 	public Histogram add(final Histogram other) {
-		assert freqTable.keySet().size() == other.keySet().size();
+		assert numberOfClasses == other.numberOfClasses;
 		assert start == other.start;
 		assert stop == other.stop;
-		for (final double key : freqTable.keySet()) {
-			this.setCount(key, this.getCount(key) + other.getCount(key));
+		final boolean sameClasses = sameClasses(other);
+		for (int i = 0; i < counts.length; i++) {
+			counts[i] += sameClasses ? other.counts[i] : other
+					.getCount(keys[i]);
 		}
 		return this;
 	}
@@ -810,16 +904,29 @@ public class Histogram implements Cloneable {
 	 * @return
 	 */
 	public Histogram max(final Histogram other) {
-		assert freqTable.keySet().size() == other.keySet().size();
+		assert numberOfClasses == other.numberOfClasses;
 		assert start == other.start;
 		assert stop == other.stop;
-		for (final double key : freqTable.keySet()) {
-			this.setCount(key,
-					Math.max(this.getCount(key), other.getCount(key)));
+		final boolean sameClasses = sameClasses(other);
+		for (int i = 0; i < counts.length; i++) {
+			counts[i] = Math.max(counts[i], sameClasses ? other.counts[i]
+					: other.getCount(keys[i]));
 		}
 		return this;
 	}
 
+	/**
+	 * @param other
+	 *            another histogram
+	 * @return true if the other histogram has the same keys, so the bins can
+	 *         be combined index by index.
+	 */
+	private boolean sameClasses(final Histogram other) {
+		return numberOfClasses == other.numberOfClasses
+				&& start == other.start && stop == other.stop
+				&& wraps == other.wraps;
+	}
+
 	/**
 	 * Subtracts two histograms. The value for each bin of other is removed to
 	 * the corresponding bin of this histogram. The other histogram must have
@@ -867,8 +974,8 @@ public class Histogram implements Cloneable {
 	 * @return histogram with each bin value multiplied by the factor.
 	 */
 	public Histogram multiply(final double factor) {
-		for (final double key : this.freqTable.keySet()) {
-			this.setCount(key, Math.round(this.getCount(key) * factor));
+		for (int i = 0; i < counts.length; i++) {
+			counts[i] = Math.round(counts[i] * factor);
 		}
 		return this;
 	}
@@ -885,9 +992,8 @@ public class Histogram implements Cloneable {
 	 * @return Histogram with each bin count raised with exponent.
 	 */
 	public Histogram raise(final double exponent) {
-		for (final double key : this.freqTable.keySet()) {
-			this.setCount(key,
-					Math.round(Math.pow(this.getCount(key), exponent)));
+		for (int i = 0; i < counts.length; i++) {
+			counts[i] = Math.round(Math.pow(counts[i], exponent));
 		}
 		return this;
 	}
@@ -901,9 +1007,8 @@ public class Histogram implements Cloneable {
 	@Override
 	public Histogram clone() throws CloneNotSupportedException {
 		final Histogram clone = (Histogram) super.clone();
-		for (final double key : this.freqTable.keySet()) {
-			clone.setCount(key, this.getCount(key));
-		}
+		// the keys (and the key set view on them) never change and are shared
+		clone.counts = counts.clone();
 		return clone;
 	}
 
@@ -922,15 +1027,17 @@ public class Histogram implements Cloneable {
 		if (!histograms.isEmpty()) {
 			final Histogram first = histograms.get(0);
 			mean = new Histogram(first);
-			for (final double key : first.freqTable.keySet()) {
-				final double[] values = new double[histograms.size()];
+			final double[] values = new double[histograms.size()];
+			for (int i = 0; i < first.keys.length; i++) {
+				final double key = first.keys[i];
 				int countIndex = 0;
 				for (final Histogram h : histograms) {
-					assert h.keySet().size() == first.keySet().size();
+					assert h.numberOfClasses == first.numberOfClasses;
 					assert first.classWidth == h.classWidth;
 					assert first.start == h.start;
 					assert first.stop == h.stop;
-					values[countIndex] = h.getCount(key);
+					values[countIndex] = first.sameClasses(h) ? h.counts[i] : h
+							.getCount(key);
 					countIndex++;
 				}
 				final long currentMean = Math.round(StatUtils.mean(values));
@@ -1020,7 +1127,7 @@ public class Histogram implements Cloneable {
 				double weightTotal = 0;
 				for (int i = min; i < max; i++) {
 					final double w = weights[offset++];
-					acc += getCountForClass(i) * w;
+					acc += counts[i] * w;
 					weightTotal += w;
 				}
 
@@ -1039,7 +1146,7 @@ public class Histogram implements Cloneable {
 				// Accumulate the total for the range.
 				int acc = 0;
 				for (int i = min; i < max; i++) {
-					acc += getCountForClass(i);
+					acc += counts[i];
 				}
 
 				// Calculate the average for the range.
@@ -1054,9 +1161,7 @@ public class Histogram implements Cloneable {
 		// the same as for the same band of the original histogram.
 		final double factor = getSumFreq() / (double) sum;
 		for (int b = 0; b < numberOfClasses; b++) {
-			final int smoothedCount = (int) (smoothedCounts[b] * factor + 0.5);
-			final double key = getKeyForClass(b);
-			this.setCount(key, smoothedCount);
+			counts[b] = (int) (smoothedCounts[b] * factor + 0.5);
 		}
 
 		return this;
@@ -1132,7 +1237,7 @@ public class Histogram implements Cloneable {
 			double weightTotal = 0;
 			for (int i = min; i < max; i++) {
 				final double w = weights[offset++];
-				acc += getCountForClass(i) * w;
+				acc += counts[i] * w;
 				weightTotal += w;
 			}
 
@@ -1147,9 +1252,7 @@ public class Histogram implements Cloneable {
 		// the same as for the same band of the original histogram.
 		final double factor = getSumFreq() / (double) sum;
 		for (int b = 0; b < numberOfClasses; b++) {
-			final int smoothedCount = (int) (smoothedCounts[b] * factor + 0.5);
-			final double key = getKeyForClass(b);
-			this.setCount(key, smoothedCount);
+			counts[b] = (int) (smoothedCounts[b] * factor + 0.5);
 		}
 		return this;
 	}
@@ -1173,11 +1276,11 @@ public class Histogram implements Cloneable {
 			final int actualDisplacement = (displacement + numberOfClasses)
 					% numberOfClasses;
 
-			for (final double key : freqTable.keySet()) {
-				final double displacedValue = (key + actualDisplacement
+			for (int i = 0; i < keys.length; i++) {
+				final double displacedValue = (keys[i] + actualDisplacement
 						* classWidth)
 						% (numberOfClasses * classWidth);
-				this.setCount(key, original.getCount(displacedValue));
+				counts[i] = original.getCount(displacedValue);
 			}
 		} catch (CloneNotSupportedException e) {
 			throw new AssertionError("Cloning a histogram is supported!");
@@ -1247,8 +1350,23 @@ public class Histogram implements Cloneable {
 		double maximumCorrelation = -1; // best found correlation
 		final int numberOfClasses = getNumberOfClasses();
 
+		// For measures that are a function of the cross correlation only
+		// the displacements near the maximum of the cross correlation
+		// need to be checked. The others are skipped without calculating
+		// the correlation.
+		final HistogramCorrelation histogramCorrelation = correlationMeasure
+				.getHistogramCorrelation();
+		boolean[] candidates = null;
+		if (histogramCorrelation instanceof FFTCorrelation) {
+			candidates = candidateDisplacements(otherHistogram,
+					(FFTCorrelation) histogramCorrelation);
+		}
+
 		// current displacement, incremented with class width
 		for (int currentDisplacement = 0; currentDisplacement < numberOfClasses; currentDisplacement++) {
+			if (candidates != null && !candidates[currentDisplacement]) {
+				continue;
+			}
 			final double currentCorrelation = correlationWithDisplacement(
 					currentDisplacement, otherHistogram, correlationMeasure);
 			if (maximumCorrelation < currentCorrelation) {
@@ -1263,6 +1381,125 @@ public class Histogram implements Cloneable {
 		return optimalDisplacement;
 	}
 
+	/**
+	 * The cross correlation is calculated in single precision. The maximum
+	 * error is a lot smaller than this fraction of the product of the norms
+	 * of both histograms.
+	 */
+	private static final double FFT_PRECISION = 1e-4;
+
+	/**
+	 * Calculates the circular cross correlation of the weighted counts of both
+	 * histograms for every displacement at once: the inverse FFT of the
+	 * product of the spectrum of this histogram and the complex conjugate of
+	 * the spectrum of the other. The other histogram is repeated twice and
+	 * both are zero padded to a power of two, so the lags of the FFT are the
+	 * lags modulo the number of classes.
+	 * 
+	 * @param otherHistogram
+	 *            The other histogram.
+	 * @param correlation
+	 *            The correlation, a function of the cross correlation.
+	 * @return For each displacement <code>true</code> if its cross correlation
+	 *         is within the precision of the FFT of the maximum, so the
+	 *         displacement could have the best correlation. Returns
+	 *         <code>null</code> if the displacements can not be found this way
+	 *         and the correlation needs to be calculated for each displacement.
+	 */
+	private boolean[] candidateDisplacements(final Histogram otherHistogram,
+			final FFTCorrelation correlation) {
+		final int n = numberOfClasses;
+		// The correlations iterate over the class middles and displace modulo
+		// the width of the histogram. This is only a circular shift of the
+		// bins when the histogram starts at zero.
+		if (start != 0 || n < 2) {
+			return null;
+		}
+		final double[] first = new double[n];
+		final double[] second = new double[n];
+		int i = 0;
+		for (double current = start + classWidth / 2; current <= stop; current += classWidth) {
+			if (i == n) {
+				return null;
+			}
+			first[i] = correlation.weight(getCount(current));
+			second[i] = correlation.weight(otherHistogram.getCount(current));
+			i++;
+		}
+		if (i != n) {
+			return null;
+		}
+
+		// scale both to [-1,1] so the float values can not overflow
+		final double firstMaximum = maximumAbsoluteValue(first);
+		final double secondMaximum = maximumAbsoluteValue(second);
+		if (Double.isNaN(firstMaximum) || Double.isNaN(secondMaximum)
+				|| Double.isInfinite(firstMaximum)
+				|| Double.isInfinite(secondMaximum)) {
+			return null;
+		}
+
+		int fftSize = 1;
+		while (fftSize < 2 * n) {
+			fftSize <<= 1;
+		}
+		final FFT fft = new FFT(fftSize);
+		// interlaced complex buffers: real, imaginary, real, ...
+		final float[] firstSpectrum = new float[2 * fftSize];
+		final float[] secondSpectrum = new float[2 * fftSize];
+		double firstNorm = 0;
+		double secondNorm = 0;
+		for (i = 0; i < n; i++) {
+			final float a = (float) (firstMaximum == 0 ? 0 : first[i]
+					/ firstMaximum);
+			final float b = (float) (secondMaximum == 0 ? 0 : second[i]
+					/ secondMaximum);
+			firstSpectrum[2 * i] = a;
+			secondSpectrum[2 * i] = b;
+			secondSpectrum[2 * (i + n)] = b;
+			firstNorm += a * a;
+			secondNorm += b * b;
+		}
+		fft.forwardTransform(firstSpectrum);
+		fft.forwardTransform(secondSpectrum);
+		for (i = 0; i < fftSize; i++) {
+			final float re1 = firstSpectrum[2 * i];
+			final float im1 = firstSpectrum[2 * i + 1];
+			final float re2 = secondSpectrum[2 * i];
+			final float im2 = secondSpectrum[2 * i + 1];
+			// conj(first) * second
+			secondSpectrum[2 * i] = re1 * re2 + im1 * im2;
+			secondSpectrum[2 * i + 1] = re1 * im2 - im1 * re2;
+		}
+		fft.backwardsTransform(secondSpectrum);
+
+		double maximum = Double.NEGATIVE_INFINITY;
+		for (int lag = 0; lag < n; lag++) {
+			maximum = Math.max(maximum, secondSpectrum[2 * lag]);
+		}
+		final double threshold = maximum - FFT_PRECISION * fftSize
+				* Math.sqrt(firstNorm * secondNorm);
+		final boolean[] candidates = new boolean[n];
+		for (int lag = 0; lag < n; lag++) {
+			candidates[lag] = secondSpectrum[2 * lag] >= threshold;
+		}
+		return candidates;
+	}
+
+	/**
+	 * @return the maximum of the absolute values, NaN if a value is NaN.
+	 */
+	private static double maximumAbsoluteValue(final double[] values) {
+		double maximum = 0;
+		for (final double value : values) {
+			if (Double.isNaN(value)) {
+				return Double.NaN;
+			}
+			maximum = Math.max(maximum, Math.abs(value));
+		}
+		return maximum;
+	}
+
 	public void plotCorrelation(final Histogram otherHistogram,
 			final CorrelationMeasure correlationMeasure, final String fileName,
 			final String title) {
@@ -1305,8 +1542,8 @@ public class Histogram implements Cloneable {
 	public final void export(final String fileName) {
 		final StringBuilder sb = new StringBuilder();
 		sb.append("key;value\n");
-		for (final double key : keySet()) {
-			sb.append(key).append(";").append(getCount(key)).append("\n");
+		for (int i = 0; i < keys.length; i++) {
+			sb.append(keys[i]).append(";").append(counts[i]).append("\n");
 		}
 		FileUtils.writeFile(sb.toString(), fileName);
 	}
@@ -1321,9 +1558,9 @@ public class Histogram implements Cloneable {
 	public final void exportMatLab(final String fileName) {
 		final StringBuilder sb = new StringBuilder();
 		sb.append("histogram_values = [");
-		for (final double key : keySet()) {
-			for (int i = 0; i < getCount(key); i++) {
-				sb.append(key).append(",");
+		for (int i = 0; i < keys.length; i++) {
+			for (int j = 0; j < counts[i]; j++) {
+				sb.append(keys[i]).append(",");
 			}
 		}
 		sb.append("]\n");
@@ -1336,10 +1573,8 @@ public class Histogram implements Cloneable {
 	 */
 	public final long getMaxBinCount() {
 		long maxValue = -1;
-		if (!freqTable.values().isEmpty()) {
-			for (final long value : freqTable.values()) {
-				maxValue = Math.max(maxValue, value);
-			}
+		for (final long value : counts) {
+			maxValue = Math.max(maxValue, value);
 		}
 		return maxValue;
 	}
@@ -1348,8 +1583,6 @@ public class Histogram implements Cloneable {
 	 * Sets each bin to 0.
 	 */
 	public void clear() {
-		for (final double key : keySet()) {
-			setCount(key, 0);
-		}
+		Arrays.fill(counts, 0);
 	}
 }
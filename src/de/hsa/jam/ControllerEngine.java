@@ -400,12 +400,25 @@ public class ControllerEngine extends AbstractController {
 	}
 
 	public void initEvaluation() {
+		initEvaluation(null);
+	}
+
+	/**
+	 * @param corpusDir - directory with the reference melodies (see FileCorpus) or null for the database
+	 */
+	public void initEvaluation(File corpusDir) {
 		Evaluator eval = new Evaluator();
-		if (!eval.connectToDB()) {
+		if (corpusDir == null && !eval.connectToDB()) {
 			setModelProperty(ERROR_PROPERTY,
 					"Fehler beim Verbinden mit der Datenbank");
 			return;
 		}
+		if (corpusDir != null && !eval.openCorpus(corpusDir)) {
+			setModelProperty(ERROR_PROPERTY,
+					"Fehler beim Lesen der Referenzmelodien in " + corpusDir);
+			return;
+		}
 		setModelProperty(INIT_EVALUATION_PROPERTY, eval);
 	}
+
 }
@@ -742,6 +742,136 @@ public abstract class AudioFloatConverter {
 		}
 	}
 
+	/***************************************************************************
+	 * 
+	 * 16/24/32 bit signed, little/big-endian, bulk conversion
+	 * 
+	 * The samples are read and written through a view buffer with the byte
+	 * order of the format, so the byte order is handled by one bulk copy per
+	 * buffer instead of shifts per byte. The results are exactly the same as
+	 * those of the converters above (see getConverter(format, false)).
+	 * 
+	 **************************************************************************/
+
+	// PCM 16 bit, signed, little/big-endian
+	private static class AudioFloatConversion16SBulk extends AudioFloatConverter {
+		final ByteOrder order;
+
+		short[] shortbuffer = null;
+
+		AudioFloatConversion16SBulk(ByteOrder order) {
+			this.order = order;
+		}
+
+		public float[] toFloatArray(byte[] in_buff, int in_offset,
+				float[] out_buff, int out_offset, int out_len) {
+			if (shortbuffer == null || shortbuffer.length < out_len)
+				shortbuffer = new short[out_len];
+			ByteBuffer.wrap(in_buff, in_offset, out_len * 2).slice()
+					.order(order).asShortBuffer().get(shortbuffer, 0, out_len);
+			for (int i = 0; i < out_len; i++) {
+				out_buff[out_offset + i] = shortbuffer[i] * (1.0f / 32767.0f);
+			}
+			return out_buff;
+		}
+
+		public byte[] toByteArray(float[] in_buff, int in_offset, int in_len,
+				byte[] out_buff, int out_offset) {
+			if (shortbuffer == null || shortbuffer.length < in_len)
+				shortbuffer = new short[in_len];
+			for (int i = 0; i < in_len; i++) {
+				shortbuffer[i] = (short) (int) (in_buff[in_offset + i] * 32767.0);
+			}
+			ByteBuffer.wrap(out_buff, out_offset, in_len * 2).slice()
+					.order(order).asShortBuffer().put(shortbuffer, 0, in_len);
+			return out_buff;
+		}
+	}
+
+	// PCM 24 bit, signed, little/big-endian
+	private static class AudioFloatConversion24SBulk extends AudioFloatConverter {
+		final ByteOrder order;
+
+		final AudioFloatConverter scalar;
+
+		AudioFloatConversion24SBulk(ByteOrder order) {
+			this.order = order;
+			if (order == ByteOrder.BIG_ENDIAN)
+				scalar = new AudioFloatConversion24SB();
+			else
+				scalar = new AudioFloatConversion24SL();
+		}
+
+		// every sample is read as an int of four bytes, the fourth byte
+		// belongs to the next sample. The last sample of the buffer is
+		// converted by the scalar converter, so no byte outside of the range
+		// is read.
+		public float[] toFloatArray(byte[] in_buff, int in_offset,
+				float[] out_buff, int out_offset, int out_len) {
+			if (out_len == 0)
+				return out_buff;
+			ByteBuffer bytebuffer = ByteBuffer.wrap(in_buff).order(order);
+			int bulk_len = out_len - 1;
+			int ix = in_offset;
+			if (order == ByteOrder.BIG_ENDIAN) {
+				for (int i = 0; i < bulk_len; i++, ix += 3) {
+					out_buff[out_offset + i] = (bytebuffer.getInt(ix) >> 8)
+							* (1.0f / (float) 0x7FFFFF);
+				}
+			} else {
+				for (int i = 0; i < bulk_len; i++, ix += 3) {
+					out_buff[out_offset + i] = ((bytebuffer.getInt(ix) << 8) >> 8)
+							* (1.0f / (float) 0x7FFFFF);
+				}
+			}
+			return scalar.toFloatArray(in_buff, ix, out_buff, out_offset
+					+ bulk_len, 1);
+		}
+
+		// writing four bytes per sample is not faster than the scalar converter
+		public byte[] toByteArray(float[] in_buff, int in_offset, int in_len,
+				byte[] out_buff, int out_offset) {
+			return scalar.toByteArray(in_buff, in_offset, in_len, out_buff,
+					out_offset);
+		}
+	}
+
+	// PCM 32 bit, signed, little/big-endian
+	private static class AudioFloatConversion32SBulk extends AudioFloatConverter {
+		final ByteOrder order;
+
+		int[] intbuffer = null;
+
+		AudioFloatConversion32SBulk(ByteOrder order) {
+			this.order = order;
+		}
+
+		public float[] toFloatArray(byte[] in_buff, int in_offset,
+				float[] out_buff, int out_offset, int out_len) {
+			if (intbuffer == null || intbuffer.length < out_len)
+				intbuffer = new int[out_len];
+			ByteBuffer.wrap(in_buff, in_offset, out_len * 4).slice()
+					.order(order).asIntBuffer().get(intbuffer, 0, out_len);
+			for (int i = 0; i < out_len; i++) {
+				out_buff[out_offset + i] = intbuffer[i]
+						* (1.0f / (float) 0x7FFFFFFF);
+			}
+			return out_buff;
+		}
+
+		public byte[] toByteArray(float[] in_buff, int in_offset, int in_len,
+				byte[] out_buff, int out_offset) {
+			if (intbuffer == null || intbuffer.length < in_len)
+				intbuffer = new int[in_len];
+			for (int i = 0; i < in_len; i++) {
+				intbuffer[i] = (int) (in_buff[in_offset + i] * (float) 0x7FFFFFFF);
+			}
+			ByteBuffer.wrap(out_buff, out_offset, in_len * 4).slice()
+					.order(order).asIntBuffer().put(intbuffer, 0, in_len);
+			return out_buff;
+		}
+	}
+
 	/***************************************************************************
 	 * 
 	 * 32+ bit signed/unsigned, little/big-endian
@@ -918,7 +1048,27 @@ public abstract class AudioFloatConverter {
 		}
 	}
 
+	/**
+	 * @param format - the format of the bytes
+	 * @return a converter for the format (with the bulk conversion for 16, 24
+	 *         and 32 bit signed samples) or null if the format is not
+	 *         supported
+	 */
 	public static AudioFloatConverter getConverter(AudioFormat format) {
+		return getConverter(format, true);
+	}
+
+	/**
+	 * jAM: the converters without the bulk conversion are kept as reference,
+	 * e.g. to compare both in the PerformanceBenchmark.
+	 * 
+	 * @param format - the format of the bytes
+	 * @param bulk - false for the sample by sample conversion
+	 * @return a converter for the format or null if the format is not
+	 *         supported
+	 */
+	public static AudioFloatConverter getConverter(AudioFormat format,
+			boolean bulk) {
 		AudioFloatConverter conv = null;
 		if (format.getFrameSize() == 0)
 			return null;
@@ -1009,6 +1159,20 @@ public abstract class AudioFloatConverter {
 
 		}
 
+		if (bulk && format.getEncoding().equals(Encoding.PCM_SIGNED)) {
+			ByteOrder order = format.isBigEndian() ? ByteOrder.BIG_ENDIAN
+					: ByteOrder.LITTLE_ENDIAN;
+			if (conv instanceof AudioFloatConversion16SB
+					|| conv instanceof AudioFloatConversion16SL)
+				conv = new AudioFloatConversion16SBulk(order);
+			else if (conv instanceof AudioFloatConversion24SB
+					|| conv instanceof AudioFloatConversion24SL)
+				conv = new AudioFloatConversion24SBulk(order);
+			else if (conv instanceof AudioFloatConversion32SB
+					|| conv instanceof AudioFloatConversion32SL)
+				conv = new AudioFloatConversion32SBulk(order);
+		}
+
 		if ((format.getEncoding().equals(Encoding.PCM_SIGNED) || format
 				.getEncoding().equals(Encoding.PCM_UNSIGNED))
 				&& (format.getSampleSizeInBits() % 8 != 0)) {
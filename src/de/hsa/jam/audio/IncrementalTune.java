@@ -0,0 +1,123 @@
+package de.hsa.jam.audio;
+
+import abc.notation.Accidental;
+import abc.notation.BarLine;
+import abc.notation.EndOfStaffLine;
+import abc.notation.Fraction;
+import abc.notation.Note;
+import abc.notation.TieDefinition;
+import abc.notation.Tune;
+import abc.parser.AbcToolkit;
+import abc.parser.AbcToolkit.DurationDescription;
+
+/**
+ * A parsed abc Tune which grows while the NoteCollectorWorker transcribes.<br />
+ * Every detected note is appended as {@link Note} (and {@link BarLine}, {@link EndOfStaffLine})
+ * directly to the first voice of the tune, so the tune does not have to be parsed again
+ * for each note. The abc text of the appended notes is collected as well and only joined
+ * with the text of the parsed tune if someone asks for it (save, editor, MIDI).<br />
+ * <br />
+ * The appended elements are the same the TuneParser creates for the abc text, e.g.
+ * <code>append("^C", 4, "-|")</code> appends a tied C# quarter (L:1/16) and a bar line.
+ *
+ * @author Michael Wager
+ */
+public class IncrementalTune {
+	private final Tune tune;
+	private final String parsedTuneAsString;
+	private final StringBuilder appendedNotes = new StringBuilder();
+
+	private String tuneAsString = null; // cache, null wenn neue Noten dazukamen
+	private Note tieStartingNote = null;
+
+	/**
+	 * @param tune - the tune parsed from tuneAsString
+	 * @param tuneAsString - the abc text of the tune, notes are appended behind it
+	 */
+	public IncrementalTune(Tune tune, String tuneAsString) {
+		this.tune = tune;
+		this.parsedTuneAsString = tuneAsString;
+		this.tuneAsString = tuneAsString;
+	}
+
+	/**
+	 * Appends one note or rest to the tune.
+	 *
+	 * @param abcNote - the note in abc notation without length, e.g. "^C", "=c'", "B," or "z"
+	 * @param length - the length in multiples of the default note length (L:1/16 in jAM)
+	 * @param postfix - "" or any combination of "-" (tie to the next note), "|" (bar line) and "\n" (new staff line)
+	 */
+	public synchronized void append(String abcNote, int length, String postfix) {
+		Note note = toNote(abcNote);
+		setLength(note, length);
+
+		if (postfix.indexOf('-') != -1) {
+			TieDefinition tieDef = new TieDefinition();
+			tieDef.setStart(note.getReference());
+			note.setTieDefinition(tieDef);
+			tieStartingNote = note;
+		} else if (tieStartingNote != null && tieStartingNote.getHeight() == note.getHeight()) {
+			// Bindebogen schliessen: wie im TuneParser unabhaengig von den Vorzeichen
+			tieStartingNote.getTieDefinition().setEnd(note.getReference());
+			note.setTieDefinition(tieStartingNote.getTieDefinition());
+			tieStartingNote = null;
+		}
+
+		tune.getMusic().addElement(note);
+		if (postfix.indexOf('|') != -1)
+			tune.getMusic().addElement(new BarLine());
+		if (postfix.indexOf('\n') != -1)
+			tune.getMusic().addElement(new EndOfStaffLine());
+
+		appendedNotes.append(abcNote).append(length).append(postfix);
+		tuneAsString = null;
+	}
+
+	public Tune getTune() {
+		return tune;
+	}
+
+	/**
+	 * @return the abc text of the parsed tune and all appended notes
+	 */
+	public synchronized String getTuneAsString() {
+		if (tuneAsString == null)
+			tuneAsString = parsedTuneAsString + appendedNotes;
+		return tuneAsString;
+	}
+
+	/**
+	 * Converts e.g. "=^F", "_B," or "c''" into a note like the TuneParser does:<br />
+	 * only the first accidental counts, lower case means one octave up, ' and , transpose.
+	 */
+	private static Note toNote(String abcNote) {
+		if (abcNote.equals("z"))
+			return new Note(Note.REST, Accidental.NONE);
+
+		int i = 0;
+		while (i < abcNote.length() && "^_=".indexOf(abcNote.charAt(i)) != -1)
+			i++;
+		Accidental accidental = i == 0 ? Accidental.NONE : Accidental.convertToAccidental(abcNote.substring(0, 1));
+
+		byte height = Note.convertToNoteType(abcNote.substring(i, i + 1));
+		byte octaveTransposition = 0;
+		for (int j = i + 1; j < abcNote.length(); j++) {
+			if (abcNote.charAt(j) == '\'')
+				octaveTransposition++;
+			else if (abcNote.charAt(j) == ',')
+				octaveTransposition--;
+		}
+		return new Note(height, accidental, octaveTransposition);
+	}
+
+	private static void setLength(Note note, int length) {
+		try {
+			DurationDescription d = AbcToolkit.getAbsoluteDurationFor(new Fraction(length, 1), Note.SIXTEENTH);
+			note.setStrictDuration(d.getStrictDuration());
+			note.setDotted(d.countDots());
+		} catch (IllegalArgumentException e) {
+			// keine Standard-Notenlaenge (zB 5/16): absolute Dauer
+			note.setDuration((short) (Note.SIXTEENTH * length));
+		}
+	}
+}
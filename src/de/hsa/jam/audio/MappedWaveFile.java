@@ -0,0 +1,143 @@
+package de.hsa.jam.audio;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioFormat.Encoding;
+import javax.sound.sampled.UnsupportedAudioFileException;
+
+/**
+ * A wave file which is memory-mapped instead of read through an AudioInputStream.<br />
+ * Only the RIFF header is parsed, the samples stay in the mapping and are read by offset, see
+ * {@link be.hogent.tarsos.sampled.AudioDispatcher#AudioDispatcher(ByteBuffer, AudioFormat, int, int)}.
+ * So long recordings are transcribed without the javax.sound stream stack and without reading
+ * the file into the heap.<br />
+ * Supported are PCM (8 bit unsigned, 16/24/32 bit signed, also as WAVE_FORMAT_EXTENSIBLE) and
+ * 32/64 bit IEEE float. Files larger than 2GB can not be mapped in one piece, use an
+ * AudioInputStream for those.
+ *
+ * @author Michael Wager
+ */
+public final class MappedWaveFile {
+	private static final int RIFF = 0x46464952, WAVE = 0x45564157, FMT = 0x20746d66, DATA = 0x61746164;
+	private static final int WAVE_FORMAT_PCM = 1, WAVE_FORMAT_IEEE_FLOAT = 3, WAVE_FORMAT_EXTENSIBLE = 0xFFFE;
+
+	private final File file;
+	private final AudioFormat format;
+	private final ByteBuffer data;
+
+	/**
+	 * Maps the file and parses the header.
+	 *
+	 * @param file - the wave file
+	 * @throws IOException - if the file can not be read or is too large to be mapped
+	 * @throws UnsupportedAudioFileException - if it is no wave file or the encoding is not supported
+	 */
+	public MappedWaveFile(File file) throws IOException, UnsupportedAudioFileException {
+		this.file = file;
+
+		ByteBuffer mapped;
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			FileChannel channel = raf.getChannel();
+			if (channel.size() > Integer.MAX_VALUE)
+				throw new IOException(file + " is too large to be mapped");
+			mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		} finally {
+			raf.close(); // die Abbildung bleibt gueltig
+		}
+		mapped.order(ByteOrder.LITTLE_ENDIAN);
+
+		if (mapped.remaining() < 12 || mapped.getInt() != RIFF)
+			throw new UnsupportedAudioFileException(file + " is no RIFF file");
+		mapped.getInt(); // Groesse, wird nicht gebraucht
+		if (mapped.getInt() != WAVE)
+			throw new UnsupportedAudioFileException(file + " is no wave file");
+
+		AudioFormat fmt = null;
+		ByteBuffer samples = null;
+		while (samples == null && mapped.remaining() >= 8) {
+			int id = mapped.getInt();
+			long size = mapped.getInt() & 0xFFFFFFFFL;
+			int start = mapped.position();
+			// abgebrochene Aufnahmen: die Groesse fehlt oder ist zu gross
+			int end = size == 0 || size > mapped.remaining() ? mapped.limit() : (int) (start + size);
+
+			if (id == FMT) {
+				fmt = parseFormat(mapped, end - start);
+			} else if (id == DATA) {
+				if (fmt == null)
+					throw new UnsupportedAudioFileException(file + ": data chunk before fmt chunk");
+				end -= (end - start) % fmt.getFrameSize(); // nur ganze Frames
+				mapped.limit(end);
+				samples = mapped.slice();
+			}
+			// chunks sind auf gerade Laengen aufgefuellt
+			mapped.position(Math.min(mapped.limit(), end + ((end - start) & 1)));
+		}
+		if (samples == null)
+			throw new UnsupportedAudioFileException(file + ": no data chunk");
+
+		format = fmt;
+		data = samples.order(ByteOrder.LITTLE_ENDIAN);
+	}
+
+	private AudioFormat parseFormat(ByteBuffer chunk, int size) throws UnsupportedAudioFileException {
+		if (size < 16)
+			throw new UnsupportedAudioFileException(file + ": fmt chunk too short");
+		int tag = chunk.getShort() & 0xFFFF;
+		int channels = chunk.getShort() & 0xFFFF;
+		float sampleRate = chunk.getInt();
+		chunk.getInt(); // Bytes pro Sekunde
+		int blockAlign = chunk.getShort() & 0xFFFF;
+		int bits = chunk.getShort() & 0xFFFF;
+		if (tag == WAVE_FORMAT_EXTENSIBLE && size >= 40) {
+			chunk.position(chunk.position() + 8); // cbSize, valid bits, channel mask
+			tag = chunk.getShort() & 0xFFFF; // die ersten beiden Bytes der SubFormat GUID
+		}
+
+		if (channels == 0 || blockAlign == 0 || blockAlign % channels != 0)
+			throw new UnsupportedAudioFileException(file + ": invalid fmt chunk");
+		// Container-Groesse, z.B. 24 bei 20 gueltigen bits
+		int sampleSize = blockAlign / channels * 8;
+		if (bits > sampleSize)
+			throw new UnsupportedAudioFileException(file + ": invalid fmt chunk");
+
+		Encoding encoding;
+		if (tag == WAVE_FORMAT_PCM)
+			encoding = sampleSize == 8 ? Encoding.PCM_UNSIGNED : Encoding.PCM_SIGNED;
+		else if (tag == WAVE_FORMAT_IEEE_FLOAT && (sampleSize == 32 || sampleSize == 64))
+			encoding = AudioFloatConverter.PCM_FLOAT;
+		else
+			throw new UnsupportedAudioFileException(file + ": unsupported wave format " + tag);
+
+		return new AudioFormat(encoding, sampleRate, sampleSize, channels, blockAlign, sampleRate, false);
+	}
+
+	public File getFile() {
+		return file;
+	}
+
+	public AudioFormat getFormat() {
+		return format;
+	}
+
+	/**
+	 * @return the samples (the data chunk) as a new view on the mapping, positioned at the first sample
+	 */
+	public ByteBuffer getData() {
+		return data.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+	}
+
+	/**
+	 * @return the length in sample frames
+	 */
+	public long getFrameLength() {
+		return data.limit() / format.getFrameSize();
+	}
+}
@@ -4,6 +4,7 @@ import java.io.File;
 import java.io.FileWriter;
 import java.util.Iterator;
 import java.util.Vector;
+import java.util.concurrent.TimeUnit;
 
 import javax.sound.midi.Instrument;
 import javax.sound.midi.MidiSystem;
@@ -16,6 +17,7 @@ import javax.sound.sampled.DataLine;
 import javax.sound.sampled.LineUnavailableException;
 import javax.sound.sampled.Mixer;
 import javax.sound.sampled.TargetDataLine;
+import javax.swing.SwingUtilities;
 
 import abc.midi.BasicMidiConverter;
 import abc.midi.MidiConverterAbstract;
@@ -31,11 +33,12 @@ import abc.notation.NoteAbstract;
 import abc.notation.Tune;
 import abc.notation.Voice;
 import abc.parser.TuneParser;
+import be.hogent.tarsos.sampled.AsynchronousAudioProcessor;
 import be.hogent.tarsos.sampled.AudioDispatcher;
 import be.hogent.tarsos.sampled.AudioProcessor;
 import be.hogent.tarsos.sampled.BlockingAudioPlayer;
 import be.hogent.tarsos.sampled.SampledAudioUtilities;
-import be.hogent.tarsos.sampled.filters.LowPassFS;
+import be.hogent.tarsos.sampled.filters.BandPass;
 import be.hogent.tarsos.sampled.pitch.Pitch;
 import be.hogent.tarsos.sampled.pitch.PitchUnit;
 import be.hogent.tarsos.sampled.pitch.Yin;
@@ -45,6 +48,7 @@ import de.hsa.jam.audio.collector.AudioBufferQueue;
 import de.hsa.jam.audio.collector.NoteCollectorWorker;
 import de.hsa.jam.audio.midi.MidiMetronome;
 import de.hsa.jam.evaluation.Evaluator;
+import de.hsa.jam.evaluation.ParallelEvaluation;
 import de.hsa.jam.util.jAMUtils;
 
 /**
@@ -69,7 +73,7 @@ public class Model extends AbstractModel {
     private int CHUNK = 1024; 			// TODO das hier muss immer noch mit GUI ubereinstimen !!!
     private int overlapPercentage = 0;
     private int OVERLAP = CHUNK * overlapPercentage / 100;
-    private String PDA = "MPM"; // YIN oder MPM
+    private String PDA = "MPM"; // YIN, FAST_YIN oder MPM
     private int bpm = 60;
     private String TONART = "C", TAKTART = "4/4";
     private int TAKTARTINDEX = 0;
@@ -77,6 +81,8 @@ public class Model extends AbstractModel {
     private boolean metroSelected = true;
     private boolean plottingSelected = false;
     private boolean lowPassSelected = false;
+    // Tonumfang des Instruments fuer den Filter (default A1 bis ueber C7)
+    private float filterLowHz = 55, filterHighHz = 2100;
     private boolean playbackSelected = false;
     private int transposeRecIndex = 0;
 
@@ -90,14 +96,22 @@ public class Model extends AbstractModel {
     private Mixer.Info mixerInfo;
     
     private WaveFileWriter wfr;
+    // Anzahl Buffer die der dispatcher dem Abspielen bzw. dem Schreiben voraus sein darf
+    // (beim Abspielen einer Datei klein halten: die Erkennung soll nicht weit vor dem Ton sein)
+    private static final int PLAYBACK_BUFFERS = 4, WAVE_FILE_BUFFERS = 64;
+    // so lange darf das Leerlaufen der Zweige beim Stoppen dauern (Sekunden)
+    private static final int BRANCH_TIMEOUT = 5;
+    private AsynchronousAudioProcessor playbackBranch, waveFileBranch;
+
     private AudioProcessor myAudioProcessor;
     private MidiMetronome metro;
     private TunePlayer player;
 
     // ----- ABC Tune params -----
     private Tune tune;
+    private IncrementalTune liveTune; // hier haengt der collector die erkannten Noten an, nur auf dem EDT benutzen
     final String NEWLINE = "\n";
-    private String tuneAsString = "", lastTuneAsString="";
+    private String lastTuneAsString="";
     private String[] tuneAsArray;
     private Vector<String> notesAsArray;
     private int INDEX = 6;
@@ -139,7 +153,9 @@ public class Model extends AbstractModel {
             public void processingFinished() {
                 jAM.log("Model: -------------------- OK, processing finished (added all buffer to queue) --------------------", false);
 
-                queue.add(null); 
+                queue.endOfStream();
+                if (queue.getDroppedCount() > 0)
+                    jAM.log("Model: AudioBufferQueue was full, dropped " + queue.getDroppedCount() + " buffers", false);
 
 //                int delta=5;
 //        		Vector<double []>minima = jAMUtils.detectLocalMinima(levels, delta);
@@ -164,8 +180,14 @@ public class Model extends AbstractModel {
                 
                 levels.add(level);
 
-                // JUST ADD to queue
-                queue.add(audioFloatBuffer/*, level*/);
+                // JUST ADD to queue (copies into a preallocated slot)
+                try {
+                    queue.add(audioFloatBuffer/*, level*/);
+                } catch (InterruptedException e) {
+                    // dispatcher was stopped while waiting for the collector
+                    Thread.currentThread().interrupt();
+                    return;
+                }
 
                 firePropertyChange(ControllerEngine.INPUTLEVEL_PROPERTY, 0, level);
             }
@@ -187,7 +209,7 @@ public class Model extends AbstractModel {
             }
         });
 
-        queue = new AudioBufferQueue();
+        queue = new AudioBufferQueue(CHUNK);
 
         initNewTuneAsString();
     }
@@ -214,86 +236,17 @@ public class Model extends AbstractModel {
         return evaluator != null;
     }
 
-    private int evalCnt = 1;
     private int[] chunks = new int[] { 512, 1024, 2048 };
     private int[] overlaps = new int[] { 0, 10, 25, 50, 75 };
 
     /**
-     * run complete evaluation
+     * run complete evaluation: every recording is decoded once, all combinations of PDA,
+     * chunk and overlap are transcribed in parallel (see {@link ParallelEvaluation})
      * */
     public void evaluationRun() throws Exception {
         String[] pdas = { "YIN", "MPM" };
 
-        AudioInputStream audioInputStream = null;
-
-        for (int x = 0; x < pdas.length; x++) {
-            evaluator.reset();
-            String PDA = pdas[x];
-            System.out.println("========================================================================>>>> NEUER EVAL DURCHLAUF MIT PDA: " + PDA);
-
-            while ((audioInputStream = evaluator.getNextStream(true)) != null) {
-                System.out.println("========================================================================>>>> Eval DURCHLAUF: #"+ evalCnt++);
-
-                for (int i = 0; i < chunks.length; i++) {
-                    setChunk(chunks[i]);
-
-                    for (int j = 0; j < overlaps.length; j++) {
-                        try {
-                            if (audioInputStream == null) {
-                                audioInputStream = evaluator.getNextStream(false);
-                                // System.out.println("EVAL: GOT STREAM");
-                            }
-
-                            setOverlap(overlaps[j]);
-
-                            SAMPLERATE = audioInputStream.getFormat().getSampleRate();
-//                            long milliseconds = (long) ((audioInputStream.getFrameLength() * 1000) / audioInputStream.getFormat().getFrameRate());
-                            // laenge der wav datei in secs: 
-//                            double secs = milliseconds / 1000.0;
-
-                            // JEDES MAL NEUEN DISPATCHER, QUEUE UND NEUEN
-                            // COLLECTOR!
-                            queue = new AudioBufferQueue();
-                            collector = new NoteCollectorWorker(this, queue,SAMPLERATE, CHUNK, OVERLAP, bpm, PDA);
-                            collector.setEvaluator(evaluator);
-                            setTonart(TONART); // -> setzt auch fuer collector!
-                            setTaktart(TAKTARTINDEX); // -> setzt auch fuer
-                                                        // collector!
-                            collector.start();
-
-                            try {
-                                dispatcher.stop();
-                            } catch (Exception e) {
-                                System.out.println("EXC disp.stop(): "
-                                        + e.getMessage());
-                            }
-
-                            dispatcher = new AudioDispatcher(audioInputStream,line, CHUNK, OVERLAP);
-
-                            dispatcher.addAudioProcessor(myAudioProcessor);
-                            dispatcher.start();
-
-                            // System.out.println("STARTED DISPATCHER !!! collector.isCollecting(): "
-                            // + collector.isCollecting());
-                            System.out.println("........... waiting ...........");
-                            while (collector.isCollecting()) {
-                                jAMUtils.sleep(200);
-                            }
-                            audioInputStream = null;
-                        } catch (Exception e) {
-                            e.printStackTrace();
-                        }
-                        // evaluator.gimmiCurrentResults(false);
-
-                    }// end overlaps for
-                }// end chunks for
-
-                // ----- jetzt ist eine Zeile durch
-                evaluator.gimmiCurrentResults(false);
-            }// end while lines in dbTable
-
-            evaluator.gimmiCurrentResults(true);
-        }// END YIN / MPM
+        new ParallelEvaluation(evaluator, pdas, chunks, overlaps).run();
 
         // wir sind durch: (es gibt nix mehr in DB)
         evaluator.FINAL();
@@ -306,7 +259,9 @@ public class Model extends AbstractModel {
      * <ul>
      * <li>init a new AudioBufferQueue and a new NoteCollectorWorker</li>
      * <li>init a new AudioInputStream from Mic or from file</li>
-     * <li>init a new AudioDispatcher: add BlockingAudioPlayer, LowPassFS, WaveFileWriter and the custom AudioProcessor </li>
+     * <li>init a new AudioDispatcher: add BlockingAudioPlayer, BandPass (range of the instrument), WaveFileWriter and the custom AudioProcessor </li>
+     * <li>BlockingAudioPlayer and WaveFileWriter run on their own thread, so a blocking line or a slow disk
+     * does not delay the capture and the pitch detection</li>
      * </ul>
      * */
     public void initProcessing(String dummy) {
@@ -324,21 +279,31 @@ public class Model extends AbstractModel {
         // overlapPercentage);
 
         try {
-            queue = new AudioBufferQueue();
+            // live input must not stall the capture thread: drop the oldest buffers instead
+            queue = new AudioBufferQueue(CHUNK, AudioBufferQueue.DEFAULT_CAPACITY,
+                    audioFile == null ? AudioBufferQueue.Backpressure.DROP_OLDEST : AudioBufferQueue.Backpressure.BLOCK);
             collector = new NoteCollectorWorker(this, queue, SAMPLERATE, CHUNK,OVERLAP, bpm, PDA);
+
             // setTonart(this.TONART);
             // setTaktart(this.TAKTARTINDEX);
 
             AudioInputStream audioInputStream = null;
+            MappedWaveFile mappedFile = null;
+            AudioFormat inputFormat = null;
             if (audioFile != null) {
-                audioInputStream = fromFile(audioFile); // "/Users/fred/Desktop/bachelor/Samples/git_all_empty.wav"
+                // wave files are memory-mapped, everything else is read by javax.sound
+                mappedFile = mapFile(audioFile);
+                if (mappedFile == null)
+                    audioInputStream = fromFile(audioFile); // "/Users/fred/Desktop/bachelor/Samples/git_all_empty.wav"
+                inputFormat = mappedFile != null ? mappedFile.getFormat() : audioInputStream.getFormat();
 
                 firePropertyChange(ControllerEngine.START_STOP_PROCESSING_BUTTON_PROPERTY, "", "process");
                 
                 this.metroSelected = false; // erst hier, dann update auf gui
                 firePropertyChange(ControllerEngine.METRO_PROPERTY, true, false);
 
-                long milliseconds = (long) ((audioInputStream.getFrameLength() * 1000) / audioInputStream.getFormat().getFrameRate());
+                long frameLength = mappedFile != null ? mappedFile.getFrameLength() : audioInputStream.getFrameLength();
+                long milliseconds = (long) ((frameLength * 1000) / inputFormat.getFrameRate());
                 // laenge der wav datei in secs: //TODO anzeigen!
                 double secs = milliseconds / 1000.0;
 
@@ -350,29 +315,40 @@ public class Model extends AbstractModel {
                     this.metroSelected = true; // erst hier, dann update auf gui
                     firePropertyChange(ControllerEngine.METRO_PROPERTY, false,true);
                     audioInputStream = fromMic();
+                    inputFormat = audioInputStream.getFormat();
                 } catch (Exception e) {
                     e.printStackTrace();
                 }
             }
 
-            if (audioInputStream == null)
+            if (audioInputStream == null && mappedFile == null)
                 jAM_error("audioInputStream==null");
 
-            SAMPLERATE = audioInputStream.getFormat().getSampleRate();
+            SAMPLERATE = inputFormat.getSampleRate();
             // System.out.println("INITED WITH SampleRate: " + SAMPLERATE);
 
-            dispatcher = new AudioDispatcher(audioInputStream, line, CHUNK, OVERLAP);
+            if (mappedFile != null)
+                dispatcher = new AudioDispatcher(mappedFile.getData(), inputFormat, CHUNK, OVERLAP);
+            else
+                dispatcher = new AudioDispatcher(audioInputStream, line, CHUNK, OVERLAP);
 
-            if (playbackSelected)
-                dispatcher.addAudioProcessor(new BlockingAudioPlayer(format, CHUNK, OVERLAP));
+            playbackBranch = null;
+            if (playbackSelected) {
+                playbackBranch = new AsynchronousAudioProcessor("playback", format, CHUNK, OVERLAP,
+                        PLAYBACK_BUFFERS, new BlockingAudioPlayer(format, CHUNK, OVERLAP));
+                dispatcher.addAudioProcessor(playbackBranch);
+            }
 
-            if(lowPassSelected)
-            	dispatcher.addAudioProcessor(new LowPassFS(30, SAMPLERATE, OVERLAP));
+            if(lowPassSelected) // band pass fuer den Tonumfang des Instruments
+            	dispatcher.addAudioProcessor(new BandPass(filterLowHz, Math.min(filterHighHz, 0.45f * SAMPLERATE),
+            	        SAMPLERATE, OVERLAP));
            
             // TODO SAVE SESSION TO WAVE !!!
             // if(!ALREADY_WRITTEN_TO_FILE)
             wfr = new WaveFileWriter(format, CHUNK, OVERLAP, savedFileName);
-            dispatcher.addAudioProcessor(wfr);
+            waveFileBranch = new AsynchronousAudioProcessor("wave file", format, CHUNK, OVERLAP,
+                    WAVE_FILE_BUFFERS, wfr);
+            dispatcher.addAudioProcessor(waveFileBranch);
 
             dispatcher.addAudioProcessor(myAudioProcessor);
 
@@ -422,6 +398,11 @@ public class Model extends AbstractModel {
             dispatcher.stop();
         // dispatcher=null;
 
+        // die Zweige leerlaufen lassen: erst dann ist die wave Datei fertig geschrieben,
+        // bevor initProcessing einen neuen WaveFileWriter anlegt und saveWave sie kopiert
+        awaitBranch(playbackBranch);
+        awaitBranch(waveFileBranch);
+
         // wenn man auf stop klickt muss definitiv aufhehoert werden!
         collector.stopCollecting(false);
 
@@ -433,6 +414,22 @@ public class Model extends AbstractModel {
         initProcessing(null);
     }
 
+    /**
+     * waits until the branch has processed all buffers handed over by the stopped dispatcher, reports a failed branch
+     **/
+    private void awaitBranch(AsynchronousAudioProcessor branch) {
+        if (branch == null)
+            return;
+        try {
+            if (!branch.awaitTermination(BRANCH_TIMEOUT, TimeUnit.SECONDS))
+                jAM_error("not finished after " + BRANCH_TIMEOUT + "s: " + branch);
+            else if (branch.hasFailed())
+                jAM_error("failed, see the log: " + branch);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
     /**
      * start or stop processing<br />
      * starts dispatcher and maybe metronome
@@ -464,7 +461,6 @@ public class Model extends AbstractModel {
             firePropertyChange(ControllerEngine.START_STOP_PROCESSING_BUTTON_PROPERTY,"rec", "stop");
             initNewTuneAsString();
             updateScore("");
-            firePropertyChange(ControllerEngine.UPDATE_SCORE_PROPERTY, "old", tuneAsString);
         }
     }
 
@@ -476,7 +472,7 @@ public class Model extends AbstractModel {
             stopMIDI();
         } else {
             this.player.start();
-            this.player.play(tune, tuneAsString);
+            this.player.play(tune, getTuneAsString());
             this.PLAYING_MIDI = true;
             firePropertyChange(ControllerEngine.MIDIBUTTON_NAME_PROPERTY,
                     "play", "stop");
@@ -523,24 +519,68 @@ public class Model extends AbstractModel {
     }
 
     public void parseAndSetTune(String tuneAsString) {
-        this.tuneAsString = tuneAsString;
         tune = new TuneParser().parse(tuneAsString);
+        liveTune = new IncrementalTune(tune, tuneAsString);
 
 //        extractTuneAsString(tune);
         
         // System.out.println("Backup: \n" + tuneAsString);
+        firePropertyChange(ControllerEngine.SHOW_TUNE_PROPERTY, "", tune);
         firePropertyChange(ControllerEngine.UPDATE_SCORE_PROPERTY, "", tuneAsString);
     }
+
+    /**
+     * Appends a transcribed note to the current tune without parsing the whole tune again.<br />
+     * Called by the collector for each note, the view is updated with {@link #showAppendedNotes()}.<br />
+     * The score renders the tune itself, so the note is appended on the event dispatch thread,
+     * where the score is laid out and painted.
+     *
+     * @param abcNote - the note in abc notation, e.g. "^C" or "z"
+     * @param length - the notevalue in 16th notes
+     * @param postfix - "-" for a tie, "|" for a bar line, "\n" for a new line or ""
+     */
+    public void appendToScore(final String abcNote, final int length, final String postfix) {
+        SwingUtilities.invokeLater(new Runnable() {
+            public void run() {
+                // liveTune erst hier lesen: parseAndSetTune setzt ihn auf dem EDT
+                liveTune.append(abcNote, length, postfix);
+            }
+        });
+    }
+
+    /**
+     * Shows the tune with the appended notes in the score. The abc text is not updated,
+     * see {@link #showTuneAsString()}
+     */
+    public void showAppendedNotes() {
+        firePropertyChange(ControllerEngine.SHOW_TUNE_PROPERTY, "", tune);
+    }
+
+    /**
+     * Shows the abc text of the current tune (with all appended notes) in the editor.
+     * Runs on the event dispatch thread, after the notes appended so far.
+     */
+    public void showTuneAsString() {
+        SwingUtilities.invokeLater(new Runnable() {
+            public void run() {
+                firePropertyChange(ControllerEngine.UPDATE_SCORE_PROPERTY, "", getTuneAsString());
+            }
+        });
+    }
+
+    private String getTuneAsString() {
+        return liveTune.getTuneAsString();
+    }
     
     public void transpose(Integer semitones) {
         tune = Tune.transpose(tune, semitones);
         
-        String s = this.tuneAsString + "\n\n";
+        String s = getTuneAsString() + "\n\n";
         
         String transposedNotes = extractTuneAsString(tune);
         updateScore(transposedNotes);
         
-        s += "to: \n" + this.tuneAsString;
+        s += "to: \n" + getTuneAsString();
         jAM.log("Transposed ("+ semitones +" semitones) from:\n" + s, false);
         
         firePropertyChange(ControllerEngine.SHOW_TUNE_PROPERTY, "", tune);
@@ -785,12 +825,15 @@ public class Model extends AbstractModel {
     public void saveProject(String name) throws Exception {
         File f = new File(name);
         FileWriter writer = new FileWriter(f);
-        writer.write(tuneAsString);
+        writer.write(getTuneAsString());
         writer.flush();
         writer.close();
         writer = null;
     }
 
+    /**
+     * copies the recording, see {@link #stopProcessing()}: after stop the file is complete
+     **/
     public void saveWave(String name) {
         this.wfr.saveToDisk(name);
     }
@@ -879,6 +922,17 @@ public class Model extends AbstractModel {
         this.lowPassSelected = s;
     }
 
+    /**
+     * sets the range of the instrument, the filter passes only these frequencies
+     * 
+     * @param lowHz - the lowest frequency in Hz
+     * @param highHz - the highest frequency in Hz
+     */
+    public void setFilterRange(float lowHz, float highHz) {
+        this.filterLowHz = lowHz;
+        this.filterHighHz = highHz;
+    }
+
     public void setChunk(Integer CHUNK) {
         this.CHUNK = CHUNK;
         this.OVERLAP = CHUNK * overlapPercentage / 100;
@@ -1035,6 +1089,24 @@ public class Model extends AbstractModel {
         return new AudioInputStream(line);
     }
 
+    /**
+     * Maps a wave file, see {@link MappedWaveFile}.
+     * 
+     * @return null if the file can not be mapped (e.g. no wave file), then it is read by {@link #fromFile(File)}
+     */
+    private MappedWaveFile mapFile(File audioFile) {
+        if (!audioFile.exists())
+            return null;
+        try {
+            MappedWaveFile wave = new MappedWaveFile(audioFile);
+            jAM.log("Model: ===== Mapping file " + audioFile.getAbsolutePath() + "\nFORMAT: " + wave.getFormat(), false);
+            return wave;
+        } catch (Exception e) {
+            jAM.log("Model: could not map " + audioFile.getName() + " (" + e.getMessage() + "), reading it as stream", false);
+            return null;
+        }
+    }
+
     private AudioInputStream fromFile(File audioFile) {
         if (!audioFile.exists()) {
             System.err.println("file not found: " + audioFile.getAbsolutePath());
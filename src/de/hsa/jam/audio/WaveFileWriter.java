@@ -1,32 +1,39 @@
 package de.hsa.jam.audio;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
-import java.util.Vector;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
 
-import javax.sound.sampled.AudioFileFormat;
 import javax.sound.sampled.AudioFormat;
-import javax.sound.sampled.AudioInputStream;
-import javax.sound.sampled.AudioSystem;
-import javax.sound.sampled.LineUnavailableException;
-import javax.sound.sampled.SourceDataLine;
+import javax.sound.sampled.AudioFormat.Encoding;
 
 import be.hogent.tarsos.sampled.AudioProcessor;
-import be.hogent.tarsos.sampled.SampledAudioUtilities;
+import de.hsa.jam.jAM;
 
 /**
- * Simple WaveFileWriter. After reading buffer from soundcard, write to filename.
+ * Simple WaveFileWriter. After reading buffer from soundcard, write to filename.<br />
+ * The samples are streamed into the file in chunks of {@link #CHUNK_SIZE} bytes, the sizes
+ * in the RIFF header are patched when processing has finished. So the memory used does not
+ * depend on the length of the recording.<br />
+ * The file is created with the first buffer: a new writer does not overwrite the last session
+ * until the next recording starts.<br />
+ * To do the disk writes on an own thread, wrap the writer in an
+ * {@link be.hogent.tarsos.sampled.AsynchronousAudioProcessor}.
  *
  * @author Michael Wager
  */
 public final class WaveFileWriter implements AudioProcessor {
+	/** size of the RIFF header with one fmt and one data chunk */
+	private static final int HEADER_SIZE = 44;
+	/** the samples are written to disk in chunks of this size */
+	public static final int CHUNK_SIZE = 64 * 1024;
 
-	private SourceDataLine line;
-
-	private ByteArrayOutputStream out;
-	private AudioFormat format;
+	private final AudioFormat format;
 
 	/**
 	 * The overlap and step size defined not in samples but in bytes. So it
@@ -34,99 +41,198 @@ public final class WaveFileWriter implements AudioProcessor {
 	 * 8,16,24,... bits or 1,2,3,... bytes are supported.
 	 */
 	private final int byteOverlap, byteStepSize;
-	private String filename;
+	private final String filename;
+
+	// wave files are little endian, 8 bit samples are unsigned
+	private final int sampleSize;
+	private final boolean swapBytes, flipSign;
 
-	private Vector<byte[]> buffer;
+	private final ByteBuffer chunk;
+	private RandomAccessFile file;
+	private FileChannel channel;
+	private long dataSize;
 
 	public WaveFileWriter(final AudioFormat format, final int bufferSize,
-			final int overlap, String filename) throws LineUnavailableException {
-		out = new ByteArrayOutputStream();
-		line = SampledAudioUtilities.getOpenLineFromConfiguredMixer(format);
+			final int overlap, String filename) {
+		Encoding encoding = format.getEncoding();
+		if (!Encoding.PCM_SIGNED.equals(encoding) && !Encoding.PCM_UNSIGNED.equals(encoding))
+			throw new IllegalArgumentException("WaveFileWriter: unsupported encoding " + encoding);
+
 		// overlap in samples * nr of bytes / sample = bytes overlap
 		this.byteOverlap = overlap * format.getFrameSize();
 		this.byteStepSize = bufferSize * format.getFrameSize() - byteOverlap;
 		this.filename = filename;
 		this.format = format;
-		// buffer=new Vector<byte[]>();
-	}
 
-	Thread thread;
-	float[] audioFloatBuffer;
-	byte[] audioByteBuffer;
+		sampleSize = (format.getSampleSizeInBits() + 7) / 8;
+		swapBytes = sampleSize > 1 && format.isBigEndian();
+		flipSign = sampleSize == 1 ? Encoding.PCM_SIGNED.equals(encoding) : Encoding.PCM_UNSIGNED.equals(encoding);
+
+		// ganze frames, damit beim Konvertieren kein Sample geteilt wird
+		chunk = ByteBuffer.allocateDirect(CHUNK_SIZE / format.getFrameSize() * format.getFrameSize());
+		chunk.order(ByteOrder.LITTLE_ENDIAN);
+	}
 
-	public void processFull(final float[] audioFloatBuffer,
+	public synchronized void processFull(final float[] audioFloatBuffer,
 			final byte[] audioByteBuffer) {
-		// buffer.add(audioByteBuffer); //store
 		try {
-			out.write(audioByteBuffer, 0, audioByteBuffer.length);
-		} catch (Exception e) {
-			System.err.println("ERROR In WaveFileWriter");
-		}// TODO
+			open();
+			write(audioByteBuffer, 0, audioByteBuffer.length);
+		} catch (IOException e) {
+			fail(e);
+		}
 	}
 
-	public void processOverlapping(final float[] audioFloatBuffer,
+	public synchronized void processOverlapping(final float[] audioFloatBuffer,
 			final byte[] audioByteBuffer) {
-		// buffer.add(audioByteBuffer); //store
+		if (channel == null)
+			return;
 		try {
-			out.write(audioByteBuffer, byteOverlap, byteStepSize);
-		} catch (Exception e) {
-			System.err.println("ERROR In WaveFileWriter");
-		}// TODO
+			write(audioByteBuffer, byteOverlap, byteStepSize);
+		} catch (IOException e) {
+			fail(e);
+		}
 	}
 
-	public void processingFinished() {
-		// cleanup
-		line.drain();
-		line.close();
-
+	public synchronized void processingFinished() {
 		// default nach jeder Aufnahme:
-		writeToDisk(this.filename);
-	}
-
-	public void saveToDisk(String name) {
-		writeToDisk(name);
+		if (channel == null)
+			return;
+		try {
+			flush();
+			if ((dataSize & 1) != 0) { // chunks sind auf gerade Laengen aufgefuellt
+				chunk.put((byte) 0);
+				chunk.flip();
+				while (chunk.hasRemaining())
+					channel.write(chunk, HEADER_SIZE + dataSize);
+				chunk.clear();
+			}
+			writeHeader();
+			file.close();
+		} catch (IOException e) {
+			fail(e);
+		}
+		channel = null;
+		file = null;
 	}
 
-	private void writeToDisk(String name) {
+	/**
+	 * Copies the recording to another file. During a recording everything up to now is copied.
+	 *
+	 * @param name - the new file
+	 */
+	public synchronized void saveToDisk(String name) {
 		try {
-			out.flush();
-			out.close();
-		} catch (IOException ex) {
-			ex.printStackTrace();
+			if (channel != null) {
+				flush();
+				writeHeader();
+				copy(channel, name);
+			} else {
+				FileInputStream in = new FileInputStream(filename);
+				try {
+					copy(in.getChannel(), name);
+				} finally {
+					in.close();
+				}
+			}
+		} catch (IOException e) {
+			jAM.log("WaveFileWriter: could not save " + name + ": " + e.getMessage(), true);
 		}
+	}
 
-		AudioInputStream audioInputStream;
-		byte audioBytes[] = out.toByteArray();
-		// jAMUtils.printArray(audioBytes);
+	private void open() throws IOException {
+		if (channel != null)
+			processingFinished();
 
-		ByteArrayInputStream bais = new ByteArrayInputStream(audioBytes);
-		audioInputStream = new AudioInputStream(bais, format, audioBytes.length
-				/ format.getFrameSize());
+		file = new RandomAccessFile(filename, "rw");
+		file.setLength(0);
+		channel = file.getChannel();
+		dataSize = 0;
+		chunk.clear();
+		writeHeader();
+	}
+
+	private void write(byte[] buffer, int offset, int length) throws IOException {
+		int end = offset + length;
+		while (offset < end) {
+			int n = Math.min(end - offset, chunk.remaining());
+			if (!swapBytes && !flipSign) {
+				chunk.put(buffer, offset, n);
+			} else {
+				for (int i = offset; i < offset + n; i += sampleSize) {
+					if (swapBytes) {
+						for (int j = sampleSize - 1; j >= 0; j--)
+							chunk.put(buffer[i + j]);
+					} else {
+						chunk.put(buffer[i]);
+						for (int j = 1; j < sampleSize; j++)
+							chunk.put(buffer[i + j]);
+					}
+					if (flipSign) // most significant byte ist jetzt das letzte
+						chunk.put(chunk.position() - 1, (byte) (chunk.get(chunk.position() - 1) ^ 0x80));
+				}
+			}
+			offset += n;
+			if (!chunk.hasRemaining())
+				flush();
+		}
+	}
+
+	private void flush() throws IOException {
+		chunk.flip();
+		while (chunk.hasRemaining())
+			dataSize += channel.write(chunk, HEADER_SIZE + dataSize);
+		chunk.clear();
+	}
 
-		// long milliseconds = (long)((audioInputStream.getFrameLength() * 1000)
-		// / audioInputStream.getFormat().getFrameRate());
-		// double duration = milliseconds / 1000.0;
-		// System.out.println("Captured " + duration +
-		// " seconds of audio data, now writing to wave..."); //TODO tmpdir
+	/**
+	 * writes the RIFF header with the sizes of the data written so far
+	 */
+	private void writeHeader() throws IOException {
+		int channels = format.getChannels();
+		int sampleRate = (int) format.getSampleRate();
+		int blockAlign = channels * sampleSize;
+		long data = Math.min(dataSize, 0xFFFFFFFFL - HEADER_SIZE);
+
+		ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+		header.putInt(0x46464952); // RIFF
+		header.putInt((int) (HEADER_SIZE - 8 + data + (data & 1)));
+		header.putInt(0x45564157); // WAVE
+		header.putInt(0x20746d66); // fmt
+		header.putInt(16);
+		header.putShort((short) 1); // PCM
+		header.putShort((short) channels);
+		header.putInt(sampleRate);
+		header.putInt(sampleRate * blockAlign);
+		header.putShort((short) blockAlign);
+		header.putShort((short) (sampleSize * 8));
+		header.putInt(0x61746164); // data
+		header.putInt((int) data);
+		header.flip();
+		while (header.hasRemaining())
+			channel.write(header, header.position());
+	}
 
+	private static void copy(FileChannel source, String name) throws IOException {
+		FileOutputStream out = new FileOutputStream(new File(name));
 		try {
-			audioInputStream.reset();
-		} catch (Exception ex) {
-			ex.printStackTrace();
-			return;
+			FileChannel target = out.getChannel();
+			long size = source.size(), position = 0;
+			while (position < size)
+				position += source.transferTo(position, size - position, target);
+		} finally {
+			out.close();
 		}
+	}
 
-		File file = new File(name);
+	private void fail(IOException e) {
+		jAM.log("WaveFileWriter: could not write " + filename + ": " + e.getMessage(), true);
 		try {
-			if (AudioSystem.write(audioInputStream, AudioFileFormat.Type.WAVE,
-					file) == -1) {
-				throw new IOException("Problems writing to file");
-			}
-
-//			System.out.println("WRITTEN!!!!!!");
-
-		} catch (Exception ex) {
-			ex.printStackTrace();
+			if (file != null)
+				file.close();
+		} catch (IOException ignored) {
 		}
+		channel = null;
+		file = null;
 	}
 }
@@ -1,47 +1,181 @@
 package de.hsa.jam.audio.collector;
 
-import java.util.LinkedList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
 
 /**
- * Class implements a blocking AudioBuffer - Queue (FIFO) which holds float arrays
- *  
+ * Class implements a bounded AudioBuffer - Queue (FIFO) between exactly one producer
+ * (the AudioDispatcher thread) and one consumer (the NoteCollectorWorker).<br />
+ * The float arrays are copied into preallocated slots of a ring buffer, so adding
+ * and getting buffers allocates nothing in steady state.<br />
+ * What happens if the ring is full is defined by {@link Backpressure}.<br />
+ * The end of the stream is signaled with {@link #endOfStream()}.
+ *
  * @author Michael Wager
  */
 public class AudioBufferQueue {
-	//LinkedList<float[][]> queue = new LinkedList<float[][]>();
-	LinkedList<float[]> queue = new LinkedList<float[]>();
-
-	public synchronized void add(float[] audioFloatBuffer) {
-		// ende - bedingung
-		if (audioFloatBuffer == null) {
-//			queue.addLast(new float[][] { null, new float[] { -1 } });
-			queue.addLast(null);
-			return;
+	/**
+	 * What the producer does if the queue is full.
+	 */
+	public enum Backpressure {
+		/** wait until the consumer has taken a buffer (no audio is lost) */
+		BLOCK,
+		/** overwrite the oldest buffer in the queue, the newest audio wins */
+		DROP_OLDEST,
+		/** discard the buffer which should be added */
+		DROP_NEWEST
+	}
+
+	/** default number of slots, about 3 seconds of audio at 1024 samples and 75% overlap */
+	public static final int DEFAULT_CAPACITY = 512;
+
+	private final float[][] slots;
+	private final int[] lengths;
+	private final Backpressure backpressure;
+
+	// read/write positions, increase monotonic, slot index is position % capacity
+	private final AtomicLong readPosition = new AtomicLong();
+	private final AtomicLong writePosition = new AtomicLong();
+
+	private volatile boolean endOfStream = false;
+	private volatile long dropped = 0; // only written by the producer
+
+	private volatile Thread waitingConsumer, waitingProducer;
+
+	/**
+	 * Creates a blocking queue with {@link #DEFAULT_CAPACITY} slots.
+	 *
+	 * @param bufferSize - the size of one audio buffer in samples
+	 */
+	public AudioBufferQueue(int bufferSize) {
+		this(bufferSize, DEFAULT_CAPACITY, Backpressure.BLOCK);
+	}
+
+	/**
+	 * @param bufferSize - the size of one audio buffer in samples
+	 * @param capacity - the number of buffers the queue can hold
+	 * @param backpressure - what to do if the queue is full
+	 */
+	public AudioBufferQueue(int bufferSize, int capacity, Backpressure backpressure) {
+		if (capacity < 1)
+			throw new IllegalArgumentException("capacity must be > 0: " + capacity);
+
+		this.slots = new float[capacity][bufferSize];
+		this.lengths = new int[capacity];
+		this.backpressure = backpressure;
+	}
+
+	/**
+	 * Copies the buffer into the queue. Must only be called from the producer thread.
+	 *
+	 * @param audioFloatBuffer - the buffer, at most bufferSize samples are copied
+	 * @throws InterruptedException - if the producer gets interrupted while blocking
+	 */
+	public void add(float[] audioFloatBuffer) throws InterruptedException {
+		long write = writePosition.get();
+
+		while (write - readPosition.get() >= slots.length) { // voll
+			if (backpressure == Backpressure.DROP_NEWEST) {
+				dropped++;
+				return;
+			} else if (backpressure == Backpressure.DROP_OLDEST) {
+				long read = readPosition.get();
+				if (write - read >= slots.length && readPosition.compareAndSet(read, read + 1))
+					dropped++;
+			} else {
+				waitingProducer = Thread.currentThread();
+				if (write - readPosition.get() >= slots.length)
+					LockSupport.park();
+				waitingProducer = null;
+				if (Thread.interrupted())
+					throw new InterruptedException();
+			}
 		}
 
-		float[] clone = audioFloatBuffer.clone();
-//		queue.addLast(new float[][] { clone, new float[] { level } });
-		queue.addLast(clone);
-		// queue.addLast(new float[][]{audioFloatBuffer, new float[]{level}});
-		notify();
+		int slot = (int) (write % slots.length);
+		int length = Math.min(audioFloatBuffer.length, slots[slot].length);
+		System.arraycopy(audioFloatBuffer, 0, slots[slot], 0, length);
+		lengths[slot] = length;
+		writePosition.set(write + 1); // publish
+
+		Thread consumer = waitingConsumer;
+		if (consumer != null)
+			LockSupport.unpark(consumer);
+	}
+
+	/**
+	 * Signals the consumer that no more buffers will be added.<br />
+	 * Buffers which are already in the queue can still be taken.
+	 */
+	public void endOfStream() {
+		endOfStream = true;
+
+		Thread consumer = waitingConsumer;
+		if (consumer != null)
+			LockSupport.unpark(consumer);
 	}
 
-	public synchronized float[] get() throws InterruptedException {
-		// long start = System.currentTimeMillis();
-		while (queue.isEmpty()) { // solange nichts da ist.. warte
-			wait(); // wartet auf notify
-			// System.out.println("WAITING!!!!!");
+	/**
+	 * Takes the oldest buffer out of the queue, blocks if the queue is empty.
+	 * Must only be called from the consumer thread.
+	 *
+	 * @param target - the oldest buffer is copied into this array
+	 * @return the number of samples copied or -1 if the end of the stream is reached
+	 * @throws InterruptedException - if the consumer gets interrupted while waiting
+	 */
+	public int get(float[] target) throws InterruptedException {
+		while (true) {
+			long read = readPosition.get();
+
+			if (read == writePosition.get()) { // leer
+				// endOfStream zuerst lesen: alle Buffer davor sind dann schon sichtbar
+				if (endOfStream && read == writePosition.get())
+					return -1;
+
+				waitingConsumer = Thread.currentThread();
+				if (read == writePosition.get() && !endOfStream)
+					LockSupport.park();
+				waitingConsumer = null;
+				if (Thread.interrupted())
+					throw new InterruptedException();
+				continue;
+			}
+
+			int slot = (int) (read % slots.length);
+			int length = Math.min(lengths[slot], target.length);
+			System.arraycopy(slots[slot], 0, target, 0, length);
+
+			// if the producer dropped this slot (DROP_OLDEST) in the meantime the copy is invalid: try again
+			if (readPosition.compareAndSet(read, read + 1)) {
+				Thread producer = waitingProducer;
+				if (producer != null)
+					LockSupport.unpark(producer);
+				return length;
+			}
 		}
-		// System.out.println("==================================== WAITED: " +
-		// (System.currentTimeMillis() - start));
-		return queue.removeFirst();
 	}
 
+	/**
+	 * Discards all buffers and the end-of-stream signal.<br />
+	 * Only call this while the other side is not adding or getting buffers.
+	 */
 	public void clear() {
-		queue.clear();
+		readPosition.set(writePosition.get());
+		endOfStream = false;
 	}
 
 	public int size() {
-		return queue.size();
+		return (int) (writePosition.get() - readPosition.get());
+	}
+
+	public int capacity() {
+		return slots.length;
+	}
+
+	/**
+	 * @return the number of buffers which were dropped because the queue was full
+	 */
+	public long getDroppedCount() {
+		return dropped;
 	}
 }
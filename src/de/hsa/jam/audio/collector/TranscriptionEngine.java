@@ -0,0 +1,539 @@
+package de.hsa.jam.audio.collector;
+
+import java.util.Arrays;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.Vector;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import be.hogent.tarsos.sampled.pitch.FastYin;
+import be.hogent.tarsos.sampled.pitch.McLeodPitchMethod;
+import be.hogent.tarsos.sampled.pitch.PitchConverter;
+import be.hogent.tarsos.sampled.pitch.Yin;
+
+import de.hsa.jam.util.jAMUtils;
+
+/**
+ * The transcription without GUI: detects the pitch of each buffer and decides, based on
+ * onsets and offsets of midiKeys and levels, which notes and rests were played.<br />
+ * The results are passed to a {@link TranscriptionListener}, the engine itself neither builds
+ * strings nor knows about Model, views or the evaluation.<br />
+ * An engine is not thread safe: the pitch detectors hold mutable buffers, so every thread
+ * needs its own engine.<br />
+ * The collected midiKeys are kept in arrays indexed by midiKey (0 - 127) and in arrays which
+ * grow only while the first long notes are collected, so {@link #process(float[], int)} does
+ * not allocate per buffer (only when a note or rest is decided).
+ *
+ * @author Michael Wager
+ */
+public class TranscriptionEngine {
+	private static final Logger LOG = Logger.getLogger(TranscriptionEngine.class.getName());
+
+	private final TranscriptionListener listener;
+
+	// ---------- pitch detect -----
+	private String PITCHDETECTOR = "";
+	// different pitch detection algorithms:
+	private Yin yin;
+	private FastYin fastYin;
+	private McLeodPitchMethod mpm;
+
+	private float pitchInHertz;
+	private float pitch_probability;
+	private int transpose = 0; // in Halbtonschritten
+
+	// TODO das hier muss immer noch mit GUI uebereinstimmen !!!
+	private float YIN_TRESHOLD = 0.13f, MPM_TRESHOLD = 0.93f;
+
+	private int MINIMUM_DURATION = 50;
+	private float MINIMUM_LEVEL = -70.0f;
+
+	// Erkenntnisse von Evaluation:
+	// MinDur/MinLevel: 40 30ms  UNBRAUCHBAR (fuer meine Testdaten..)
+	//					40 10 auch
+	//					50 30 auch
+
+	private int delta = 8; // local minima/maxima constraint threshold
+
+	private final float audioSampleRate;
+	private final int bufferSize, overlap;
+	private int timeForOneBeat, timeFor16thNote;
+
+	private boolean ONSET = false, NEW_NOTE_ONSET = false, SILENCE = false;
+
+	private static final int MIDI_KEYS = 128;
+
+	// um onset/offset -Bedingungen zu checken: ms pro midiKey, 0 = nicht gesammelt
+	private final float[] midiKeySammler = new float[MIDI_KEYS];
+	// sammle Noten waehrend ONSET um dann auszuwerten (und deren rms-levels)
+	private int[] collectedMidiKeys = new int[64];
+	private float[] collectedLevels = new float[64];
+	private int collectedCount;
+	private int restCount; // zaehle Pausen waehrend !ONSET um dann auszuwerten
+
+	// es gibt den zuletzt erkannten und den zuletzt "gewaehlten"(taken)
+	private int lastDetectedMidiKey = -1, lastTakenMidiKey = -1;
+	private int newNoteCount = 0;
+
+	// ---------- STATS:
+	private final float[] midiKeySammlerInsgesamt = new float[MIDI_KEYS]; // sammle ALLE erkannten Noten (nur fuer stats)
+	private float yin_cnt = 0, mpm_cnt = 0;
+	private float countSamples = 0;
+
+	/**
+	 * @param audioSampleRate - samplerate
+	 * @param bufferSize - buffersize in samples
+	 * @param overlap - bufferoverlap in samples
+	 * @param bpm - beats per minute of the recording
+	 * @param PDA - which pitch detection algorithm to use: "YIN", "FAST_YIN" or "MPM"
+	 * @param listener - gets the detected pitches, notes and rests
+	 */
+	public TranscriptionEngine(float audioSampleRate, int bufferSize, int overlap, int bpm, String PDA, TranscriptionListener listener) {
+		this.audioSampleRate = audioSampleRate;
+		this.bufferSize = bufferSize;
+		this.overlap = overlap;
+		this.PITCHDETECTOR = PDA;
+		this.listener = listener;
+
+		setBPM(bpm);
+		reset();
+
+		yin = new Yin(audioSampleRate, bufferSize, YIN_TRESHOLD);
+		fastYin = new FastYin(audioSampleRate, bufferSize, YIN_TRESHOLD);
+		mpm = new McLeodPitchMethod(audioSampleRate, bufferSize, MPM_TRESHOLD);
+	}
+
+	/**
+	 * Forgets all collected notes, rests and stats, e.g. for the next recording.
+	 */
+	public void reset() {
+		Arrays.fill(midiKeySammlerInsgesamt, 0);
+		Arrays.fill(midiKeySammler, 0);
+		collectedCount = 0;
+		restCount = 0;
+
+		lastDetectedMidiKey = -1;
+		lastTakenMidiKey = -1;
+	}
+
+	public void setPITCHDETECTOR(String PITCHDETECTOR) {
+		this.PITCHDETECTOR = PITCHDETECTOR;
+	}
+
+	public String getPITCHDETECTOR() {
+		return PITCHDETECTOR;
+	}
+
+	public void setYinTreshold(float t) {
+		YIN_TRESHOLD = t;
+		yin = new Yin(audioSampleRate, bufferSize, YIN_TRESHOLD);
+		fastYin = new FastYin(audioSampleRate, bufferSize, YIN_TRESHOLD);
+	}
+
+	public void setMpmTreshold(float t) {
+		MPM_TRESHOLD = t;
+		mpm = new McLeodPitchMethod(audioSampleRate, bufferSize, MPM_TRESHOLD);
+	}
+
+	public void setMinDur(int d) {
+		this.MINIMUM_DURATION = d;
+	}
+
+	public void setMinLev(float l) {
+		this.MINIMUM_LEVEL = l;
+	}
+
+	public int getMinDur() {
+		return MINIMUM_DURATION;
+	}
+
+	public float getMinLev() {
+		return MINIMUM_LEVEL;
+	}
+
+	public void setBPM(int bpm) {
+		timeForOneBeat = 60000 / bpm;
+		timeFor16thNote = timeForOneBeat / 4;
+	}
+
+	public int getTimeForOneBeat() {
+		return timeForOneBeat;
+	}
+
+	/**
+	 * @param halfTones - the detected pitches are transposed by this number of half tone steps,
+	 *            e.g. 2 for a Bb clarinet
+	 */
+	public void setTranspose(int halfTones) {
+		this.transpose = halfTones;
+	}
+
+	// ---------- state of the last buffer, e.g. for plotting and debug output
+
+	public float getPitchInHertz() {
+		return pitchInHertz;
+	}
+
+	public float getProbability() {
+		return pitch_probability;
+	}
+
+	public boolean isOnset() {
+		return ONSET;
+	}
+
+	public boolean isSilence() {
+		return SILENCE;
+	}
+
+	/**
+	 * @return the buffer of the YIN (or FAST_YIN) pitch detector
+	 */
+	public float[] getYinBuffer() {
+		return PITCHDETECTOR.equals("FAST_YIN") ? fastYin.getCurrentBuffer() : yin.getCurrentBuffer();
+	}
+
+	public float[] getMpmBuffer() {
+		return mpm.getCurrentBuffer();
+	}
+
+	/**
+	 * @return the time of the processed audio in ms
+	 */
+	public float getTimestamp() {
+		return countSamples / audioSampleRate * 1000.0f;
+	}
+
+	// ---------- stats
+
+	/**
+	 * @return all detected midiKeys and how long they were detected in ms (not only the taken ones)
+	 */
+	public SortedMap<Integer, Float> getAllDetectedMidiKeys() {
+		return toMap(midiKeySammlerInsgesamt);
+	}
+
+	private static SortedMap<Integer, Float> toMap(float[] durations) {
+		SortedMap<Integer, Float> map = new TreeMap<Integer, Float>();
+		for (int midiKey = 0; midiKey < durations.length; midiKey++) {
+			if (durations[midiKey] != 0)
+				map.put(midiKey, durations[midiKey]);
+		}
+		return map;
+	}
+
+	public float getYinCount() {
+		return yin_cnt;
+	}
+
+	public float getMpmCount() {
+		return mpm_cnt;
+	}
+
+	// ------------- collector-pipeline start --------------
+
+	/**
+	 * <b>This is the most important function of the collector pipeline</b><br />
+	 * First we detect the pitch of the audioFloatBuffer using YIN or MPM.<br />
+	 * Then the collector process starts, checking onsets and offsets based on midiKeys and dB, collects<br />
+	 * and convert these pich vectors to notes based on the bpm, samplerate buffersize and bufferoverlap.<br />
+	 *
+	 * @param audioFloatBuffer - the audio buffer (bufferSize samples)
+	 * @param length - the number of samples read into the buffer
+	 */
+	public void process(float[] audioFloatBuffer, int length) {
+		double level = jAMUtils.soundPressureLevel(audioFloatBuffer);
+		countSamples += length - overlap;
+
+		pitchInHertz = getBestPitch(audioFloatBuffer);
+
+		// nach dem pitch erkannt wurde muss ggf. entsprechend dem Instrument transponiert werden
+		if (transpose != 0)
+			pitchInHertz = (float) (pitchInHertz * Math.pow(2, transpose / 12.0f));
+
+		int midiKey = PitchConverter.hertzToMidiKeyFast(pitchInHertz);
+		if (midiKey < 0 || midiKey >= MIDI_KEYS) // kein MIDI-Ton: wie kein pitch
+			midiKey = 0;
+
+		listener.pitchFrame(pitchInHertz, pitch_probability, midiKey, level);
+
+		float duration = (bufferSize - overlap) / audioSampleRate * 1000.0f;
+
+		// ----- sammel ALLE erkannten Noten fuer statistiken -----
+		midiKeySammlerInsgesamt[midiKey] += duration;
+
+		// wie jAMUtils.isSilence(), der level ist schon berechnet
+		SILENCE = level < MINIMUM_LEVEL;
+
+		// 1. OFFSET basierend auf neuer note!
+		if ((ONSET && midiKey > 0 && !SILENCE) && (midiKey != lastTakenMidiKey)) { // es kommt ne andere /Note/
+			if (newNoteCount == 0) // die erste "andere" Note
+				newNoteCount++;
+			else if (midiKey == lastDetectedMidiKey)
+				newNoteCount++;
+
+			if (newNoteCount > (int) (MINIMUM_DURATION / duration)) { // 60/25.01 --> 2 also mind. 3 nehmen! wie sonst auch
+				ONSET = false; // dann macht er jetzt unten ne Entscheidung und beim next Mal faengt er an die neue note zu collecten
+				NEW_NOTE_ONSET = true;
+				newNoteCount = 0;
+
+				if (LOG.isLoggable(Level.FINE))
+					LOG.fine(getTimestamp() + "ms OFFSET NEWNOTE: " + midiKey + " could be possible new note");
+			}
+
+			// 2. ONSET
+		} else if (!ONSET && midiKey > 0 && !SILENCE) {
+			newNoteCount = 0;
+
+			// gibts diese note schon? und kam sie beim letzten Mal?
+			if (midiKeySammler[midiKey] != 0 && midiKey == lastDetectedMidiKey) {
+				midiKeySammler[midiKey] += duration;
+				if (midiKeySammler[midiKey] > MINIMUM_DURATION) {
+					if (LOG.isLoggable(Level.FINE))
+						LOG.fine(getTimestamp() + "ms ONSET - Entscheidung basiert auf: " + toMap(midiKeySammler));
+
+					ONSET = true;
+
+					// wir koennen davon ausgehen dass "note" die lastTakenNote
+					// wird, da sie alle Bedingungen fuer ein note-OFFSET erfuellt
+					lastTakenMidiKey = midiKey;
+
+					Arrays.fill(midiKeySammler, 0);
+				}
+			} else {
+				midiKeySammler[midiKey] = duration;
+			}
+
+			// 3. OFFSET basierend auf Pause
+		} else if (SILENCE || midiKey == 0) { // sonst ist alles ne Pause: kein pitch und auch level < MIN_LEVEL
+			/** es muessen die Pausen gezaehlt werden!
+			 * BSP: 60,60,60,0,0,0,0,55,0,0,0, --> die 55 MUSS mitgezaehlt werden !
+			 * */
+			if (midiKeySammler[0] != 0 && lastDetectedMidiKey == 0) {
+				midiKeySammler[0] += duration;
+
+				if (midiKeySammler[0] > MINIMUM_DURATION) {
+					if (ONSET) {
+						if (LOG.isLoggable(Level.FINE))
+							LOG.fine(getTimestamp() + "ms OFFSET - Entscheidung basiert auf: " + toMap(midiKeySammler));
+
+						ONSET = false; // jetzt ist wieder vorbei
+						NEW_NOTE_ONSET = false;
+					}
+					Arrays.fill(midiKeySammler, 0);
+				}
+			} else {
+				midiKeySammler[0] = duration;
+			}
+		}
+
+		// ----- wenn nun ONSET==true anfangen zu sammeln bis ONSET==false!
+		if (ONSET) {
+			if (restCount > 0 && !NEW_NOTE_ONSET) { // hier sind nun pausen in der off Phase gezaehlt worden
+				detectRest(duration);
+			} else { // sonst: sammle noten
+				collect(midiKey, (float) level);
+			}
+		} else { // wenn ein OFFSET und noten sind vorhanden: entscheidung!
+			if (collectedCount > 0) {
+				detectNote(duration);
+			} else
+				// sonst sammle pausen
+				restCount++;
+		}
+
+		lastDetectedMidiKey = midiKey;
+	}
+
+	private void collect(int midiKey, float level) {
+		if (collectedCount == collectedMidiKeys.length) {
+			int[] midiKeys = new int[collectedCount * 2];
+			float[] levels = new float[collectedCount * 2];
+			System.arraycopy(collectedMidiKeys, 0, midiKeys, 0, collectedCount);
+			System.arraycopy(collectedLevels, 0, levels, 0, collectedCount);
+			collectedMidiKeys = midiKeys;
+			collectedLevels = levels;
+		}
+		collectedMidiKeys[collectedCount] = midiKey;
+		collectedLevels[collectedCount] = level;
+		collectedCount++;
+	}
+
+	private void detectNote(float duration) {
+		// Laenge speichern, die Note wird aus den gesammelten midiKeys ausgesucht
+		float noteDur = collectedCount * duration;
+
+		// returns: midiKeyTaken und duration(s) also:
+		// zB: [60, 500, 500] --> anstatt 1000ms 2Mal 500ms
+		// das sind bei 60bpm dann 2 8tel anstatt eine 4tel
+		Vector<Double> arr = getMostDetectedNoteInSequence(duration);
+		int midiKeyTaken = arr.get(0).intValue();
+
+		if (LOG.isLoggable(Level.FINE))
+			LOG.fine(getTimestamp() + "ms NOTE: " + midiKeyTaken + " noteDur: " + noteDur + " - based on " + collectedCount + " buffers");
+
+		if (arr.size() == 1) { // Normalfall
+			addNoteOrRest(midiKeyTaken, noteDur);
+		} else { // Level unterschiede in der Notensequenz!
+			for (int i = 1; i < arr.size(); i++) {
+				addNoteOrRest(midiKeyTaken, arr.get(i).floatValue());
+			}
+		}
+	}
+
+	private void detectRest(float duration) {
+		float noteDur = restCount * duration;
+
+		// NE PAUSE MUSS MIND NE 16tel lang sein, sonst wird einfach ignoriert!
+		int min = timeFor16thNote - MINIMUM_DURATION;
+
+		if (noteDur < min) {
+			if (LOG.isLoggable(Level.FINE))
+				LOG.fine(getTimestamp() + "ms IGNORED: " + noteDur + "ms OF RESTS! min: " + min);
+
+			restCount = 0;
+			return;
+		}
+		addNoteOrRest(0, noteDur);
+	}
+
+	private void addNoteOrRest(int midiKey, float noteDur) {
+		int noteLength = mapNoteDurationToBPM_16tel(noteDur);
+
+		if (midiKey == 0)
+			listener.restDetected(noteLength, noteDur);
+		else
+			listener.noteDetected(midiKey, noteLength, noteDur);
+
+		// immer beide loeschen, sonst werden features gesammelt, welche schon vor langer zeit auftraten
+		collectedCount = 0;
+		restCount = 0;
+	}
+
+	/**
+	 * This function converts time in ms to a notevalue, based on beats per minute.<br />
+	 * <br />
+	 * Example: 60 bpm, so a 16th notevalue is equivalent to 250ms (in perfect case), 8th==500ms 4th==1000 ms ...<br />
+	 * the tolerance is 125ms, so we just take exactly the middle:<br />
+	 * <pre>
+	 * ...........|...........|...........|...........|........
+	 * ....16th...|....8th....|dotted 8th.|...4th.....|........
+	 * -----|-----|-----|-----|-----|-----|-----|-----|-------- and so on
+	 * ----250---375---500---625---750---875---1000---1125----> detected notelength in ms
+	 * </pre>
+	 * */
+	private int mapNoteDurationToBPM_16tel(float duration) {
+		int notenwert = -1;
+		int tolerance = timeFor16thNote / 2;
+
+		if (duration >= 0 && duration < timeFor16thNote + tolerance) { // bis 16tel
+			notenwert = 1; // alles "unter" ner 16tel muss dann ne 16tel werden
+		} else if (duration >= 2 + tolerance && duration < timeFor16thNote * 2 + tolerance) {
+			notenwert = 2;
+		} else if (duration >= timeFor16thNote * 16 + tolerance) {
+			// TODO mapping auch drueber hinaus !
+			// wenn zB 4 takte und eine 16tel dann muss dies auch so gemalt werden
+			// und nich einfach ne 16tel !
+			notenwert = 1;
+		} else {
+			// 3 - 16: [timeFor16thNote * (n-1) + tolerance, timeFor16thNote * n + tolerance)
+			for (int n = 3; n <= 16; n++) {
+				if (duration >= timeFor16thNote * (n - 1) + tolerance && duration < timeFor16thNote * n + tolerance) {
+					notenwert = n;
+					break;
+				}
+			}
+		}
+		return notenwert;
+	}
+
+	private Vector<Double> getMostDetectedNoteInSequence(float durationOfOneNote) {
+		int midiKey = 0;
+		int cnt = 0;
+		Vector<Double> ret = new Vector<Double>();
+
+		double[] levels = new double[collectedCount];
+		for (int i = 0; i < levels.length; i++) {
+			levels[i] = Math.abs(collectedLevels[i]); // betrag, dann nach maxima suchen
+		}
+
+		// 1. erst zaehlen:
+		int[] modeArray = new int[MIDI_KEYS];
+		for (int i = 0; i < collectedCount; i++) {
+			modeArray[collectedMidiKeys[i]] += 1; // count
+		}
+
+		// 2. dann den Haeufigsten suchen
+		for (int i = 0; i < modeArray.length; i++) {
+			if (modeArray[i] > cnt) {
+				cnt = modeArray[i];
+				midiKey = i;
+			}
+		}
+
+		// first add taken MidiKey
+		ret.add((double) midiKey);
+
+		/** minima/maxima: idea:
+		 * if there are local minima in the levelVector of this notesequence
+		 * then we can assume that the SAME note was played more than one time!
+		 * */
+		// find extrema in RMS Levels
+		boolean minima = false;
+		Vector<double[]> extremwerte = jAMUtils.detectExtremum(levels, delta, minima);
+
+		if (LOG.isLoggable(Level.FINE) && extremwerte.size() > 0) {
+			StringBuilder str = new StringBuilder();
+			for (int i = 0; i < extremwerte.size(); i++)
+				str.append("(").append(extremwerte.get(i)[0]).append(",").append(extremwerte.get(i)[1]).append("), ");
+			LOG.fine("EXTREMWERTE " + (minima ? "MINIMA" : "MAXIMA") + " ===> [" + str + "] durationOfOneNote: " + durationOfOneNote);
+		}
+
+		// then add possible durations: midiKey, notevalue1, notevalue2 usw...
+		if (extremwerte.size() > 0) {
+			double startX = 0;
+			double endX = 0;
+
+			for (int i = 0; i < extremwerte.size(); i++) {
+				endX = extremwerte.get(i)[0]; // nich beim Tiefpunkt sondern ungefaehr beim Naechsten ONSET!
+
+				// ignoriere extremwerte am Ende, denn dies kommt sehr oft vor! also nur die ersten X%
+				float X = (levels.length * 75.0f / 100);
+				if (endX < X) {
+					ret.add(durationOfOneNote * (endX - startX));
+				}
+
+				startX = endX;
+			}
+
+			// nur wenn mind. eine duration geaddet wurde noch zum Ende:
+			if (ret.size() > 1) {
+				endX = levels.length;
+				ret.add(durationOfOneNote * (endX - startX));
+			}
+		}
+		return ret;
+	}
+
+	private float getBestPitch(float[] audioFloatBuffer) {
+		if (PITCHDETECTOR.equals("YIN")) {
+			float yin_pitch = yin.getPitch(audioFloatBuffer);
+			yin_cnt++;
+			pitch_probability = yin.getProbability();
+			return yin_pitch;
+		} else if (PITCHDETECTOR.equals("FAST_YIN")) {
+			float yin_pitch = fastYin.getPitch(audioFloatBuffer);
+			yin_cnt++;
+			pitch_probability = fastYin.getProbability();
+			return yin_pitch;
+		} else if (PITCHDETECTOR.equals("MPM")) {
+			float mpm_pitch = mpm.getPitch(audioFloatBuffer);
+			pitch_probability = mpm.getProbability();
+			mpm_cnt++;
+			return mpm_pitch;
+		} else {
+			throw new IllegalStateException("unknown pitch detector: " + PITCHDETECTOR);
+		}
+	}
+}
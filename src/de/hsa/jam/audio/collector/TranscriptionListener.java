@@ -0,0 +1,36 @@
+package de.hsa.jam.audio.collector;
+
+/**
+ * Receives the results of a {@link TranscriptionEngine}.<br />
+ * All methods are called on the thread which passes the buffers to the engine.
+ *
+ * @author Michael Wager
+ */
+public interface TranscriptionListener {
+	/**
+	 * Called once for every buffer, after the pitch was detected.
+	 *
+	 * @param pitchInHertz - the detected pitch (after transposing) or -1 if there is none
+	 * @param probability - the probability of the pitch, depends on the pitch detector
+	 * @param midiKey - the midiKey of the pitch
+	 * @param level - the sound pressure level of the buffer
+	 */
+	void pitchFrame(float pitchInHertz, float probability, int midiKey, double level);
+
+	/**
+	 * A note ended (offset).
+	 *
+	 * @param midiKey - the midiKey which was detected most often while the note lasted
+	 * @param noteLength - the length in 16th notes (1 - 16), based on the bpm
+	 * @param duration - the length in ms
+	 */
+	void noteDetected(int midiKey, int noteLength, float duration);
+
+	/**
+	 * A rest of at least a 16th note ended.
+	 *
+	 * @param noteLength - the length in 16th notes (1 - 16), based on the bpm
+	 * @param duration - the length in ms
+	 */
+	void restDetected(int noteLength, float duration);
+}
@@ -0,0 +1,303 @@
+package de.hsa.jam.batch;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.sound.midi.MidiSystem;
+import javax.sound.midi.Sequence;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.UnsupportedAudioFileException;
+
+import abc.midi.BasicMidiConverter;
+import abc.notation.Tune;
+import abc.parser.TuneParser;
+import abc.xml.Abc2xml;
+import be.hogent.tarsos.sampled.AudioDispatcher;
+import be.hogent.tarsos.sampled.AudioProcessor;
+import de.hsa.jam.jAM;
+import de.hsa.jam.audio.MappedWaveFile;
+import de.hsa.jam.audio.collector.NoteCollectorWorker;
+
+/**
+ * Transcribes wave files without GUI (<code>java de.hsa.jam.jAM batch ...</code>).<br />
+ * The files are spread across a fixed pool of worker threads. Each file is read and
+ * transcribed on one worker thread by its own {@link NoteCollectorWorker}, so the pitch
+ * detectors (Yin, McLeodPitchMethod) with their buffers are never shared between threads.<br />
+ * For every file <code>name.wav</code> the files <code>name.abc</code>, <code>name.mid</code>
+ * and <code>name.xml</code> (MusicXML) are written.
+ *
+ * @author Michael Wager
+ */
+public class BatchTranscriber {
+	private static final String USAGE = "usage: jAM batch [-threads n] [-pda YIN|FAST_YIN|MPM] [-chunk 512|1024|2048] "
+			+ "[-overlap percent] [-bpm n] [-key C] [-meter 4/4|3/4|5/4] [-out dir] [-formats abc,mid,xml] <dir|file.wav>...";
+
+	private int threads = Runtime.getRuntime().availableProcessors();
+	private String PDA = "MPM"; // YIN, FAST_YIN oder MPM
+	private int CHUNK = 1024;
+	private int overlapPercentage = 0;
+	private int bpm = 60;
+	private String TONART = "C", TAKTART = "4/4";
+	private File outputDir = null; // null: neben die wave Datei
+	private boolean writeAbc = true, writeMidi = true, writeMusicXml = true;
+
+	public void setThreads(int threads) {
+		if (threads < 1)
+			throw new IllegalArgumentException("threads must be > 0: " + threads);
+		this.threads = threads;
+	}
+
+	public void setPDA(String pda) {
+		if (!pda.equals("YIN") && !pda.equals("FAST_YIN") && !pda.equals("MPM"))
+			throw new IllegalArgumentException("unknown pitch detector: " + pda);
+		this.PDA = pda;
+	}
+
+	public void setChunk(int chunk) {
+		this.CHUNK = chunk;
+	}
+
+	public void setOverlap(int overlapPercentage) {
+		if (overlapPercentage < 0 || overlapPercentage >= 100)
+			throw new IllegalArgumentException("overlap must be in [0,100): " + overlapPercentage);
+		this.overlapPercentage = overlapPercentage;
+	}
+
+	public void setBPM(int bpm) {
+		this.bpm = bpm;
+	}
+
+	public void setTonart(String tonart) {
+		this.TONART = tonart;
+	}
+
+	public void setTaktart(String taktart) {
+		if (!taktart.equals("4/4") && !taktart.equals("3/4") && !taktart.equals("5/4"))
+			throw new IllegalArgumentException("unsupported meter: " + taktart);
+		this.TAKTART = taktart;
+	}
+
+	public void setOutputDir(File outputDir) {
+		this.outputDir = outputDir;
+	}
+
+	/**
+	 * @param formats - comma separated list of "abc", "mid" and "xml"
+	 */
+	public void setFormats(String formats) {
+		List<String> list = Arrays.asList(formats.split(","));
+		writeAbc = list.contains("abc");
+		writeMidi = list.contains("mid");
+		writeMusicXml = list.contains("xml");
+	}
+
+	/**
+	 * Transcribes all files on the worker pool and waits until all are done.
+	 *
+	 * @param files - the wave files
+	 * @return the number of files which could not be transcribed
+	 */
+	public int transcribeAll(List<File> files) throws InterruptedException {
+		if (outputDir != null)
+			outputDir.mkdirs();
+
+		ExecutorService pool = Executors.newFixedThreadPool(Math.min(threads, Math.max(1, files.size())));
+		List<Future<String>> results = new ArrayList<Future<String>>(files.size());
+
+		long start = System.currentTimeMillis();
+		for (final File file : files) {
+			results.add(pool.submit(new Callable<String>() {
+				public String call() throws Exception {
+					return transcribeAndWrite(file);
+				}
+			}));
+		}
+		pool.shutdown();
+
+		int failed = 0;
+		for (int i = 0; i < files.size(); i++) {
+			try {
+				results.get(i).get();
+				jAM.log("BatchTranscriber: (" + (i + 1) + "/" + files.size() + ") " + files.get(i).getPath(), false);
+			} catch (ExecutionException e) {
+				failed++;
+				jAM.log("BatchTranscriber: (" + (i + 1) + "/" + files.size() + ") FAILED " + files.get(i).getPath() + ": " + e.getCause(), true);
+			}
+		}
+
+		jAM.log("BatchTranscriber: " + (files.size() - failed) + " of " + files.size() + " files transcribed in "
+				+ (System.currentTimeMillis() - start) / 1000.0f + "s with " + threads + " threads", false);
+		return failed;
+	}
+
+	/**
+	 * Transcribes one file and writes the selected formats.
+	 *
+	 * @return the transcribed tune in abc notation
+	 */
+	public String transcribeAndWrite(File wav) throws Exception {
+		String abc = transcribe(wav);
+
+		File dir = outputDir != null ? outputDir : wav.getAbsoluteFile().getParentFile();
+		String name = wav.getName();
+		if (name.lastIndexOf('.') > 0)
+			name = name.substring(0, name.lastIndexOf('.'));
+
+		if (writeAbc) {
+			FileWriter writer = new FileWriter(new File(dir, name + ".abc"));
+			try {
+				writer.write(abc);
+			} finally {
+				writer.close();
+			}
+		}
+
+		if (writeMidi || writeMusicXml) {
+			// the abc4j parser caches are thread safe, see DefinitionFactory
+			Tune tune = new TuneParser().parse(abc);
+
+			if (writeMidi) {
+				Sequence s = new BasicMidiConverter().toMidiSequence(tune);
+				MidiSystem.write(s, MidiSystem.getMidiFileTypes(s)[0], new File(dir, name + ".mid"));
+			}
+			if (writeMusicXml)
+				new Abc2xml().writeAsMusicXML(tune, new File(dir, name + ".xml"));
+		}
+		return abc;
+	}
+
+	/**
+	 * Transcribes one file on the calling thread.
+	 *
+	 * @return the transcribed tune in abc notation (header like in the GUI, L:1/16)
+	 */
+	public String transcribe(File wav) throws IOException, UnsupportedAudioFileException {
+		// wave files are memory-mapped, everything else is read by javax.sound
+		MappedWaveFile mappedFile = null;
+		AudioInputStream audioInputStream = null;
+		try {
+			mappedFile = new MappedWaveFile(wav);
+		} catch (UnsupportedAudioFileException e) {
+			audioInputStream = AudioSystem.getAudioInputStream(wav);
+		} catch (IOException e) {
+			audioInputStream = AudioSystem.getAudioInputStream(wav);
+		}
+		try {
+			AudioFormat format = mappedFile != null ? mappedFile.getFormat() : audioInputStream.getFormat();
+			float sampleRate = format.getSampleRate();
+			int overlap = CHUNK * overlapPercentage / 100;
+
+			final NoteCollectorWorker collector = new NoteCollectorWorker(sampleRate, CHUNK, overlap, bpm, PDA);
+			collector.setTonart(TONART);
+			collector.setTaktart(Integer.parseInt(TAKTART.substring(0, 1)), 4);
+
+			AudioDispatcher dispatcher = mappedFile != null ? new AudioDispatcher(mappedFile.getData(), format,
+					CHUNK, overlap) : new AudioDispatcher(audioInputStream, null, CHUNK, overlap);
+			dispatcher.addAudioProcessor(new AudioProcessor() {
+				public void processFull(float[] audioFloatBuffer, byte[] audioByteBuffer) {
+					collector.process(audioFloatBuffer, audioFloatBuffer.length);
+				}
+
+				public void processOverlapping(float[] audioFloatBuffer, byte[] audioByteBuffer) {
+					collector.process(audioFloatBuffer, audioFloatBuffer.length);
+				}
+
+				public void processingFinished() {
+				}
+			});
+			dispatcher.run(); // kein eigener Thread: blockiert bis die Datei gelesen ist
+
+			String titel = wav.getName();
+			return "X:0\n" + "T:" + titel + "\nC:" + System.getProperty("user.name") + "\n"
+					+ "Q:1/4 = " + bpm + "\n" + "M:" + TAKTART + "\n" + "L:1/16\n" + "K:" + TONART + "\n"
+					+ collector.getNotesAsString();
+		} finally {
+			if (audioInputStream != null)
+				audioInputStream.close();
+		}
+	}
+
+	/**
+	 * Adds the file or all wave files in the directory (and its subdirectories) to the list.
+	 */
+	public static void collectFiles(File file, List<File> files) {
+		if (file.isDirectory()) {
+			File[] children = file.listFiles();
+			if (children == null)
+				return;
+			Arrays.sort(children);
+			for (File child : children) {
+				if (child.isDirectory() || child.getName().toLowerCase().endsWith(".wav"))
+					collectFiles(child, files);
+			}
+		} else {
+			files.add(file);
+		}
+	}
+
+	/**
+	 * @param args - options and the files or directories to transcribe, see USAGE
+	 */
+	public static void main(String[] args) {
+		BatchTranscriber transcriber = new BatchTranscriber();
+		List<File> files = new ArrayList<File>();
+
+		try {
+			for (int i = 0; i < args.length; i++) {
+				String arg = args[i];
+				if (arg.startsWith("-") && i + 1 == args.length)
+					throw new IllegalArgumentException("missing value for " + arg);
+
+				if (arg.equals("-threads"))
+					transcriber.setThreads(Integer.parseInt(args[++i]));
+				else if (arg.equals("-pda"))
+					transcriber.setPDA(args[++i]);
+				else if (arg.equals("-chunk"))
+					transcriber.setChunk(Integer.parseInt(args[++i]));
+				else if (arg.equals("-overlap"))
+					transcriber.setOverlap(Integer.parseInt(args[++i]));
+				else if (arg.equals("-bpm"))
+					transcriber.setBPM(Integer.parseInt(args[++i]));
+				else if (arg.equals("-key"))
+					transcriber.setTonart(args[++i]);
+				else if (arg.equals("-meter"))
+					transcriber.setTaktart(args[++i]);
+				else if (arg.equals("-out"))
+					transcriber.setOutputDir(new File(args[++i]));
+				else if (arg.equals("-formats"))
+					transcriber.setFormats(args[++i]);
+				else if (arg.startsWith("-"))
+					throw new IllegalArgumentException("unknown option " + arg);
+				else
+					collectFiles(new File(arg), files);
+			}
+		} catch (IllegalArgumentException e) { // auch NumberFormatException
+			System.err.println(e.getMessage());
+			System.err.println(USAGE);
+			System.exit(-1);
+		}
+
+		if (files.isEmpty()) {
+			System.err.println(USAGE);
+			System.exit(-1);
+		}
+
+		try {
+			int failed = transcriber.transcribeAll(files);
+			System.exit(failed == 0 ? 0 : 1);
+		} catch (InterruptedException e) {
+			System.exit(-1);
+		}
+	}
+}
@@ -0,0 +1,142 @@
+package de.hsa.jam.evaluation;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.sql.Blob;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+
+import de.hsa.jam.jAM;
+
+/**
+ * The reference melodies in the MySQL table Referenzmelodie, the wave files are stored as blobs.
+ *
+ * @author Michael Wager
+ */
+public class DatabaseCorpus implements EvaluationCorpus {
+	private Connection connection = null;
+
+	/**
+	 * initialize database connection
+	 * */
+	public boolean connect() {
+		jAM.log("********** INITIALIZING DB CONNECTION **********", false);
+		try {
+			Class.forName("com.mysql.jdbc.Driver");
+			jAM.log("MySQL JDBC driver loaded ok.", false);
+
+			connection = DriverManager.getConnection(
+					"jdbc:mysql://127.0.0.1/jam", "root", "InetP");
+
+			if (!connection.isClosed()) {
+				jAM.log("Successfully connected to MySQL server using TCP/IP...",
+						false);
+			}
+
+			return true;
+
+		} catch (Exception e) {
+			e.printStackTrace();
+			connection = null;
+			return false;
+		}
+	}
+
+	/**
+	 * close database connection
+	 * */
+	public void close() {
+		try {
+			if (connection != null)
+				connection.close();
+			jAM.log("Successfully closed DB connection", false);
+		} catch (SQLException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * the ids of all lines of the table
+	 * */
+	public List<Integer> getIds() throws Exception {
+		Statement statement = connection.createStatement();
+		ResultSet rs = statement.executeQuery("SELECT id FROM Referenzmelodie ORDER BY id");
+		try {
+			List<Integer> ids = new ArrayList<Integer>();
+			while (rs.next())
+				ids.add(rs.getInt("id"));
+			return ids;
+		} finally {
+			rs.close();
+			statement.close();
+		}
+	}
+
+	/**
+	 * reads one line of the table and decodes the wave file into memory
+	 * */
+	public EvaluationRecording getRecording(int id) throws Exception {
+		Statement statement = connection.createStatement();
+		statement.executeQuery("SELECT * FROM Referenzmelodie WHERE id='" + id
+				+ "'");
+		ResultSet rs = statement.getResultSet();
+
+		try {
+			if (!rs.next())
+				return null;
+
+			int idVal = rs.getInt("id");
+			String name = rs.getString("name");
+
+			AudioInputStream in = convertFromBlob(rs.getBlob("WaveDatei"), name);
+			ByteArrayOutputStream pcm = new ByteArrayOutputStream();
+			byte[] buffer = new byte[64 * 1024];
+			int length;
+			while ((length = in.read(buffer)) != -1)
+				pcm.write(buffer, 0, length);
+			in.close();
+
+			return new EvaluationRecording(idVal, name, in.getFormat(), ByteBuffer.wrap(pcm.toByteArray()),
+					EvaluationRecording.parseRefMelody(rs.getString("referenznotenstring")), rs.getInt("BPM"),
+					rs.getString("Tonart"), rs.getString("Taktart"), rs.getInt("transponierend"),
+					rs.getString("Mic"), rs.getString("instrument"));
+		} finally {
+			rs.close();
+			statement.close();
+		}
+	}
+
+	/**
+	 * convert blob data to wave file
+	 * */
+	private AudioInputStream convertFromBlob(Blob blob, String name) throws Exception {
+		File blobFile = new File(jAM.HOME_PATH + "/Desktop/evalFiles/"+ name + ".wav");
+		FileOutputStream outStream = new FileOutputStream(blobFile);
+		InputStream inStream = blob.getBinaryStream();
+
+		int length = -1;
+		int size = (int) blob.length();
+		byte[] buffer = new byte[size];
+
+		while ((length = inStream.read(buffer)) != -1) {
+			outStream.write(buffer, 0, length);
+			outStream.flush();
+		}
+
+		inStream.close();
+		outStream.close();
+
+		return AudioSystem.getAudioInputStream(blobFile);
+	}
+}
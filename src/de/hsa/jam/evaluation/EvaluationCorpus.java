@@ -0,0 +1,24 @@
+package de.hsa.jam.evaluation;
+
+import java.util.List;
+
+/**
+ * The reference melodies the {@link Evaluator} compares the transcriptions with.<br />
+ * The lines are numbered from 1, like the ids in the table Referenzmelodie.
+ *
+ * @author Michael Wager
+ */
+public interface EvaluationCorpus {
+	/**
+	 * @param id - the line, starting with 1
+	 * @return the recording with its reference melody or null if there is no such line
+	 */
+	EvaluationRecording getRecording(int id) throws Exception;
+
+	/**
+	 * @return the ids of all lines in ascending order, there may be gaps
+	 */
+	List<Integer> getIds() throws Exception;
+
+	void close();
+}
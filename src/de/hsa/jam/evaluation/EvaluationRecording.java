@@ -0,0 +1,106 @@
+package de.hsa.jam.evaluation;
+
+import java.nio.ByteBuffer;
+import java.util.Vector;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+
+import de.hsa.jam.util.ByteBufferInputStream;
+
+/**
+ * One line of the table Referenzmelodie (or of the manifest of a {@link FileCorpus}):
+ * the decoded recording and its reference melody.<br />
+ * The PCM data is read only once (or memory-mapped, see {@link FileCorpus}) and shared by all
+ * evaluation runs of this line, every run gets its own stream by {@link #newStream()}.
+ *
+ * @author Michael Wager
+ */
+public class EvaluationRecording {
+	private final int id;
+	private final String name;
+	private final AudioFormat format;
+	private final ByteBuffer pcm;
+	private final Vector<Integer> refMelody; // midiKey, Notenwert, midiKey, Notenwert...
+	private final int bpm, transponierend;
+	private final String tonart, taktart, mic, instrument;
+
+	EvaluationRecording(int id, String name, AudioFormat format, ByteBuffer pcm, Vector<Integer> refMelody, int bpm,
+			String tonart, String taktart, int transponierend, String mic, String instrument) {
+		this.id = id;
+		this.name = name;
+		this.format = format;
+		this.pcm = pcm;
+		this.refMelody = refMelody;
+		this.bpm = bpm;
+		this.tonart = tonart;
+		this.taktart = taktart;
+		this.transponierend = transponierend;
+		this.mic = mic;
+		this.instrument = instrument;
+	}
+
+	/**
+	 * @return a new stream over the shared PCM data
+	 */
+	public AudioInputStream newStream() {
+		return new AudioInputStream(new ByteBufferInputStream(pcm.duplicate()), format, pcm.remaining() / format.getFrameSize());
+	}
+
+	/**
+	 * @param refstring - the column referenznotenstring: "midiKey,Notenwert,midiKey,Notenwert,..."
+	 */
+	static Vector<Integer> parseRefMelody(String refstring) {
+		Vector<Integer> refMelody = new Vector<Integer>();
+
+		String[] ref = refstring.split(",");
+		for (int i = 0; i < ref.length; i++) {
+			refMelody.add(Integer.parseInt(ref[i++].trim()));
+			refMelody.add(Integer.parseInt(ref[i].trim()));
+		}
+		return refMelody;
+	}
+
+	public int getId() {
+		return id;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public AudioFormat getFormat() {
+		return format;
+	}
+
+	public Vector<Integer> getRefMelody() {
+		return refMelody;
+	}
+
+	public int getBPM() {
+		return bpm;
+	}
+
+	public String getTonart() {
+		return tonart;
+	}
+
+	/**
+	 * @return "4/4", "3/4" or "5/4"
+	 */
+	public String getTaktart() {
+		return taktart;
+	}
+
+	public int getTransponierend() {
+		return transponierend;
+	}
+
+	public String getMic() {
+		return mic;
+	}
+
+	public String getInstrument() {
+		return instrument;
+	}
+}
@@ -1,35 +1,26 @@
 package de.hsa.jam.evaluation;
 
 import java.io.File;
-import java.io.FileOutputStream;
-import java.io.InputStream;
-import java.sql.Blob;
-import java.sql.Connection;
-import java.sql.DriverManager;
-import java.sql.ResultSet;
-import java.sql.SQLException;
-import java.sql.Statement;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Vector;
 
 import javax.sound.sampled.AudioInputStream;
-import javax.sound.sampled.AudioSystem;
 
 import de.hsa.jam.jAM;
 import de.hsa.jam.audio.Model;
 import de.hsa.jam.util.jAMUtils;
 
 /**
- * This class evaluates the system, based on the reference melodies in a database
+ * This class evaluates the system, based on the reference melodies in a database or in a directory
  *  
  * @author Michael Wager
  */
 public class Evaluator {
 	private Model model;
 
-	private Connection connection = null;
-	private ResultSet rs;
-	private Statement statement;
+	private EvaluationCorpus corpus = null;
 
 	// SPALTEN !
 	private String name;
@@ -83,41 +74,35 @@ public class Evaluator {
 	}
 
 	/**
-	 * initialize database connection
+	 * initialize database connection (the reference melodies are in the table Referenzmelodie)
 	 * */
 	public boolean connectToDB() {
-		jAM.log("********** INITIALIZING DB CONNECTION **********", false);
-		try {
-			Class.forName("com.mysql.jdbc.Driver");
-			jAM.log("MySQL JDBC driver loaded ok.", false);
-
-			connection = DriverManager.getConnection(
-					"jdbc:mysql://127.0.0.1/jam", "root", "InetP");
-
-			if (!connection.isClosed()) {
-				jAM.log("Successfully connected to MySQL server using TCP/IP...",
-						false);
-			}
+		DatabaseCorpus db = new DatabaseCorpus();
+		if (!db.connect())
+			return false;
+		corpus = db;
+		return true;
+	}
 
+	/**
+	 * use the reference melodies in a directory instead of the database (see {@link FileCorpus})
+	 * */
+	public boolean openCorpus(File dir) {
+		try {
+			corpus = new FileCorpus(dir);
 			return true;
-
 		} catch (Exception e) {
 			e.printStackTrace();
-			connection = null;
 			return false;
 		}
 	}
+
 	/**
-	 * close database connection
+	 * close database connection (or corpus)
 	 * */
 	public void closeDBConnection() {
-		try {
-			if (connection != null)
-				connection.close();
-			jAM.log("Successfully closed DB connection", false);
-		} catch (SQLException e) {
-			e.printStackTrace();
-		}
+		if (corpus != null)
+			corpus.close();
 	}
 
 	public void gimmiCurrentResults(boolean fertig) {
@@ -265,7 +250,6 @@ public class Evaluator {
 		jAM.log(finalEval, false);
 	}
 
-	private Blob blob;
 	private int ID = 0;
 
 	/**
@@ -273,45 +257,17 @@ public class Evaluator {
 	 * */
 	public AudioInputStream getNextStream(boolean selectNextLine)
 			throws Exception {
-		if (selectNextLine)// TODO now einmal sollte reichen !
+		if (selectNextLine)
 			ID++;
 
-		
-		ID=7;
-		statement = connection.createStatement();
-		statement.executeQuery("SELECT * FROM Referenzmelodie WHERE id='" + ID
-				+ "'");
-		rs = statement.getResultSet();
-
-		if (rs.next()) {
-			int idVal = rs.getInt("id");
-			name = rs.getString("name");
-			model.setTitle("Zeile: #" + idVal + " - " + name);
-
-			blob = rs.getBlob("WaveDatei");
-
-			try {
-				stream = convertFromBlob(blob);
-			} catch (Exception e) {
-				e.printStackTrace();
-			}
-
-			String refstring = rs.getString("referenznotenstring");
-			refMelody = new Vector<Integer>();
+		EvaluationRecording recording = corpus.getRecording(ID);
 
-			String[] ref = refstring.split(",");
-			for (int i = 0; i < ref.length; i++) {
-				refMelody.add(Integer.parseInt(ref[i++].trim()));
-				refMelody.add(Integer.parseInt(ref[i].trim()));
-			}
+		if (recording != null) {
+			setCurrentRecording(recording);
 
-			bpm = rs.getInt("BPM");
 			model.setBPM(bpm);
-
-			Tonart = rs.getString("Tonart");
 			model.setTonart(Tonart);
 
-			Taktart = rs.getString("Taktart");
 			int idx = 0;
 			if (Taktart.equals("4/4"))
 				idx = 0;
@@ -321,58 +277,46 @@ public class Evaluator {
 				idx = 2;
 			model.setTaktart(idx);
 
-			transponierend = rs.getInt("transponierend");
 			model.setTransposeRecIndex(transponierend);
 
-			Mic = rs.getString("Mic");
-			instrument = rs.getString("instrument");
-
-			/*
-			 * System.out.println ( "id = " + idVal + ", \nname = " + name +
-			 * ", \nrefstring = " + refstring + ", \nbpm = " + bpm +
-			 * ", \nTonart = " + Tonart + ", \nTaktart = " + Taktart +
-			 * ", \ntransponierend = " + transponierend + ", \nMic = " + Mic +
-			 * ", \ninstrument = " + instrument );
-			 */
-
 			return stream;
 		}
 
 		// Wir sind fertig! es gibt keine Zeile mehr!
-		else {
-			rs.close();
-			statement.close();
+		else
 			return null;
-		}
 	}
 
 	/**
-	 * convert blob data to wave file
+	 * reads all lines of the corpus, every recording is decoded (or mapped) only once
 	 * */
-	public AudioInputStream convertFromBlob(Blob blob) {
-		try {
-			File blobFile = new File(jAM.HOME_PATH + "/Desktop/evalFiles/"+ name + ".wav");
-			FileOutputStream outStream = new FileOutputStream(blobFile);
-			InputStream inStream = blob.getBinaryStream();
-
-			int length = -1;
-			int size = (int) blob.length();
-			byte[] buffer = new byte[size];
-
-			while ((length = inStream.read(buffer)) != -1) {
-				outStream.write(buffer, 0, length);
-				outStream.flush();
-			}
-
-			inStream.close();
-			outStream.close();
-
-			return AudioSystem.getAudioInputStream(blobFile);
-
-		} catch (Exception e) {
-			e.printStackTrace();
+	public List<EvaluationRecording> loadRecordings() throws Exception {
+		List<EvaluationRecording> recordings = new ArrayList<EvaluationRecording>();
+		for (int id : corpus.getIds()) {
+			EvaluationRecording recording = corpus.getRecording(id);
+			if (recording == null) // inzwischen geloescht
+				continue;
+			recordings.add(recording);
+			jAM.log("Evaluator: loaded #" + id + " " + recording.getName(), false);
 		}
-		return null;
+		return recordings;
+	}
+
+	/**
+	 * the following evaluations belong to this line (name, reference melody, instrument...)
+	 * */
+	public void setCurrentRecording(EvaluationRecording recording) {
+		name = recording.getName();
+		model.setTitle("Zeile: #" + recording.getId() + " - " + name);
+
+		stream = recording.newStream();
+		refMelody = recording.getRefMelody();
+		bpm = recording.getBPM();
+		Tonart = recording.getTonart();
+		Taktart = recording.getTaktart();
+		transponierend = recording.getTransponierend();
+		Mic = recording.getMic();
+		instrument = recording.getInstrument();
 	}
 
 	public Vector<Integer> getNextRefMelody() {
@@ -389,6 +333,17 @@ public class Evaluator {
 	 * Calculate and collect important evaluation data like recall, precision and note-error here.
 	 * */
 	public void evaluateCurrentTranscription(Vector<Integer> evaluationSammler, String PITCHDETECTOR, String abcNotes) {
+		evaluateTranscription(evaluationSammler, PITCHDETECTOR, abcNotes, model.getChunk(), model.getOverlap());
+	}
+
+	/**
+	 * Like {@link #evaluateCurrentTranscription(Vector, String, String)}, but for a transcription which
+	 * was not done with the current parameters of the model (see {@link ParallelEvaluation}).
+	 * 
+	 * @param chunk - the buffer size in samples
+	 * @param overlap - the buffer overlap in samples
+	 * */
+	public void evaluateTranscription(Vector<Integer> evaluationSammler, String PITCHDETECTOR, String abcNotes, int chunk, int overlap) {
 		this.PITCHDETECTOR = PITCHDETECTOR;
 
 		/**Simulation des Beispiels aus der bac-Arbeit (Kapitel 6 Evaluation, Notenfehler):**/
@@ -449,7 +404,7 @@ public class Evaluator {
 		
 		erkennungsratenProZeileNoten.add(Nn);
 		erkennungsratenProZeilePR.add(F);
-		parameterProZeile.add("BufferSize: " + model.getChunk() + "Bytes - Overlap: " + model.getOverlap());
+		parameterProZeile.add("BufferSize: " + chunk + "Bytes - Overlap: " + overlap);
 		// und pro zeile den besten abcNotes String printen
 		ABC_NOTES.add(abcNotes);
 		
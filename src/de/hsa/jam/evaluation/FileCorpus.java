@@ -0,0 +1,177 @@
+package de.hsa.jam.evaluation;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.UnsupportedAudioFileException;
+
+import de.hsa.jam.jAM;
+
+/**
+ * The reference melodies as a directory of wave files and a manifest, so the evaluation runs
+ * without database (<code>java de.hsa.jam.jAM eval &lt;dir&gt;</code>).<br />
+ * The manifest <code>manifest.txt</code> has one tab separated line per recording, with the
+ * columns of the table Referenzmelodie:
+ * <pre>
+ * # id	file	name	BPM	Tonart	Taktart	transponierend	Mic	instrument	referenznotenstring
+ * 1	alle_meine_entchen.wav	Alle meine Entchen	90	C	4/4	0	Shure	Floete	60,4,62,4,64,4,...
+ * </pre>
+ * Empty lines and lines starting with # are ignored, the file is relative to the directory.<br />
+ * The wave files are memory-mapped, the PCM data is streamed from the mapping and never copied.
+ *
+ * @author Michael Wager
+ */
+public class FileCorpus implements EvaluationCorpus {
+	public static final String MANIFEST = "manifest.txt";
+
+	private final File dir;
+	private final Map<Integer, String[]> lines = new HashMap<Integer, String[]>();
+
+	/**
+	 * reads the manifest
+	 *
+	 * @param dir - the directory with the manifest and the wave files
+	 */
+	public FileCorpus(File dir) throws IOException {
+		this.dir = dir;
+
+		BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(new File(dir, MANIFEST)), "UTF-8"));
+		try {
+			String line;
+			int lineNumber = 0;
+			while ((line = reader.readLine()) != null) {
+				lineNumber++;
+				if (line.trim().length() == 0 || line.startsWith("#"))
+					continue;
+
+				String[] columns = line.split("\t");
+				if (columns.length != 10)
+					throw new IOException(MANIFEST + ":" + lineNumber + ": expected 10 tab separated columns, found " + columns.length);
+				try {
+					lines.put(Integer.parseInt(columns[0].trim()), columns);
+				} catch (NumberFormatException e) {
+					throw new IOException(MANIFEST + ":" + lineNumber + ": invalid id " + columns[0]);
+				}
+			}
+		} finally {
+			reader.close();
+		}
+		jAM.log("FileCorpus: " + lines.size() + " recordings in " + dir, false);
+	}
+
+	public EvaluationRecording getRecording(int id) throws Exception {
+		String[] c = lines.get(id);
+		if (c == null)
+			return null;
+
+		File wav = new File(dir, c[1].trim());
+		AudioFormat format;
+		ByteBuffer pcm = mapWaveData(wav);
+		if (pcm != null)
+			format = AudioSystem.getAudioFileFormat(wav).getFormat();
+		else { // kein PCM wave: dekodieren, das Format ist dann das des dekodierten Streams
+			AudioInputStream in = decode(wav);
+			try {
+				format = in.getFormat();
+				pcm = readAll(in);
+			} finally {
+				in.close();
+			}
+		}
+
+		return new EvaluationRecording(id, c[2].trim(), format, pcm, EvaluationRecording.parseRefMelody(c[9]),
+				Integer.parseInt(c[3].trim()), c[4].trim(), c[5].trim(), Integer.parseInt(c[6].trim()), c[7].trim(),
+				c[8].trim());
+	}
+
+	public List<Integer> getIds() {
+		List<Integer> ids = new ArrayList<Integer>(lines.keySet());
+		Collections.sort(ids);
+		return ids;
+	}
+
+	public void close() {
+	}
+
+	/**
+	 * Maps the file and returns the content of its data chunk.
+	 *
+	 * @return null if it is not a RIFF wave file with uncompressed data
+	 */
+	private static ByteBuffer mapWaveData(File wav) throws IOException {
+		MappedByteBuffer mapped;
+		RandomAccessFile file = new RandomAccessFile(wav, "r");
+		try {
+			FileChannel channel = file.getChannel();
+			mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		} finally {
+			file.close(); // die Abbildung bleibt gueltig
+		}
+		mapped.order(ByteOrder.LITTLE_ENDIAN);
+
+		if (mapped.limit() < 12 || mapped.getInt(0) != 0x46464952 /* RIFF */ || mapped.getInt(8) != 0x45564157 /* WAVE */)
+			return null;
+
+		int pos = 12, audioFormat = -1;
+		while (pos + 8 <= mapped.limit()) {
+			int chunkId = mapped.getInt(pos);
+			long chunkSize = mapped.getInt(pos + 4) & 0xFFFFFFFFL;
+			pos += 8;
+
+			if (chunkId == 0x20746d66 /* fmt */ && chunkSize >= 2)
+				audioFormat = mapped.getShort(pos) & 0xFFFF;
+
+			else if (chunkId == 0x61746164 /* data */) {
+				// 1: PCM, 3: IEEE float
+				if (audioFormat != 1 && audioFormat != 3)
+					return null;
+				// beim Aufnehmen abgebrochene Dateien haben oft eine falsche Groesse
+				int size = (int) Math.min(chunkSize, mapped.limit() - pos);
+				mapped.position(pos);
+				mapped.limit(pos + size);
+				return mapped.slice();
+			}
+			pos += chunkSize + (chunkSize & 1); // chunks sind auf gerade Laengen aufgefuellt
+		}
+		return null;
+	}
+
+	/**
+	 * @return the file as signed PCM
+	 */
+	private static AudioInputStream decode(File wav) throws IOException, UnsupportedAudioFileException {
+		AudioInputStream encoded = AudioSystem.getAudioInputStream(wav);
+		try {
+			return AudioSystem.getAudioInputStream(AudioFormat.Encoding.PCM_SIGNED, encoded);
+		} catch (IllegalArgumentException e) { // keine Konvertierung nach PCM vorhanden
+			encoded.close();
+			throw new UnsupportedAudioFileException(wav + ": cannot be decoded to PCM (" + encoded.getFormat() + ")");
+		}
+	}
+
+	private static ByteBuffer readAll(AudioInputStream in) throws IOException {
+		ByteArrayOutputStream pcm = new ByteArrayOutputStream();
+		byte[] buffer = new byte[64 * 1024];
+		int length;
+		while ((length = in.read(buffer)) != -1)
+			pcm.write(buffer, 0, length);
+		return ByteBuffer.wrap(pcm.toByteArray());
+	}
+}
@@ -0,0 +1,144 @@
+package de.hsa.jam.evaluation;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.sound.sampled.AudioInputStream;
+
+import be.hogent.tarsos.sampled.AudioDispatcher;
+import be.hogent.tarsos.sampled.AudioProcessor;
+import de.hsa.jam.audio.collector.NoteCollectorWorker;
+
+/**
+ * Runs the complete evaluation (every PDA x buffer size x overlap for every reference melody) in parallel.<br />
+ * All recordings are decoded once and shared in memory. Every combination is transcribed by its own
+ * {@link NoteCollectorWorker} (without Model) on a pool with one thread per processor. The results are passed to the
+ * {@link Evaluator} in the same order as in the sequential run, so the statistics per line and
+ * the final statistics are the same.
+ *
+ * @author Michael Wager
+ */
+public class ParallelEvaluation {
+	private final Evaluator evaluator;
+	private final String[] pdas;
+	private final int[] chunks, overlaps; // overlaps in Prozent
+	private final ExecutorService pool;
+
+	/**
+	 * the transcription of one combination
+	 */
+	private static class Transcription {
+		private final Vector<Integer> evaluationSammler;
+		private final String abcNotes;
+
+		private Transcription(Vector<Integer> evaluationSammler, String abcNotes) {
+			this.evaluationSammler = evaluationSammler;
+			this.abcNotes = abcNotes;
+		}
+	}
+
+	/**
+	 * @param evaluator - connected to the database
+	 * @param pdas - the pitch detectors, e.g. "YIN" and "MPM"
+	 * @param chunks - the buffer sizes in samples
+	 * @param overlaps - the buffer overlaps in percent
+	 */
+	public ParallelEvaluation(Evaluator evaluator, String[] pdas, int[] chunks, int[] overlaps) {
+		this.evaluator = evaluator;
+		this.pdas = pdas;
+		this.chunks = chunks;
+		this.overlaps = overlaps;
+		this.pool = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Transcribes everything and prints the statistics per line and per PDA (like Model.evaluationRun did).
+	 * The final statistics are printed by {@link Evaluator#FINAL()}.
+	 */
+	public void run() throws Exception {
+		List<EvaluationRecording> recordings = evaluator.loadRecordings();
+
+		// alle Kombinationen auf einmal einreihen, in der Reihenfolge in der sie ausgewertet werden
+		List<Future<Transcription>> results = new ArrayList<Future<Transcription>>();
+		for (String PDA : pdas)
+			for (EvaluationRecording recording : recordings)
+				for (int chunk : chunks)
+					for (int overlapPercentage : overlaps)
+						results.add(pool.submit(transcription(recording, PDA, chunk, chunk * overlapPercentage / 100)));
+
+		int evalCnt = 1, k = 0;
+		try {
+			for (String PDA : pdas) {
+				evaluator.reset();
+				System.out.println("========================================================================>>>> NEUER EVAL DURCHLAUF MIT PDA: " + PDA);
+
+				for (EvaluationRecording recording : recordings) {
+					System.out.println("========================================================================>>>> Eval DURCHLAUF: #" + evalCnt++);
+					evaluator.setCurrentRecording(recording);
+
+					for (int chunk : chunks) {
+						for (int overlapPercentage : overlaps) {
+							try {
+								Transcription t = results.get(k).get();
+								evaluator.evaluateTranscription(t.evaluationSammler, PDA, t.abcNotes, chunk, chunk * overlapPercentage / 100);
+							} catch (ExecutionException e) {
+								e.getCause().printStackTrace();
+							}
+							results.set(k++, null); // Ergebnis freigeben
+						}
+					}
+
+					// ----- jetzt ist eine Zeile durch
+					evaluator.gimmiCurrentResults(false);
+				}
+
+				evaluator.gimmiCurrentResults(true);
+			}
+		} finally {
+			pool.shutdownNow();
+		}
+	}
+
+	/**
+	 * transcribes the recording with a new collector on the calling thread
+	 */
+	private Callable<Transcription> transcription(final EvaluationRecording recording, final String PDA, final int chunk,
+			final int overlap) {
+		return new Callable<Transcription>() {
+			public Transcription call() throws Exception {
+				AudioInputStream audioInputStream = recording.newStream();
+
+				final NoteCollectorWorker collector = new NoteCollectorWorker(audioInputStream.getFormat().getSampleRate(),
+						chunk, overlap, recording.getBPM(), PDA);
+				collector.setTonart(recording.getTonart());
+				// wie Evaluator.getNextStream: unbekannte Taktart -> 4/4
+				String taktart = recording.getTaktart();
+				collector.setTaktart(taktart.equals("3/4") ? 3 : taktart.equals("5/4") ? 5 : 4, 4);
+				collector.setTransposeRecIndex(recording.getTransponierend());
+
+				AudioDispatcher dispatcher = new AudioDispatcher(audioInputStream, null, chunk, overlap);
+				dispatcher.addAudioProcessor(new AudioProcessor() {
+					public void processFull(float[] audioFloatBuffer, byte[] audioByteBuffer) {
+						collector.process(audioFloatBuffer, audioFloatBuffer.length);
+					}
+
+					public void processOverlapping(float[] audioFloatBuffer, byte[] audioByteBuffer) {
+						collector.process(audioFloatBuffer, audioFloatBuffer.length);
+					}
+
+					public void processingFinished() {
+					}
+				});
+				dispatcher.run();
+
+				return new Transcription(collector.getEvaluationSammler(), collector.getNotesAsString());
+			}
+		};
+	}
+}
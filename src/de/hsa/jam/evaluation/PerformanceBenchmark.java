@@ -0,0 +1,369 @@
+package de.hsa.jam.evaluation;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+
+import be.hogent.tarsos.sampled.AudioDispatcher;
+import be.hogent.tarsos.sampled.AudioProcessor;
+import be.hogent.tarsos.sampled.pitch.FastYin;
+import be.hogent.tarsos.sampled.pitch.McLeodPitchMethod;
+import be.hogent.tarsos.sampled.pitch.PitchConverter;
+import be.hogent.tarsos.sampled.pitch.Yin;
+import de.hsa.jam.audio.AudioFloatConverter;
+import de.hsa.jam.audio.collector.TranscriptionEngine;
+import de.hsa.jam.audio.collector.TranscriptionListener;
+import de.hsa.jam.util.jAMUtils;
+
+/**
+ * Micro benchmarks for the pitch detectors and the collector pipeline
+ * (<code>java de.hsa.jam.jAM bench [-quick] [file.wav...]</code>).<br />
+ * Every benchmark is run with warmup iterations first (JIT), then the measured iterations are
+ * reported as mean +- standard deviation. The results of the measured code are summed up in
+ * a sink which is printed at the end, so the JIT can not remove the calls as dead code.<br />
+ * Buffer sizes and overlaps are the same as in the evaluation run (Model.evaluationRun).
+ *
+ * @author Michael Wager
+ */
+public class PerformanceBenchmark {
+	private static final int[] CHUNKS = { 512, 1024, 2048 };
+	private static final int[] OVERLAPS = { 0, 10, 25, 50, 75 }; // in Prozent
+	private static final String[] PDAS = { "YIN", "FAST_YIN", "MPM" };
+
+	private static final float SAMPLE_RATE = 44100;
+	private static final int BPM = 60;
+
+	private int warmupIterations = 5, measureIterations = 10;
+	private long iterationNanos = 200 * 1000 * 1000L; // 200ms pro Iteration
+
+	private double sink = 0; // "blackhole"
+
+	/**
+	 * One measured operation, returns something derived from its result for the sink.
+	 */
+	private interface Operation {
+		double run() throws Exception;
+	}
+
+	public void setQuick(boolean quick) {
+		if (quick) {
+			warmupIterations = 2;
+			measureIterations = 3;
+			iterationNanos = 50 * 1000 * 1000L;
+		}
+	}
+
+	/**
+	 * Runs the operation repeatedly for the configured time per iteration.
+	 *
+	 * @return mean and standard deviation in ns per operation
+	 */
+	private double[] measure(Operation op) throws Exception {
+		for (int i = 0; i < warmupIterations; i++)
+			iteration(op);
+
+		double[] results = new double[measureIterations];
+		double mean = 0;
+		for (int i = 0; i < measureIterations; i++) {
+			results[i] = iteration(op);
+			mean += results[i];
+		}
+		mean /= measureIterations;
+
+		double var = 0;
+		for (double r : results)
+			var += (r - mean) * (r - mean);
+		return new double[] { mean, Math.sqrt(var / measureIterations) };
+	}
+
+	private double iteration(Operation op) throws Exception {
+		long ops = 0;
+		long start = System.nanoTime(), now;
+		do {
+			sink += op.run();
+			ops++;
+			now = System.nanoTime();
+		} while (now - start < iterationNanos);
+		return (now - start) / (double) ops;
+	}
+
+	private void report(String name, String params, double[] result, String extra) {
+		System.out.println(String.format("%-28s %-24s %14.1f +- %-10.1f ns/op %s", name, params, result[0], result[1],
+				extra == null ? "" : extra));
+	}
+
+	/**
+	 * A sine with two harmonics and some noise, which changes its frequency every 250ms
+	 * (A3 - A5), so the collector finds onsets and offsets like in a real recording.
+	 */
+	static float[] syntheticSignal(float sampleRate, float seconds, long seed) {
+		Random random = new Random(seed);
+		float[] signal = new float[(int) (sampleRate * seconds)];
+		int noteLength = (int) (sampleRate / 4);
+		double phase = 0, hz = 440;
+		for (int i = 0; i < signal.length; i++) {
+			if (i % noteLength == 0)
+				hz = i / noteLength % 5 == 4 ? 0 : 220 * Math.pow(2, random.nextInt(25) / 12.0); // jede 5. eine Pause
+			phase += 2 * Math.PI * hz / sampleRate;
+			double v = hz == 0 ? 0 : 0.5 * Math.sin(phase) + 0.2 * Math.sin(2 * phase) + 0.1 * Math.sin(3 * phase);
+			signal[i] = (float) (v + 0.01 * random.nextGaussian());
+		}
+		return signal;
+	}
+
+	/**
+	 * Wraps the signal as 16 bit signed little endian mono stream.
+	 */
+	static AudioInputStream toStream(float[] signal, float sampleRate) {
+		AudioFormat format = new AudioFormat(sampleRate, 16, 1, true, false);
+		byte[] bytes = new byte[signal.length * 2];
+		AudioFloatConverter.getConverter(format).toByteArray(signal, bytes);
+		return new AudioInputStream(new ByteArrayInputStream(bytes), format, signal.length);
+	}
+
+	public void benchPitchDetectors(float[] signal) throws Exception {
+		for (final int chunk : CHUNKS) {
+			final float[] buffer = new float[chunk];
+			System.arraycopy(signal, (int) SAMPLE_RATE / 8, buffer, 0, chunk); // mitten in der ersten Note
+
+			final Yin yin = new Yin(SAMPLE_RATE, chunk);
+			final FastYin fastYin = new FastYin(SAMPLE_RATE, chunk);
+			final McLeodPitchMethod mpm = new McLeodPitchMethod(SAMPLE_RATE, chunk);
+
+			report("Yin.getPitch", "chunk=" + chunk, measure(new Operation() {
+				public double run() {
+					return yin.getPitch(buffer);
+				}
+			}), null);
+			report("FastYin.getPitch", "chunk=" + chunk, measure(new Operation() {
+				public double run() {
+					return fastYin.getPitch(buffer);
+				}
+			}), null);
+			report("McLeodPitchMethod.getPitch", "chunk=" + chunk, measure(new Operation() {
+				public double run() {
+					return mpm.getPitch(buffer);
+				}
+			}), null);
+		}
+	}
+
+	/**
+	 * Both directions of the AudioFloatConverter, for the signed formats with the bulk conversion
+	 * against the sample by sample conversion (the speedup is reported in the last column).
+	 */
+	public void benchConverters(final float[] signal) throws Exception {
+		AudioFormat[] formats = {
+				new AudioFormat(SAMPLE_RATE, 8, 1, false, false),
+				new AudioFormat(SAMPLE_RATE, 16, 1, true, false),
+				new AudioFormat(SAMPLE_RATE, 16, 1, true, true),
+				new AudioFormat(SAMPLE_RATE, 24, 1, true, false),
+				new AudioFormat(SAMPLE_RATE, 24, 1, true, true),
+				new AudioFormat(SAMPLE_RATE, 32, 1, true, false),
+				new AudioFormat(SAMPLE_RATE, 32, 1, true, true),
+				new AudioFormat(AudioFloatConverter.PCM_FLOAT, SAMPLE_RATE, 32, 1, 4, SAMPLE_RATE, false) };
+
+		for (final int chunk : CHUNKS) {
+			for (AudioFormat format : formats) {
+				String name = (format.getEncoding() == AudioFloatConverter.PCM_FLOAT ? "float" : format.getEncoding()
+						.toString().contains("UNSIGNED") ? "unsigned" : "signed")
+						+ format.getSampleSizeInBits() + (format.isBigEndian() ? "BE" : "LE");
+				double[] scalarToFloat = null, scalarToByte = null;
+				for (boolean bulk : new boolean[] { false, true }) {
+					final AudioFloatConverter converter = AudioFloatConverter.getConverter(format, bulk);
+					final byte[] bytes = new byte[chunk * format.getFrameSize()];
+					final float[] floats = new float[chunk];
+					converter.toByteArray(signal, 0, chunk, bytes);
+
+					String variant = bulk ? " bulk" : " scalar";
+					double[] toFloat = measure(new Operation() {
+						public double run() {
+							return converter.toFloatArray(bytes, floats)[0];
+						}
+					});
+					double[] toByte = measure(new Operation() {
+						public double run() {
+							return converter.toByteArray(signal, 0, chunk, bytes)[0];
+						}
+					});
+					report("AudioFloatConverter.toFloat", name + variant + " chunk=" + chunk, toFloat,
+							scalarToFloat == null ? null : String.format("x%.2f", scalarToFloat[0] / toFloat[0]));
+					report("AudioFloatConverter.toByte", name + variant + " chunk=" + chunk, toByte,
+							scalarToByte == null ? null : String.format("x%.2f", scalarToByte[0] / toByte[0]));
+					scalarToFloat = toFloat;
+					scalarToByte = toByte;
+				}
+			}
+		}
+	}
+
+	public void benchLevels(float[] signal) throws Exception {
+		for (final int chunk : CHUNKS) {
+			final float[] floats = new float[chunk];
+			System.arraycopy(signal, 0, floats, 0, chunk);
+			final byte[] bytes = new byte[chunk * 2];
+			AudioFloatConverter.getConverter(new AudioFormat(SAMPLE_RATE, 16, 1, true, false)).toByteArray(floats, bytes);
+
+			report("jAMUtils.soundPressureLevel", "chunk=" + chunk, measure(new Operation() {
+				public double run() {
+					return jAMUtils.soundPressureLevel(floats);
+				}
+			}), null);
+			report("jAMUtils.calculateRMSLevel", "chunk=" + chunk, measure(new Operation() {
+				public double run() {
+					return jAMUtils.calculateRMSLevel(bytes, floats);
+				}
+			}), null);
+		}
+	}
+
+	/**
+	 * PitchConverter: Math.log against the table based fastLog2, for 1024 pitches between 20Hz
+	 * and 5kHz per operation. The accuracy of the fast conversion is checked by
+	 * {@link PerformanceCheck#checkPitchConversion()}.
+	 */
+	public void benchPitchConversion() throws Exception {
+		final double low = 20, high = 5000;
+		final double[] hertz = new double[1024];
+		Random random = new Random(42);
+		for (int i = 0; i < hertz.length; i++)
+			hertz[i] = low * Math.pow(high / low, random.nextDouble());
+
+		double[] exact = measure(new Operation() {
+			public double run() {
+				double sum = 0;
+				for (double hz : hertz)
+					sum += PitchConverter.hertzToMidiCent(hz);
+				return sum;
+			}
+		});
+		double[] fast = measure(new Operation() {
+			public double run() {
+				double sum = 0;
+				for (double hz : hertz)
+					sum += PitchConverter.hertzToMidiCentFast(hz);
+				return sum;
+			}
+		});
+		report("PitchConverter.hertzToMidiCent", "exact n=1024", exact, null);
+		report("PitchConverter.hertzToMidiCent", "fast n=1024", fast, String.format("x%.2f", exact[0] / fast[0]));
+
+		exact = measure(new Operation() {
+			public double run() {
+				int sum = 0;
+				for (double hz : hertz)
+					sum += PitchConverter.hertzToMidiKey(hz);
+				return sum;
+			}
+		});
+		fast = measure(new Operation() {
+			public double run() {
+				int sum = 0;
+				for (double hz : hertz)
+					sum += PitchConverter.hertzToMidiKeyFast(hz);
+				return sum;
+			}
+		});
+		report("PitchConverter.hertzToMidiKey", "exact n=1024", exact, null);
+		report("PitchConverter.hertzToMidiKey", "fast n=1024", fast, String.format("x%.2f", exact[0] / fast[0]));
+	}
+
+	/**
+	 * The full path AudioDispatcher -> TranscriptionEngine (without GUI, like the batch mode)
+	 * for every pitch detector, chunk and overlap. Reports the real time factor as well.
+	 */
+	public void benchPipeline(final String name, final byte[] pcm, final AudioFormat format) throws Exception {
+		final long frames = pcm.length / format.getFrameSize();
+		final double seconds = frames / format.getFrameRate();
+		final TranscriptionListener listener = new TranscriptionListener() {
+			public void pitchFrame(float pitchInHertz, float probability, int midiKey, double level) {
+			}
+
+			public void noteDetected(int midiKey, int noteLength, float duration) {
+				sink += midiKey;
+			}
+
+			public void restDetected(int noteLength, float duration) {
+				sink += noteLength;
+			}
+		};
+
+		for (final String pda : PDAS) {
+			for (final int chunk : CHUNKS) {
+				for (int overlapPercentage : OVERLAPS) {
+					final int overlap = chunk * overlapPercentage / 100;
+					double[] result = measure(new Operation() {
+						public double run() throws Exception {
+							final TranscriptionEngine engine = new TranscriptionEngine(format.getSampleRate(), chunk,
+									overlap, BPM, pda, listener);
+							AudioInputStream stream = new AudioInputStream(new ByteArrayInputStream(pcm), format, frames);
+							AudioDispatcher dispatcher = new AudioDispatcher(stream, null, chunk, overlap);
+							dispatcher.addAudioProcessor(new AudioProcessor() {
+								public void processFull(float[] audioFloatBuffer, byte[] audioByteBuffer) {
+									engine.process(audioFloatBuffer, audioFloatBuffer.length);
+								}
+
+								public void processOverlapping(float[] audioFloatBuffer, byte[] audioByteBuffer) {
+									engine.process(audioFloatBuffer, audioFloatBuffer.length);
+								}
+
+								public void processingFinished() {
+								}
+							});
+							dispatcher.run();
+							return engine.getTimestamp();
+						}
+					});
+					report("Pipeline " + name, pda + " " + chunk + "/" + overlapPercentage + "%", result,
+							String.format("(%.0fx real time)", seconds * 1e9 / result[0]));
+				}
+			}
+		}
+	}
+
+	public static void main(String[] args) throws Exception {
+		PerformanceBenchmark bench = new PerformanceBenchmark();
+		List<File> files = new ArrayList<File>();
+		for (String arg : args) {
+			if (arg.equals("-quick"))
+				bench.setQuick(true);
+			else
+				files.add(new File(arg));
+		}
+
+		float[] signal = syntheticSignal(SAMPLE_RATE, 5, 42);
+		long start = System.currentTimeMillis();
+
+		bench.benchPitchDetectors(signal);
+		bench.benchConverters(signal);
+		bench.benchLevels(signal);
+		bench.benchPitchConversion();
+
+		AudioInputStream synthetic = toStream(signal, SAMPLE_RATE);
+		byte[] pcm = new byte[(int) synthetic.getFrameLength() * 2];
+		synthetic.read(pcm);
+		bench.benchPipeline("synthetic", pcm, synthetic.getFormat());
+
+		for (File file : files) { // aufgenommene Dateien: einmal komplett in den Speicher lesen
+			AudioInputStream recorded = AudioSystem.getAudioInputStream(file);
+			pcm = new byte[(int) recorded.getFrameLength() * recorded.getFormat().getFrameSize()];
+			int read = 0;
+			while (read < pcm.length) {
+				int r = recorded.read(pcm, read, pcm.length - read);
+				if (r < 0)
+					break;
+				read += r;
+			}
+			recorded.close();
+			bench.benchPipeline(file.getName(), pcm, recorded.getFormat());
+		}
+
+		System.out.println("done in " + (System.currentTimeMillis() - start) / 1000 + "s (sink: " + bench.sink + ")");
+	}
+}
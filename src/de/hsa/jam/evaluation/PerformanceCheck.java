@@ -0,0 +1,308 @@
+package de.hsa.jam.evaluation;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import scanner.InvalidCharacterEvent;
+import scanner.ScannerAdapter;
+import scanner.Token;
+import scanner.TokenEvent;
+import abc.notation.Tune;
+import abc.parser.AbcTokenType;
+import abc.parser.AbcVersion;
+import abc.parser.TuneParser;
+import abc.parser.def.DefinitionFactory;
+import be.hogent.tarsos.sampled.pitch.FastYin;
+import be.hogent.tarsos.sampled.pitch.PitchConverter;
+import be.hogent.tarsos.sampled.pitch.Yin;
+import de.hsa.jam.audio.collector.TranscriptionEngine;
+import de.hsa.jam.audio.collector.TranscriptionListener;
+
+/**
+ * Checks the properties the performance work relies on (<code>java de.hsa.jam.jAM check</code>).<br />
+ * Every check throws an IllegalStateException if it fails, so the run ends with a stack trace
+ * and exit code -1 instead of a line in the benchmark output which is easily overlooked.
+ *
+ * @author Michael Wager
+ */
+public class PerformanceCheck {
+	private static final float SAMPLE_RATE = 44100;
+	private static final int BPM = 60;
+	private static final String[] PDAS = { "YIN", "FAST_YIN", "MPM" };
+	private static final int CHUNK = 1024, OVERLAP = 512;
+	private static final int WARMUP_RUNS = 10;
+	private static final int PARSING_THREADS = 8;
+	private static final int[] YIN_BUFFER_SIZES = { 512, 1024, 2048 };
+	private static final double[] YIN_FREQUENCIES = { 220, 330, 440, 587.33, 880, 1760 };
+	/** maximum difference between Yin and FastYin: pitch in cent, probability absolute */
+	private static final double YIN_CENT_TOLERANCE = 0.1, YIN_PROBABILITY_TOLERANCE = 0.001;
+	/** Tunes for the parser check: keys with flats and clefs, accidentals, chords, gracings, decorations, tuplets, bars */
+	private static final String[] TUNES = {
+			"X:1\nT:Flats\nM:6/8\nL:1/8\nK:Bb clef=bass\n|:B,2D FGA|_B2c d=ef|{g}f2d (3cBA|B3 B3:|\n",
+			"X:2\nT:Clefs\nM:C|\nL:1/4\nK:Eb alto\n[CEG] _b ^c =d|~e .f !trill!g Hb|(3BcB [b2d2] z|]\n",
+			"X:3\nT:Key b\nM:3/4\nK:b\nb2 B/c/d|{/e}^A2 F>G|\"Bm\"B3|[1 c2 B:|[2 B3||\n",
+			"X:4\nT:Voices\nM:4/4\nL:1/8\nK:F treble\nV:1\nFGAB c2 _B2|uA2 vG2 F4|\nV:2 clef=bass\nF,2 C,2 F,4|C2 _B,2 A,4|]\n",
+			"X:5\nT:Mixed\nM:2/4\nL:1/16\nQ:1/4=96\nK:Dmix\n!p!D2FA d2f2|(3agf e2 TD4|~d2cB !fermata!A4|]\n" };
+
+	/**
+	 * TranscriptionEngine.process must not allocate for a buffer, unless a note or rest is decided.<br />
+	 * The engine transcribes the synthetic signal of the {@link PerformanceBenchmark} several times
+	 * (JIT, the collected arrays grow during the first long notes), then the bytes allocated by the
+	 * thread are measured around every call of the last run. Needs a JVM which counts the allocated
+	 * bytes per thread (com.sun.management.ThreadMXBean), otherwise the check is skipped.
+	 */
+	public void checkTranscriptionAllocation() throws Exception {
+		final Object bean = ManagementFactory.getThreadMXBean();
+		Method allocatedBytes;
+		try {
+			Class<?> sunBean = Class.forName("com.sun.management.ThreadMXBean");
+			allocatedBytes = sunBean.getMethod("getThreadAllocatedBytes", long.class);
+			if (!(Boolean) sunBean.getMethod("isThreadAllocatedMemoryEnabled").invoke(bean))
+				allocatedBytes = null;
+		} catch (Exception e) {
+			allocatedBytes = null;
+		}
+		if (allocatedBytes == null) {
+			System.out.println("TranscriptionEngine allocation: SKIPPED, the JVM does not count allocated bytes");
+			return;
+		}
+		Object[] thread = { Thread.currentThread().getId() };
+
+		// was das Messen selbst allokiert (Boxing des Ergebnisses)
+		long overhead = Long.MAX_VALUE;
+		for (int i = 0; i < 1000; i++) {
+			long before = (Long) allocatedBytes.invoke(bean, thread);
+			long after = (Long) allocatedBytes.invoke(bean, thread);
+			overhead = Math.min(overhead, after - before);
+		}
+
+		float[] signal = PerformanceBenchmark.syntheticSignal(SAMPLE_RATE, 5, 42);
+		float[] buffer = new float[CHUNK];
+		final int[] decisions = new int[1];
+		TranscriptionListener listener = new TranscriptionListener() {
+			public void pitchFrame(float pitchInHertz, float probability, int midiKey, double level) {
+			}
+
+			public void noteDetected(int midiKey, int noteLength, float duration) {
+				decisions[0]++;
+			}
+
+			public void restDetected(int noteLength, float duration) {
+				decisions[0]++;
+			}
+		};
+
+		for (String pda : PDAS) {
+			TranscriptionEngine engine = new TranscriptionEngine(SAMPLE_RATE, CHUNK, OVERLAP, BPM, pda, listener);
+			int buffers = 0, allocating = 0;
+			long allocated = 0;
+			for (int run = 0; run <= WARMUP_RUNS; run++) {
+				engine.reset();
+				for (int start = 0; start + CHUNK <= signal.length; start += CHUNK - OVERLAP) {
+					System.arraycopy(signal, start, buffer, 0, CHUNK);
+					if (run < WARMUP_RUNS) {
+						engine.process(buffer, CHUNK);
+						continue;
+					}
+					int decided = decisions[0];
+					long before = (Long) allocatedBytes.invoke(bean, thread);
+					engine.process(buffer, CHUNK);
+					long bytes = (Long) allocatedBytes.invoke(bean, thread) - before - overhead;
+					buffers++;
+					if (bytes > 0 && decisions[0] == decided) {
+						allocating++;
+						allocated += bytes;
+					}
+				}
+			}
+			String result = allocating + " of " + buffers + " buffers without a decision allocated " + allocated
+					+ " bytes";
+			System.out.println("TranscriptionEngine allocation " + pda + ": " + result);
+			if (allocating > 0)
+				throw new IllegalStateException("TranscriptionEngine.process allocates per buffer (" + pda + "): "
+						+ result);
+		}
+	}
+
+	/**
+	 * FastYin (difference function by FFT) against Yin, on sine and sawtooth buffers of 512, 1024 and
+	 * 2048 samples: both have to detect the same pitch and probability, within
+	 * {@link #YIN_CENT_TOLERANCE} and {@link #YIN_PROBABILITY_TOLERANCE}.
+	 */
+	public void checkFastYin() {
+		double maxCentError = 0, maxProbabilityError = 0;
+		int differing = 0, buffers = 0;
+		for (int bufferSize : YIN_BUFFER_SIZES) {
+			Yin yin = new Yin(SAMPLE_RATE, bufferSize);
+			FastYin fastYin = new FastYin(SAMPLE_RATE, bufferSize);
+			float[] buffer = new float[bufferSize];
+			for (double frequency : YIN_FREQUENCIES) {
+				for (int sawtooth = 0; sawtooth < 2; sawtooth++) {
+					for (int i = 0; i < bufferSize; i++) {
+						double phase = frequency * i / SAMPLE_RATE;
+						buffer[i] = (float) (sawtooth == 1 ? 0.5 * (2 * (phase - Math.floor(phase)) - 1)
+								: 0.5 * Math.sin(2 * Math.PI * phase));
+					}
+					float pitch = yin.getPitch(buffer);
+					float fastPitch = fastYin.getPitch(buffer);
+					double centError = pitch == -1 || fastPitch == -1 ? (pitch == fastPitch ? 0
+							: Double.POSITIVE_INFINITY) : Math.abs(1200 * Math.log(fastPitch / pitch) / Math.log(2));
+					double probabilityError = Math.abs(fastYin.getProbability() - yin.getProbability());
+					maxCentError = Math.max(maxCentError, centError);
+					maxProbabilityError = Math.max(maxProbabilityError, probabilityError);
+					buffers++;
+					if (centError > YIN_CENT_TOLERANCE || probabilityError > YIN_PROBABILITY_TOLERANCE) {
+						differing++;
+						System.out.println("  " + (sawtooth == 1 ? "sawtooth " : "sine ") + frequency + "Hz, "
+								+ bufferSize + " samples: Yin " + pitch + "Hz p=" + yin.getProbability()
+								+ ", FastYin " + fastPitch + "Hz p=" + fastYin.getProbability());
+					}
+				}
+			}
+		}
+		String result = String.format("max error %.5f cent / probability %.6f, %d of %d buffers differ",
+				maxCentError, maxProbabilityError, differing, buffers);
+		System.out.println("FastYin against Yin: " + result);
+		if (differing > 0)
+			throw new IllegalStateException("FastYin differs from Yin: " + result);
+	}
+
+	/**
+	 * The table based fast path of the PitchConverter against Math.log, in 0.01 cent steps
+	 * between 20Hz and 5kHz: the error has to stay below 0.1 cent.
+	 */
+	public void checkPitchConversion() {
+		final double low = 20, high = 5000;
+		double maxMidiCentError = 0, maxAbsoluteCentError = 0;
+		int midiKeyMismatches = 0, steps = 0;
+		double step = Math.pow(2, 0.01 / 1200); // 0.01 cent
+		for (double hz = low; hz <= high; hz *= step, steps++) {
+			maxMidiCentError = Math.max(maxMidiCentError,
+					Math.abs(PitchConverter.hertzToMidiCentFast(hz) - PitchConverter.hertzToMidiCent(hz)) * 100);
+			maxAbsoluteCentError = Math.max(maxAbsoluteCentError,
+					Math.abs(PitchConverter.hertzToAbsoluteCentFast(hz) - PitchConverter.hertzToAbsoluteCent(hz)));
+			if (PitchConverter.hertzToMidiKeyFast(hz) != PitchConverter.hertzToMidiKey(hz))
+				midiKeyMismatches++;
+		}
+		String accuracy = String.format("max error %.5f / %.5f cent, %d of %d midiKeys differ", maxMidiCentError,
+				maxAbsoluteCentError, midiKeyMismatches, steps);
+		System.out.println("PitchConverter fast path: " + accuracy);
+		if (maxMidiCentError >= 0.1 || maxAbsoluteCentError >= 0.1)
+			throw new IllegalStateException("PitchConverter fast path is not accurate enough: " + accuracy);
+	}
+
+	/**
+	 * The cached scanner definitions must not depend on the order in which the tunes are parsed.<br />
+	 * The token types are merged in order and the order decides which type wins, so the definition of the
+	 * same token types in another order is another definition. Then the tunes (the built-in ones and the
+	 * given abc files) are parsed in a shuffled order on several threads with a cold cache, and parsed again
+	 * one after the other: the tokens, invalid characters and voices have to be the same.
+	 */
+	public void checkConcurrentParsing(String[] abcFiles) throws Exception {
+		AbcTokenType[] types = { AbcTokenType.CLEF, AbcTokenType.KEY_ACCIDENTAL };
+		AbcTokenType[] reversed = { AbcTokenType.KEY_ACCIDENTAL, AbcTokenType.CLEF };
+		if (DefinitionFactory.getDefinition(types, AbcVersion.v2_0) == DefinitionFactory.getDefinition(reversed,
+				AbcVersion.v2_0))
+			throw new IllegalStateException("DefinitionFactory ignores the order of the token types");
+
+		final List<String> tunes = new ArrayList<String>();
+		for (String tune : TUNES)
+			tunes.add(tune);
+		for (String abcFile : abcFiles)
+			for (String tune : readFile(new File(abcFile)).split("\r?\n\\s*\r?\n"))
+				if (tune.trim().length() > 0)
+					tunes.add(tune);
+
+		List<Integer> order = new ArrayList<Integer>();
+		for (int i = 0; i < tunes.size(); i++)
+			order.add(i);
+		Collections.shuffle(order, new Random(42));
+		final String[] concurrent = new String[tunes.size()];
+		ExecutorService executor = Executors.newFixedThreadPool(PARSING_THREADS);
+		try {
+			List<Future<?>> parsings = new ArrayList<Future<?>>();
+			for (final int i : order)
+				parsings.add(executor.submit(new Runnable() {
+					public void run() {
+						concurrent[i] = parseSignature(tunes.get(i));
+					}
+				}));
+			for (Future<?> parsing : parsings)
+				parsing.get();
+		} finally {
+			executor.shutdown();
+		}
+
+		int differing = 0;
+		for (int i = 0; i < tunes.size(); i++)
+			if (!parseSignature(tunes.get(i)).equals(concurrent[i]))
+				differing++;
+		String result = differing + " of " + tunes.size() + " tunes differ";
+		System.out.println("Concurrent parsing in shuffled order: " + result);
+		if (differing > 0)
+			throw new IllegalStateException("Parsing depends on the order of the tunes: " + result);
+	}
+
+	/** The tokens, invalid characters and number of voices of a parsed tune */
+	private static String parseSignature(String notation) {
+		final StringBuffer signature = new StringBuffer();
+		TuneParser parser = new TuneParser();
+		parser.getScanner().addListener(new ScannerAdapter() {
+			public void tokenGenerated(TokenEvent event) {
+				Token token = event.getToken();
+				signature.append(token.getType()).append(' ').append(token.getValue()).append(' ')
+						.append(token.getPosition()).append('\n');
+			}
+
+			public void invalidCharacter(InvalidCharacterEvent event) {
+				signature.append("invalid ").append(event.getCharacter()).append(' ').append(event.getPosition())
+						.append('\n');
+			}
+		});
+		try {
+			Tune tune = parser.parse(notation);
+			signature.append("voices ").append(tune.getMusic().getVoices().size());
+		} catch (RuntimeException e) {
+			signature.append("failed ").append(e);
+		}
+		return signature.toString();
+	}
+
+	private static String readFile(File file) throws Exception {
+		Reader in = new InputStreamReader(new FileInputStream(file), "ISO-8859-1");
+		try {
+			StringBuffer text = new StringBuffer();
+			char[] chars = new char[4096];
+			for (int read; (read = in.read(chars)) != -1;)
+				text.append(chars, 0, read);
+			return text.toString();
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Runs all checks.
+	 *
+	 * @param args optional abc files for {@link #checkConcurrentParsing(String[])}
+	 */
+	public static void main(String[] args) throws Exception {
+		PerformanceCheck check = new PerformanceCheck();
+		check.checkConcurrentParsing(args);
+		check.checkFastYin();
+		check.checkPitchConversion();
+		check.checkTranscriptionAllocation();
+		System.out.println("all checks passed");
+	}
+}
@@ -6,6 +6,9 @@ import java.util.logging.Logger;
 import java.util.logging.SimpleFormatter;
 
 import de.hsa.jam.audio.Model;
+import de.hsa.jam.batch.BatchTranscriber;
+import de.hsa.jam.evaluation.PerformanceBenchmark;
+import de.hsa.jam.evaluation.PerformanceCheck;
 import de.hsa.jam.ui.ChromaticTunerFrame;
 import de.hsa.jam.ui.MainWindow;
 import de.hsa.jam.ui.MetronomeFrame;
@@ -74,7 +77,11 @@ public class jAM {
 	public static boolean SYSOUT=false;
 
 	/**
-	 * @param args If none provided: start application, else if args[0]=="eval": start evaluation (needs mysql database)
+	 * @param args If none provided: start application, else if args[0]=="eval": start evaluation (needs mysql database,
+	 * or args[1] is a directory with the reference melodies, see {@link de.hsa.jam.evaluation.FileCorpus}),<br />
+	 * else if args[0]=="batch": transcribe the wave files given in the following args without GUI (see {@link BatchTranscriber}),<br />
+	 * else if args[0]=="bench": run the benchmarks (see {@link PerformanceBenchmark}),<br />
+	 * else if args[0]=="check": run the checks the performance work relies on, fails with exit code -1 (see {@link PerformanceCheck})
 	 * */
 	public static void main(String[] args) {
 		START_TIME = System.currentTimeMillis();
@@ -103,14 +110,49 @@ public class jAM {
 		}
 
 		// else: evaluate (no ui needed)
-		else if (args.length == 1 && args[0].equals("eval")) {
+		else if (args[0].equals("eval")) {
 			EVALUATING = true;
 			model = new Model();
 			ControllerEngine controller = new ControllerEngine();
 			controller.addModel(model);
 			controller.initApp();
-			controller.initEvaluation();
+			controller.initEvaluation(args.length > 1 ? new File(args[1]) : null);
 		}
+
+		// else: batch transcription (no ui, no model)
+		else if (args[0].equals("batch")) {
+			BatchTranscriber.main(withoutFirst(args));
+		}
+
+		// else: benchmarks of the pitch detectors and the collector pipeline
+		else if (args[0].equals("bench")) {
+			try {
+				PerformanceBenchmark.main(withoutFirst(args));
+			} catch (Exception e) {
+				e.printStackTrace();
+				System.exit(-1);
+			}
+		}
+
+		// else: checks of the properties the performance work relies on
+		else if (args[0].equals("check")) {
+			try {
+				PerformanceCheck.main(withoutFirst(args));
+			} catch (Exception e) {
+				e.printStackTrace();
+				System.exit(-1);
+			}
+		}
+
+	}
+
+	/**
+	 * @return the args without the mode in args[0]
+	 */
+	private static String[] withoutFirst(String[] args) {
+		String[] rest = new String[args.length - 1];
+		System.arraycopy(args, 1, rest, 0, rest.length);
+		return rest;
 	}
 
 	/**
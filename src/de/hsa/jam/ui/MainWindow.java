@@ -43,7 +43,6 @@ import javax.swing.WindowConstants;
 
 import abc.notation.MusicElement;
 import abc.notation.Tune;
-import abc.parser.TuneParser;
 import abc.ui.swing.TuneEditorPane;
 import be.hogent.tarsos.sampled.SampledAudioUtilities;
 import de.hsa.jam.ControllerEngine;
@@ -551,21 +550,15 @@ public class MainWindow extends AbstractView {
 				prgbar.setValue((int) newFloatValue);
 		} else if (evt.getPropertyName().equals(
 				ControllerEngine.UPDATE_SCORE_PROPERTY)) {
+			// nur der abc Text, der Tune kommt schon geparst mit SHOW_TUNE_PROPERTY
 			String tuneAsString = (String) (evt.getNewValue());
-			Tune tune = new TuneParser().parse(tuneAsString);
-			scorePanel.setTune(tune);
 			if (!abc_area.getText().equals(tuneAsString))
 				abc_area.setText(tuneAsString);
-		}
-		// TODO transpose eig sollte aus dem tranpnierten Tune der String
-		// generiert werden und dann wieder
-		// UPDATE_SCORE_PROPERTY, also folgendes kann dann wieder weg !
-		else if (evt.getPropertyName().equals(ControllerEngine.SHOW_TUNE_PROPERTY)) {
+		} else if (evt.getPropertyName().equals(
+				ControllerEngine.SHOW_TUNE_PROPERTY)) {
 			Tune tune = (Tune) (evt.getNewValue());
-			scorePanel.setTune(tune);
-		}
-
-		else if (evt.getPropertyName().equals(ControllerEngine.TITLE_PROPERTY)) {
+			scorePanel.updateScore(tune);
+		} else if (evt.getPropertyName().equals(ControllerEngine.TITLE_PROPERTY)) {
 			String title = (String) (evt.getNewValue());
 			if (!title.equals(jframe.getTitle()))
 				jframe.setTitle(title);
@@ -781,8 +774,8 @@ class PreferenceWindow extends JFrame {
 		recOptions.add(plotting);
 
 		// ----- checkbox lowPass
-		lowPass = new JCheckBox("low-pass");
-		lowPass.setToolTipText("enable low-pass filter");
+		lowPass = new JCheckBox("band-pass");
+		lowPass.setToolTipText("enable band-pass filter (range of the instrument)");
 		lowPass.addActionListener(new ActionListener() {
 			public void actionPerformed(ActionEvent e) {
 				controller.setLowPassEnabled(lowPass.isSelected());
@@ -828,9 +821,9 @@ class PreferenceWindow extends JFrame {
 		});
 		recOptions.add(overlapSelectBox);
 
-		list = new String[] { "YIN", "MPM" };
+		list = new String[] { "YIN", "FAST_YIN", "MPM" };
 		pdaSelectBox = new JComboBox(list);
-		pdaSelectBox.setSelectedIndex(1);
+		pdaSelectBox.setSelectedIndex(2);
 		pdaSelectBox.setToolTipText("Pitch Detection Algorithm");
 		pdaSelectBox.addActionListener(new ActionListener() {
 			public void actionPerformed(ActionEvent e) {
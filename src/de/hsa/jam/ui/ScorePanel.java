@@ -5,6 +5,8 @@ import java.awt.event.MouseEvent;
 import java.util.Vector;
 import java.util.logging.Logger;
 
+import javax.swing.SwingUtilities;
+
 import scanner.PositionableInCharStream;
 
 import abc.notation.MusicElement;
@@ -120,8 +122,21 @@ public class ScorePanel extends JScoreComponent {
 		// parseAndSetTune(tuneAsString, true);
 	}
 
-	public void updateScore(Tune tune) {
-		setTune(tune);
+	/**
+	 * Zeigt den Tune an, der waehrend der Transkription waechst: nur die neuen Noten
+	 * werden gesetzt und neu gezeichnet, siehe {@link #setGrowingTune(Tune)}.<br />
+	 * Das Setzen laeuft im Event Dispatch Thread, wie das Zeichnen und das Anhaengen
+	 * der Noten (Model.appendToScore), aus welchem Thread auch immer aufgerufen wird.
+	 */
+	public void updateScore(final Tune tune) {
+		if (SwingUtilities.isEventDispatchThread())
+			setGrowingTune(tune);
+		else
+			SwingUtilities.invokeLater(new Runnable() {
+				public void run() {
+					setGrowingTune(tune);
+				}
+			});
 	}
 
 	public void selectNote(MusicElement e) {
@@ -23,8 +23,15 @@ package scanner;
  * @see State
  */
 public class AutomataDefinition {
+	/**
+	 * Held during unions and compilations : unions change states of the
+	 * definitions they merge, which may be compiled on other threads.
+	 */
+	private static final Object UNION_LOCK = new Object();
 	/** The starting state. */
 	private State m_startingState = null;
+	/** The transition table, compiled on demand. */
+	private volatile CompiledAutomata m_compiled = null;
 
 	/** Constructs a new definition. */
 	public AutomataDefinition() {
@@ -58,8 +65,10 @@ public class AutomataDefinition {
 	 * @return A reference on this once unioned.
 	 */
 	public AutomataDefinition union(AutomataDefinition def) {
-		return new AutomataDefinition(m_startingState.union(def
-				.getStartingState()));
+		synchronized (UNION_LOCK) {
+			return new AutomataDefinition(m_startingState.union(def
+					.getStartingState()));
+		}
 	}
 
 	/**
@@ -72,6 +81,41 @@ public class AutomataDefinition {
 	 */
 	public void copyFrom(AutomataDefinition definition) {
 		m_startingState = definition.getStartingState();
+		m_compiled = null;
+	}
+
+	/**
+	 * Returns the transition table of this definition, used by the scanner.
+	 * The table is compiled on the first call, and again if one of its states
+	 * has changed since (unions change the states they merge, see
+	 * {@link #invalidate()}). The table can be shared by scanners on different
+	 * threads, it is never changed.
+	 * 
+	 * @return The transition table of this definition.
+	 */
+	CompiledAutomata getCompiled() {
+		CompiledAutomata compiled = m_compiled;
+		if (compiled == null) {
+			// unions hold the same lock : no state changes while compiling
+			synchronized (UNION_LOCK) {
+				compiled = m_compiled;
+				if (compiled == null) {
+					compiled = new CompiledAutomata(this);
+					m_compiled = compiled;
+				}
+			}
+		}
+		return compiled;
+	}
+
+	/**
+	 * Drops the transition table, called by the states of the table when they
+	 * change.
+	 * 
+	 * @see State#compiledIn(AutomataDefinition)
+	 */
+	void invalidate() {
+		m_compiled = null;
 	}
 
 	/**
@@ -0,0 +1,138 @@
+// Copyright 2006-2008 Lionel Gueganton
+// This file is part of abc4j.
+//
+// abc4j is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Lesser General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// abc4j is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public License
+// along with abc4j.  If not, see <http://www.gnu.org/licenses/>.
+package scanner;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Vector;
+
+/**
+ * The transition table of an automata definition. The states reachable from
+ * the starting state are numbered, the starting state is 0. Characters that
+ * lead to the same states from every state share one character class, so the
+ * table stays small although it is dense. A transition is one array lookup :
+ * <TT>next[state * classes + classOf[character]]</TT>, -1 if there is no
+ * transition. Characters above the highest character of all transitions have
+ * no transition at all.
+ *
+ * @see AutomataDefinition#getCompiled()
+ */
+final class CompiledAutomata {
+	/** The character class of every character up to the highest one used. */
+	final int[] classOf;
+	/** The number of character classes, class 0 has no transition. */
+	final int classes;
+	/** The target state for each state and character class, or -1. */
+	final int[] next;
+	/** <TT>true</TT> for the token states. */
+	final boolean[] isTokenState;
+	/** The type of each state. */
+	final TokenType[] types;
+	/**
+	 * Compiles the given definition. Its states are told to invalidate the
+	 * definition when they change.
+	 *
+	 * @param definition
+	 *            An automata definition.
+	 */
+	CompiledAutomata(AutomataDefinition definition) {
+		State startingState = definition.getStartingState();
+		Vector states = new Vector();
+		Map indexes = new IdentityHashMap();
+		states.addElement(startingState);
+		indexes.put(startingState, Integer.valueOf(0));
+		int maxChar = -1;
+		for (int i = 0; i < states.size(); i++) {
+			Transition[] transitions = ((State) states.elementAt(i))
+					.getTransitions();
+			for (int j = 0; j < transitions.length; j++) {
+				State target = transitions[j].getTargetState();
+				if (!indexes.containsKey(target)) {
+					indexes.put(target, Integer.valueOf(states.size()));
+					states.addElement(target);
+				}
+				char[] chars = transitions[j].getChars();
+				for (int k = 0; k < chars.length; k++)
+					if (chars[k] > maxChar)
+						maxChar = chars[k];
+			}
+		}
+
+		int stateCount = states.size();
+		isTokenState = new boolean[stateCount];
+		types = new TokenType[stateCount];
+		// rows[state][character] : the first matching transition wins, as in
+		// State.getTransitionFor(char)
+		int[][] rows = new int[stateCount][maxChar + 1];
+		for (int i = 0; i < stateCount; i++) {
+			State state = (State) states.elementAt(i);
+			state.compiledIn(definition);
+			isTokenState[i] = state.isTokenState();
+			types[i] = state.getType();
+			int[] row = rows[i];
+			Arrays.fill(row, -1);
+			Transition[] transitions = state.getTransitions();
+			for (int j = 0; j < transitions.length; j++) {
+				int target = ((Integer) indexes.get(transitions[j]
+						.getTargetState())).intValue();
+				char[] chars = transitions[j].getChars();
+				for (int k = 0; k < chars.length; k++)
+					if (row[chars[k]] == -1)
+						row[chars[k]] = target;
+			}
+		}
+
+		// characters with the same column share a class
+		classOf = new int[maxChar + 1];
+		Map classesByColumn = new HashMap();
+		char[] column = new char[stateCount];
+		classesByColumn.put(new String(column), Integer.valueOf(0));
+		for (int c = 0; c <= maxChar; c++) {
+			for (int i = 0; i < stateCount; i++)
+				column[i] = (char) (rows[i][c] + 1);
+			String key = new String(column);
+			Integer characterClass = (Integer) classesByColumn.get(key);
+			if (characterClass == null) {
+				characterClass = Integer.valueOf(classesByColumn.size());
+				classesByColumn.put(key, characterClass);
+			}
+			classOf[c] = characterClass.intValue();
+		}
+		classes = classesByColumn.size();
+
+		next = new int[stateCount * classes];
+		Arrays.fill(next, -1);
+		for (int c = 0; c <= maxChar; c++)
+			for (int i = 0; i < stateCount; i++)
+				next[i * classes + classOf[c]] = rows[i][c];
+	}
+
+	/**
+	 * Returns the state reached from the given state with the given character.
+	 *
+	 * @param state
+	 *            The index of a state.
+	 * @param character
+	 *            A character.
+	 * @return The index of the target state, -1 if there is no transition.
+	 */
+	int next(int state, char character) {
+		return character < classOf.length ? next[state * classes
+				+ classOf[character]] : -1;
+	}
+}
@@ -127,7 +127,10 @@ public class FinaleStateAutomata {
 	 * state and the received characters are initialized to none.
 	 */
 	public void initialize() {
-		receivedCharacters = new StringBuffer();
+		if (receivedCharacters == null)
+			receivedCharacters = new StringBuffer();
+		else
+			receivedCharacters.setLength(0);
 		m_currentState = m_definition.getStartingState();
 	}
 
@@ -23,16 +23,36 @@ import java.util.Vector;
 /**
  * A scanner is able to separate tokens from an input stream, following states
  * defined in a finale state automata.
+ * <p>
+ * The characters are read in blocks into a window and the automata is used as
+ * a compiled transition table (see {@link AutomataDefinition#getCompiled()}) :
+ * one array lookup per character. The character that ends a token stays in
+ * the window for the next token, the stream is not marked and reset. As the
+ * scanner reads ahead, a stream given to the scanner should only be read
+ * through it, see {@link #readLine()}.
+ * </p>
  */
 public class Scanner {
+	/** The initial size of the window, it grows for longer lines. */
+	private static final int WINDOW_SIZE = 4096;
+
 	protected Reader m_charStream = null;
 	protected FinaleStateAutomata FSA = null;
 	protected Vector m_listeners = null;
-	protected CharStreamPosition m_previousPosition = null;
 	protected CharStreamPosition m_position = null;
-	protected StringBuffer m_currentLine = null;
-	// private boolean m_lastTokenWasContainingEndOfLine = false;
-	protected char[] m_currentChar = null;
+
+	/** Characters read from the stream : the current line and what follows. */
+	private char[] m_window = new char[WINDOW_SIZE];
+	/** The index of the next character to be scanned in the window. */
+	private int m_windowPosition = 0;
+	/** The number of characters in the window. */
+	private int m_windowEnd = 0;
+	/** The index of the first character of the current line in the window. */
+	private int m_lineStart = 0;
+	/** The index of the first character of the current token in the window. */
+	private int m_tokenStart = 0;
+	/** The position of the last scanned character. */
+	private int m_column, m_line, m_offset;
 
 	/**
 	 * Creates a new scanner to scan the specified string.
@@ -52,14 +72,12 @@ public class Scanner {
 	 */
 	public Scanner(Reader stream) {
 		this();
-		m_listeners = new Vector();
 		init(stream);
 	}
 
 	/** Creates a new scanner. */
 	public Scanner() {
 		m_listeners = new Vector();
-		m_currentChar = new char[1];
 	}
 
 	/**
@@ -73,19 +91,28 @@ public class Scanner {
 	}
 
 	/**
-	 * Inits this scanner to be able to perform a scan on the given stream
+	 * Inits this scanner to be able to perform a scan on the given stream. If
+	 * this is the stream scanned so far, the characters already read from it
+	 * are kept.
 	 * 
 	 * @param readerStream
 	 *            The stream to be scanned.
 	 */
 	public void init(Reader readerStream) {
+		if (readerStream != m_charStream) {
+			m_windowPosition = 0;
+			m_windowEnd = 0;
+		}
 		m_charStream = readerStream;
 		FSA = null;
-		m_currentLine = new StringBuffer();
-		m_previousPosition = new CharStreamPosition();
+		m_lineStart = m_windowPosition;
+		m_tokenStart = m_windowPosition;
 		// the position is before the first character
 		// column=0, line =1, offset=-1
-		m_position = new CharStreamPosition(0, 1, -1);
+		m_column = 0;
+		m_line = 1;
+		m_offset = -1;
+		m_position = new CharStreamPosition(m_column, m_line, m_offset);
 	}
 
 	/**
@@ -116,104 +143,156 @@ public class Scanner {
 	 *                if there's no next valid token.
 	 */
 	public Token nextToken() throws NoSuchTokenException {
-		String token = null;
-		boolean endOfStreamReached = false;
-		// char[] currentChar = new char[1];
-		while (token == null && !endOfStreamReached) {
-			try {
-				m_charStream.mark(1);
-				if (m_charStream.read(m_currentChar) == -1)
-					endOfStreamReached = true;
-				else {
-					m_previousPosition.setPosition(m_position);
-					m_position.setColumn(m_position.getColumn() + 1);
-					m_position.setCharactersOffset(m_position
-							.getCharactersOffset() + 1);
-					// if (currentChar[0]=='\n')
-
-					if (FSA.getTransitionFor(m_currentChar[0]) != null) {
-						FSA.sendChar(m_currentChar[0]);
-						m_currentLine.append(m_currentChar);
-						if (m_currentChar[0] == '\n') {
-							notifyListenersForLineScanned(new String(
-									m_currentLine));
-							m_currentLine = new StringBuffer();
-						}
-					} else {
-						if (FSA.getCurrentState().isTokenState()) {
-							// ==================a valid token has been found.
-							try {
-								// the last character will be reinjected => we
-								// go back from one character.
-								m_charStream.reset();
-								m_position.setPosition(m_previousPosition);
-							} catch (IOException ex) {
-								ex.printStackTrace();
-							}
-							token = FSA.getReceivedCharacters();
-						} else {
-							// =================an invalid character has been
-							// found.
-							m_currentLine.append(m_currentChar);
-							notifyListenersForInvalidCharacter(
-									m_currentChar[0],
-									(CharStreamPosition) m_position.clone());
-							FSA.initialize();
-							// ===== line changed in case on invalid character
-							if (m_currentChar[0] == '\n') {
-								notifyListenersForLineScanned(new String(
-										m_currentLine));
-								m_currentLine = new StringBuffer();
-								m_position.setColumn(0);
-								m_position.setLine(m_position.getLine() + 1);
-							}
-							// ===== end of line changed in case on invalid
-							// character
-						}
-					}
-				}
-			} catch (java.io.IOException e) {
-				e.printStackTrace();
-			}
-		}
-		if (endOfStreamReached) {
-			if (FSA.getCurrentState().isTokenState())
-				token = FSA.getReceivedCharacters();
-			else {
-				FSA.initialize();
+		CompiledAutomata automata = FSA.getDefinition().getCompiled();
+		int state = 0;
+		boolean containsEndOfLine = false;
+		m_tokenStart = m_windowPosition;
+		while (true) {
+			if (m_windowPosition == m_windowEnd && !fill()) {
+				if (automata.isTokenState[state])
+					break;
+				updatePosition();
 				throw new NoSuchTokenException();
 			}
+			char character = m_window[m_windowPosition];
+			int target = automata.next(state, character);
+			if (target != -1) {
+				m_windowPosition++;
+				m_column++;
+				m_offset++;
+				state = target;
+				if (character == '\n') {
+					containsEndOfLine = true;
+					lineScanned();
+				}
+			} else if (automata.isTokenState[state]) {
+				// ==================a valid token has been found.
+				// the last character is scanned again for the next token.
+				break;
+			} else {
+				// =================an invalid character has been found. It is
+				// dropped with the characters received so far.
+				m_windowPosition++;
+				m_column++;
+				m_offset++;
+				updatePosition();
+				notifyListenersForInvalidCharacter(character,
+						new CharStreamPosition(m_column, m_line, m_offset));
+				state = 0;
+				containsEndOfLine = false;
+				m_tokenStart = m_windowPosition;
+				// ===== line changed in case on invalid character
+				if (character == '\n') {
+					lineScanned();
+					m_column = 0;
+					m_line++;
+				}
+			}
 		}
-		TokenType currentState = FSA.getCurrentState().getType();
-		FSA.initialize();
-		Token tok = new Token(token, currentState, new CharStreamPosition(
-				m_position.getColumn() - (token.length() - 1),
-				m_position.getLine(), m_position.getCharactersOffset()
-						- (token.length() - 1)));
+		String token = new String(m_window, m_tokenStart, m_windowPosition
+				- m_tokenStart);
+		updatePosition();
+		Token tok = new Token(token, automata.types[state],
+				new CharStreamPosition(m_column - (token.length() - 1), m_line,
+						m_offset - (token.length() - 1)));
 		notifyListenersForToken(tok);
-		if (token.indexOf('\n') != -1) {
-			m_position.setColumn(0);
-			m_position.setLine(m_position.getLine() + 1);
+		if (containsEndOfLine) {
+			m_column = 0;
+			m_line++;
+			updatePosition();
 		}
 		return tok;
 	}
 
 	/**
-	 * Returns <TT>true</TT> if there's any character left.
+	 * Reads the rest of the current line without scanning it. The stream can
+	 * not be read directly for this, the scanner reads ahead.
 	 * 
-	 * @return <TT>true</TT> if there's any character left, <TT>false</TT>
-	 *         otherwise.
+	 * @return The characters up to the end of the line, without the line
+	 *         terminator. <TT>null</TT> at the end of the stream.
 	 */
-	public boolean hasNext() {
-		int hasNext = -1;
+	public String readLine() {
+		m_tokenStart = m_windowPosition;
+		while (true) {
+			if (m_windowPosition == m_windowEnd && !fill()) {
+				if (m_windowPosition == m_tokenStart)
+					return null;
+				break;
+			}
+			char character = m_window[m_windowPosition];
+			if (character == '\n' || character == '\r')
+				break;
+			m_windowPosition++;
+		}
+		String line = new String(m_window, m_tokenStart, m_windowPosition
+				- m_tokenStart);
+		if (m_windowPosition < m_windowEnd
+				&& m_window[m_windowPosition++] == '\r') {
+			m_tokenStart = m_windowPosition;
+			if ((m_windowPosition < m_windowEnd || fill())
+					&& m_window[m_windowPosition] == '\n')
+				m_windowPosition++;
+		}
+		m_lineStart = m_windowPosition;
+		m_tokenStart = m_windowPosition;
+		return line;
+	}
+
+	/**
+	 * Reads the next characters from the stream into the window. The current
+	 * line and the current token are moved to the beginning of the window
+	 * first, the window grows if they fill it.
+	 * 
+	 * @return <TT>false</TT> at the end of the stream.
+	 */
+	private boolean fill() {
+		int keep = Math.min(m_lineStart, m_tokenStart);
+		if (keep > 0) {
+			System.arraycopy(m_window, keep, m_window, 0, m_windowEnd - keep);
+			m_windowPosition -= keep;
+			m_windowEnd -= keep;
+			m_lineStart -= keep;
+			m_tokenStart -= keep;
+		}
+		if (m_windowEnd == m_window.length) {
+			char[] window = new char[m_window.length * 2];
+			System.arraycopy(m_window, 0, window, 0, m_windowEnd);
+			m_window = window;
+		}
+		int read = -1;
 		try {
-			m_charStream.mark(0);
-			hasNext = m_charStream.read(new char[1]);
-			m_charStream.reset();
+			read = m_charStream.read(m_window, m_windowEnd, m_window.length
+					- m_windowEnd);
 		} catch (IOException e) {
 			e.printStackTrace();
 		}
-		return (hasNext != -1);
+		if (read <= 0)
+			return false;
+		m_windowEnd += read;
+		return true;
+	}
+
+	/** Notifies the listeners that the current line has been scanned. */
+	private void lineScanned() {
+		updatePosition();
+		notifyListenersForLineScanned(new String(m_window, m_lineStart,
+				m_windowPosition - m_lineStart));
+		m_lineStart = m_windowPosition;
+	}
+
+	private void updatePosition() {
+		m_position.setPosition(m_column, m_line, m_offset);
+	}
+
+	/**
+	 * Returns <TT>true</TT> if there's any character left.
+	 * 
+	 * @return <TT>true</TT> if there's any character left, <TT>false</TT>
+	 *         otherwise.
+	 */
+	public boolean hasNext() {
+		m_tokenStart = m_windowPosition;
+		return m_windowPosition < m_windowEnd || fill();
 	}
 
 	/**
@@ -242,7 +321,7 @@ public class Scanner {
 	}
 
 	public String getCurrentLine() {
-		return new String(m_currentLine);
+		return new String(m_window, m_lineStart, m_windowPosition - m_lineStart);
 	}
 
 	protected void notifyListenersForToken(Token token) {
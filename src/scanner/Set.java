@@ -15,12 +15,43 @@
 // along with abc4j.  If not, see <http://www.gnu.org/licenses/>.
 package scanner;
 
-import java.util.Vector;
-
-/** This class defines sets used to group token types while parsing. */
+/**
+ * This class defines sets used to group token types while parsing.
+ * <p>
+ * A set is a bit set : each token type has an ordinal (see
+ * {@link TokenType#getOrdinal()}), the bit of this ordinal is set if the token
+ * type is contained in the set. Tests and comparisons are operations on the
+ * words of the bit set. The order in which the token types were added is kept
+ * as well : the definitions of the token types are merged in this order, and
+ * if two token types match the same characters, the last one wins.
+ * </p>
+ */
 public class Set implements Cloneable {
-	/** A vector containing token types as <TT>Integer</TT>. */
-	private Vector m_types = null;
+	/** All token types, by ordinal. */
+	private static volatile TokenType[] s_tokenTypes = new TokenType[0];
+	/** The bits of the ordinals of the token types contained in this set. */
+	private long[] m_bits = null;
+	/** The ordinals of the token types, in the order they were added. */
+	private int[] m_ordinals = null;
+	/** The number of token types in this set. */
+	private int m_size = 0;
+
+	/**
+	 * Registers a token type and returns its ordinal. Each token type calls
+	 * this once, when it is created : the ordinals are the indexes of the bits
+	 * in the sets, they start at 0 and have no gaps.
+	 * 
+	 * @param tokenType
+	 *            A new token type.
+	 * @return The ordinal of the given token type.
+	 */
+	public static synchronized int register(TokenType tokenType) {
+		TokenType[] tokenTypes = new TokenType[s_tokenTypes.length + 1];
+		System.arraycopy(s_tokenTypes, 0, tokenTypes, 0, s_tokenTypes.length);
+		tokenTypes[s_tokenTypes.length] = tokenType;
+		s_tokenTypes = tokenTypes;
+		return tokenTypes.length - 1;
+	}
 
 	/**
 	 * Creates a new set.
@@ -31,18 +62,16 @@ public class Set implements Cloneable {
 	public Set(TokenType[] tokenTypes) {
 		this();
 		for (int i = 0; i < tokenTypes.length; i++)
-			m_types.addElement(tokenTypes[i]);
-	}
-
-	private Set(int initialCapacity) {
-		m_types = new Vector(initialCapacity);
+			set(tokenTypes[i].getOrdinal());
 	}
 
 	/**
 	 * Default constructor. Constructs an empty set.
 	 */
 	public Set() {
-		m_types = new Vector();
+		int tokenTypes = s_tokenTypes.length;
+		m_bits = new long[(tokenTypes + 63) >> 6];
+		m_ordinals = new int[tokenTypes];
 	}
 
 	/**
@@ -52,7 +81,9 @@ public class Set implements Cloneable {
 	 *            The set from which this set has to be initialized.
 	 */
 	public Set(Set set) {
-		this((Vector) set.m_types.clone());
+		m_bits = (long[]) set.m_bits.clone();
+		m_ordinals = (int[]) set.m_ordinals.clone();
+		m_size = set.m_size;
 	}
 
 	/**
@@ -63,23 +94,21 @@ public class Set implements Cloneable {
 	 */
 	public Set(TokenType tokenType) {
 		this();
-		m_types.addElement(tokenType);
-	}
-
-	private Set(Vector types) {
-		m_types = types;
+		set(tokenType.getOrdinal());
 	}
 
 	/**
 	 * Returns an array representation of the types contained in this set.
 	 * 
-	 * @return An array representation of the types contained in this set. An
-	 *         array with size 0 is returned if the set is empty.
+	 * @return An array representation of the types contained in this set, in
+	 *         the order they were added. An array with size 0 is returned if
+	 *         the set is empty.
 	 */
 	public TokenType[] getTypes() {
-		TokenType[] types = new TokenType[m_types.size()];
-		for (int i = 0; i < m_types.size(); i++)
-			types[i] = (TokenType) m_types.elementAt(i);
+		TokenType[] allTypes = s_tokenTypes;
+		TokenType[] types = new TokenType[m_size];
+		for (int i = 0; i < m_size; i++)
+			types[i] = allTypes[m_ordinals[i]];
 		return types;
 	}
 
@@ -89,21 +118,22 @@ public class Set implements Cloneable {
 	 * @return The number of elements in this set.
 	 */
 	public int size() {
-		return m_types.size();
+		return m_size;
 	}
 
 	/**
-	 * Adds the specified token type in the set. This token type is added even
-	 * if the set already contains it.
+	 * Adds the specified token type in the set.
 	 * 
 	 * @param tokenType
 	 *            The token type added in the set.
+	 * @exception IllegalStateException
+	 *                Thrown if the set already contains the token type.
 	 */
 	public void add(TokenType tokenType) {
-		if (m_types.contains(tokenType))
+		if (contains(tokenType))
 			throw new IllegalStateException("This token " + tokenType
 					+ " is already contained in " + this);
-		m_types.addElement(tokenType);
+		set(tokenType.getOrdinal());
 	}
 
 	/**
@@ -115,7 +145,12 @@ public class Set implements Cloneable {
 	 *         <TT>false</TT> otherwise.
 	 */
 	public boolean remove(TokenType tokenType) {
-		return m_types.removeElement(tokenType);
+		if (!contains(tokenType))
+			return false;
+		int ordinal = tokenType.getOrdinal();
+		m_bits[ordinal >> 6] &= ~(1L << ordinal);
+		removeOrdinals();
+		return true;
 	}
 
 	/**
@@ -127,19 +162,15 @@ public class Set implements Cloneable {
 	 *         <TT>false</TT> otherwise.
 	 */
 	public boolean contains(TokenType tokenType) {
-		for (int i = 0; i < m_types.size(); i++) {
-			if (m_types.elementAt(i).equals(tokenType))
-				return true;
-		}
-		return false;
+		return isSet(tokenType.getOrdinal());
 	}
 
 	public boolean contains(Set aSet) {
-		boolean contains = true;
-		for (int i = 0; i < aSet.m_types.size() && contains; i++)
-			if (!contains((TokenType) aSet.m_types.elementAt(i)))
-				contains = false;
-		return contains;
+		long[] bits = aSet.m_bits;
+		for (int i = 0; i < bits.length; i++)
+			if ((bits[i] & ~word(i)) != 0)
+				return false;
+		return true;
 	}
 
 	/**
@@ -149,16 +180,15 @@ public class Set implements Cloneable {
 	 *            Elements to be removed from this set.
 	 */
 	public void remove(Set aSet) {
-		Vector tokensFromSet = aSet.m_types;
-		for (int i = 0; i < tokensFromSet.size(); i++) {
-			if (m_types.contains(tokensFromSet.elementAt(i)))
-				remove((TokenType) tokensFromSet.elementAt(i));
-		}
+		int length = Math.min(m_bits.length, aSet.m_bits.length);
+		for (int i = 0; i < length; i++)
+			m_bits[i] &= ~aSet.m_bits[i];
+		removeOrdinals();
 	}
 
 	/**
 	 * Creates a new set containing tokens types from this set AND tokens types
-	 * from the given set.
+	 * from the given set. The token types of the given set come first.
 	 * 
 	 * @param aSet
 	 *            The set to be unioned with this one.
@@ -166,28 +196,7 @@ public class Set implements Cloneable {
 	 *         the given set.
 	 */
 	public Set createUnion(Set aSet) {
-		/*
-		 * Set set2return = (Set)clone(); Vector tokensFromSet = aSet.m_types;
-		 * for (int i=0; i<tokensFromSet.size(); i++) { if
-		 * (!m_types.contains(tokensFromSet.elementAt(i)))
-		 * set2return.add((TokenType)tokensFromSet.elementAt(i)); } return
-		 * set2return;
-		 */
-		Set set2return = new Set(size() + aSet.size());
-		Vector tokensFromSet = aSet.m_types;
-		TokenType tk = null;
-		for (int i = 0; i < tokensFromSet.size(); i++) {
-			tk = (TokenType) tokensFromSet.elementAt(i);
-			if (!set2return.m_types.contains(tk))
-				set2return.add(tk);
-		}
-		tokensFromSet = m_types;
-		for (int i = 0; i < tokensFromSet.size(); i++) {
-			tk = (TokenType) tokensFromSet.elementAt(i);
-			if (!set2return.m_types.contains(tk))
-				set2return.add(tk);
-		}
-		return set2return;
+		return new Set(aSet).union(this);
 	}
 
 	/**
@@ -201,10 +210,7 @@ public class Set implements Cloneable {
 	 *         token type.
 	 */
 	public Set createUnion(TokenType tokenType) {
-		Set set2return = (Set) clone();
-		if (!contains(tokenType))
-			set2return.add(tokenType);
-		return set2return;
+		return new Set(this).union(tokenType);
 	}
 
 	/**
@@ -216,11 +222,9 @@ public class Set implements Cloneable {
 	 * @return A reference on this.
 	 */
 	public Set union(Set aSet) {
-		Vector tokensFromSet = aSet.m_types;
-		for (int i = 0; i < tokensFromSet.size(); i++) {
-			if (!m_types.contains(tokensFromSet.elementAt(i)))
-				add((TokenType) tokensFromSet.elementAt(i));
-		}
+		int[] ordinals = aSet.m_ordinals;
+		for (int i = 0; i < aSet.m_size; i++)
+			set(ordinals[i]);
 		return this;
 	}
 
@@ -233,8 +237,28 @@ public class Set implements Cloneable {
 	 * @return A reference on this.
 	 */
 	public Set union(TokenType tokenType) {
-		if (!contains(tokenType))
-			add(tokenType);
+		set(tokenType.getOrdinal());
+		return this;
+	}
+
+	/**
+	 * Replaces the tokens types of this set by the token types of the given
+	 * set (without creating any new set).
+	 * 
+	 * @param aSet
+	 *            The set to be copied.
+	 * @return A reference on this.
+	 */
+	public Set copyFrom(Set aSet) {
+		if (m_bits.length < aSet.m_bits.length)
+			m_bits = new long[aSet.m_bits.length];
+		System.arraycopy(aSet.m_bits, 0, m_bits, 0, aSet.m_bits.length);
+		for (int i = aSet.m_bits.length; i < m_bits.length; i++)
+			m_bits[i] = 0;
+		if (m_ordinals.length < aSet.m_size)
+			m_ordinals = new int[aSet.m_ordinals.length];
+		System.arraycopy(aSet.m_ordinals, 0, m_ordinals, 0, aSet.m_size);
+		m_size = aSet.m_size;
 		return this;
 	}
 
@@ -248,14 +272,10 @@ public class Set implements Cloneable {
 	 *         given one.
 	 */
 	public Set intersect(Set aSet) {
-		Set set2return = (Set) clone();
-		Vector tokensFromSet = aSet.m_types;
-		// Vector thisTokens = this.toVector();
-
-		for (int i = 0; i < m_types.size(); i++) {
-			if (!tokensFromSet.contains(m_types.elementAt(i)))
-				set2return.remove((TokenType) m_types.elementAt(i));
-		}
+		Set set2return = new Set(this);
+		for (int i = 0; i < set2return.m_bits.length; i++)
+			set2return.m_bits[i] &= aSet.word(i);
+		set2return.removeOrdinals();
 		return set2return;
 	}
 
@@ -263,35 +283,105 @@ public class Set implements Cloneable {
 		return new Set(this);
 	}
 
+	/**
+	 * Returns <TT>true</TT> if the given set contains the same token types,
+	 * added in the same order : the unions of their definitions give the same
+	 * automata.
+	 * 
+	 * @param aSet
+	 *            A set of token types.
+	 * @return <TT>true</TT> if both sets have the same token types in the same
+	 *         order.
+	 * @see #equals(Object)
+	 */
+	public boolean equalsInOrder(Set aSet) {
+		if (m_size != aSet.m_size)
+			return false;
+		for (int i = 0; i < m_size; i++)
+			if (m_ordinals[i] != aSet.m_ordinals[i])
+				return false;
+		return true;
+	}
+
+	/**
+	 * Returns <TT>true</TT> if the given object is a set with the same token
+	 * types, in any order.
+	 * 
+	 * @see #equalsInOrder(Set)
+	 */
 	public boolean equals(Object o) {
 		if (o instanceof Set) {
 			Set aSet = (Set) o;
-			int myTypesSize = this.m_types.size();
-			if (myTypesSize == aSet.m_types.size()) {
-				boolean areEqual = true;
-				for (int i = 0; i < myTypesSize && areEqual; i++)
-					if (!contains((TokenType) aSet.m_types.elementAt(i)))
-						areEqual = false;
-				return areEqual;
-			} else
-				return false;
+			int length = Math.max(m_bits.length, aSet.m_bits.length);
+			for (int i = 0; i < length; i++)
+				if (word(i) != aSet.word(i))
+					return false;
+			return true;
 		} else
 			return super.equals(o);
 	}
 
+	public int hashCode() {
+		// words at 0 do not change the hash, as in equals(Object)
+		long hash = 0;
+		for (int i = 0; i < m_bits.length; i++)
+			hash ^= m_bits[i] * (31 + 2 * i);
+		return (int) (hash ^ (hash >>> 32));
+	}
+
 	/**
 	 * Returns a string representation of this set.
 	 * 
 	 * @return A string representation of this set.
 	 */
 	public String toString() {
-		/*
-		 * String st = "["; Iterator it = m_types.iterator(); while
-		 * (it.hasNext()) { TokenType value = (TokenType)it.next(); st =
-		 * st.concat(value.toString()); if (it.hasNext()) st = st.concat(", ");
-		 * } st = st.concat("]");
-		 */
-		return m_types.toString();
+		TokenType[] allTypes = s_tokenTypes;
+		StringBuffer st = new StringBuffer("[");
+		for (int i = 0; i < m_size; i++) {
+			if (i > 0)
+				st.append(", ");
+			st.append(allTypes[m_ordinals[i]]);
+		}
+		return st.append(']').toString();
+	}
+
+	/** Returns the given word of the bits, 0 beyond the last one. */
+	private long word(int index) {
+		return index < m_bits.length ? m_bits[index] : 0;
+	}
+
+	private boolean isSet(int ordinal) {
+		int word = ordinal >> 6;
+		return word < m_bits.length && (m_bits[word] & (1L << ordinal)) != 0;
+	}
+
+	/** Adds the given ordinal if it is not contained yet. */
+	private void set(int ordinal) {
+		if (isSet(ordinal))
+			return;
+		int word = ordinal >> 6;
+		if (word >= m_bits.length) {
+			// a token type created after this set
+			long[] bits = new long[word + 1];
+			System.arraycopy(m_bits, 0, bits, 0, m_bits.length);
+			m_bits = bits;
+		}
+		m_bits[word] |= 1L << ordinal;
+		if (m_size == m_ordinals.length) {
+			int[] ordinals = new int[m_size * 2 + 1];
+			System.arraycopy(m_ordinals, 0, ordinals, 0, m_size);
+			m_ordinals = ordinals;
+		}
+		m_ordinals[m_size++] = ordinal;
+	}
+
+	/** Removes the ordinals whose bits have been cleared, keeping the order. */
+	private void removeOrdinals() {
+		int size = 0;
+		for (int i = 0; i < m_size; i++)
+			if (isSet(m_ordinals[i]))
+				m_ordinals[size++] = m_ordinals[i];
+		m_size = size;
 	}
 
 }
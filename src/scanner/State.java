@@ -15,11 +15,22 @@
 // along with abc4j.  If not, see <http://www.gnu.org/licenses/>.
 package scanner;
 
+import java.util.Map;
 import java.util.Vector;
+import java.util.WeakHashMap;
 import abc.parser.AbcTokenType;
 
 /** This class defines states used in finale state automata. */
 public class State implements Cloneable {
+	/**
+	 * The definitions whose compiled table contains this state, as the keys of
+	 * a weak map. A union changes states of definitions that may already have
+	 * been compiled : those definitions are invalidated when this state
+	 * changes.
+	 * 
+	 * @see AutomataDefinition#getCompiled()
+	 */
+	private Map m_compiledIn = null;
 	/** Transitions from this state. */
 	private Vector transitions;
 	/** The array representation of transitions from this state. */
@@ -130,6 +141,7 @@ public class State implements Cloneable {
 	 */
 	public void setType(TokenType type) {
 		m_type = type;
+		modified();
 	}
 
 	/**
@@ -141,6 +153,7 @@ public class State implements Cloneable {
 	 */
 	public void setTokenState(boolean isToken) {
 		isTokenState = isToken;
+		modified();
 	}
 
 	/**
@@ -164,6 +177,7 @@ public class State implements Cloneable {
 		transitions.addElement(transition);
 		transition.setSourceState(this);
 		m_transitionsArrayCache = null;
+		modified();
 	}
 
 	/**
@@ -179,6 +193,7 @@ public class State implements Cloneable {
 		if (transitions.removeElement(transition)) {
 			transition.setSourceState(null);
 			m_transitionsArrayCache = null;
+			modified();
 			return true;
 		} else
 			return false;
@@ -323,6 +338,35 @@ public class State implements Cloneable {
 		}
 	}
 
+	/**
+	 * Registers a definition whose compiled table contains this state.
+	 * 
+	 * @param definition
+	 *            The definition to be invalidated when this state changes.
+	 */
+	synchronized void compiledIn(AutomataDefinition definition) {
+		if (m_compiledIn == null)
+			m_compiledIn = new WeakHashMap();
+		m_compiledIn.put(definition, null);
+	}
+
+	/**
+	 * Called after a change of this state or of one of its transitions :
+	 * invalidates the compiled tables that contain this state.
+	 */
+	void modified() {
+		Object[] definitions;
+		synchronized (this) {
+			if (m_compiledIn == null)
+				return;
+			definitions = m_compiledIn.keySet().toArray();
+			m_compiledIn = null;
+		}
+		for (int i = 0; i < definitions.length; i++)
+			if (definitions[i] != null)
+				((AutomataDefinition) definitions[i]).invalidate();
+	}
+
 	public Object clone() {
 		State state = new State(getType(), isTokenState());
 		int size = transitions.size();
@@ -20,9 +20,22 @@ public interface TokenType {
 	/** The unknown token type. */
 	public static final TokenType UNKNOWN = new TokenType() {
 		private static final String UNKNOWN_TYPE = "UNKNOWN";
+		private final int m_ordinal = Set.register(this);
+
+		public int getOrdinal() {
+			return m_ordinal;
+		}
 
 		public String toString() {
 			return UNKNOWN_TYPE;
 		}
 	};
+
+	/**
+	 * Returns the ordinal of this token type, its index in the bits of a
+	 * {@link Set}. Ordinals are given by {@link Set#register(TokenType)}.
+	 * 
+	 * @return The ordinal of this token type.
+	 */
+	public int getOrdinal();
 }
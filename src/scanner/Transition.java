@@ -110,6 +110,8 @@ public class Transition {
 	 */
 	public void setTargetState(State state) {
 		targetState = state;
+		if (sourceState != null)
+			sourceState.modified();
 	}
 
 	/**
@@ -192,6 +194,8 @@ public class Transition {
 		System.arraycopy(allContainedCharactersTemp, 0, allContainedCharacters,
 				0, index);
 		chars = allContainedCharacters;
+		if (sourceState != null)
+			sourceState.modified();
 	}
 
 	/**
@@ -301,6 +305,8 @@ public class Transition {
 		char[] thisOnly = new char[thisOnlyLength];
 		System.arraycopy(thisOnlyTemp, 0, thisOnly, 0, thisOnlyLength);
 		chars = thisOnly;
+		if (sourceState != null)
+			sourceState.modified();
 	}
 
 	/** Returns <TT>true</TT> if the given array contains the given character. */